@@ -30,12 +30,14 @@
 
 package soaringcoach;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import soaringcoach.FlightAnalyser.FlightMode;
+import soaringcoach.analysis.ClimbIndex;
+import soaringcoach.analysis.FlightTrack;
 import soaringcoach.analysis.GNSSPoint;
 import soaringcoach.analysis.PolarVector;
+import soaringcoach.analysis.parsing.IgcTimeline;
 
 public class Circle {
 	public Date timestamp;
@@ -45,6 +47,24 @@ public class Circle {
 	
 	private double circle_start_latitude;
 	private double circle_start_longitude;
+	
+	/**
+	 * The start position again, in radians, ready for the geodesy - worked
+	 * out once here rather than by every analysis that needs it
+	 */
+	private double start_latitude_radians;
+	private double start_longitude_radians;
+	
+	private int start_pressure_altitude;
+	private int start_gnss_altitude;
+	
+	/**
+	 * Climb from the circle's start to its end, filled in once it is completed
+	 * - see {@link #setClimb(ClimbIndex)}
+	 */
+	private int altitude_change = 0;
+	private int height_gained = 0;
+	private double climb_rate = 0;
 
 	public double circle_start_course = -400;
 	public double deg_course_change_since_start = 0;
@@ -53,6 +73,12 @@ public class Circle {
 	
 	public PolarVector drift_vector = null;
 	
+	/**
+	 * Set by the wind analysis when it discarded <b>drift_vector</b> as an
+	 * outlier, i.e. left it out of the thermal's wind
+	 */
+	public boolean drift_outlier = false;
+	
 	/**
 	 * By how much did the pilot (intentionally or not) move this circle
 	 * relative to the previous one? This vector already has calculated wind
@@ -61,6 +87,18 @@ public class Circle {
 	public PolarVector correction_vector = null;
 	public GNSSPoint startPoint;
 	public GNSSPoint endPoint = null;
+	
+	/**
+	 * Index in the flight's track of <b>startPoint</b> - the fix before the
+	 * turn was picked up, so the circle's own start (see
+	 * {@link #getStartPoint()}) is the fix after it
+	 */
+	public int start_index = FlightTrack.NO_INDEX;
+	
+	/**
+	 * Index in the flight's track of <b>endPoint</b>
+	 */
+	public int end_index = FlightTrack.NO_INDEX;
 
 	/**
 	 * @param p1 GNSS Point.  Must be resolved.
@@ -73,11 +111,23 @@ public class Circle {
 		this.timestamp = p2.data.timestamp;
 		this.circle_start_latitude = p2.getLatitude();
 		this.circle_start_longitude = p2.getLongitude();	
+		this.start_latitude_radians = p2.lat_radians;
+		this.start_longitude_radians = p2.lon_radians;
+		this.start_pressure_altitude = p2.getPressureAltitude();
+		this.start_gnss_altitude = p2.getGnssAltitude();
 		this.turn_direction = mode;
 		this.circle_start_course = p1.getBearingIntoPoint();
 	}
 	
 	
+	/**
+	 * A circle whose turn was picked up at fix <b>i</b> of the track
+	 */
+	public Circle(FlightTrack track, int i, FlightMode mode) {
+		this(track.get(i - 1), track.get(i), mode);
+		this.start_index = i - 1;
+	}
+	
 	/**
 	 * @param timestamp what time did the circle start (timestamp from IGC file)
 	 * @param duration how many seconds did it take to go all the way around
@@ -94,6 +144,8 @@ public class Circle {
 		this.duration = duration;
 		this.circle_start_latitude = circle_start_latitude;
 		this.circle_start_longitude = circle_start_longitude;
+		this.start_latitude_radians = Math.toRadians(circle_start_latitude);
+		this.start_longitude_radians = Math.toRadians(circle_start_longitude);
 	}
 	
 	/**
@@ -106,6 +158,15 @@ public class Circle {
 		this(p1, p2, previous_circle.turn_direction);
 		this.circle_start_course = previous_circle.circle_start_course;
 	}
+	
+	/**
+	 * Same as {@link #Circle(GNSSPoint, GNSSPoint, Circle)}, starting at fix
+	 * <b>i</b> of the track
+	 */
+	public Circle(FlightTrack track, int i, Circle previous_circle) {
+		this(track.get(i - 1), track.get(i), previous_circle);
+		this.start_index = i - 1;
+	}
 
 
 	public String toString() {
@@ -122,14 +183,49 @@ public class Circle {
 		this.included_in_thermal = true;
 	}
 
+	/**
+	 * @return meters climbed from the circle's start to its end, negative when sinking
+	 */
 	public int getAltitudeChange() {
-		// TODO Auto-generated method stub
-		return 0;
+		return altitude_change;
+	}
+	
+	/**
+	 * @return meters gained over the circle, counting only the fixes that go
+	 *         up - 0 for circles made from points alone, without a track
+	 */
+	public int getHeightGained() {
+		return height_gained;
 	}
 
+	/**
+	 * @return average climb rate over the circle, in meters per second
+	 */
 	public double getClimbRate() {
-		// TODO Auto-generated method stub
-		return 0;
+		return climb_rate;
+	}
+	
+	/**
+	 * Fills in the climb of a completed circle from the track's running
+	 * totals, from the circle's own start (the fix after <b>start_index</b>)
+	 * to <b>end_index</b>
+	 */
+	public void setClimb(ClimbIndex climb) {
+		int from = start_index + 1;
+		altitude_change = climb.getAltitudeChange(from, end_index);
+		height_gained = climb.getHeightGained(from, end_index);
+		climb_rate = climb.getClimbRate(from, end_index);
+	}
+	
+	/**
+	 * Fills in the climb of a completed circle made from points alone, from
+	 * its start and <b>endPoint</b>
+	 */
+	public void setClimb() {
+		altitude_change = ClimbIndex.altitudeChange(start_pressure_altitude, start_gnss_altitude, 
+				endPoint.getPressureAltitude(), endPoint.getGnssAltitude());
+		long duration_ms = endPoint.data.timestamp.getTime() - timestamp.getTime();
+		climb_rate = duration_ms != 0 ? altitude_change / (duration_ms / 1000.0) : 0;
 	}
 
 	public CHECK_TWICE_RULE getCheckTwiceRuleIndicator() {
@@ -148,12 +244,28 @@ public class Circle {
 		return circle_start_longitude;
 	}
 	
+	/**
+	 * @return latitude of the circle's start, in radians
+	 */
+	public double getStartLatitudeRadians() {
+		return start_latitude_radians;
+	}
+	
+	/**
+	 * @return longitude of the circle's start, in radians
+	 */
+	public double getStartLongitudeRadians() {
+		return start_longitude_radians;
+	}
+	
 	public String getTimestamp() {
-		SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
-				
-		return sdf.format(timestamp);
+		return IgcTimeline.formatTimeOfDay(timestamp.getTime());
 	}
 
+	/**
+	 * Makes a new point every call - for the geodesy, prefer
+	 * {@link #getStartLatitudeRadians()} and {@link #getStartLongitudeRadians()}.
+	 */
 	public GNSSPoint getStartPoint() {
 		GNSSPoint start_point = GNSSPoint.createGNSSPoint(null, timestamp, circle_start_latitude,
 				circle_start_longitude, "A", 0, 0, null);
@@ -180,9 +292,27 @@ public class Circle {
 	 * @return
 	 */
 	public boolean detectCircleCompleted(GNSSPoint p) {
+		detectCircleCompleted(p.getBearingIntoPoint(), p.turn_rate, p.seconds_since_last_fix);
+		
+		this.endPoint  = p;
+		
+		return circle_completed;
+	}
+	
+	/**
+	 * Same as {@link #detectCircleCompleted(GNSSPoint)}, from the resolved
+	 * values of the point - but leaves <b>endPoint</b> for the caller to set
+	 * once the circle is complete.
+	 * 
+	 * @param bearing_into_point
+	 * @param turn_rate
+	 * @param seconds_since_last_fix may be fractional, for fixes less than a second apart
+	 * @return
+	 */
+	public boolean detectCircleCompleted(double bearing_into_point, double turn_rate, double seconds_since_last_fix) {
 		if (deg_course_change_since_start == 0) {
 			//Work out the smallest angle between the circle start course & the track course leading to p
-			 double angle = Math.abs(circle_start_course - p.getBearingIntoPoint());
+			 double angle = Math.abs(circle_start_course - bearing_into_point);
 			 double angle_inverse = Math.abs(angle - 360);
 			 
 			 if (angle < angle_inverse) {
@@ -191,13 +321,36 @@ public class Circle {
 				 deg_course_change_since_start = angle_inverse;
 			 }
 		} else {
-			deg_course_change_since_start += Math.abs(p.turn_rate * p.seconds_since_last_fix);
+			deg_course_change_since_start += Math.abs(turn_rate * seconds_since_last_fix);
 		}
 		
 		circle_completed = Math.abs(deg_course_change_since_start) >= 360;
 		
-		this.endPoint  = p;
+		return circle_completed;
+	}
+	
+	/**
+	 * Same as {@link #detectCircleCompleted(double, double, double)}, for a
+	 * smoothed turn rate: adds up the course change from the rate alone, so a
+	 * noisy bearing into the circle's first fix doesn't shift where it ends.
+	 * 
+	 * @param turn_rate smoothed, in degrees per second
+	 * @param seconds_since_last_fix may be fractional
+	 * @return
+	 */
+	public boolean addCourseChange(double turn_rate, double seconds_since_last_fix) {
+		deg_course_change_since_start += Math.abs(turn_rate * seconds_since_last_fix);
+		circle_completed = deg_course_change_since_start >= 360;
 		
 		return circle_completed;
 	}
+	
+	/**
+	 * Starts this circle's course change off with however far the previous
+	 * circle went past 360 degrees - the smoothed counterpart of keeping the
+	 * previous circle's reference heading.
+	 */
+	public void carryCourseChange(Circle previous_circle) {
+		deg_course_change_since_start = Math.max(0, previous_circle.deg_course_change_since_start - 360);
+	}
 }
\ No newline at end of file
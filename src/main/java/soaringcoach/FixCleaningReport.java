@@ -0,0 +1,75 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach;
+
+/**
+ * How many fixes the FixCleaningAnalysis dropped from a flight, and why -
+ * along with the ones the parser couldn't read at all
+ */
+public class FixCleaningReport {
+	/**
+	 * B records that couldn't be decoded, skipped by the parser already
+	 */
+	public int malformed_fixes = 0;
+	
+	/**
+	 * Validity flag not 'A' or 'V'
+	 */
+	public int invalid_fixes = 0;
+	
+	/**
+	 * Same time as the fix before
+	 */
+	public int duplicate_timestamps = 0;
+	
+	/**
+	 * Earlier than the fix before
+	 */
+	public int time_reversals = 0;
+	
+	/**
+	 * Further from the fix before than a glider could have flown in the time
+	 */
+	public int position_spikes = 0;
+	
+	public int getTotalDropped() {
+		return malformed_fixes + invalid_fixes + duplicate_timestamps + time_reversals + position_spikes;
+	}
+	
+	@Override
+	public String toString() {
+		return "Malformed = [" + malformed_fixes + "], "
+				+ "Invalid = [" + invalid_fixes + "], "
+				+ "Duplicate timestamps = [" + duplicate_timestamps + "], "
+				+ "Time reversals = [" + time_reversals + "], "
+				+ "Position spikes = [" + position_spikes + "]";
+	}
+}
@@ -31,8 +31,13 @@
 package soaringcoach;
 
 import java.util.ArrayList;
+import java.util.List;
 
+import soaringcoach.analysis.FlightTrack;
+import soaringcoach.analysis.FilterType;
+import soaringcoach.analysis.GeometryMode;
 import soaringcoach.analysis.GNSSPoint;
+import soaringcoach.analysis.WindField;
 
 /**
  * Contains any and all detail about the flight, including the raw data as well
@@ -46,7 +51,16 @@ import soaringcoach.analysis.GNSSPoint;
 public class Flight {
 	public long id = 0;
 	
-	public ArrayList<GNSSPoint> igc_points;
+	public FlightTrack igc_points;
+	
+	/**
+	 * B records the parser skipped because they couldn't be decoded, e.g. a
+	 * last line cut off when the logger was switched off
+	 */
+	public int malformed_fixes = 0;
+	
+	public boolean is_fix_cleaning_complete = false;
+	public FixCleaningReport fix_cleaning;
 	
 	public boolean is_distance_analysis_complete = false;
 	public double total_track_distance = 0;
@@ -55,6 +69,24 @@ public class Flight {
 	public ArrayList<Circle> circles;
 	
 	public boolean is_wind_analysis_complete = false;
+	
+	/**
+	 * The thermals' winds over the whole flight, by time and altitude - built
+	 * by wind analysis
+	 */
+	public WindField wind_field = null;
+	
+	/**
+	 * How wind and centring analysis work out the geometry within thermals
+	 */
+	public GeometryMode geometry_mode = GeometryMode.SPHERICAL;
+	
+	/**
+	 * How the turn rate, ground speed and climb rate are smoothed before
+	 * circles are detected, and over how many fixes
+	 */
+	public FilterType signal_filter = FilterType.NONE;
+	public int signal_filter_window = FilterType.DEFAULT_WINDOW;
 
 	public boolean is_thermal_analysis_complete;
 	public ArrayList<Thermal> thermals = null;
@@ -79,8 +111,12 @@ public class Flight {
 	 * Creates a new Flight object, initialised with the fixes provided - ready for analysis
 	 * @param fixes
 	 */
-	protected Flight(ArrayList<GNSSPoint> fixes) {
-		this.igc_points = fixes;
+	protected Flight(List<GNSSPoint> fixes) {
+		if (fixes == null || fixes instanceof FlightTrack) {
+			this.igc_points = (FlightTrack) fixes;
+		} else {
+			this.igc_points = new FlightTrack(fixes);
+		}
 	}
 	
 	/**
@@ -88,6 +124,6 @@ public class Flight {
 	 * @param fixes
 	 */
 	protected Flight() {
-		this.igc_points = new ArrayList<>();
+		this.igc_points = new FlightTrack();
 	}
 }
@@ -30,35 +30,32 @@
 
 package soaringcoach;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.text.ParseException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-
-import org.beanio.BeanReader;
-import org.beanio.BeanReaderException;
-import org.beanio.StreamFactory;
+import java.util.Arrays;
+import java.util.EnumSet;
 
 import soaringcoach.analysis.AnalysisException;
-import soaringcoach.analysis.CentringAnalysis;
+import soaringcoach.analysis.AnalysisScheduler;
 import soaringcoach.analysis.CirclesAnalysis;
 import soaringcoach.analysis.CirclingPercentageAnalysis;
+import soaringcoach.analysis.DebugSink;
 import soaringcoach.analysis.DistanceAnalysis;
+import soaringcoach.analysis.FixCleaningAnalysis;
 import soaringcoach.analysis.FlightDebriefingAnalysis;
 import soaringcoach.analysis.GNSSPoint;
+import soaringcoach.analysis.Geodesy;
+import soaringcoach.analysis.FilterType;
+import soaringcoach.analysis.GeometryMode;
 import soaringcoach.analysis.StraightPhasesAnalysis;
-import soaringcoach.analysis.ThermalAnalysis;
-import soaringcoach.analysis.WindAnalysis;
-import soaringcoach.analysis.parsing.FlightDate;
-import soaringcoach.analysis.parsing.GNSSPointData;
-import soaringcoach.analysis.parsing.PICName;
+import soaringcoach.analysis.ThermalWindCentringAnalysis;
+import soaringcoach.analysis.parsing.IgcCompression;
+import soaringcoach.analysis.parsing.IgcExtension;
+import soaringcoach.analysis.parsing.IgcParser;
+import soaringcoach.analysis.parsing.IgcParserType;
 
 public class FlightAnalyser {
 	public enum FlightMode {
@@ -67,6 +64,82 @@ public class FlightAnalyser {
 		CRUISING
 	}
 	
+	private final IgcParser parser;
+	
+	/**
+	 * B record extensions to decode into the flight's track
+	 */
+	private final EnumSet<IgcExtension> extensions = EnumSet.noneOf(IgcExtension.class);
+	
+	private GeometryMode geometry_mode = GeometryMode.getDefault();
+	
+	private FilterType signal_filter = FilterType.getDefault();
+	private int signal_filter_window = FilterType.getDefaultWindow();
+	
+	/**
+	 * Full analysis - the order follows from what each analysis needs and makes
+	 */
+	private final AnalysisScheduler scheduler = new AnalysisScheduler(
+			new FixCleaningAnalysis(),
+			new CirclesAnalysis(),
+			new CirclingPercentageAnalysis(),
+			new ThermalWindCentringAnalysis(),
+			new StraightPhasesAnalysis(),
+			new DistanceAnalysis(),
+			new FlightDebriefingAnalysis());
+	
+	/**
+	 * Creates an analyser that reads IGC content with the default parser
+	 * backend - see {@link IgcParserType#getDefault()}
+	 */
+	public FlightAnalyser() {
+		this(IgcParserType.getDefault().getParser());
+	}
+	
+	/**
+	 * Creates an analyser that reads IGC content with the given parser
+	 * 
+	 * @param parser
+	 */
+	public FlightAnalyser(IgcParser parser) {
+		this.parser = parser;
+	}
+	
+	/**
+	 * Asks for the given B record extensions (where the logger records them)
+	 * to be decoded into columns of the track of every flight read from here
+	 * on. Extensions nobody asks for are dropped while parsing.
+	 * 
+	 * @param requested
+	 */
+	public void requestExtensions(IgcExtension... requested) {
+		extensions.addAll(Arrays.asList(requested));
+	}
+	
+	/**
+	 * Chooses how the geometry within thermals is worked out for every flight
+	 * analysed from here on. Defaults to {@link GeometryMode#getDefault()}.
+	 * 
+	 * @param mode
+	 */
+	public void setGeometryMode(GeometryMode mode) {
+		this.geometry_mode = mode;
+	}
+	
+	/**
+	 * Chooses how the turn rate, ground speed and climb rate are smoothed
+	 * before circles are detected, for every flight analysed from here on.
+	 * Defaults to {@link FilterType#getDefault()} and
+	 * {@link FilterType#getDefaultWindow()}.
+	 * 
+	 * @param type
+	 * @param window number of fixes the filter looks back over
+	 */
+	public void setSignalFilter(FilterType type, int window) {
+		this.signal_filter = type;
+		this.signal_filter_window = window;
+	}
+	
 	public ArrayList<FlightDebriefing> getAllFlights() {
 		throw new RuntimeException("Not implemented yet");
 	}
@@ -76,19 +149,23 @@ public class FlightAnalyser {
 	}
 	
 	/**
+	 * Parses the IGC content in <b>igc_input</b> and performs full analysis on
+	 * the flight. Content that is gzip, zip or bzip2 compressed is unpacked on
+	 * the fly. The stream is read to the end and closed.
 	 * 
 	 * @param igc_input
 	 * @return
 	 * @throws AnalysisException 
 	 */
 	public Flight addAndAnalyseFlight(InputStream igc_input) throws AnalysisException {
-    	InputStreamReader isr = new InputStreamReader(igc_input);
-    	BufferedReader igc_reader = new BufferedReader(isr);
-    	
     	Flight flight = new Flight();
+    	flight.igc_points.requestExtensions(extensions);
+    	flight.geometry_mode = geometry_mode;
+    	flight.signal_filter = signal_filter;
+    	flight.signal_filter_window = signal_filter_window;
     	
-    	try {
-    		flight = readIgcFileBeanIO(igc_reader, flight);
+    	try (InputStream in = IgcCompression.decompress(igc_input)) {
+    		flight = readIgcFile(in, flight);
     	} catch (IOException e) {
     		throw new AnalysisException("Could not read IGC content");
     	}
@@ -105,7 +182,8 @@ public class FlightAnalyser {
 	/**
 	 * Given an IGC file in <b>file</b>, parses the records in there and
 	 * performs full analysis on the flight. Returns the resulting detailed
-	 * <b>Flight</b> object.
+	 * <b>Flight</b> object. Compressed files (gzip, zip or bzip2) are unpacked
+	 * on the fly.
 	 * 
 	 * @param file
 	 * @return
@@ -113,10 +191,19 @@ public class FlightAnalyser {
 	 */
 	public Flight addAndAnalyseFlight(File file) throws AnalysisException {
         Flight flight = new Flight();
+        flight.igc_points.requestExtensions(extensions);
+        flight.geometry_mode = geometry_mode;
+        flight.signal_filter = signal_filter;
+        flight.signal_filter_window = signal_filter_window;
         
 		try {
-			FileReader fileReader = new FileReader(file);
-			flight = readIgcFileBeanIO(fileReader, flight);
+			if (IgcCompression.detect(file) == IgcCompression.NONE) {
+				flight = readIgcFile(file, flight);
+			} else {
+				try (InputStream in = IgcCompression.decompress(new FileInputStream(file))) {
+					flight = readIgcFile(in, flight);
+				}
+			}
 		} catch (IOException e) {
 			throw new AnalysisException("Could not read file " + file.getName(), e);
 		}
@@ -132,78 +219,60 @@ public class FlightAnalyser {
 	}
 
 	/**
-	 * Reads the given IGC file into an ArrayList of GPS fixes.
+	 * Reads the given IGC content into the flight's list of GPS fixes, using
+	 * this analyser's {@link IgcParser}.
 	 * 
-	 * @param file
+	 * @param igc_input
+	 * @param f
 	 * @return
-	 * @throws AnalysisException
-	 * @throws IOException 
+	 * @throws IOException
 	 */
-	protected Flight readIgcFileBeanIO(Reader file, Flight f) throws AnalysisException, IOException {
-		DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-		System.out.println(df.format(LocalDateTime.now()) + " Parsing IGC");
+	protected Flight readIgcFile(InputStream igc_input, Flight f) throws IOException {
+		DebugSink debug = DebugSink.getDefault();
+		debug.log("Parsing IGC");
 		
-		StreamFactory factory = StreamFactory.newInstance();
+		f = parser.read(igc_input, f);
 		
-		factory.load("src/main/resources/igc_mapping.xml");
-
-		BeanReader br = null;
-		f.igc_points = new ArrayList<>();
-
-		try {
-			try {
-				br = factory.createReader("igc_file", file);
-				GNSSPointData pt_data = null;
-				Object bean = null;
-				
-				while ((bean = br.read()) != null) {
-					if (bean instanceof GNSSPointData) {
-						pt_data = (GNSSPointData) bean;
-						
-						GNSSPoint pt = GNSSPoint.createGNSSPoint(pt_data);
-						if (pt != null) {
-							f.igc_points.add(pt);
-						}
-					} else if (bean instanceof PICName) {
-						f.pilot_name = ((PICName) bean).picName;
-					} else if (bean instanceof FlightDate) {
-						f.flightDate = ((FlightDate) bean).getFlightDateString();
-					}
-				}
-			} catch (BeanReaderException e) {
-				throw new IOException("Problem reading IGC Data", e);				
-			} catch (ParseException e) {
-				throw new IOException("Problem reading IGC Data", e);
-			}
-		} finally {
-			if (br != null) {
-				br.close();
-			}
-		}			
+		debug.log("File parsing completed");
 		
-		System.out.println(
-				df.format(LocalDateTime.now()) +
-				" File parsing completed");
+		return f;
+	}
+	
+	/**
+	 * Reads the given IGC file into the flight's list of GPS fixes, using this
+	 * analyser's {@link IgcParser}.
+	 * 
+	 * @param file
+	 * @param f
+	 * @return
+	 * @throws IOException
+	 */
+	protected Flight readIgcFile(File file, Flight f) throws IOException {
+		DebugSink debug = DebugSink.getDefault();
+		debug.log("Parsing IGC");
+		
+		f = parser.read(file, f);
+		
+		debug.log("File parsing completed");
 		
 		return f;
 	}
 	
 	/**
-	 * The meat & potatoes of this class - it calls all the different AAnalysis
-	 * subclasses in the correct order.
+	 * The meat & potatoes of this class - runs all the different AAnalysis
+	 * subclasses, each once what it needs is there, independent ones at the
+	 * same time.
 	 * 
 	 * @param gnssPointList
 	 * @return
 	 */
 	private Flight analyse(Flight f) throws AnalysisException {
-		f = new CirclesAnalysis().analyse(f);
-		f = new CirclingPercentageAnalysis().analyse(f);
-		f = new ThermalAnalysis().analyse(f);
-		f = new WindAnalysis().analyse(f);
-		f = new CentringAnalysis().analyse(f);
-		f = new StraightPhasesAnalysis().analyse(f);
-		f = new DistanceAnalysis().analyse(f);
-		f = new FlightDebriefingAnalysis().analyse(f);
+		AnalysisScheduler.Report report = scheduler.run(f);
+		
+		DebugSink debug = DebugSink.getDefault();
+		if (debug.isEnabled()) {
+			debug.log(report.toString());
+		}
 		
 		return f;
 	}
@@ -216,17 +285,20 @@ public class FlightAnalyser {
 	 * @return double - bearing in degrees
 	 */
 	public static double calculateTrackCourse(GNSSPoint p1, GNSSPoint p2) {
-		double y = Math.sin(p2.lon_radians - p1.lon_radians) * 
-				Math.cos(p2.lat_radians);
-		
-		double x = Math.cos(p1.lat_radians) * Math.sin(p2.lat_radians) -
-		        Math.sin(p1.lat_radians) * Math.cos(p2.lat_radians) *
-		        Math.cos(p2.lon_radians - p1.lon_radians);
-		
-		double track_radians = Math.atan2(y, x);
-		double track_degrees = Math.toDegrees(track_radians);
-		track_degrees = (track_degrees + 360) % 360;
-		return track_degrees;
+		return calculateTrackCourse(p1.lat_radians, p1.lon_radians, p2.lat_radians, p2.lon_radians);
+	}
+	
+	/**
+	 * Helper to calculate the bearing to get from (lat1, lon1) to (lat2, lon2)
+	 * 
+	 * @param lat1 in radians
+	 * @param lon1 in radians
+	 * @param lat2 in radians
+	 * @param lon2 in radians
+	 * @return double - bearing in degrees
+	 */
+	public static double calculateTrackCourse(double lat1, double lon1, double lat2, double lon2) {
+		return Geodesy.bearing(lat1, lon1, lat2, lon2);
 	}
 
 	/**
@@ -239,8 +311,8 @@ public class FlightAnalyser {
 	static double calculateTrackCourse(Circle c, double lat, double lon) {
 		double course = -1;
 		if (c != null) {
-			GNSSPoint p = GNSSPoint.createGNSSPoint(null, null, lat, lon, null, 0, 0, null);
-			course = calculateTrackCourse(c.getStartPoint(), p);
+			course = calculateTrackCourse(c.getStartLatitudeRadians(), c.getStartLongitudeRadians(), 
+					Math.toRadians(lat), Math.toRadians(lon));
 		}
 		return course;
 	}
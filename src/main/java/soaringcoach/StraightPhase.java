@@ -30,6 +30,7 @@
 
 package soaringcoach;
 
+import soaringcoach.analysis.FlightTrack;
 import soaringcoach.analysis.GNSSPoint;
 
 public class StraightPhase implements Comparable<StraightPhase>{
@@ -38,11 +39,28 @@ public class StraightPhase implements Comparable<StraightPhase>{
 	public double distance;
 	public double groundSpeed;
 	
+	/**
+	 * Indices in the flight's track of <b>start_point</b> and <b>end_point</b>
+	 */
+	public int start_index = FlightTrack.NO_INDEX;
+	public int end_index = FlightTrack.NO_INDEX;
+	
 	public StraightPhase(GNSSPoint start, GNSSPoint end) {
 		distance = end.distance(start);
 		this.end_point = end;
 		this.start_point = start;
 	}
+	
+	/**
+	 * The phase from fix <b>start_index</b> to fix <b>end_index</b> of the track
+	 */
+	public StraightPhase(FlightTrack track, int start_index, int end_index) {
+		this.distance = track.distance(start_index, end_index);
+		this.end_point = track.get(end_index);
+		this.start_point = track.get(start_index);
+		this.start_index = start_index;
+		this.end_index = end_index;
+	}
 
 	@Override
 	public int compareTo(StraightPhase o) {
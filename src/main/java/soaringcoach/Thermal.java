@@ -30,10 +30,10 @@
 
 package soaringcoach;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 
+import soaringcoach.analysis.ClimbIndex;
+import soaringcoach.analysis.FlightTrack;
 import soaringcoach.analysis.GNSSPoint;
 import soaringcoach.analysis.PolarVector;
 
@@ -44,6 +44,20 @@ public class Thermal {
 	public GNSSPoint startPoint;
 	public GNSSPoint endPoint;
 	
+	/**
+	 * Indices in the flight's track of <b>startPoint</b> and <b>endPoint</b>,
+	 * taken from the first and last circle
+	 */
+	public int start_index = FlightTrack.NO_INDEX;
+	public int end_index = FlightTrack.NO_INDEX;
+	
+	/**
+	 * Climb over the whole thermal - see {@link #setClimb(ClimbIndex)}
+	 */
+	private int altitude_change = 0;
+	private int height_gained = 0;
+	private double climb_rate = 0;
+	
 	/**
 	 * Make a new thermal, ready to accept turns
 	 */
@@ -59,13 +73,16 @@ public class Thermal {
 		circles.add(c);
 		this.startPoint = c.startPoint;
 		this.endPoint = c.endPoint;
+		this.start_index = c.start_index;
+		this.end_index = c.end_index;
 	}
 	
 	/**
 	 * Figures out whether <code>Circle c</code> can be attached to the thermal,
-	 * by checking circle durations and start times. If it matches, this will
-	 * add the circle to the thermal and return <code>true</code>. If not, the
-	 * circle will *not* be added, and return <code>false</code>
+	 * by checking that it starts where the last circle ended - at its end
+	 * point, or failing that its start time plus its duration. If it matches,
+	 * this will add the circle to the thermal and return <code>true</code>.
+	 * If not, the circle will *not* be added, and return <code>false</code>
 	 * 
 	 * @param c
 	 * @return <code>true</code> if the circle was added to the thermal
@@ -77,13 +94,19 @@ public class Thermal {
 			this.circles.add(c);
 			this.startPoint = c.startPoint;
 			this.endPoint = c.endPoint;
+			this.start_index = c.start_index;
+			this.end_index = c.end_index;
 			return  true;
 		}
 		
 		Circle lastCircle = this.circles.get(this.circles.size() - 1);
-		if ((lastCircle.timestamp.getTime() + lastCircle.duration*1000) == c.timestamp.getTime()) {
+		//The duration is in whole seconds, so it can't place the end of a circle logged at sub-second rates
+		long last_end_time = lastCircle.endPoint != null ? 
+				lastCircle.endPoint.data.timestamp.getTime() : lastCircle.timestamp.getTime() + lastCircle.duration*1000;
+		if (last_end_time == c.timestamp.getTime()) {
 			circles.add(c);
 			this.endPoint = c.endPoint;
+			this.end_index = c.end_index;
 			return true;
 		}
 		
@@ -131,12 +154,61 @@ public class Thermal {
 		return total_seconds;
 	}
 	
+	/**
+	 * @return meters climbed from the start of the first circle to the end of
+	 *         the last one, negative when sinking
+	 */
+	public int getAltitudeChange() {
+		return altitude_change;
+	}
+	
+	/**
+	 * @return meters gained, counting only the fixes that go up - 0 for
+	 *         thermals made from points alone, without a track
+	 */
+	public int getHeightGained() {
+		return height_gained;
+	}
+	
+	/**
+	 * @return average climb rate over the thermal, in meters per second
+	 */
+	public double getClimbRate() {
+		return climb_rate;
+	}
+	
+	/**
+	 * Fills in the climb from the track's running totals, from the first
+	 * circle's own start to <b>end_index</b>
+	 */
+	public void setClimb(ClimbIndex climb) {
+		int from = start_index + 1;
+		altitude_change = climb.getAltitudeChange(from, end_index);
+		height_gained = climb.getHeightGained(from, end_index);
+		climb_rate = climb.getClimbRate(from, end_index);
+	}
+	
+	/**
+	 * Fills in the climb of a thermal whose circles have no track to go by,
+	 * by adding up theirs - they follow on from each other, so that is the
+	 * thermal's altitude change
+	 */
+	public void setClimb() {
+		altitude_change = 0;
+		for (Circle c : circles) {
+			altitude_change += c.getAltitudeChange();
+		}
+		height_gained = 0;
+		
+		long duration_ms = circles.isEmpty() ? 0 : 
+			circles.get(circles.size() - 1).endPoint.data.timestamp.getTime() - circles.get(0).timestamp.getTime();
+		climb_rate = duration_ms != 0 ? altitude_change / (duration_ms / 1000.0) : 0;
+	}
+	
 	@Override
 	public String toString() {
-		SimpleDateFormat df = new SimpleDateFormat("HH:mm:ss");
-		Date first_circle_timestamp = circles.get(0).timestamp;
 		return 
-				"Start Time = ["+df.format(first_circle_timestamp)+"], "
+				"Start Time = ["+circles.get(0).getTimestamp()+"], "
 				+ "Thermal Duration (min:sec) = ["+getTotalDuration()+"], "
 				+ "Average circle duration (s) = ["+getAverageCircleDuration()+"], "
 				+ "Number of circles = ["+circles.size()+"]";
@@ -30,8 +30,7 @@
 
 package soaringcoach.analysis;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
 
 import soaringcoach.Flight;
 
@@ -49,43 +48,95 @@ import soaringcoach.Flight;
  * CentringAnalysis has been run, before it starts - some of them will be
  * computationally expensive.  This interface provides a method to facilitate 
  * this. 
+ * <p>
+ * Each analysis says which {@link FlightData} it needs and which it makes.
+ * The default pre-conditions check that what it needs is there, and an
+ * {@link AnalysisScheduler} works out the order - and what can run at the
+ * same time - from them.
  * 
  * @author johanpretorius
  *
  */
 public abstract class AAnalysis {
+	/**
+	 * JFR is only there from JDK 11 (and 8u262), and {@link AnalysisEvent}
+	 * can't even be loaded without it - so events are only made if it is
+	 */
+	private static final boolean JFR_AVAILABLE = isJfrAvailable();
+	
 	protected abstract Flight performAnalysis(Flight flight) throws AnalysisException;
 	
 	public abstract boolean hasBeenRun(Flight flight);
 	
-	//TODO bin sysouts
+	/**
+	 * @return what the analysis reads off the flight
+	 */
+	public abstract EnumSet<FlightData> getInputs();
+	
+	/**
+	 * @return what the analysis puts on the flight (or changes on it, like
+	 *         fix cleaning does the fixes)
+	 */
+	public abstract EnumSet<FlightData> getOutputs();
+	
+	/**
+	 * Runs the analysis unless it has been already, timing it into the
+	 * analysis' {@link StageMetrics} and as an {@link AnalysisEvent} where
+	 * the JVM has JFR - and telling the {@link DebugSink}, if that is on.
+	 */
 	public final Flight analyse(Flight flight) throws AnalysisException {
-		DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-		
 		checkPreconditions(flight);
 		
+		StageMetrics metrics = AnalysisMetrics.getDefault().get(getClass());
+		DebugSink debug = DebugSink.getDefault();
+		
 		if (!hasBeenRun(flight)) {
-			System.out.println(
-					df.format(LocalDateTime.now()) +
-					" Starting analysis [" + 
-					this.getClass().getSimpleName() + "]");
+			if (debug.isEnabled()) {
+				debug.log("Starting analysis [" + getClass().getSimpleName() + "]");
+			}
 			
-			this.performAnalysis(flight);
+			Object event = JFR_AVAILABLE ? AnalysisEvent.start(getClass()) : null;
+			long allocated = AnalysisMetrics.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			try {
+				this.performAnalysis(flight);
+			} catch (AnalysisException | RuntimeException e) {
+				metrics.fail();
+				throw e;
+			}
+			long nanos = System.nanoTime() - start;
+			if (allocated >= 0) {
+				allocated = AnalysisMetrics.getCurrentThreadAllocatedBytes() - allocated;
+			}
+			int fixes = flight.igc_points == null ? 0 : flight.igc_points.size();
+			metrics.record(nanos, allocated, fixes);
 			
-			System.out.println(
-					df.format(LocalDateTime.now()) +
-					" Completed analysis [" + 
-					this.getClass().getSimpleName() + "]");
+			if (event != null) {
+				AnalysisEvent.finish(event, fixes, allocated);
+			}
+			
+			if (debug.isEnabled()) {
+				debug.log("Completed analysis [" + getClass().getSimpleName() + "] in " + nanos / 1000000 + " ms");
+			}
 		} else {
-			System.out.println(
-					df.format(LocalDateTime.now()) +
-					" Skipping analysis because it was already performed [" + 
-					this.getClass().getSimpleName() + "]");
+			metrics.skip();
+			if (debug.isEnabled()) {
+				debug.log("Skipping analysis because it was already performed [" + getClass().getSimpleName() + "]");
+			}
 		}
 		
 		return flight;
 	}
 
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, AAnalysis.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Allows analysis subclasses to specify their own logic for checking
 	 * pre-conditions, which could include checking the Flight object for
@@ -96,12 +147,20 @@ public abstract class AAnalysis {
 	 * <code>PreconditionsFailedException</code> with an appropriate message.
 	 * 
 	 * <p>
-	 * Default implementation checks that flight object is non-null.
+	 * Default implementation checks that flight object is non-null, and has
+	 * all the analysis' inputs.
 	 * 
 	 */
 	protected void checkPreconditions(Flight flight) throws PreconditionsFailedException {
 		if (flight == null) {
 			throw new PreconditionsFailedException("Cannot perform any analysis - flight object is null");
 		}
+		
+		for (FlightData input : getInputs()) {
+			if (!input.isAvailable(flight)) {
+				throw new PreconditionsFailedException(
+						"Cannot perform " + getClass().getSimpleName() + " without " + input.getDescription());
+			}
+		}
 	}
 }
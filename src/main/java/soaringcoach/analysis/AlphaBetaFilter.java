@@ -0,0 +1,92 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+/**
+ * Tracks the signal and its rate of change: each sample is predicted from
+ * the last estimate, and the estimate and rate are then pulled towards the
+ * sample by the gains alpha and beta. It follows a steadily changing signal
+ * - a turn tightening up, a climb picking up - without the lag of a window
+ * average, and needs no buffer at all.
+ */
+public final class AlphaBetaFilter extends SignalFilter {
+	private final double alpha;
+	private final double beta;
+	
+	private boolean started = false;
+	private double estimate = 0;
+	private double rate = 0;
+	
+	/**
+	 * @param alpha gain on the estimate, in (0, 1]
+	 * @param beta gain on the rate of change, in (0, 2)
+	 */
+	public AlphaBetaFilter(double alpha, double beta) {
+		this.alpha = alpha;
+		this.beta = beta;
+	}
+	
+	/**
+	 * @return a filter that smooths about as much as a least squares line
+	 *         through the last <b>window</b> samples
+	 */
+	public static AlphaBetaFilter forWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must hold at least one sample");
+		}
+		double n = window;
+		return new AlphaBetaFilter(2 * (2 * n - 1) / (n * (n + 1)), 6 / (n * (n + 1)));
+	}
+
+	@Override
+	protected double update(double value, double interval) {
+		if (!started) {
+			started = true;
+			estimate = value;
+			return estimate;
+		}
+		
+		double predicted = estimate + rate * interval;
+		double residual = value - predicted;
+		estimate = predicted + alpha * residual;
+		rate += beta * residual / interval;
+		
+		return estimate;
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		started = false;
+		estimate = 0;
+		rate = 0;
+	}
+}
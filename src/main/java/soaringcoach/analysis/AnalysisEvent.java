@@ -0,0 +1,88 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for each analysis run on a flight, so a recording shows where
+ * the time of an upload went next to GC and the rest - e.g.
+ * -XX:StartFlightRecording with the event enabled in its settings.
+ * <p>
+ * Only to be touched through {@link #start(Class)} and
+ * {@link #finish(Object, int, long)}, and only once {@link AAnalysis} has made
+ * sure JFR is there: on an older JVM this class can't be loaded.
+ */
+@Name("soaringcoach.Analysis")
+@Label("Flight Analysis")
+@Category("SoaringCoach")
+@Description("One analysis of one flight")
+public class AnalysisEvent extends jdk.jfr.Event {
+	@Label("Analysis")
+	public String analysis;
+	
+	@Label("Fixes")
+	public int fixes;
+	
+	@Label("Allocated")
+	@Description("By the thread that ran the analysis")
+	@DataAmount
+	public long allocated_bytes;
+	
+	/**
+	 * Starts timing an analysis. Handed back as an Object, so callers that
+	 * only touch the event through here don't need JFR to be loaded.
+	 */
+	static Object start(Class<? extends AAnalysis> analysis) {
+		AnalysisEvent event = new AnalysisEvent();
+		event.analysis = analysis.getSimpleName();
+		event.begin();
+		return event;
+	}
+	
+	/**
+	 * Stops timing the analysis started by {@link #start(Class)}, and
+	 * records it if the recording takes it
+	 */
+	static void finish(Object started, int fixes, long allocated_bytes) {
+		AnalysisEvent event = (AnalysisEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.fixes = fixes;
+			event.allocated_bytes = allocated_bytes;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timings, allocation and throughput of every kind of analysis run in this
+ * JVM, kept by {@link AAnalysis#analyse} - see {@link StageMetrics}.
+ * The REST app serves them at /metrics; each run is a JFR event too, see
+ * {@link AnalysisEvent}.
+ */
+public final class AnalysisMetrics {
+	private static final AnalysisMetrics DEFAULT = new AnalysisMetrics();
+	
+	/**
+	 * The allocation counter of the JVM's threads, null if it has none
+	 */
+	private static final com.sun.management.ThreadMXBean allocations = getAllocations();
+	
+	private final ConcurrentHashMap<String, StageMetrics> stages = new ConcurrentHashMap<>();
+	
+	/**
+	 * @return the metrics analyses record into
+	 */
+	public static AnalysisMetrics getDefault() {
+		return DEFAULT;
+	}
+	
+	/**
+	 * @return the metrics of the analysis class, made the first time it is asked for
+	 */
+	public StageMetrics get(Class<? extends AAnalysis> analysis) {
+		String name = analysis.getSimpleName();
+		StageMetrics metrics = stages.get(name);
+		if (metrics == null) {
+			StageMetrics made = new StageMetrics();
+			metrics = stages.putIfAbsent(name, made);
+			if (metrics == null) {
+				metrics = made;
+			}
+		}
+		return metrics;
+	}
+	
+	/**
+	 * @return the metrics of every analysis that has been run, by name
+	 */
+	public Map<String, StageMetrics.Snapshot> snapshot() {
+		Map<String, StageMetrics.Snapshot> snapshot = new TreeMap<>();
+		for (Map.Entry<String, StageMetrics> stage : stages.entrySet()) {
+			snapshot.put(stage.getKey(), stage.getValue().snapshot());
+		}
+		return snapshot;
+	}
+	
+	public void reset() {
+		stages.clear();
+	}
+	
+	/**
+	 * @return bytes the current thread has allocated so far, or -1 if the JVM
+	 *         doesn't count them
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		if (allocations == null || !allocations.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	private static com.sun.management.ThreadMXBean getAllocations() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+			if (allocations.isThreadAllocatedMemorySupported()) {
+				return allocations;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,459 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import soaringcoach.Flight;
+
+/**
+ * Runs a set of analyses over a flight in the order their
+ * {@link FlightData} calls for. An analysis that needs what another makes
+ * waits for it; analyses that don't wait on each other run at the same time -
+ * the circling percentage alongside thermal, wind and centring analysis, for
+ * one. Data none of the analyses make has to be on the flight already.
+ * <p>
+ * The scheduling thread runs one of the analyses that are ready itself and
+ * hands the others to the ForkJoinPool, so a chain of analyses runs on the
+ * thread that asked for it. Waiting for the pool is managed blocking, so
+ * flights can be scheduled from tasks on the same pool.
+ * <p>
+ * The graph is worked out once, so a scheduler can run any number of flights,
+ * from any number of threads. Each run is timed, stage by stage, and reports
+ * its critical path - the chain of analyses that held the flight up.
+ */
+public class AnalysisScheduler {
+	private final ForkJoinPool pool;
+	private final AAnalysis[] stages;
+	
+	/**
+	 * Indices of the stages each stage waits for, and of those waiting for it
+	 */
+	private final int[][] predecessors;
+	private final int[][] successors;
+	
+	/**
+	 * Stage indices, each after all of its predecessors
+	 */
+	private final int[] order;
+	
+	/**
+	 * Runs the analyses that can run at the same time on the common
+	 * ForkJoinPool
+	 */
+	public AnalysisScheduler(AAnalysis... analyses) {
+		this(ForkJoinPool.commonPool(), analyses);
+	}
+	
+	/**
+	 * @param pool to run analyses that can run at the same time on
+	 * @param analyses in any order; ties are run in this order
+	 * @throws IllegalArgumentException if two of the analyses make the same
+	 *             data, or they wait on each other in a circle
+	 */
+	public AnalysisScheduler(ForkJoinPool pool, AAnalysis... analyses) {
+		this.pool = pool;
+		this.stages = analyses.clone();
+		int n = stages.length;
+		
+		EnumMap<FlightData, Integer> producers = new EnumMap<>(FlightData.class);
+		for (int s = 0; s < n; s++) {
+			for (FlightData output : stages[s].getOutputs()) {
+				Integer other = producers.put(output, s);
+				if (other != null) {
+					throw new IllegalArgumentException(getName(other) + " and " + getName(s) + 
+							" both make " + output.getDescription());
+				}
+			}
+		}
+		
+		predecessors = new int[n][];
+		int[] successor_counts = new int[n];
+		for (int s = 0; s < n; s++) {
+			boolean[] waits_for = new boolean[n];
+			for (FlightData input : stages[s].getInputs()) {
+				Integer producer = producers.get(input);
+				if (producer != null && producer != s) {
+					waits_for[producer] = true;
+				}
+			}
+			predecessors[s] = indices(waits_for);
+			for (int p : predecessors[s]) {
+				successor_counts[p]++;
+			}
+		}
+		
+		successors = new int[n][];
+		for (int s = 0; s < n; s++) {
+			successors[s] = new int[successor_counts[s]];
+			successor_counts[s] = 0;
+		}
+		for (int s = 0; s < n; s++) {
+			for (int p : predecessors[s]) {
+				successors[p][successor_counts[p]++] = s;
+			}
+		}
+		
+		order = sort();
+	}
+	
+	/**
+	 * Kahn's algorithm, taking ready stages in the order they were given
+	 */
+	private int[] sort() {
+		int n = stages.length;
+		int[] waiting = new int[n];
+		boolean[] ready = new boolean[n];
+		for (int s = 0; s < n; s++) {
+			waiting[s] = predecessors[s].length;
+			ready[s] = waiting[s] == 0;
+		}
+		
+		int[] sorted = new int[n];
+		for (int count = 0; count < n; count++) {
+			int next = -1;
+			for (int s = 0; s < n && next < 0; s++) {
+				if (ready[s]) {
+					next = s;
+				}
+			}
+			if (next < 0) {
+				throw new IllegalArgumentException("The analyses wait on each other in a circle");
+			}
+			
+			ready[next] = false;
+			sorted[count] = next;
+			for (int successor : successors[next]) {
+				if (--waiting[successor] == 0) {
+					ready[successor] = true;
+				}
+			}
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Runs all the analyses over the flight, each as soon as those it waits
+	 * for are done. If one fails, no more are started; those already running
+	 * are waited for, and the first failure is thrown.
+	 * 
+	 * @return how long each analysis took, and the critical path
+	 */
+	public Report run(Flight flight) throws AnalysisException {
+		int n = stages.length;
+		long[] started = new long[n];
+		long[] finished = new long[n];
+		int[] waiting = new int[n];
+		ArrayDeque<Integer> ready = new ArrayDeque<>();
+		for (int s : order) {
+			waiting[s] = predecessors[s].length;
+			if (waiting[s] == 0) {
+				ready.add(s);
+			}
+		}
+		
+		Completions completions = new Completions(new ExecutorCompletionService<Integer>(pool));
+		int running = 0;
+		Throwable failure = null;
+		long start = System.nanoTime();
+		
+		while (true) {
+			if (failure == null && !ready.isEmpty()) {
+				int inline = ready.poll();
+				while (!ready.isEmpty()) {
+					completions.service.submit(new Stage(ready.poll(), flight, started, finished));
+					running++;
+				}
+				
+				try {
+					new Stage(inline, flight, started, finished).call();
+					release(inline, waiting, ready);
+				} catch (Exception e) {
+					failure = e;
+				}
+				continue;
+			}
+			
+			if (running == 0) {
+				break;
+			}
+			try {
+				Future<Integer> done = completions.take();
+				running--;
+				int s = done.get();
+				if (failure == null) {
+					release(s, waiting, ready);
+				}
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AnalysisException("Interrupted while analysing", e);
+			}
+		}
+		
+		if (failure != null) {
+			throw asAnalysisException(failure);
+		}
+		return new Report(started, finished, System.nanoTime() - start);
+	}
+	
+	private void release(int s, int[] waiting, ArrayDeque<Integer> ready) {
+		for (int successor : successors[s]) {
+			if (--waiting[successor] == 0) {
+				ready.add(successor);
+			}
+		}
+	}
+	
+	private static AnalysisException asAnalysisException(Throwable failure) {
+		if (failure instanceof AnalysisException) {
+			return (AnalysisException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		return new AnalysisException("Problem analysing", (Exception) failure);
+	}
+	
+	/**
+	 * @return the analyses, in an order they can be run one after the other in
+	 */
+	public List<AAnalysis> getOrder() {
+		List<AAnalysis> analyses = new ArrayList<>();
+		for (int s : order) {
+			analyses.add(stages[s]);
+		}
+		return analyses;
+	}
+	
+	/**
+	 * @return the analyses <b>analysis</b> waits for
+	 */
+	public List<AAnalysis> getPredecessors(AAnalysis analysis) {
+		List<AAnalysis> analyses = new ArrayList<>();
+		for (int p : predecessors[indexOf(analysis)]) {
+			analyses.add(stages[p]);
+		}
+		return analyses;
+	}
+	
+	private int indexOf(AAnalysis analysis) {
+		for (int s = 0; s < stages.length; s++) {
+			if (stages[s] == analysis) {
+				return s;
+			}
+		}
+		throw new IllegalArgumentException(analysis.getClass().getSimpleName() + " is not scheduled here");
+	}
+	
+	private String getName(int s) {
+		return stages[s].getClass().getSimpleName();
+	}
+	
+	private static int[] indices(boolean[] set) {
+		int[] indices = new int[set.length];
+		int count = 0;
+		for (int i = 0; i < set.length; i++) {
+			if (set[i]) {
+				indices[count++] = i;
+			}
+		}
+		return Arrays.copyOf(indices, count);
+	}
+	
+	/**
+	 * Runs one analysis and notes when, in System.nanoTime()
+	 */
+	private class Stage implements Callable<Integer> {
+		private final int s;
+		private final Flight flight;
+		private final long[] started;
+		private final long[] finished;
+		
+		Stage(int s, Flight flight, long[] started, long[] finished) {
+			this.s = s;
+			this.flight = flight;
+			this.started = started;
+			this.finished = finished;
+		}
+
+		@Override
+		public Integer call() throws AnalysisException {
+			started[s] = System.nanoTime();
+			try {
+				stages[s].analyse(flight);
+			} finally {
+				finished[s] = System.nanoTime();
+			}
+			return s;
+		}
+	}
+	
+	/**
+	 * Takes finished stages off the completion service, letting the pool
+	 * make up for the blocked thread if it is one of its own
+	 */
+	private static class Completions implements ForkJoinPool.ManagedBlocker {
+		private final CompletionService<Integer> service;
+		private Future<Integer> taken;
+		
+		Completions(CompletionService<Integer> service) {
+			this.service = service;
+		}
+		
+		Future<Integer> take() throws InterruptedException {
+			ForkJoinPool.managedBlock(this);
+			Future<Integer> done = taken;
+			taken = null;
+			return done;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (taken == null) {
+				taken = service.take();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			if (taken == null) {
+				taken = service.poll();
+			}
+			return taken != null;
+		}
+	}
+	
+	/**
+	 * How a run went: how long each analysis took, and which of them made up
+	 * the critical path - the longest chain of analyses each waiting for the
+	 * one before, which no amount of threads can make the run shorter than
+	 */
+	public class Report {
+		private final long[] nanos;
+		private final long wall_clock_nanos;
+		private final List<AAnalysis> critical_path;
+		private final long critical_path_nanos;
+		
+		Report(long[] started, long[] finished, long wall_clock_nanos) {
+			int n = stages.length;
+			this.nanos = new long[n];
+			this.wall_clock_nanos = wall_clock_nanos;
+			
+			//Longest chain to the end of each stage, by the stages' own durations
+			long[] chain = new long[n];
+			int[] via = new int[n];
+			int last = -1;
+			for (int s : order) {
+				nanos[s] = finished[s] - started[s];
+				via[s] = -1;
+				for (int p : predecessors[s]) {
+					if (via[s] < 0 || chain[p] > chain[via[s]]) {
+						via[s] = p;
+					}
+				}
+				chain[s] = nanos[s] + (via[s] < 0 ? 0 : chain[via[s]]);
+				if (last < 0 || chain[s] > chain[last]) {
+					last = s;
+				}
+			}
+			
+			List<AAnalysis> path = new ArrayList<>();
+			for (int s = last; s >= 0; s = via[s]) {
+				path.add(stages[s]);
+			}
+			Collections.reverse(path);
+			this.critical_path = Collections.unmodifiableList(path);
+			this.critical_path_nanos = last < 0 ? 0 : chain[last];
+		}
+		
+		/**
+		 * @return nanoseconds <b>analysis</b> took - next to nothing if it had
+		 *         already been run on the flight
+		 */
+		public long getNanos(AAnalysis analysis) {
+			return nanos[indexOf(analysis)];
+		}
+		
+		/**
+		 * @return nanoseconds the whole run took
+		 */
+		public long getWallClockNanos() {
+			return wall_clock_nanos;
+		}
+		
+		/**
+		 * @return the analyses on the critical path, first to last
+		 */
+		public List<AAnalysis> getCriticalPath() {
+			return critical_path;
+		}
+		
+		/**
+		 * @return nanoseconds the analyses on the critical path took together
+		 */
+		public long getCriticalPathNanos() {
+			return critical_path_nanos;
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("Critical path [");
+			for (AAnalysis analysis : critical_path) {
+				if (sb.length() > "Critical path [".length()) {
+					sb.append(" > ");
+				}
+				sb.append(analysis.getClass().getSimpleName())
+					.append(' ').append(getNanos(analysis) / 1000000).append(" ms");
+			}
+			return sb.append("] ").append(critical_path_nanos / 1000000).append(" ms of ")
+					.append(wall_clock_nanos / 1000000).append(" ms").toString();
+		}
+	}
+}
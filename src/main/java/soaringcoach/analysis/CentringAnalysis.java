@@ -30,9 +30,13 @@
 
 package soaringcoach.analysis;
 
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.vecmath.Vector2d;
+
 import soaringcoach.Circle;
 import soaringcoach.Flight;
-import soaringcoach.FlightAnalyser;
 import soaringcoach.Thermal;
 
 /**
@@ -42,6 +46,12 @@ import soaringcoach.Thermal;
  * Comparing the predicted start point for Ci+1 to the actual one recorded, work
  * out a direction and distance (in meters). This vector is the “correction
  * vector” that got applied by the pilot (or turbulence), and is stored in the circle.
+ * <p>
+ * Thermals too short for a wind of their own take the wind of the flight's
+ * {@link WindField} at their time and altitude instead, if it has any.
+ * <p>
+ * Each thermal is centred on its own, so on flights with enough thermals
+ * they are done in parallel - see {@link ThermalTasks}.
  * 
  * @author johanpretorius
  *
@@ -52,8 +62,29 @@ public class CentringAnalysis extends AAnalysis {
 	 */
 	public static final long CORRECTION_VECTOR_RECOGNITION_THRESHOLD = 5;
 
+	private final ForkJoinPool pool;
+	private final int parallel_threshold;
+	
+	/**
+	 * Centres the circles of flights with many thermals on the common
+	 * ForkJoinPool
+	 */
+	public CentringAnalysis() {
+		this(ForkJoinPool.commonPool(), ThermalTasks.DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * @param pool to centre the circles of each thermal on
+	 * @param parallel_threshold number of thermals from which they are
+	 *            centred in parallel; Integer.MAX_VALUE to never do so
+	 */
+	public CentringAnalysis(ForkJoinPool pool, int parallel_threshold) {
+		this.pool = pool;
+		this.parallel_threshold = parallel_threshold;
+	}
+
 	@Override
-	protected Flight performAnalysis(Flight flight) throws AnalysisException {
+	protected Flight performAnalysis(final Flight flight) throws AnalysisException {
 		
 		if (flight.circles == null) {
 			throw new AnalysisException("Circles analysis needs to be completed before centring analysis can commence");
@@ -67,35 +98,116 @@ public class CentringAnalysis extends AAnalysis {
 			throw new AnalysisException("Wind analysis needs to be completed before centring analysis can commence");
 		}
 		
-		for (Thermal t : flight.thermals) {
-			Circle previous_circle = null;
-			for (Circle circle : t.circles) {
-				if (circle != null && previous_circle != null) {
-					GNSSPoint expected_circle_start_point = 
-							calcDestinationPoint(previous_circle.getStartPoint(), t.wind, previous_circle.duration);
-					
-					double correction_bearing = FlightAnalyser.calculateTrackCourse(
-							expected_circle_start_point, circle.getStartPoint());
-					
-					double correction_distance = expected_circle_start_point.distance(circle.getStartPoint());
-					
-					PolarVector correction = new PolarVector(correction_bearing, correction_distance);
-					
-					if (correction.size > CORRECTION_VECTOR_RECOGNITION_THRESHOLD) {
-						circle.correction_vector = correction;
-					} else {
-						circle.correction_vector = new PolarVector(0, 0);
-					}
+		ThermalTasks.run(flight, flight.thermals, new ThermalTasks.Job() {
+			@Override
+			public void run(Thermal t) {
+				centreCircles(t, getWind(t, flight), flight.geometry_mode);
+			}
+		}, pool, parallel_threshold, "centring circles");
+		
+		flight.is_centring_analysis_complete = true;
+		return flight;
+	}
+
+	/**
+	 * @return the thermal's own wind, or if wind analysis could not work that
+	 *         out, the flight's wind field's at the thermal - if it has one
+	 */
+	static PolarVector getWind(Thermal t, Flight flight) {
+		if (t.could_not_calculate_wind && flight.wind_field != null && !flight.wind_field.isEmpty()) {
+			PolarVector wind = flight.wind_field.getWind(t, flight.igc_points);
+			if (wind != null) {
+				return wind;
+			}
+		}
+		return t.wind;
+	}
+
+	/**
+	 * Works out the correction vector of every circle in the thermal. Takes
+	 * the circle starts as coordinates and keeps its projected points in a few
+	 * vectors made once per thermal, so the only thing it can make per circle
+	 * is a correction vector big enough to be recognised.
+	 */
+	private static void centreCircles(Thermal t, PolarVector wind, GeometryMode mode) {
+		Circle previous_circle = null;
+		LocalProjection projection = null;
+		Vector2d projected = null;
+		Vector2d previous_projected = null;
+		Vector2d expected_projected = null;
+		for (int i = 0; i < t.circles.size(); i++) {
+			Circle circle = t.circles.get(i);
+			if (circle != null && mode == GeometryMode.LOCAL_PLANE) {
+				if (projection == null) {
+					projection = new LocalProjection(circle.getStartLatitudeRadians(), circle.getStartLongitudeRadians());
+					projected = new Vector2d();
+					previous_projected = new Vector2d();
+					expected_projected = new Vector2d();
+				}
+				projection.project(circle.getStartLatitudeRadians(), circle.getStartLongitudeRadians(), projected);
+			}
+			
+			if (circle != null && previous_circle != null) {
+				if (mode == GeometryMode.LOCAL_PLANE) {
+					circle.correction_vector = planeCorrection(
+							previous_projected, previous_circle.duration, projected, wind, expected_projected);
 				} else {
-					//Avoid NPEs down the line
-					circle.correction_vector = new PolarVector(0, 0);
+					circle.correction_vector = sphericalCorrection(previous_circle, circle, wind);
 				}
-				previous_circle = circle;
+			} else {
+				//Avoid NPEs down the line
+				circle.correction_vector = PolarVector.ZERO;
+			}
+			previous_circle = circle;
+			if (projection != null) {
+				Vector2d swap = previous_projected;
+				previous_projected = projected;
+				projected = swap;
 			}
 		}
+	}
+
+	/**
+	 * @return the correction of <b>circle</b> from where the wind would have
+	 *         taken <b>previous_circle</b>, over the sphere
+	 */
+	static PolarVector sphericalCorrection(Circle previous_circle, Circle circle, PolarVector wind) {
+		double wind_distance = wind.size * previous_circle.duration;
+		double previous_latitude = previous_circle.getStartLatitudeRadians();
+		double wind_bearing = Math.toRadians(wind.bearing);
+		double expected_latitude = Geodesy.destinationLatitude(
+				previous_latitude, wind_bearing, wind_distance);
+		double expected_longitude = Geodesy.destinationLongitude(
+				previous_latitude, previous_circle.getStartLongitudeRadians(), 
+				wind_bearing, wind_distance, expected_latitude);
 		
-		flight.is_centring_analysis_complete = true;
-		return flight;
+		double correction_bearing = Geodesy.bearing(expected_latitude, expected_longitude, 
+				circle.getStartLatitudeRadians(), circle.getStartLongitudeRadians());
+		double correction_distance = Geodesy.distance(expected_latitude, expected_longitude, 
+				circle.getStartLatitudeRadians(), circle.getStartLongitudeRadians());
+		return toCorrection(correction_bearing, correction_distance);
+	}
+	
+	/**
+	 * @return the correction of a circle starting at <b>projected</b> from
+	 *         where the wind would have taken the previous one, which started at
+	 *         <b>previous_projected</b> and lasted <b>previous_duration</b>
+	 *         seconds
+	 * @param expected_projected scratch, to hold where the wind would have taken it
+	 */
+	static PolarVector planeCorrection(Vector2d previous_projected, long previous_duration, 
+			Vector2d projected, PolarVector wind, Vector2d expected_projected) {
+		LocalProjection.move(previous_projected, wind.bearing, wind.size * previous_duration, expected_projected);
+		return toCorrection(
+				LocalProjection.bearing(expected_projected, projected), 
+				LocalProjection.distance(expected_projected, projected));
+	}
+	
+	private static PolarVector toCorrection(double correction_bearing, double correction_distance) {
+		if (correction_distance > CORRECTION_VECTOR_RECOGNITION_THRESHOLD) {
+			return new PolarVector(correction_bearing, correction_distance);
+		}
+		return PolarVector.ZERO;
 	}
 
 	@Override
@@ -103,18 +215,23 @@ public class CentringAnalysis extends AAnalysis {
 		return flight.is_centring_analysis_complete;
 	}
 
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.THERMALS, FlightData.WIND);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.CORRECTIONS);
+	}
+
 	
 	GNSSPoint calcDestinationPoint(GNSSPoint p1, PolarVector wind, long circle_duration) {
-		final double R = 6371000.0; //Earth mean radius in meters
-		
 		double d = wind.size * circle_duration; //distance we expect the wind to push us during the whole circle
 		double brng = Math.toRadians(wind.bearing);
 		
-		double latitude = Math.asin(Math.sin(p1.lat_radians) * Math.cos(d/R) +
-                Math.cos(p1.lat_radians) * Math.sin(d/R) * Math.cos(brng));
-		
-		double longitude = p1.lon_radians + Math.atan2(Math.sin(brng) * Math.sin(d/R) * Math.cos(p1.lat_radians),
-                     Math.cos(d/R) - Math.sin(p1.lat_radians) * Math.sin(latitude));
+		double latitude = Geodesy.destinationLatitude(p1.lat_radians, brng, d);
+		double longitude = Geodesy.destinationLongitude(p1.lat_radians, p1.lon_radians, brng, d, latitude);
 		
 		double lat_deg = Math.toDegrees(latitude);
 		double lon_deg = Math.toDegrees(longitude);
@@ -0,0 +1,369 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import soaringcoach.Circle;
+import soaringcoach.FlightAnalyser.FlightMode;
+import soaringcoach.Thermal;
+
+/**
+ * Picks circles and thermals out of a flight one fix at a time, for live
+ * tracking feeds as much as for recorded flights. Each fix is taken through a
+ * small state machine - cruising, or turning left or right - that starts a
+ * circle when the turn rate picks up, completes it once the course has come
+ * all the way around, resumes a circle that was broken off for a short
+ * centring move, and starts over when the turn direction switches.
+ * <p>
+ * The detector remembers only the last fix and the circles it is working on,
+ * so its memory stays the same however long the feed runs - apart from the
+ * circles of the thermal being strung together, which are handed over with
+ * it. Completed circles go to the {@link CircleEventHandler} straight away. A
+ * thermal goes as soon as no circle still to come could join it: that's
+ * once the circle started where its last one ended has been dropped, and can
+ * no longer be resumed. The circles and thermals are the same ones
+ * {@link CirclesAnalysis} and {@link ThermalAnalysis} find in the whole
+ * flight, as long as the fixes come in time order. A caller that only wants
+ * the circles can turn the thermals off.
+ * <p>
+ * Where there is a smoothed turn rate - a track's filtered column, or a
+ * {@link SignalFilter} handed to the detector for the points fed in - the
+ * detector goes by that instead of the raw one, so a noisy fix or two doesn't
+ * break a circle into fragments. It then adds up how far around a circle has
+ * come from that turn rate alone, rather than from the bearings.
+ * <p>
+ * Either way, turn rates and course changes go by the time between fixes to
+ * the millisecond, rather than in whole seconds, so the detector works at
+ * logging rates above one fix per second as well.
+ * <p>
+ * Not thread safe: feed one detector from one thread.
+ */
+public class CircleDetector {
+	/**
+	 * Seconds a circle can be broken off for a centring move and still be resumed
+	 */
+	static final long MAX_CENTERING_STRAIGHTEN_TIME = 10;
+	// TURN_RATE_THRESHOLD is in degrees per second.  Turning faster than this constitutes making a thermal turn.
+	private static final int TURN_RATE_THRESHOLD = 6; 
+	
+	private final CircleEventHandler handler;
+	private final SignalFilter turn_rate_filter;
+	private final boolean string_thermals;
+	
+	//Where the fix being detected on comes from: a track, or the last two points fed in
+	private FlightTrack track = null;
+	private GNSSPoint previous_fix = null;
+	private GNSSPoint fix = null;
+	private int fix_count = 0;
+	
+	private FlightMode mode = FlightMode.CRUISING;
+	private Circle circle = null;
+	
+	private Circle last_halfdone_circle = null;
+	private long halfdone_circle_last_time = 0;
+	
+	//The thermal being strung together, and the circle started where its last circle ended
+	private Thermal thermal = null;
+	private Circle chained_circle = null;
+	
+	public CircleDetector(CircleEventHandler handler) {
+		this(handler, null);
+	}
+	
+	/**
+	 * @param handler
+	 * @param turn_rate_filter smooths the turn rate of the points fed in, null
+	 *            for none. Not used on tracks, which bring their own filtered
+	 *            column - see {@link FlightTrack#filter(FilterType, int)}.
+	 */
+	public CircleDetector(CircleEventHandler handler, SignalFilter turn_rate_filter) {
+		this(handler, turn_rate_filter, true);
+	}
+	
+	/**
+	 * @param handler
+	 * @param turn_rate_filter see {@link #CircleDetector(CircleEventHandler, SignalFilter)}
+	 * @param string_thermals false to only pass on circles, for callers that
+	 *            have no use for the thermals - the detector then does no
+	 *            work per thermal at all
+	 */
+	public CircleDetector(CircleEventHandler handler, SignalFilter turn_rate_filter, boolean string_thermals) {
+		this.handler = handler;
+		this.turn_rate_filter = turn_rate_filter;
+		this.string_thermals = string_thermals;
+	}
+	
+	/**
+	 * Feeds in the next fix of the flight. The point is resolved against the
+	 * one before, so it needn't be resolved already - and is kept, as the
+	 * start or end point of a circle, so don't re-use it.
+	 * 
+	 * @param p the next fix, later than the last one fed in
+	 */
+	public void addFix(GNSSPoint p) {
+		if (fix != null) {
+			p.resolve(fix);
+		}
+		previous_fix = fix;
+		fix = p;
+		
+		int i = fix_count++;
+		if (i > 0) {
+			long time = p.data.timestamp.getTime();
+			double interval = (time - previous_fix.data.timestamp.getTime()) / 1000.0;
+			if (turn_rate_filter != null) {
+				double turn_rate = turn_rate_filter.filter(
+						FlightTrack.turnRate(previous_fix.getBearingIntoPoint(), p.getBearingIntoPoint(), interval), 
+						interval);
+				detect(i, turn_rate, interval, p.getBearingIntoPoint(), time, true);
+			} else {
+				detect(i, p.turn_rate, interval, p.getBearingIntoPoint(), time, false);
+			}
+		}
+	}
+	
+	/**
+	 * Feeds in fix <b>i</b> of a resolved track. The fixes of one track are
+	 * to be fed in order, starting at 0, and not mixed with points.
+	 */
+	void addFix(FlightTrack track, int i) {
+		this.track = track;
+		fix_count = i + 1;
+		if (i > 0) {
+			if (track.isFiltered()) {
+				detect(i, track.getFilteredTurnRate(i), track.getInterval(i), track.getBearingIntoPoint(i), 
+						track.getTime(i), true);
+			} else {
+				detect(i, track.getTurnRate(i), track.getInterval(i), track.getBearingIntoPoint(i), 
+						track.getTime(i), false);
+			}
+		}
+	}
+	
+	/**
+	 * Marks the end of the feed: hands over the thermal still being strung
+	 * together, if there is one. The circle in progress, if any, is dropped.
+	 */
+	public void finish() {
+		if (thermal != null) {
+			handOver(thermal);
+			thermal = null;
+			chained_circle = null;
+		}
+	}
+	
+	/**
+	 * @return whether fix <b>i</b> of a resolved track is flown too straight
+	 *         to start or carry on a thermal turn, going by the same turn
+	 *         rate the detector goes by
+	 */
+	static boolean isStraight(FlightTrack track, int i) {
+		double turn_rate = track.isFiltered() ? track.getFilteredTurnRate(i) : track.getTurnRate(i);
+		return Math.abs(turn_rate) < TURN_RATE_THRESHOLD;
+	}
+	
+	/**
+	 * @return whether the flight is turning (left or right) or cruising, as
+	 *         of the last fix
+	 */
+	public FlightMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * @return how many fixes have been fed in
+	 */
+	public int getFixCount() {
+		return fix_count;
+	}
+
+	/**
+	 * @param i index of the fix
+	 * @param turn_rate raw or smoothed, in degrees per second
+	 * @param interval seconds since the fix before
+	 * @param bearing_into_point
+	 * @param time of the fix, in epoch milliseconds
+	 * @param smoothed whether <b>turn_rate</b> is smoothed, in which case the
+	 *            course change is added up from it alone
+	 */
+	private void detect(int i, double turn_rate, double interval, double bearing_into_point, long time, 
+			boolean smoothed) {
+		if (Double.isNaN(turn_rate)) {
+			//No time between this fix and the last one to have turned over
+			return;
+		}
+		
+		if (mode == FlightMode.CRUISING) {
+			if (Math.abs(turn_rate) > TURN_RATE_THRESHOLD) {
+				mode = getTurnDirection(turn_rate);
+				if (detectResumingCircleAfterCentringMove(mode, time)) {
+					circle = last_halfdone_circle;
+				} else {
+					circle = makeCircle(i, mode);
+				}
+			}
+		} else {
+			if (Math.abs(turn_rate) < TURN_RATE_THRESHOLD) {
+				//Turning too slowly to still call this a thermal turn
+				last_halfdone_circle = circle;
+				halfdone_circle_last_time = time;
+				mode = FlightMode.CRUISING;
+				circle = null;
+			} else if (getTurnDirection(turn_rate) != mode) {
+				//Switched turn direction
+				mode = switchTurnDirection(mode);
+				circle = makeCircle(i, mode);
+			} else {
+				if (smoothed) {
+					circle.addCourseChange(turn_rate, interval);
+				} else {
+					circle.detectCircleCompleted(bearing_into_point, turn_rate, interval);
+				}
+				
+				if (circle.circle_completed) {
+					circle.endPoint = track != null ? track.get(i) : fix;
+					circle.end_index = i;
+					circle.setDuration(circle.endPoint);
+					if (track != null) {
+						circle.setClimb(track.getClimbIndex());
+					} else {
+						circle.setClimb();
+					}
+					onCircleCompleted(circle);
+					
+					Circle completed = circle;
+					circle = makeCircle(i, completed);
+					if (smoothed) {
+						circle.carryCourseChange(completed);
+					}
+					chained_circle = circle;
+				}
+			}
+		}
+		
+		if (thermal != null && isThermalOver(time)) {
+			handOver(thermal);
+			thermal = null;
+			chained_circle = null;
+		}
+	}
+
+	/**
+	 * Passes the circle on and, unless told not to, strings it onto the
+	 * thermal the way {@link ThermalAnalysis} does, passing that on too once
+	 * it is completed
+	 */
+	private void onCircleCompleted(Circle c) {
+		handler.onCircle(c);
+		
+		if (!string_thermals) {
+			return;
+		}
+		if (thermal == null) {
+			thermal = new Thermal(c);
+		} else if (!thermal.addCircle(c)) {
+			handOver(thermal);
+			thermal = new Thermal(c);
+		}
+	}
+	
+	/**
+	 * Fills in the thermal's climb and passes it on
+	 */
+	private void handOver(Thermal t) {
+		if (track != null) {
+			t.setClimb(track.getClimbIndex());
+		} else {
+			t.setClimb();
+		}
+		handler.onThermal(t);
+	}
+	
+	/**
+	 * Only a circle starting right where the thermal's last circle ended can
+	 * join it. The one started there is either still being flown, or could
+	 * still be resumed after a centring move; failing that, circles started
+	 * from now on are too late.
+	 */
+	private boolean isThermalOver(long time) {
+		if (circle == chained_circle) {
+			return false;
+		}
+		if (last_halfdone_circle == chained_circle && 
+				getElapsedTime(time) <= MAX_CENTERING_STRAIGHTEN_TIME) {
+			return false;
+		}
+		return time > chained_circle.timestamp.getTime();
+	}
+	
+	private Circle makeCircle(int i, FlightMode mode) {
+		if (track != null) {
+			return new Circle(track, i, mode);
+		}
+		
+		Circle c = new Circle(previous_fix, fix, mode);
+		c.start_index = i - 1;
+		return c;
+	}
+	
+	/**
+	 * The next circle in the same thermal, keeping the previous circle's reference heading
+	 */
+	private Circle makeCircle(int i, Circle previous_circle) {
+		if (track != null) {
+			return new Circle(track, i, previous_circle);
+		}
+		
+		Circle c = new Circle(previous_fix, fix, previous_circle);
+		c.start_index = i - 1;
+		return c;
+	}
+	
+	private boolean detectResumingCircleAfterCentringMove(FlightMode mode, long time) {
+		return last_halfdone_circle != null && 
+				mode == last_halfdone_circle.turn_direction && 
+				getElapsedTime(time) <= MAX_CENTERING_STRAIGHTEN_TIME;
+	}
+
+	/**
+	 * @return seconds since the last circle was broken off
+	 */
+	private long getElapsedTime(long time) {
+		return (time - halfdone_circle_last_time) / 1000;
+	}
+
+	private FlightMode switchTurnDirection(FlightMode mode) {
+		return mode == FlightMode.TURNING_LEFT ? FlightMode.TURNING_RIGHT : FlightMode.TURNING_LEFT;
+	}
+
+	private FlightMode getTurnDirection(double turn_rate) {
+		return turn_rate < 0 ? FlightMode.TURNING_LEFT : FlightMode.TURNING_RIGHT;
+	}
+}
@@ -31,128 +31,236 @@
 package soaringcoach.analysis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import soaringcoach.Circle;
 import soaringcoach.Flight;
-import soaringcoach.FlightAnalyser.FlightMode;
 
 /**
  * makes an array of Circles in the flight, marks each as LH or RH, calculates each’s duration, etc
+ * <p>
+ * The detecting is done by a {@link CircleDetector}, fed the whole track
+ * after it has been smoothed with the flight's signal filter.
+ * <p>
+ * Tracks of at least <b>parallel_threshold</b> fixes are cut into segments
+ * where the glider flies straight for longer than
+ * {@link #MIN_STRAIGHT_SECONDS} - on a cross-country flight, the glides
+ * between climbs. Each segment gets a detector of its own on the
+ * ForkJoinPool, and their circles are put back together in track order. The
+ * cut is made once the glider has been straight for longer than a circle can
+ * be broken off for a centring move, where a detector that has followed the
+ * whole flight is in the same state as a new one - so the circles are
+ * exactly the ones a single detector finds.
  * 
  * @author johanpretorius
  *
  */
 public class CirclesAnalysis extends AAnalysis {
-	private static final long MAX_CENTERING_STRAIGHTEN_TIME = 10;
-	// TURN_RATE_THRESHOLD is in degrees per second.  Turning faster than this constitutes making a thermal turn.
-	private final int TURN_RATE_THRESHOLD = 6; 
+	/**
+	 * Straight stretches longer than this, in seconds, are where the track is
+	 * cut into segments
+	 */
+	public static final long MIN_STRAIGHT_SECONDS = 60;
+	
+	/**
+	 * About an hour and a half at one fix a second
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 5000;
+	
+	private final ForkJoinPool pool;
+	private final int parallel_threshold;
+	
+	/**
+	 * Detects circles in long tracks on the common ForkJoinPool
+	 */
+	public CirclesAnalysis() {
+		this(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * @param pool to detect the segments of long tracks on
+	 * @param parallel_threshold number of fixes from which a track is cut
+	 *            into segments; Integer.MAX_VALUE to never do so
+	 */
+	public CirclesAnalysis(ForkJoinPool pool, int parallel_threshold) {
+		this.pool = pool;
+		this.parallel_threshold = parallel_threshold;
+	}
 
 	@Override
 	protected Flight performAnalysis(Flight flight) throws AnalysisException {
+		//Bearings and turn rates are already resolved in the track, so the
+		//detector only looks at the columns - GNSSPoints are only created where circles start and end
+		FlightTrack track = flight.igc_points;
+		track.filter(flight.signal_filter, flight.signal_filter_window);
+		
+		if (track.size() < parallel_threshold) {
+			flight.circles = detect(track, 0, track.size());
+		} else {
+			//Resolve and index up front - the segments only read the columns from here on
+			track.resolve();
+			track.getClimbIndex();
+			flight.circles = detectSegments(track, findSegmentStarts(track));
+		}
+		
+		flight.is_circles_analysis_complete = true;
+		return flight;
+	}
+	
+	private ArrayList<Circle> detectSegments(FlightTrack track, int[] starts) throws AnalysisException {
+		if (starts.length == 1) {
+			return detect(track, 0, track.size());
+		}
+		
+		List<SegmentTask> segments = new ArrayList<>();
+		for (int s = 0; s < starts.length; s++) {
+			int end = s + 1 < starts.length ? starts[s + 1] : track.size();
+			segments.add(new SegmentTask(track, starts[s], end));
+		}
 		
 		ArrayList<Circle> circles = new ArrayList<Circle>();
+		for (Future<ArrayList<Circle>> segment : pool.invokeAll(segments)) {
+			circles.addAll(get(segment));
+		}
+		return circles;
+	}
+	
+	/**
+	 * Runs a detector of its own over fixes [from, to) of the track
+	 */
+	static ArrayList<Circle> detect(FlightTrack track, int from, int to) {
+		final ArrayList<Circle> circles = new ArrayList<Circle>();
 		
-		GNSSPoint p1 = null;
-
-		FlightMode mode = FlightMode.CRUISING;
-		Circle circle = null;
+		//ThermalAnalysis strings the thermals of the whole flight, so the detector needn't
+		CircleDetector detector = new CircleDetector(new CircleEventHandler() {
+			@Override
+			public void onCircle(Circle c) {
+				circles.add(c);
+			}
+		}, null, false);
 		
-		Circle last_halfdone_circle = null;
-		GNSSPoint halfdone_circle_last_point = null;
+		for (int i = from; i < to; i++) {
+			detector.addFix(track, i);
+		}
+		detector.finish();
 		
-		for (GNSSPoint p2 : flight.igc_points) {
-			
-			if (p1 != null && p2 != null) {
-				p2.resolve(p1);
-				
-				if (mode == FlightMode.CRUISING) {
-					if (Math.abs(p2.turn_rate) > TURN_RATE_THRESHOLD) {
-						mode = getTurnDirection(p2.turn_rate);
-						if (detectResumingCircleAfterCentringMove(
-								mode, 
-								last_halfdone_circle, 
-								halfdone_circle_last_point,
-								p2)) {
-							circle = last_halfdone_circle;
-						} else {
-							circle = new Circle(p1, p2, mode);
-						}
-					}
-				} else {
-					if (Math.abs(p2.turn_rate) < TURN_RATE_THRESHOLD) {
-						//Turning too slowly to still call this a thermal turn
-						last_halfdone_circle = circle;
-						halfdone_circle_last_point = p2;
-						mode = FlightMode.CRUISING;
-						circle = null;
-					} else if (getTurnDirection(p2.turn_rate) != mode) {
-						//Switched turn direction
-						mode = switchTurnDirection(mode);
-						circle = new Circle(p1, p2, mode);
-					} else {
-						circle.detectCircleCompleted(p2);
-						
-						if (circle.circle_completed) {
-							circle.setDuration(p2);
-							circles.add(circle);
-							circle = new Circle(p1, p2, circle); 
-						}
+		return circles;
+	}
+	
+	/**
+	 * Finds where a resolved (and filtered, if it is to be) track can be cut
+	 * without changing the circles found in it: in every straight stretch
+	 * longer than {@link #MIN_STRAIGHT_SECONDS}, the first fix more than
+	 * {@link CircleDetector#MAX_CENTERING_STRAIGHTEN_TIME} seconds into it.
+	 * The fixes must be in time order for that to hold, so a track that
+	 * isn't is not cut at all.
+	 * 
+	 * @return index of the first fix of each segment, starting with 0
+	 */
+	static int[] findSegmentStarts(FlightTrack track) {
+		int[] starts = new int[8];
+		int count = 1;
+		int straight_from = -1;
+		
+		for (int i = 1; i <= track.size(); i++) {
+			if (i < track.size()) {
+				if (track.getTime(i) < track.getTime(i - 1)) {
+					return new int[] {0};
+				}
+				if (CircleDetector.isStraight(track, i)) {
+					if (straight_from < 0) {
+						straight_from = i;
 					}
+					continue;
 				}
 			}
 			
-			//transfer the pointer so we scan through the list looking at 2 adjacent points all the time
-			p1 = p2; 
+			//Fix i is turning, or the track has ended: look back at the straight stretch before it
+			if (straight_from >= 0 && i < track.size() && 
+					track.getTime(i - 1) - track.getTime(straight_from) > MIN_STRAIGHT_SECONDS * 1000) {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+				}
+				starts[count++] = findCut(track, straight_from);
+			}
+			straight_from = -1;
 		}
 		
-		flight.circles = circles;
-		
-		flight.is_circles_analysis_complete = true;
-		return flight;
+		return Arrays.copyOf(starts, count);
 	}
-
+	
 	/**
-	 * @param mode
-	 * @param last_halfdone_circle
-	 * @param halfdone_circle_last_point
-	 * @param p2
-	 * @return
+	 * @return the first fix of the straight stretch starting at
+	 *         <b>straight_from</b> that is too late to resume a circle broken
+	 *         off there
 	 */
-	private boolean detectResumingCircleAfterCentringMove(
-			FlightMode mode, 
-			Circle last_halfdone_circle,
-			GNSSPoint halfdone_circle_last_point, 
-			GNSSPoint p2) {
-		return last_halfdone_circle != null && 
-				mode == last_halfdone_circle.turn_direction && 
-				getElapsedTime(halfdone_circle_last_point, p2) <= MAX_CENTERING_STRAIGHTEN_TIME;
+	private static int findCut(FlightTrack track, int straight_from) {
+		long broken_off = track.getTime(straight_from);
+		int i = straight_from;
+		while ((track.getTime(i) - broken_off) / 1000 <= CircleDetector.MAX_CENTERING_STRAIGHTEN_TIME) {
+			i++;
+		}
+		return i;
 	}
-
-	private long getElapsedTime(GNSSPoint halfdone_circle_last_point, GNSSPoint p2) {
-		if (p2 != null && halfdone_circle_last_point != null) {
-			return (p2.data.timestamp.getTime() - halfdone_circle_last_point.data.timestamp.getTime()) / 1000;
-		} else {
-			return 1000; //safest for the rest of the code
+	
+	private static ArrayList<Circle> get(Future<ArrayList<Circle>> segment) throws AnalysisException {
+		try {
+			return segment.get();
+		} catch (ExecutionException e) {
+			throw new AnalysisException("Problem detecting circles", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnalysisException("Interrupted while detecting circles", e);
 		}
 	}
 
-	private FlightMode switchTurnDirection(FlightMode mode) {
-		return mode == FlightMode.TURNING_LEFT ? FlightMode.TURNING_RIGHT : FlightMode.TURNING_LEFT;
+	@Override
+	public boolean hasBeenRun(Flight flight) {
+		return flight.is_circles_analysis_complete;
 	}
 
-	private FlightMode getTurnDirection(double turn_rate) {
-		return turn_rate < 0 ? FlightMode.TURNING_LEFT : FlightMode.TURNING_RIGHT;
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES);
 	}
-
+	
 	@Override
-	public boolean hasBeenRun(Flight flight) {
-		return flight.is_circles_analysis_complete;
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.CIRCLES);
 	}
 
 	@Override
 	protected void checkPreconditions(Flight f)  throws PreconditionsFailedException {
-		if (f.igc_points == null) {  
-			throw new PreconditionsFailedException("No GPS fixes - Flight object is not initialized properly");
+		super.checkPreconditions(f);
+		
+		if (f.igc_points.isEmpty()) {
+			throw new PreconditionsFailedException("No valid fixes left to analyse after cleaning");
+		}
+	}
+	
+	/**
+	 * Detects the circles in one segment of the track
+	 */
+	private static class SegmentTask implements Callable<ArrayList<Circle>> {
+		private final FlightTrack track;
+		private final int from;
+		private final int to;
+		
+		SegmentTask(FlightTrack track, int from, int to) {
+			this.track = track;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public ArrayList<Circle> call() {
+			return detect(track, from, to);
 		}
 	}
 }
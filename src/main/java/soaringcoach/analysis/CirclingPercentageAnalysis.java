@@ -1,6 +1,6 @@
 package soaringcoach.analysis;
 
-import java.util.Date;
+import java.util.EnumSet;
 
 import soaringcoach.Circle;
 import soaringcoach.Flight;
@@ -10,9 +10,9 @@ public class CirclingPercentageAnalysis extends AAnalysis {
 	@Override
 	protected Flight performAnalysis(Flight flight) throws AnalysisException {
 		double flightDuration = 0.0;
-		Date lastPointTime = flight.igc_points.get(flight.igc_points.size() - 1).data.getTimestamp();
-		Date firstPointTime = flight.igc_points.get(0).data.getTimestamp();
-		flightDuration = lastPointTime.getTime() - firstPointTime.getTime();
+		long lastPointTime = flight.igc_points.getTime(flight.igc_points.size() - 1);
+		long firstPointTime = flight.igc_points.getTime(0);
+		flightDuration = lastPointTime - firstPointTime;
 		flightDuration /= 1000;
 		
 		double circlingDuration = 0.0;
@@ -30,13 +30,20 @@ public class CirclingPercentageAnalysis extends AAnalysis {
 	public boolean hasBeenRun(Flight flight) {
 		return flight.is_circles_percentage_analysis_complete;
 	}
+
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.CIRCLES);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.CIRCLING_PERCENTAGE);
+	}
 	
 	@Override
 	protected void checkPreconditions(Flight f) throws PreconditionsFailedException {
-		if (!f.is_circles_analysis_complete) {
-			throw new PreconditionsFailedException(
-					"Cannot calculate percentage of time spent circling until circles analysis has been completed");
-		}
+		super.checkPreconditions(f);
 		
 		if (f.igc_points.isEmpty()) {
 			throw new PreconditionsFailedException("No GPS fixes, cannot calculate circling percentage");
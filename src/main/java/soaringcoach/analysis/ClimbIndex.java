@@ -0,0 +1,188 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+/**
+ * Running totals over the fixes of a track, from which the climb over any
+ * range of fixes - a circle, a thermal, an altitude band - comes out in
+ * constant time, however long the range:
+ * <ul>
+ * <li>altitude change, each step by pressure altitude - or by GNSS altitude
+ * where either fix has no pressure altitude, the same as
+ * {@link FlightTrack#getClimbRate(int)}</li>
+ * <li>height gained, adding up only the steps that go up</li>
+ * <li>the per-step climb rates, and how many there are, for the average vario
+ * reading</li>
+ * <li>pressure and GNSS altitude, for the average altitude</li>
+ * </ul>
+ * Each total is one long or double per fix, built in a single pass by
+ * {@link FlightTrack#getClimbIndex()}. Ranges are given as the index of
+ * their first and last fix, both included. The index is read-only once
+ * built, so it can be shared between threads.
+ */
+public class ClimbIndex {
+	private final FlightTrack track;
+	
+	/**
+	 * Totals over the steps into fixes 1 to i
+	 */
+	private final long[] climb;
+	private final long[] gain;
+	private final double[] vario;
+	private final int[] vario_count;
+	
+	/**
+	 * Totals over fixes 0 to i
+	 */
+	private final long[] pressure_altitude;
+	private final long[] gnss_altitude;
+	
+	ClimbIndex(FlightTrack track) {
+		this.track = track;
+		int size = track.size();
+		climb = new long[size];
+		gain = new long[size];
+		vario = new double[size];
+		vario_count = new int[size];
+		pressure_altitude = new long[size];
+		gnss_altitude = new long[size];
+		
+		for (int i = 0; i < size; i++) {
+			pressure_altitude[i] = track.getPressureAltitude(i);
+			gnss_altitude[i] = track.getGnssAltitude(i);
+			if (i == 0) {
+				continue;
+			}
+			
+			int step = altitudeChange(
+					track.getPressureAltitude(i - 1), track.getGnssAltitude(i - 1), 
+					track.getPressureAltitude(i), track.getGnssAltitude(i));
+			climb[i] = climb[i - 1] + step;
+			gain[i] = gain[i - 1] + Math.max(step, 0);
+			pressure_altitude[i] += pressure_altitude[i - 1];
+			gnss_altitude[i] += gnss_altitude[i - 1];
+			
+			double interval = track.getInterval(i);
+			vario[i] = vario[i - 1];
+			vario_count[i] = vario_count[i - 1];
+			if (interval != 0) {
+				vario[i] += step / interval;
+				vario_count[i]++;
+			}
+		}
+	}
+	
+	/**
+	 * Altitude change between two fixes, by pressure altitude - or by GNSS
+	 * altitude where either has no pressure altitude (loggers without a
+	 * pressure sensor record 0)
+	 */
+	public static int altitudeChange(int pressure_from, int gnss_from, int pressure_to, int gnss_to) {
+		return pressure_from != 0 && pressure_to != 0 ? pressure_to - pressure_from : gnss_to - gnss_from;
+	}
+	
+	public int size() {
+		return climb.length;
+	}
+	
+	/**
+	 * @return meters climbed from fix <b>from</b> to fix <b>to</b>, negative
+	 *         when sinking
+	 */
+	public int getAltitudeChange(int from, int to) {
+		checkRange(from, to);
+		return (int) (climb[to] - climb[from]);
+	}
+	
+	/**
+	 * @return meters gained from fix <b>from</b> to fix <b>to</b>, counting
+	 *         only the steps that go up
+	 */
+	public int getHeightGained(int from, int to) {
+		checkRange(from, to);
+		return (int) (gain[to] - gain[from]);
+	}
+	
+	/**
+	 * @return seconds, to the millisecond, from fix <b>from</b> to fix <b>to</b>
+	 */
+	public double getDuration(int from, int to) {
+		checkRange(from, to);
+		return (track.getTime(to) - track.getTime(from)) / 1000.0;
+	}
+	
+	/**
+	 * @return altitude change over the duration, in meters per second; 0 if
+	 *         the range takes no time
+	 */
+	public double getClimbRate(int from, int to) {
+		double duration = getDuration(from, to);
+		return duration != 0 ? getAltitudeChange(from, to) / duration : 0;
+	}
+	
+	/**
+	 * @return the per-step climb rates from fix <b>from</b> to fix <b>to</b>
+	 *         averaged, in meters per second - every step counting the same,
+	 *         as on a vario that samples once a fix. 0 if there are none.
+	 */
+	public double getAverageVario(int from, int to) {
+		checkRange(from, to);
+		int count = vario_count[to] - vario_count[from];
+		return count > 0 ? (vario[to] - vario[from]) / count : 0;
+	}
+	
+	/**
+	 * @return mean pressure altitude of fixes <b>from</b> to <b>to</b>, in meters
+	 */
+	public double getAveragePressureAltitude(int from, int to) {
+		checkRange(from, to);
+		return average(pressure_altitude, from, to);
+	}
+	
+	/**
+	 * @return mean GNSS altitude of fixes <b>from</b> to <b>to</b>, in meters
+	 */
+	public double getAverageGnssAltitude(int from, int to) {
+		checkRange(from, to);
+		return average(gnss_altitude, from, to);
+	}
+	
+	private static double average(long[] totals, int from, int to) {
+		long before = from > 0 ? totals[from - 1] : 0;
+		return (double) (totals[to] - before) / (to - from + 1);
+	}
+	
+	private void checkRange(int from, int to) {
+		if (from < 0 || to >= climb.length || from > to) {
+			throw new IndexOutOfBoundsException("Fixes " + from + " to " + to + " of " + climb.length);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Where analysis progress lines go, if anywhere: off unless the
+ * <code>soaringcoach.debug</code> system property is true (e.g.
+ * -Dsoaringcoach.debug=true), and at most
+ * <code>soaringcoach.debug.rate</code> lines a second when on. Lines over
+ * the limit are dropped, and how many is told with the next line let through.
+ * <p>
+ * Check {@link #isEnabled()} before building a line, so nothing is made
+ * for it when off.
+ */
+public final class DebugSink {
+	public static final String DEBUG_PROPERTY = "soaringcoach.debug";
+	public static final String RATE_PROPERTY = "soaringcoach.debug.rate";
+	public static final int DEFAULT_RATE = 20;
+	
+	private static final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final long SECOND = 1000000000L;
+	
+	private static final DebugSink DEFAULT = new DebugSink(
+			System.out, Boolean.getBoolean(DEBUG_PROPERTY), Integer.getInteger(RATE_PROPERTY, DEFAULT_RATE));
+	
+	private final PrintStream out;
+	private final int lines_per_second;
+	private volatile boolean enabled;
+	
+	private long window_start;
+	private int lines_in_window = 0;
+	private int dropped = 0;
+	
+	/**
+	 * @param enabled whether to print anything at all
+	 */
+	public DebugSink(PrintStream out, boolean enabled, int lines_per_second) {
+		this.out = out;
+		this.enabled = enabled;
+		this.lines_per_second = lines_per_second;
+		this.window_start = System.nanoTime();
+	}
+	
+	/**
+	 * @return the sink analyses log to, printing to System.out
+	 */
+	public static DebugSink getDefault() {
+		return DEFAULT;
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Prints the line with the time in front, unless the sink is off or
+	 * has printed its lines for this second already
+	 */
+	public void log(String line) {
+		if (!enabled) {
+			return;
+		}
+		
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (now - window_start >= SECOND) {
+				window_start = now;
+				lines_in_window = 0;
+			}
+			if (lines_in_window >= lines_per_second) {
+				dropped++;
+				return;
+			}
+			lines_in_window++;
+			
+			String time = format.format(LocalDateTime.now());
+			if (dropped > 0) {
+				out.println(time + " (" + dropped + " lines dropped)");
+				dropped = 0;
+			}
+			out.println(time + " " + line);
+		}
+	}
+}
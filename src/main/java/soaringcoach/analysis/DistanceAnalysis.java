@@ -30,6 +30,8 @@
 
 package soaringcoach.analysis;
 
+import java.util.EnumSet;
+
 import soaringcoach.Flight;
 import soaringcoach.StraightPhase;
 import soaringcoach.Thermal;
@@ -51,7 +53,11 @@ public class DistanceAnalysis extends AAnalysis {
 		}
 		
 		for (Thermal t : flight.thermals) {
-			total_dist += t.startPoint.distance(t.endPoint);
+			if (t.start_index != FlightTrack.NO_INDEX) {
+				total_dist += flight.igc_points.distance(t.start_index, t.end_index);
+			} else {
+				total_dist += t.startPoint.distance(t.endPoint);
+			}
 		}
 		
 		flight.total_track_distance = total_dist ;
@@ -65,16 +71,12 @@ public class DistanceAnalysis extends AAnalysis {
 	}
 
 	@Override
-	protected void checkPreconditions(Flight f)  throws PreconditionsFailedException {
-		super.checkPreconditions(f);
-		
-		ThermalAnalysis thermalAnalysis = new ThermalAnalysis();
-		if (!thermalAnalysis.hasBeenRun(f)) {
-			throw new PreconditionsFailedException("Can not determine flight distance unless thermal analysis is complete");
-		}
-		
-		if (!new StraightPhasesAnalysis().hasBeenRun(f)) {
-			throw new PreconditionsFailedException("Can not determine flight distance unless straight phase analysis is complete");
-		}
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.THERMALS, FlightData.STRAIGHT_PHASES);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.DISTANCE);
 	}
 }
@@ -0,0 +1,240 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import soaringcoach.Circle;
+import soaringcoach.FlightAnalyser;
+import soaringcoach.Thermal;
+
+/**
+ * Works out a thermal's average drift per circle from the drift vectors of
+ * its circles, leaving out the ones that are too far off to trust - and the
+ * first circle's, which has no circle before it to drift from. The drift
+ * vectors are taken into primitive arrays as x/y components once, then:
+ * <ol>
+ * <li>the component-wise median is taken as a first guess at the drift - a
+ * wild circle or two can't pull it off the way they pull an average</li>
+ * <li>the drift vectors that differ from it by more than the cut-offs (in
+ * size or bearing, as set by {@link WindAnalysis}) are outliers, the rest are
+ * added up</li>
+ * <li>the inliers are checked once more against their own average, and any
+ * that now fall outside the cut-offs are taken off the running sums</li>
+ * </ol>
+ * Each step is one pass over the circles (the median by quickselect), so the
+ * cost is linear in the number of circles. Outliers are marked on the circles
+ * ({@link Circle#drift_outlier}).
+ * <p>
+ * The arrays are kept and reused from one thermal to the next, so use one
+ * estimator per thread.
+ */
+class DriftEstimator {
+	private double[] x = new double[16];
+	private double[] y = new double[16];
+	private double[] scratch = new double[16];
+	private int count;
+	
+	/**
+	 * Drift per circle found by the last call to {@link #estimate(Thermal)},
+	 * bearing as from atan2 in degrees and size in meters per circle
+	 */
+	double drift_bearing;
+	double drift_size;
+	
+	/**
+	 * Number of drift vectors that went into the drift, i.e. weren't outliers
+	 */
+	int inliers;
+	
+	/**
+	 * Number of circles that drifted from the one before
+	 */
+	int drift_vectors;
+	
+	void estimate(Thermal t) {
+		collect(t);
+		drift_vectors = count;
+		inliers = 0;
+		drift_bearing = 0;
+		drift_size = 0;
+		if (count == 0) {
+			return;
+		}
+		
+		setDrift(median(x), median(y));
+		double centre_bearing = drift_bearing;
+		double centre_size = drift_size;
+		
+		double sum_x = 0;
+		double sum_y = 0;
+		int k = 0;
+		for (int i = 0; i < t.circles.size(); i++) {
+			Circle c = t.circles.get(i);
+			if (!hasDrift(c, i)) {
+				continue;
+			}
+			if (isOutlier(c.drift_vector, centre_bearing, centre_size)) {
+				c.drift_outlier = true;
+			} else {
+				sum_x += x[k];
+				sum_y += y[k];
+				inliers++;
+			}
+			k++;
+		}
+		
+		if (inliers == 0) {
+			//Nothing agrees with anything else: the median is all there is to go by
+			return;
+		}
+		
+		setDrift(sum_x / inliers, sum_y / inliers);
+		double mean_bearing = drift_bearing;
+		double mean_size = drift_size;
+		k = 0;
+		for (int i = 0; i < t.circles.size(); i++) {
+			Circle c = t.circles.get(i);
+			if (!hasDrift(c, i)) {
+				continue;
+			}
+			if (!c.drift_outlier && inliers > 1 && isOutlier(c.drift_vector, mean_bearing, mean_size)) {
+				c.drift_outlier = true;
+				sum_x -= x[k];
+				sum_y -= y[k];
+				inliers--;
+			}
+			k++;
+		}
+		
+		setDrift(sum_x / inliers, sum_y / inliers);
+	}
+	
+	/**
+	 * Clears the circles' outlier marks, and takes the components of their
+	 * drift vectors into <b>x</b> and <b>y</b>
+	 */
+	private void collect(Thermal t) {
+		count = 0;
+		if (x.length < t.circles.size()) {
+			int capacity = Math.max(t.circles.size(), x.length * 2);
+			x = new double[capacity];
+			y = new double[capacity];
+			scratch = new double[capacity];
+		}
+		
+		for (int i = 0; i < t.circles.size(); i++) {
+			Circle c = t.circles.get(i);
+			c.drift_outlier = false;
+			if (hasDrift(c, i)) {
+				double bearing = Math.toRadians(c.drift_vector.bearing);
+				x[count] = c.drift_vector.size * Geodesy.cos(bearing);
+				y[count] = c.drift_vector.size * Geodesy.sin(bearing);
+				count++;
+			}
+		}
+	}
+	
+	/**
+	 * @return whether circle <b>i</b> of the thermal drifted from one before
+	 *         it - the first circle's drift vector is just a zero placeholder
+	 */
+	private static boolean hasDrift(Circle c, int i) {
+		return i > 0 && c.drift_vector != null;
+	}
+	
+	/**
+	 * @param centre_bearing as from atan2, in degrees
+	 */
+	private static boolean isOutlier(PolarVector drift, double centre_bearing, double centre_size) {
+		return Math.abs(drift.size - centre_size) > WindAnalysis.DRIFT_OUTLIER_CUTOFF_SIZE || 
+				Math.abs(FlightAnalyser.calcBearingChange(drift.bearing, centre_bearing)) > 
+				WindAnalysis.DRIFT_OUTLIER_CUTOFF_BEARING;
+	}
+	
+	private void setDrift(double drift_x, double drift_y) {
+		drift_bearing = Math.toDegrees(Geodesy.atan2(drift_y, drift_x));
+		drift_size = Math.sqrt(drift_x * drift_x + drift_y * drift_y);
+	}
+	
+	/**
+	 * @return median of the first <b>count</b> values - the mean of the middle
+	 *         two for an even count
+	 */
+	private double median(double[] values) {
+		System.arraycopy(values, 0, scratch, 0, count);
+		int middle = count / 2;
+		double upper = select(scratch, 0, count - 1, middle);
+		if (count % 2 == 1) {
+			return upper;
+		}
+		
+		//select leaves everything below the middle in front of it
+		double lower = scratch[0];
+		for (int i = 1; i < middle; i++) {
+			lower = Math.max(lower, scratch[i]);
+		}
+		return (lower + upper) / 2;
+	}
+	
+	/**
+	 * Quickselect: moves the <b>n</b>th smallest of a[from..to] to a[n], with
+	 * everything smaller in front of it
+	 */
+	private static double select(double[] a, int from, int to, int n) {
+		while (from < to) {
+			double pivot = a[(from + to) >>> 1];
+			int i = from;
+			int j = to;
+			while (i <= j) {
+				while (a[i] < pivot) {
+					i++;
+				}
+				while (a[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					double swap = a[i];
+					a[i] = a[j];
+					a[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				to = j;
+			} else if (n >= i) {
+				from = i;
+			} else {
+				break;
+			}
+		}
+		return a[n];
+	}
+}
@@ -0,0 +1,142 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+/**
+ * Table driven sine, cosine, arc tangent and arc sine for the geodesy hot
+ * loops. Each one looks up the nearest table entry and corrects it with a
+ * short Taylor series of the (small) remainder:
+ * <ul>
+ * <li>sin(a + b) = sin(a) cos(b) + cos(a) sin(b), with a one of 1024 steps
+ * round the circle and |b| at most half a step</li>
+ * <li>atan(t) = atan(t0) + atan((t - t0) / (1 + t t0)), with t0 one of 512
+ * steps over [0, 1] after folding the other octants onto it</li>
+ * </ul>
+ * The series are long enough for the terms left out to be well below double
+ * rounding, so results stay within a few units in the last place of
+ * java.lang.Math - about 1e-15 absolute, or a few nanometers at the earth's
+ * radius. {@code TestFastTrig} holds them to that. Arguments beyond
+ * {@link #MAX_ARGUMENT} radians, infinities and NaN are handed to java.lang.Math.
+ */
+final class FastTrig {
+	/**
+	 * Largest |x| sin and cos reduce themselves - two turns either way, which
+	 * is all geodesy needs. Every turn past the first adds the rounding of
+	 * 2 pi to the result.
+	 */
+	static final double MAX_ARGUMENT = 4 * Math.PI;
+	
+	private static final int SIN_STEPS = 1024;
+	private static final double SIN_STEP = 2 * Math.PI / SIN_STEPS;
+	private static final double SIN_STEPS_PER_RADIAN = SIN_STEPS / (2 * Math.PI);
+	private static final double[] SIN = new double[SIN_STEPS];
+	private static final double[] COS = new double[SIN_STEPS];
+	
+	private static final int ATAN_STEPS = 512;
+	private static final double[] ATAN = new double[ATAN_STEPS + 1];
+	
+	static {
+		for (int i = 0; i < SIN_STEPS; i++) {
+			SIN[i] = Math.sin(i * SIN_STEP);
+			COS[i] = Math.cos(i * SIN_STEP);
+		}
+		for (int i = 0; i <= ATAN_STEPS; i++) {
+			ATAN[i] = Math.atan((double) i / ATAN_STEPS);
+		}
+	}
+	
+	private FastTrig() {
+	}
+	
+	static double sin(double x) {
+		if (!(Math.abs(x) <= MAX_ARGUMENT)) {
+			return Math.sin(x);
+		}
+		
+		long step = Math.round(x * SIN_STEPS_PER_RADIAN);
+		double b = x - step * SIN_STEP;
+		int i = (int) step & (SIN_STEPS - 1);
+		return SIN[i] * cosOfRemainder(b) + COS[i] * sinOfRemainder(b);
+	}
+	
+	static double cos(double x) {
+		if (!(Math.abs(x) <= MAX_ARGUMENT)) {
+			return Math.cos(x);
+		}
+		
+		long step = Math.round(x * SIN_STEPS_PER_RADIAN);
+		double b = x - step * SIN_STEP;
+		int i = (int) step & (SIN_STEPS - 1);
+		return COS[i] * cosOfRemainder(b) - SIN[i] * sinOfRemainder(b);
+	}
+	
+	static double atan2(double y, double x) {
+		double ax = Math.abs(x);
+		double ay = Math.abs(y);
+		if (!(ax < Double.POSITIVE_INFINITY && ay < Double.POSITIVE_INFINITY) || (ax == 0 && ay == 0)) {
+			//Infinities, NaN and the signed zero cases
+			return Math.atan2(y, x);
+		}
+		
+		double a = ay > ax ? Math.PI / 2 - atanOfFraction(ax / ay) : atanOfFraction(ay / ax);
+		if (x < 0) {
+			a = Math.PI - a;
+		}
+		return Math.copySign(a, y);
+	}
+	
+	static double asin(double x) {
+		if (!(Math.abs(x) <= 1)) {
+			return Math.asin(x);
+		}
+		return atan2(x, Math.sqrt((1 - x) * (1 + x)));
+	}
+	
+	/**
+	 * @param t in [0, 1]
+	 */
+	private static double atanOfFraction(double t) {
+		int i = (int) (t * ATAN_STEPS + 0.5);
+		double t0 = (double) i / ATAN_STEPS;
+		double u = (t - t0) / (1 + t * t0);
+		double u2 = u * u;
+		return ATAN[i] + u * (1 - u2 * (1.0 / 3 - u2 * (1.0 / 5)));
+	}
+	
+	private static double sinOfRemainder(double b) {
+		double b2 = b * b;
+		return b * (1 - b2 * (1.0 / 6 - b2 * (1.0 / 120)));
+	}
+	
+	private static double cosOfRemainder(double b) {
+		double b2 = b * b;
+		return 1 - b2 * (0.5 - b2 * (1.0 / 24 - b2 * (1.0 / 720)));
+	}
+}
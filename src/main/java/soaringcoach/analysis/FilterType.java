@@ -0,0 +1,108 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.Locale;
+
+/**
+ * Which {@link SignalFilter} smooths the turn rate, ground speed and climb
+ * rate columns of a track before the circles are detected.
+ * <p>
+ * The default can be chosen with the system properties
+ * <code>soaringcoach.filter</code> (e.g. -Dsoaringcoach.filter=median) and
+ * <code>soaringcoach.filter.window</code>, the number of fixes the filter
+ * looks back over (e.g. -Dsoaringcoach.filter.window=5).
+ */
+public enum FilterType {
+	/**
+	 * No smoothing: the detectors use the raw per-fix values
+	 */
+	NONE {
+		@Override
+		public SignalFilter create(int window) {
+			return null;
+		}
+	},
+	
+	MOVING_AVERAGE {
+		@Override
+		public SignalFilter create(int window) {
+			return new MovingAverageFilter(window);
+		}
+	},
+	
+	MEDIAN {
+		@Override
+		public SignalFilter create(int window) {
+			return new MedianFilter(window);
+		}
+	},
+	
+	ALPHA_BETA {
+		@Override
+		public SignalFilter create(int window) {
+			return AlphaBetaFilter.forWindow(window);
+		}
+	};
+	
+	public static final String DEFAULT_FILTER_PROPERTY = "soaringcoach.filter";
+	public static final String DEFAULT_WINDOW_PROPERTY = "soaringcoach.filter.window";
+	public static final int DEFAULT_WINDOW = 5;
+	
+	/**
+	 * @param window number of samples the filter looks back over
+	 * @return a new filter of this type, or null for NONE
+	 */
+	public abstract SignalFilter create(int window);
+	
+	/**
+	 * Case-insensitive lookup by name, e.g. "median" or "alpha_beta"
+	 * 
+	 * @throws IllegalArgumentException if there is no such filter
+	 */
+	public static FilterType fromName(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+	
+	/**
+	 * @return the filter selected by the system property, or NONE if it is not set
+	 */
+	public static FilterType getDefault() {
+		return fromName(System.getProperty(DEFAULT_FILTER_PROPERTY, NONE.name()));
+	}
+	
+	/**
+	 * @return the window selected by the system property, or DEFAULT_WINDOW if it is not set
+	 */
+	public static int getDefaultWindow() {
+		return Integer.getInteger(DEFAULT_WINDOW_PROPERTY, DEFAULT_WINDOW);
+	}
+}
@@ -0,0 +1,153 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.BitSet;
+import java.util.EnumSet;
+
+import soaringcoach.Flight;
+import soaringcoach.FixCleaningReport;
+
+/**
+ * Drops the fixes that would throw the other analyses off, in one pass over
+ * the track:
+ * <ul>
+ * <li>invalid - validity flag not 'A' or 'V'</li>
+ * <li>duplicate timestamps and fixes that go back in time</li>
+ * <li>position spikes - further from the last good fix than
+ * {@link #MAX_GROUND_SPEED} allows for the time between them</li>
+ * </ul>
+ * Each fix is held against the last one that was kept, so a single spike is
+ * dropped and the fixes after it are not. If {@link #MAX_CONSECUTIVE_SPIKES}
+ * fixes in a row are out of reach, the logger really is over there now and
+ * the track carries on from the next one.
+ * <p>
+ * Has to run before CirclesAnalysis: one spike is two big bearing changes in a
+ * row, enough to complete a circle that was never flown. The counts per reason
+ * end up in {@link Flight#fix_cleaning}, and are added up over all flights in
+ * the analysis' {@link StageMetrics}.
+ */
+public class FixCleaningAnalysis extends AAnalysis {
+	/**
+	 * Fastest believable ground speed between two fixes, m/s - about 540km/h,
+	 * well above the Vne of any glider
+	 */
+	public static final double MAX_GROUND_SPEED = 150;
+	
+	public static final int MAX_CONSECUTIVE_SPIKES = 5;
+
+	@Override
+	protected Flight performAnalysis(Flight flight) throws AnalysisException {
+		FlightTrack track = flight.igc_points;
+		FixCleaningReport report = new FixCleaningReport();
+		report.malformed_fixes = flight.malformed_fixes;
+		BitSet keep = new BitSet(track.size());
+		
+		int last = -1;
+		int spikes = 0;
+		for (int i = 0; i < track.size(); i++) {
+			if (!track.isValidFix(i)) {
+				report.invalid_fixes++;
+				continue;
+			}
+			
+			if (last >= 0) {
+				long elapsed = track.getTime(i) - track.getTime(last);
+				if (elapsed == 0) {
+					report.duplicate_timestamps++;
+					continue;
+				}
+				if (elapsed < 0) {
+					report.time_reversals++;
+					continue;
+				}
+				if (spikes < MAX_CONSECUTIVE_SPIKES 
+						&& distance(track, last, i) > MAX_GROUND_SPEED * elapsed / 1000.0) {
+					report.position_spikes++;
+					spikes++;
+					continue;
+				}
+			}
+			
+			keep.set(i);
+			last = i;
+			spikes = 0;
+		}
+		
+		track.retain(keep);
+		
+		StageMetrics metrics = AnalysisMetrics.getDefault().get(getClass());
+		metrics.count("malformed_fixes", report.malformed_fixes);
+		metrics.count("invalid_fixes", report.invalid_fixes);
+		metrics.count("duplicate_timestamps", report.duplicate_timestamps);
+		metrics.count("time_reversals", report.time_reversals);
+		metrics.count("position_spikes", report.position_spikes);
+		metrics.count("dropped_fixes", report.getTotalDropped());
+		
+		flight.fix_cleaning = report;
+		flight.is_fix_cleaning_complete = true;
+		return flight;
+	}
+	
+	/**
+	 * Equirectangular distance in meters between two fixes - plenty accurate
+	 * over the few hundred meters between fixes that are being checked
+	 */
+	private static double distance(FlightTrack track, int i, int j) {
+		double lat1 = track.getLatitude(i);
+		double lat2 = track.getLatitude(j);
+		double d_lon = track.getLongitude(j) - track.getLongitude(i);
+		if (d_lon > Math.PI) {
+			d_lon -= 2 * Math.PI;
+		} else if (d_lon < -Math.PI) {
+			d_lon += 2 * Math.PI;
+		}
+		
+		double x = d_lon * Geodesy.cos((lat1 + lat2) / 2);
+		double y = lat2 - lat1;
+		return Geodesy.EARTH_RADIUS * Math.sqrt(x * x + y * y);
+	}
+
+	@Override
+	public boolean hasBeenRun(Flight flight) {
+		return flight.is_fix_cleaning_complete;
+	}
+
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.FIXES);
+	}
+}
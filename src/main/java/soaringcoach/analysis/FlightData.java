@@ -0,0 +1,127 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import soaringcoach.Flight;
+
+/**
+ * What analyses read off and put on a {@link Flight}. Each {@link AAnalysis}
+ * says which of these it needs and which it makes, which is all an
+ * {@link AnalysisScheduler} needs to know to run them in the right order.
+ */
+public enum FlightData {
+	/**
+	 * The track, cleaned once fix cleaning has been
+	 */
+	FIXES("the fixes") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.igc_points != null;
+		}
+	},
+	
+	CIRCLES("the circles") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_circles_analysis_complete;
+		}
+	},
+	
+	CIRCLING_PERCENTAGE("the percentage of time spent circling") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_circles_percentage_analysis_complete;
+		}
+	},
+	
+	THERMALS("the thermals") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.thermals != null;
+		}
+	},
+	
+	/**
+	 * The wind of each thermal, and the flight's wind field
+	 */
+	WIND("the wind") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_wind_analysis_complete;
+		}
+	},
+	
+	/**
+	 * The correction vector of each circle
+	 */
+	CORRECTIONS("the circles' corrections") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_centring_analysis_complete;
+		}
+	},
+	
+	STRAIGHT_PHASES("the straight phases") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_short_straight_phases_analysis_complete;
+		}
+	},
+	
+	DISTANCE("the flight distance") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.is_distance_analysis_complete;
+		}
+	},
+	
+	DEBRIEFING("the debriefing") {
+		@Override
+		public boolean isAvailable(Flight flight) {
+			return flight.isFlightDebriefingAnalysisComplete;
+		}
+	};
+	
+	private final String description;
+	
+	private FlightData(String description) {
+		this.description = description;
+	}
+	
+	/**
+	 * @return whether the flight has this already
+	 */
+	public abstract boolean isAvailable(Flight flight);
+	
+	public String getDescription() {
+		return description;
+	}
+}
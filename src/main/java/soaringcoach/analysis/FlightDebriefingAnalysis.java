@@ -1,5 +1,7 @@
 package soaringcoach.analysis;
 
+import java.util.EnumSet;
+
 import soaringcoach.Flight;
 import soaringcoach.FlightDebriefing;
 
@@ -15,6 +17,7 @@ public class FlightDebriefingAnalysis extends AAnalysis {
 		fd.totalGroundTrackDistance = flight.total_track_distance;
 		fd.straightPhases = flight.straight_phases;
 		fd.flightDate = flight.flightDate;
+		fd.fixCleaning = flight.fix_cleaning;
 		
 		flight.flightDebriefing = fd;
 		flight.isFlightDebriefingAnalysisComplete = true;
@@ -25,4 +28,14 @@ public class FlightDebriefingAnalysis extends AAnalysis {
 	public boolean hasBeenRun(Flight flight) {
 		return flight.isFlightDebriefingAnalysisComplete;
 	}
+
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.CIRCLING_PERCENTAGE, FlightData.STRAIGHT_PHASES, FlightData.DISTANCE);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.DEBRIEFING);
+	}
 }
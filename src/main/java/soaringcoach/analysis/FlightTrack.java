@@ -0,0 +1,822 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.RandomAccess;
+
+import soaringcoach.FlightAnalyser;
+import soaringcoach.analysis.parsing.IgcExtension;
+import soaringcoach.analysis.parsing.IgcExtensionLayout;
+
+/**
+ * The GPS fixes of a flight, stored column by column in parallel primitive
+ * arrays rather than as one GNSSPoint object per fix. Per fix that is:
+ * <ul>
+ * <li>time - epoch milliseconds (long)</li>
+ * <li>latitude and longitude - radians (2 doubles)</li>
+ * <li>pressure and GNSS altitude - meters (2 ints)</li>
+ * <li>validity flag - 'A' or 'V' (1 byte)</li>
+ * <li>bearing into the fix, length of the segment from the fix before it, and
+ * turn rate (3 doubles)</li>
+ * </ul>
+ * or 57 bytes, where a GNSSPoint with its GNSSPointData, Date and Strings costs
+ * several hundred. The analyses scan the columns directly.
+ * <p>
+ * The last three columns are derived from the others. They are not worked out
+ * fix by fix as the track is added to, but in one pass over the new fixes -
+ * see {@link #resolve()} - where each latitude's sine and cosine is taken
+ * once and shared by the bearing and distance of the segments either side of
+ * it. The sines and cosines are not kept: that would be another 16 bytes a
+ * fix, to save the odd point to point distance or bearing two calls. The
+ * pass happens the first time a derived value is read; the parsers call
+ * {@link #resolve()} before handing the track over, so a parsed track can be
+ * read from several threads.
+ * <p>
+ * B record extensions (ENL, FXA, ...) are only kept when asked for with
+ * {@link #requestExtensions(Collection)} before the track is read; each one
+ * then gets an int column of its own. Otherwise they are dropped by the parser.
+ * <p>
+ * {@link #getClimbIndex()} adds running totals of the altitudes, for the
+ * climb over any range of fixes in constant time.
+ * <p>
+ * {@link #filter(FilterType, int)} adds smoothed turn rate, ground speed and
+ * climb rate columns - 24 bytes a fix more while the track is filtered - for
+ * the detectors to compare against their thresholds
+ * rather than the raw per-fix values, which are noisy at high logging rates.
+ * These go stale as soon as the track is changed, at which point the
+ * filtered getters fall back to the raw values until it is filtered again.
+ * <p>
+ * For compatibility the track is also a List of GNSSPoints. Points can be
+ * appended with {@link #add(GNSSPoint)} and the track emptied with
+ * {@link #clear()}, but fixes can't be replaced, inserted or removed one at a
+ * time. Every call to {@link #get(int)} creates a new GNSSPoint from the
+ * columns, so use it for the odd point of interest (circle starts, phase
+ * boundaries), not to iterate over the whole flight.
+ */
+public class FlightTrack extends AbstractList<GNSSPoint> implements RandomAccess {
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	/**
+	 * Bearing of the first fix, which has no fix before it to derive one from.
+	 * Same marker value GNSSPoint uses.
+	 */
+	public static final double NO_BEARING = -400;
+	
+	/**
+	 * Value of an extension column for fixes that don't have the extension
+	 */
+	public static final int NO_VALUE = IgcExtensionLayout.NO_VALUE;
+	
+	/**
+	 * Fix index of circles, thermals and straight phases that were made from
+	 * GNSSPoints alone, rather than by an analysis of a track
+	 */
+	public static final int NO_INDEX = -1;
+	
+	private int size = 0;
+	
+	private long[] time;
+	private double[] latitude;
+	private double[] longitude;
+	private int[] pressure_altitude;
+	private int[] gnss_altitude;
+	private byte[] altitude_ok;
+	private double[] bearing;
+	private double[] segment_distance;
+	private double[] turn_rate;
+	
+	/**
+	 * Smoothed columns, as of the last call to filter - null when the track
+	 * hasn't been filtered since it last changed
+	 */
+	private double[] filtered_turn_rate = null;
+	private double[] filtered_ground_speed = null;
+	private double[] filtered_climb_rate = null;
+	
+	/**
+	 * Built the first time it is asked for, and dropped when the track changes
+	 */
+	private ClimbIndex climb_index = null;
+	
+	/**
+	 * Number of fixes, from the start of the track, whose derived columns are
+	 * up to date
+	 */
+	private int resolved = 0;
+	
+	private IgcExtension[] extensions = new IgcExtension[0];
+	private int[][] extension_values = new int[0][];
+	
+	public FlightTrack() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public FlightTrack(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+	
+	/**
+	 * Copies the given fixes into a new track
+	 * 
+	 * @param fixes
+	 */
+	public FlightTrack(Collection<? extends GNSSPoint> fixes) {
+		this(fixes.size());
+		for (GNSSPoint p : fixes) {
+			add(p);
+		}
+	}
+
+	/**
+	 * Appends a fix. Its bearing and turn rate are worked out from the fixes
+	 * before it in the same way as {@link GNSSPoint#resolve(GNSSPoint)}, when
+	 * the track is next resolved.
+	 * 
+	 * @param time_ms timestamp in epoch milliseconds
+	 * @param latitude in decimal degrees
+	 * @param longitude in decimal degrees
+	 * @param altitude_ok validity flag, 'A' or 'V'
+	 * @param pressure_altitude
+	 * @param gnss_altitude
+	 */
+	public void addFix(long time_ms, double latitude, double longitude, char altitude_ok, 
+			int pressure_altitude, int gnss_altitude) {
+		
+		if (size == time.length) {
+			allocate(size * 2);
+		}
+		
+		int i = size++;
+		this.time[i] = time_ms;
+		this.latitude[i] = Math.toRadians(latitude);
+		this.longitude[i] = Math.toRadians(longitude);
+		this.altitude_ok[i] = (byte) altitude_ok;
+		this.pressure_altitude[i] = pressure_altitude;
+		this.gnss_altitude[i] = gnss_altitude;
+		for (int[] column : extension_values) {
+			column[i] = NO_VALUE;
+		}
+		dropDerived();
+		modCount++;
+	}
+	
+	/**
+	 * Works out the derived columns of every fix added since the last call, in
+	 * one pass: the sine and cosine of each latitude, then the bearing and
+	 * length of the segment into each fix from those and the sine and cosine
+	 * of the longitude difference, then the turn rate from consecutive
+	 * bearings. Reading a derived value does this when it is needed, so there
+	 * is no need to call it other than to have the work done up front.
+	 */
+	public void resolve() {
+		if (resolved >= size) {
+			return;
+		}
+		
+		double sin_before = 0;
+		double cos_before = 0;
+		if (resolved > 0) {
+			sin_before = Geodesy.sin(latitude[resolved - 1]);
+			cos_before = Geodesy.cos(latitude[resolved - 1]);
+		}
+		
+		for (int i = resolved; i < size; i++) {
+			double sin_latitude = Geodesy.sin(latitude[i]);
+			double cos_latitude = Geodesy.cos(latitude[i]);
+			
+			if (i > 0) {
+				resolve(i, sin_before, cos_before, sin_latitude, cos_latitude);
+			} else {
+				bearing[0] = NO_BEARING;
+				segment_distance[0] = 0;
+				turn_rate[0] = 0;
+			}
+			
+			sin_before = sin_latitude;
+			cos_before = cos_latitude;
+		}
+		resolved = size;
+	}
+	
+	/**
+	 * Works out bearing into fix <b>i</b>, the distance to it and the turn
+	 * rate at it, from fix <b>i - 1</b>
+	 */
+	private void resolve(int i) {
+		resolve(i, Geodesy.sin(latitude[i - 1]), Geodesy.cos(latitude[i - 1]), 
+				Geodesy.sin(latitude[i]), Geodesy.cos(latitude[i]));
+	}
+	
+	/**
+	 * Same as {@link #resolve(int)}, with the sines and cosines of both
+	 * latitudes already worked out
+	 */
+	private void resolve(int i, double sin_before, double cos_before, double sin_latitude, double cos_latitude) {
+		double longitude_delta = longitude[i] - longitude[i - 1];
+		double sin_dlon = Geodesy.sin(longitude_delta);
+		double cos_dlon = Geodesy.cos(longitude_delta);
+		
+		bearing[i] = Geodesy.bearing(sin_before, cos_before, sin_latitude, cos_latitude, sin_dlon, cos_dlon);
+		segment_distance[i] = Geodesy.distance(sin_before, cos_before, sin_latitude, cos_latitude, sin_dlon, cos_dlon);
+		
+		turn_rate[i] = turnRate(bearing[i - 1], bearing[i], getInterval(i));
+	}
+	
+	/**
+	 * Drops every fix whose index is not set in <b>keep</b>, as if only the
+	 * ones kept had been added
+	 */
+	public void retain(BitSet keep) {
+		int kept = 0;
+		for (int i = keep.nextSetBit(0); i >= 0 && i < size; i = keep.nextSetBit(i + 1)) {
+			if (i != kept) {
+				//Fixes before this one are where they were, and so is everything derived from them
+				resolved = Math.min(resolved, kept);
+				time[kept] = time[i];
+				latitude[kept] = latitude[i];
+				longitude[kept] = longitude[i];
+				pressure_altitude[kept] = pressure_altitude[i];
+				gnss_altitude[kept] = gnss_altitude[i];
+				altitude_ok[kept] = altitude_ok[i];
+				for (int[] column : extension_values) {
+					column[kept] = column[i];
+				}
+			}
+			kept++;
+		}
+		
+		if (kept == size) {
+			return;
+		}
+		
+		size = kept;
+		resolved = Math.min(resolved, size);
+		dropDerived();
+		modCount++;
+	}
+	
+	/**
+	 * Appends all the fixes of <b>other</b>, as if they had been added one by
+	 * one. If both tracks are resolved their derived columns are copied across
+	 * too: only the bearing, distance and turn rate of the first two appended
+	 * fixes depend on this track's last fix, so only those are worked out
+	 * again.
+	 * 
+	 * @param other track with the same extensions as this one
+	 */
+	public void append(FlightTrack other) {
+		append(other, 0);
+	}
+	
+	/**
+	 * Same as {@link #append(FlightTrack)}, moving the appended fixes by
+	 * <b>time_offset</b> milliseconds
+	 */
+	public void append(FlightTrack other, long time_offset) {
+		if (!Arrays.equals(extensions, other.extensions)) {
+			throw new IllegalArgumentException("Cannot append a track with different extensions");
+		}
+		if (other.size == 0) {
+			return;
+		}
+		
+		int seam = size;
+		if (seam + other.size > time.length) {
+			allocate(Math.max(seam + other.size, time.length * 2));
+		}
+		System.arraycopy(other.time, 0, time, seam, other.size);
+		if (time_offset != 0) {
+			for (int i = seam; i < seam + other.size; i++) {
+				time[i] += time_offset;
+			}
+		}
+		System.arraycopy(other.latitude, 0, latitude, seam, other.size);
+		System.arraycopy(other.longitude, 0, longitude, seam, other.size);
+		System.arraycopy(other.pressure_altitude, 0, pressure_altitude, seam, other.size);
+		System.arraycopy(other.gnss_altitude, 0, gnss_altitude, seam, other.size);
+		System.arraycopy(other.altitude_ok, 0, altitude_ok, seam, other.size);
+		for (int c = 0; c < extension_values.length; c++) {
+			System.arraycopy(other.extension_values[c], 0, extension_values[c], seam, other.size);
+		}
+		size += other.size;
+		
+		if (resolved == seam && other.resolved == other.size) {
+			System.arraycopy(other.bearing, 0, bearing, seam, other.size);
+			System.arraycopy(other.segment_distance, 0, segment_distance, seam, other.size);
+			System.arraycopy(other.turn_rate, 0, turn_rate, seam, other.size);
+			
+			if (seam > 0) {
+				resolve(seam);
+				if (seam + 1 < size) {
+					resolve(seam + 1);
+				}
+			}
+			resolved = size;
+		}
+		dropDerived();
+		modCount++;
+	}
+	
+	/**
+	 * Appends the given point's time, position and altitudes. Anything else it
+	 * carries is not kept.
+	 */
+	@Override
+	public boolean add(GNSSPoint p) {
+		addFix(
+				p.data.timestamp.getTime(), 
+				p.getLatitude(), 
+				p.getLongitude(), 
+				p.getAltitudeOK() == null || p.getAltitudeOK().isEmpty() ? ' ' : p.getAltitudeOK().charAt(0), 
+				p.getPressureAltitude(), 
+				p.getGnssAltitude());
+		return true;
+	}
+	
+	/**
+	 * @return a new GNSSPoint holding the values of fix <b>i</b>, already resolved
+	 */
+	@Override
+	public GNSSPoint get(int i) {
+		checkIndex(i);
+		resolveTo(i);
+		
+		GNSSPoint p = GNSSPoint.createGNSSPoint(
+				null, 
+				new Date(time[i]), 
+				Math.toDegrees(latitude[i]), 
+				Math.toDegrees(longitude[i]), 
+				String.valueOf((char) altitude_ok[i]), 
+				pressure_altitude[i], 
+				gnss_altitude[i], 
+				null);
+		p.lat_radians = latitude[i];
+		p.lon_radians = longitude[i];
+		p.setBearingIntoPoint(bearing[i]);
+		p.turn_rate = turn_rate[i];
+		p.seconds_since_last_fix = getSecondsSinceLastFix(i);
+		
+		return p;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		size = 0;
+		resolved = 0;
+		dropDerived();
+		modCount++;
+	}
+	
+	/**
+	 * Like the List version, GNSSPoints are matched by timestamp - but without
+	 * creating a point for every fix.
+	 */
+	@Override
+	public int indexOf(Object o) {
+		if (!(o instanceof GNSSPoint) || ((GNSSPoint) o).data.timestamp == null) {
+			return -1;
+		}
+		
+		long t = ((GNSSPoint) o).data.timestamp.getTime();
+		for (int i = 0; i < size; i++) {
+			if (time[i] == t) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public int lastIndexOf(Object o) {
+		if (!(o instanceof GNSSPoint) || ((GNSSPoint) o).data.timestamp == null) {
+			return -1;
+		}
+		
+		long t = ((GNSSPoint) o).data.timestamp.getTime();
+		for (int i = size - 1; i >= 0; i--) {
+			if (time[i] == t) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public boolean contains(Object o) {
+		return indexOf(o) >= 0;
+	}
+	
+	/**
+	 * @return time of fix <b>i</b>, in epoch milliseconds
+	 */
+	public long getTime(int i) {
+		return time[i];
+	}
+	
+	/**
+	 * @return latitude of fix <b>i</b>, in radians
+	 */
+	public double getLatitude(int i) {
+		return latitude[i];
+	}
+	
+	/**
+	 * @return longitude of fix <b>i</b>, in radians
+	 */
+	public double getLongitude(int i) {
+		return longitude[i];
+	}
+	
+	public int getPressureAltitude(int i) {
+		return pressure_altitude[i];
+	}
+	
+	public int getGnssAltitude(int i) {
+		return gnss_altitude[i];
+	}
+	
+	/**
+	 * @return true if the fix's validity flag is 'A' or 'V'
+	 */
+	public boolean isValidFix(int i) {
+		return altitude_ok[i] == 'A' || altitude_ok[i] == 'V';
+	}
+	
+	public char getAltitudeOK(int i) {
+		return (char) altitude_ok[i];
+	}
+	
+	/**
+	 * @return the track course from fix <b>i - 1</b> to fix <b>i</b>, or
+	 *         {@link #NO_BEARING} for the first fix
+	 */
+	public double getBearingIntoPoint(int i) {
+		resolveTo(i);
+		return bearing[i];
+	}
+	
+	/**
+	 * @return great circle distance from fix <b>i - 1</b> to fix <b>i</b> in
+	 *         meters, 0 for the first fix
+	 */
+	public double getSegmentDistance(int i) {
+		resolveTo(i);
+		return segment_distance[i];
+	}
+	
+	/**
+	 * @return rate of turn at fix <b>i</b> in degrees per second, negative when turning left
+	 */
+	public double getTurnRate(int i) {
+		resolveTo(i);
+		return turn_rate[i];
+	}
+	
+	/**
+	 * @return sine of the latitude of fix <b>i</b>
+	 */
+	public double getSinLatitude(int i) {
+		checkIndex(i);
+		return Geodesy.sin(latitude[i]);
+	}
+	
+	/**
+	 * @return cosine of the latitude of fix <b>i</b>
+	 */
+	public double getCosLatitude(int i) {
+		checkIndex(i);
+		return Geodesy.cos(latitude[i]);
+	}
+	
+	/**
+	 * Great circle distance between any two fixes - straight from the
+	 * segment column for consecutive ones
+	 * 
+	 * @return distance from fix <b>i</b> to fix <b>j</b>, in meters
+	 */
+	public double distance(int i, int j) {
+		if (j == i + 1) {
+			return getSegmentDistance(j);
+		}
+		
+		checkIndex(i);
+		checkIndex(j);
+		double longitude_delta = longitude[j] - longitude[i];
+		return Geodesy.distance(
+				Geodesy.sin(latitude[i]), Geodesy.cos(latitude[i]), 
+				Geodesy.sin(latitude[j]), Geodesy.cos(latitude[j]), 
+				Geodesy.sin(longitude_delta), Geodesy.cos(longitude_delta));
+	}
+	
+	/**
+	 * @return initial bearing from fix <b>i</b> to fix <b>j</b>, in degrees [0, 360)
+	 */
+	public double bearing(int i, int j) {
+		checkIndex(i);
+		checkIndex(j);
+		double longitude_delta = longitude[j] - longitude[i];
+		return Geodesy.bearing(
+				Geodesy.sin(latitude[i]), Geodesy.cos(latitude[i]), 
+				Geodesy.sin(latitude[j]), Geodesy.cos(latitude[j]), 
+				Geodesy.sin(longitude_delta), Geodesy.cos(longitude_delta));
+	}
+	
+	/**
+	 * Smooths the turn rate, ground speed and climb rate of every fix, each
+	 * with a filter of the given type, into columns read back with
+	 * {@link #getFilteredTurnRate(int)}, {@link #getFilteredGroundSpeed(int)}
+	 * and {@link #getFilteredClimbRate(int)}. The filters see the rates over
+	 * the time between fixes to the millisecond, so they work at logging
+	 * rates above one fix per second too. NONE drops the columns.
+	 * 
+	 * @param type
+	 * @param window number of fixes the filters look back over
+	 */
+	public void filter(FilterType type, int window) {
+		SignalFilter turn_rate_filter = type.create(window);
+		if (turn_rate_filter == null) {
+			dropFiltered();
+			return;
+		}
+		SignalFilter ground_speed_filter = type.create(window);
+		SignalFilter climb_rate_filter = type.create(window);
+		
+		resolve();
+		double[] turn_rate_column = new double[size];
+		double[] ground_speed_column = new double[size];
+		double[] climb_rate_column = new double[size];
+		for (int i = 1; i < size; i++) {
+			double interval = getInterval(i);
+			turn_rate_column[i] = turn_rate_filter.filter(turnRate(bearing[i - 1], bearing[i], interval), interval);
+			ground_speed_column[i] = ground_speed_filter.filter(getGroundSpeed(i), interval);
+			climb_rate_column[i] = climb_rate_filter.filter(getClimbRate(i), interval);
+		}
+		
+		filtered_turn_rate = turn_rate_column;
+		filtered_ground_speed = ground_speed_column;
+		filtered_climb_rate = climb_rate_column;
+	}
+	
+	/**
+	 * @return whether the smoothed columns are there, i.e. the track has been
+	 *         filtered and not changed since
+	 */
+	public boolean isFiltered() {
+		return filtered_turn_rate != null;
+	}
+	
+	/**
+	 * @return smoothed rate of turn at fix <b>i</b> in degrees per second, or
+	 *         the raw {@link #getTurnRate(int)} if the track isn't filtered
+	 */
+	public double getFilteredTurnRate(int i) {
+		return filtered_turn_rate != null ? filtered_turn_rate[i] : getTurnRate(i);
+	}
+	
+	/**
+	 * @return smoothed ground speed at fix <b>i</b> in meters per second, or
+	 *         the raw {@link #getGroundSpeed(int)} if the track isn't filtered
+	 */
+	public double getFilteredGroundSpeed(int i) {
+		return filtered_ground_speed != null ? filtered_ground_speed[i] : getGroundSpeed(i);
+	}
+	
+	/**
+	 * @return smoothed climb rate at fix <b>i</b> in meters per second, or the
+	 *         raw {@link #getClimbRate(int)} if the track isn't filtered
+	 */
+	public double getFilteredClimbRate(int i) {
+		return filtered_climb_rate != null ? filtered_climb_rate[i] : getClimbRate(i);
+	}
+	
+	/**
+	 * @return ground speed over the segment into fix <b>i</b> in meters per
+	 *         second, 0 for the first fix and NaN if it has the time of the
+	 *         fix before it
+	 */
+	public double getGroundSpeed(int i) {
+		if (i == 0) {
+			return 0;
+		}
+		return getSegmentDistance(i) / nonZero(getInterval(i));
+	}
+	
+	/**
+	 * Vertical speed from fix <b>i - 1</b> to fix <b>i</b>, by pressure
+	 * altitude - or by GNSS altitude, where either fix has no pressure
+	 * altitude (loggers without a pressure sensor record 0)
+	 * 
+	 * @return climb rate in meters per second, negative when sinking; 0 for
+	 *         the first fix and NaN if it has the time of the fix before it
+	 */
+	public double getClimbRate(int i) {
+		if (i == 0) {
+			return 0;
+		}
+		int climb = ClimbIndex.altitudeChange(
+				pressure_altitude[i - 1], gnss_altitude[i - 1], pressure_altitude[i], gnss_altitude[i]);
+		return climb / nonZero(getInterval(i));
+	}
+	
+	/**
+	 * @return seconds, to the millisecond, between fix <b>i - 1</b> and fix
+	 *         <b>i</b>; 0 for the first fix
+	 */
+	public double getInterval(int i) {
+		return i > 0 ? (time[i] - time[i - 1]) / 1000.0 : 0;
+	}
+	
+	/**
+	 * Turn rate from two consecutive bearings, over the interval between them
+	 * to the millisecond - so fixes less than a second apart, as logged with
+	 * a TDS extension, still get one
+	 * 
+	 * @param bearing_before bearing into the fix before, or {@link #NO_BEARING}
+	 * @param bearing bearing into the fix
+	 * @param interval seconds between the fixes
+	 * @return degrees per second; 0 if there is no bearing before, and NaN if
+	 *         the interval is 0
+	 */
+	static double turnRate(double bearing_before, double bearing, double interval) {
+		if (bearing_before <= NO_BEARING) {
+			return 0;
+		}
+		return FlightAnalyser.calcBearingChange(bearing_before, bearing) / nonZero(interval);
+	}
+	
+	/**
+	 * @return the interval, or NaN for 0 - so a rate over it comes out NaN
+	 *         (and is skipped by the filters) rather than infinite
+	 */
+	private static double nonZero(double interval) {
+		return interval != 0 ? interval : Double.NaN;
+	}
+	
+	private void dropFiltered() {
+		filtered_turn_rate = null;
+		filtered_ground_speed = null;
+		filtered_climb_rate = null;
+	}
+	
+	private void dropDerived() {
+		dropFiltered();
+		climb_index = null;
+	}
+	
+	/**
+	 * @return running totals of the altitudes, for the climb over any range of
+	 *         fixes - built on the first call after the track last changed, so
+	 *         make that call before sharing the track between threads
+	 */
+	public ClimbIndex getClimbIndex() {
+		if (climb_index == null) {
+			climb_index = new ClimbIndex(this);
+		}
+		return climb_index;
+	}
+	
+	private void resolveTo(int i) {
+		if (i >= resolved) {
+			resolve();
+		}
+	}
+	
+	/**
+	 * @return whole seconds between fix <b>i - 1</b> and fix <b>i</b>, 0 for the first fix
+	 */
+	public long getSecondsSinceLastFix(int i) {
+		return i > 0 ? (time[i] - time[i - 1]) / 1000 : 0;
+	}
+	
+	/**
+	 * Asks for the given B record extensions to be decoded into columns when
+	 * the track is read. Extensions that are already there are left alone.
+	 * 
+	 * @param requested
+	 * @throws IllegalStateException if the track already holds fixes
+	 */
+	public void requestExtensions(Collection<IgcExtension> requested) {
+		if (size > 0) {
+			throw new IllegalStateException("Extensions must be requested before fixes are added");
+		}
+		
+		for (IgcExtension e : requested) {
+			if (getExtensionColumn(e) < 0) {
+				extensions = Arrays.copyOf(extensions, extensions.length + 1);
+				extensions[extensions.length - 1] = e;
+				extension_values = Arrays.copyOf(extension_values, extension_values.length + 1);
+				extension_values[extension_values.length - 1] = new int[time.length];
+			}
+		}
+	}
+	
+	/**
+	 * @return the extensions this track has columns for, in column order
+	 */
+	public IgcExtension[] getExtensions() {
+		return extensions.clone();
+	}
+	
+	public boolean hasExtension(IgcExtension e) {
+		return getExtensionColumn(e) >= 0;
+	}
+	
+	/**
+	 * @return value of extension <b>e</b> at fix <b>i</b>, or {@link #NO_VALUE}
+	 *         if that fix doesn't have it
+	 * @throws IllegalArgumentException if the extension wasn't requested
+	 */
+	public int getExtension(IgcExtension e, int i) {
+		int column = getExtensionColumn(e);
+		if (column < 0) {
+			throw new IllegalArgumentException("Extension " + e + " was not requested for this track");
+		}
+		return extension_values[column][i];
+	}
+	
+	/**
+	 * Sets the value of the extension in <b>column</b> (see
+	 * {@link #getExtensions()}) for fix <b>i</b>. Used by the parsers.
+	 */
+	public void setExtension(int column, int i, int value) {
+		checkIndex(i);
+		extension_values[column][i] = value;
+	}
+	
+	private int getExtensionColumn(IgcExtension e) {
+		for (int c = 0; c < extensions.length; c++) {
+			if (extensions[c] == e) {
+				return c;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Drops the spare capacity left over from reading the file
+	 */
+	public void trimToSize() {
+		if (size < time.length) {
+			allocate(Math.max(size, 1));
+		}
+	}
+	
+	private void allocate(int capacity) {
+		time = time == null ? new long[capacity] : Arrays.copyOf(time, capacity);
+		latitude = latitude == null ? new double[capacity] : Arrays.copyOf(latitude, capacity);
+		longitude = longitude == null ? new double[capacity] : Arrays.copyOf(longitude, capacity);
+		pressure_altitude = pressure_altitude == null ? new int[capacity] : Arrays.copyOf(pressure_altitude, capacity);
+		gnss_altitude = gnss_altitude == null ? new int[capacity] : Arrays.copyOf(gnss_altitude, capacity);
+		altitude_ok = altitude_ok == null ? new byte[capacity] : Arrays.copyOf(altitude_ok, capacity);
+		bearing = bearing == null ? new double[capacity] : Arrays.copyOf(bearing, capacity);
+		segment_distance = segment_distance == null ? new double[capacity] : Arrays.copyOf(segment_distance, capacity);
+		turn_rate = turn_rate == null ? new double[capacity] : Arrays.copyOf(turn_rate, capacity);
+		for (int c = 0; c < extension_values.length; c++) {
+			extension_values[c] = Arrays.copyOf(extension_values[c], capacity);
+		}
+	}
+	
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+}
@@ -30,13 +30,13 @@
 
 package soaringcoach.analysis;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import javax.vecmath.Point3d;
 
 import soaringcoach.FlightAnalyser;
 import soaringcoach.analysis.parsing.GNSSPointData;
+import soaringcoach.analysis.parsing.IgcTimeline;
 
 /**
  * Uses the Point3d class as basis for calculations.  By convention:
@@ -75,10 +75,7 @@ public class GNSSPoint extends Point3d {
 		return data.getFilename();
 	}
 	public String getTimestamp() {
-		SimpleDateFormat d = new SimpleDateFormat("HH:mm:ss");
-		String time = d.format(data.timestamp);
-
-		return time;
+		return IgcTimeline.formatTimeOfDay(data.timestamp.getTime());
 	}
 	public double getLatitude() {
 		return x;
@@ -112,42 +109,43 @@ public class GNSSPoint extends Point3d {
 	protected GNSSPoint() {}
 	
 	
+	/**
+	 * @return the point, or null if the record is not a valid GPS fix
+	 */
 	public static GNSSPoint createGNSSPoint(GNSSPointData pt_data) {
-		GNSSPoint pt = null;
+		if (!isValidGpsFix(pt_data)) {
+			return null;
+		}
 		
-		double decimalized_lat = -1000; //init to impossible values
-		double decimalized_lon = -1000;
+		return createUncheckedGNSSPoint(pt_data);
+	}
 	
-		if (isValidGpsFix(pt_data)) {
-			
-			// It's a GPS fix record, so we can convert it.
-			decimalized_lat = decimalizeDegrees(
-					pt_data.latitude_degrees, 
-					pt_data.latitude_minutes, 
-					pt_data.latitudeEquatorRef);
-			
-			decimalized_lon = decimalizeDegrees(
-					pt_data.longitude_degrees, 
-					pt_data.longitude_minutes, 
-					pt_data.longitude_greenwich_ref);
-			
-			pt = GNSSPoint.createGNSSPoint(
-					null,
-					pt_data.timestamp, 
-					decimalized_lat, 
-					decimalized_lon, 
-					pt_data.altitudeOk, 
-					pt_data.pressure_altitude, 
-					pt_data.gnss_altitude, 
-					pt_data.other);
-			
-			pt.data = pt_data;
-			
-		} else {
-			SimpleDateFormat df = new SimpleDateFormat("HHmmss");
-			System.out.println("Invalid GPS fix at: [" + df.format(pt_data.timestamp) + "], discarded the record");
-		} 
+	/**
+	 * Converts the record whatever its validity flag says, for the parsers -
+	 * invalid fixes are dropped and counted by the FixCleaningAnalysis.
+	 */
+	public static GNSSPoint createUncheckedGNSSPoint(GNSSPointData pt_data) {
+		double decimalized_lat = decimalizeDegrees(
+				pt_data.latitude_degrees, 
+				pt_data.latitude_minutes, 
+				pt_data.latitudeEquatorRef);
 		
+		double decimalized_lon = decimalizeDegrees(
+				pt_data.longitude_degrees, 
+				pt_data.longitude_minutes, 
+				pt_data.longitude_greenwich_ref);
+		
+		GNSSPoint pt = GNSSPoint.createGNSSPoint(
+				null,
+				pt_data.timestamp, 
+				decimalized_lat, 
+				decimalized_lon, 
+				pt_data.altitudeOk, 
+				pt_data.pressure_altitude, 
+				pt_data.gnss_altitude, 
+				pt_data.other);
+		
+		pt.data = pt_data;
 		return pt;
 	}
 	
@@ -217,7 +215,6 @@ public class GNSSPoint extends Point3d {
 	protected static boolean isValidGpsFix(GNSSPointData pt) {
 		//Is it marked as a "valid" altitude
 		if (!("A".equals(pt.getAltitudeOK()) || "V".equals(pt.getAltitudeOK()))) {
-			System.out.println("Altitude validity flag not set to 'A' or 'V'");
 			return false;
 		}
 		
@@ -237,19 +234,7 @@ public class GNSSPoint extends Point3d {
 		double lat2 = pt2.x * Math.PI / 180;
 		double lon2 = pt2.y * Math.PI / 180;
 		
-		double earth_radius = 6371000; // Earth radius in metres
-
-		//Haversine formula
-		double lat_midpoint = (lat2-lat1)/2;
-		double lon_midpoint = (lon2-lon1)/2;
-		double a = Math.sin(lat_midpoint) * Math.sin(lat_midpoint) +
-		        Math.cos(lat1) * Math.cos(lat2) * Math.sin(lon_midpoint) * Math.sin(lon_midpoint);
-		
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-
-		double d = earth_radius * c;
-		
-		return d;
+		return Geodesy.distance(lat1, lon1, lat2, lon2);
 		
 		// Spherical law of cosines approximation - more simple, probably more performant, not as accurate
 		//return Math.acos(Math.sin(lat1)*Math.sin(lat2) + Math.cos(lat1)*Math.cos(lat2)*Math.cos(lon2-lon1)) * 6371000;
@@ -264,12 +249,14 @@ public class GNSSPoint extends Point3d {
 	 *            the preceding fix
 	 */
 	public void resolve(GNSSPoint p1) {
-		this.seconds_since_last_fix = (this.data.timestamp.getTime() - p1.data.timestamp.getTime())/1000;
+		long millis_since_last_fix = this.data.timestamp.getTime() - p1.data.timestamp.getTime();
+		this.seconds_since_last_fix = millis_since_last_fix / 1000;
 		this.bearingIntoPoint = FlightAnalyser.calculateTrackCourse(p1, this);
 		
 		if (p1.bearingIntoPoint > -400) { // if it's still -400, it wasn't initialised - so p1 is the first point in the file
-			double track_course_delta = FlightAnalyser.calcBearingChange(p1.bearingIntoPoint, this.bearingIntoPoint);
-			this.turn_rate = track_course_delta / this.seconds_since_last_fix;
+			//Over the interval to the millisecond, so fixes less than a second apart still have a turn rate
+			this.turn_rate = FlightTrack.turnRate(p1.bearingIntoPoint, this.bearingIntoPoint, 
+					millis_since_last_fix / 1000.0);
 		}
 		
 	}
@@ -291,4 +278,8 @@ public class GNSSPoint extends Point3d {
 	public double getBearingIntoPoint() {
 		return this.bearingIntoPoint;
 	}
+	
+	void setBearingIntoPoint(double bearing) {
+		this.bearingIntoPoint = bearing;
+	}
 }
@@ -0,0 +1,209 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+/**
+ * Great circle distance and initial bearing, written in terms of the sines
+ * and cosines of the latitudes and of the longitude difference. A caller that
+ * works through many points - like {@link FlightTrack} - takes the sine and
+ * cosine of every latitude once and hands them in, rather than having each
+ * pair of points work them out again.
+ * <p>
+ * The bearing is the same formula as {@link #bearing(double, double, double, double)},
+ * term for term, so given the same sines and cosines it gives exactly the same
+ * answer. The distance is the haversine formula of
+ * {@link #distance(double, double, double, double)}, with the half angle sines
+ * derived from the whole angle ones. Those two, and the destination point,
+ * take plain coordinates in radians, so code with no point object at hand
+ * needn't make one to call them.
+ * <p>
+ * All the geodesy in the analyses - here, {@link FlightTrack},
+ * {@link GNSSPoint#distance(GNSSPoint)}, the track course, destination point
+ * and {@link LocalProjection} - takes its trigonometry from
+ * {@link #sin(double)}, {@link #cos(double)}, {@link #atan2(double, double)}
+ * and {@link #asin(double)}, which go to the selected {@link TrigBackend}.
+ */
+public final class Geodesy {
+	/**
+	 * Earth mean radius in meters
+	 */
+	public static final double EARTH_RADIUS = 6371000;
+	
+	/**
+	 * Read on every call, from whichever threads run the analyses (the thermal
+	 * and circle segment tasks included), so it is volatile: a switch is seen
+	 * by all of them as soon as it is made.
+	 */
+	private static volatile TrigBackend trig = TrigBackend.getDefault();
+	
+	private Geodesy() {
+	}
+	
+	/**
+	 * @param sin_lat1 sine of the latitude of the first point
+	 * @param cos_lat1 cosine of the latitude of the first point
+	 * @param sin_lat2 sine of the latitude of the second point
+	 * @param cos_lat2 cosine of the latitude of the second point
+	 * @param sin_dlon sine of (longitude 2 - longitude 1)
+	 * @param cos_dlon cosine of (longitude 2 - longitude 1)
+	 * @return great circle distance between the points, in meters
+	 */
+	public static double distance(double sin_lat1, double cos_lat1, double sin_lat2, double cos_lat2, 
+			double sin_dlon, double cos_dlon) {
+		
+		//sin and cos of the latitude difference, from the angle difference identities
+		double sin_dlat = sin_lat2 * cos_lat1 - cos_lat2 * sin_lat1;
+		double cos_dlat = cos_lat2 * cos_lat1 + sin_lat2 * sin_lat1;
+		
+		//Haversine formula, with sin^2(x/2) = sin^2(x) / 2(1 + cos(x)). Unlike
+		//(1 - cos(x)) / 2 that doesn't lose precision for fixes a few meters apart.
+		double a = haversine(sin_dlat, cos_dlat) + cos_lat1 * cos_lat2 * haversine(sin_dlon, cos_dlon);
+		
+		return EARTH_RADIUS * 2 * atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+	
+	/**
+	 * Same arguments as {@link #distance(double, double, double, double, double, double)}
+	 * 
+	 * @return initial bearing from the first point to the second, in degrees [0, 360)
+	 */
+	public static double bearing(double sin_lat1, double cos_lat1, double sin_lat2, double cos_lat2, 
+			double sin_dlon, double cos_dlon) {
+		
+		double y = sin_dlon * cos_lat2;
+		double x = cos_lat1 * sin_lat2 - sin_lat1 * cos_lat2 * cos_dlon;
+		
+		double track_degrees = Math.toDegrees(atan2(y, x));
+		return (track_degrees + 360) % 360;
+	}
+	
+	/**
+	 * Haversine distance straight from the coordinates, for points whose sines
+	 * and cosines aren't kept anywhere - circle starts, destination points.
+	 * 
+	 * @param lat1 in radians
+	 * @param lon1 in radians
+	 * @param lat2 in radians
+	 * @param lon2 in radians
+	 * @return great circle distance between the points, in meters
+	 */
+	public static double distance(double lat1, double lon1, double lat2, double lon2) {
+		double lat_midpoint = (lat2 - lat1) / 2;
+		double lon_midpoint = (lon2 - lon1) / 2;
+		double a = sin(lat_midpoint) * sin(lat_midpoint) +
+				cos(lat1) * cos(lat2) * sin(lon_midpoint) * sin(lon_midpoint);
+		
+		double c = 2 * atan2(Math.sqrt(a), Math.sqrt(1 - a));
+		return EARTH_RADIUS * c;
+	}
+	
+	/**
+	 * Same arguments as {@link #distance(double, double, double, double)}
+	 * 
+	 * @return initial bearing from the first point to the second, in degrees [0, 360)
+	 */
+	public static double bearing(double lat1, double lon1, double lat2, double lon2) {
+		double y = sin(lon2 - lon1) * cos(lat2);
+		double x = cos(lat1) * sin(lat2) - sin(lat1) * cos(lat2) * cos(lon2 - lon1);
+		
+		double track_degrees = Math.toDegrees(atan2(y, x));
+		return (track_degrees + 360) % 360;
+	}
+	
+	/**
+	 * Latitude of the point <b>distance</b> away from (latitude, ...) along
+	 * <b>bearing</b>. Together with
+	 * {@link #destinationLongitude(double, double, double, double, double)}
+	 * this is the destination point formula, split in two so the caller gets
+	 * both coordinates without a point object to carry them.
+	 * 
+	 * @param latitude of the start point, in radians
+	 * @param bearing in radians
+	 * @param distance in meters
+	 * @return latitude in radians
+	 */
+	public static double destinationLatitude(double latitude, double bearing, double distance) {
+		double angle = distance / EARTH_RADIUS;
+		return asin(sin(latitude) * cos(angle) + cos(latitude) * sin(angle) * cos(bearing));
+	}
+	
+	/**
+	 * @param latitude of the start point, in radians
+	 * @param longitude of the start point, in radians
+	 * @param bearing in radians
+	 * @param distance in meters
+	 * @param destination_latitude as from {@link #destinationLatitude(double, double, double)}
+	 * @return longitude in radians
+	 */
+	public static double destinationLongitude(double latitude, double longitude, double bearing, double distance, 
+			double destination_latitude) {
+		
+		double angle = distance / EARTH_RADIUS;
+		return longitude + atan2(sin(bearing) * sin(angle) * cos(latitude),
+				cos(angle) - sin(latitude) * sin(destination_latitude));
+	}
+	
+	/**
+	 * @return the trigonometry backend in use
+	 */
+	public static TrigBackend getTrigBackend() {
+		return trig;
+	}
+	
+	/**
+	 * Switches the trigonometry backend for the whole process. It is not a
+	 * per-flight option: the backends agree to about 1e-15, so there is no
+	 * accuracy for a request to trade away. Meant to be done once, up front -
+	 * tracks already resolved keep the values they were resolved with.
+	 */
+	public static void setTrigBackend(TrigBackend backend) {
+		trig = backend;
+	}
+	
+	public static double sin(double x) {
+		return trig.sin(x);
+	}
+	
+	public static double cos(double x) {
+		return trig.cos(x);
+	}
+	
+	public static double atan2(double y, double x) {
+		return trig.atan2(y, x);
+	}
+	
+	public static double asin(double x) {
+		return trig.asin(x);
+	}
+	
+	private static double haversine(double sin_x, double cos_x) {
+		return sin_x * sin_x / (2 * (1 + cos_x));
+	}
+}
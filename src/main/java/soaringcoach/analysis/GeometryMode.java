@@ -0,0 +1,72 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+import java.util.Locale;
+
+/**
+ * How the thermal-scale geometry - drift between circles, and the centring
+ * corrections - is worked out.
+ * <p>
+ * The default can be chosen with the system property
+ * <code>soaringcoach.geometry</code> (e.g. -Dsoaringcoach.geometry=local_plane).
+ */
+public enum GeometryMode {
+	/**
+	 * Great circle bearings and distances, and the spherical destination
+	 * point formula, for every pair of points
+	 */
+	SPHERICAL, 
+	
+	/**
+	 * Each thermal is projected once onto a plane tangent to the earth at its
+	 * first circle, after which everything is plain vector arithmetic. See
+	 * {@link LocalProjection} for how far that strays from SPHERICAL.
+	 */
+	LOCAL_PLANE;
+	
+	public static final String DEFAULT_GEOMETRY_PROPERTY = "soaringcoach.geometry";
+	
+	/**
+	 * Case-insensitive lookup by name, e.g. "spherical" or "local_plane"
+	 * 
+	 * @throws IllegalArgumentException if there is no such mode
+	 */
+	public static GeometryMode fromName(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+	
+	/**
+	 * @return the mode selected by the system property, or SPHERICAL if it is not set
+	 */
+	public static GeometryMode getDefault() {
+		return fromName(System.getProperty(DEFAULT_GEOMETRY_PROPERTY, SPHERICAL.name()));
+	}
+}
@@ -0,0 +1,163 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+import javax.vecmath.Vector2d;
+
+/**
+ * A local east-north-up frame, tangent to the (spherical) earth at an anchor
+ * point, with the up component dropped. Points are projected onto the plane
+ * once; bearings and distances between them, and moving a point by a vector,
+ * are then plain 2D vector operations instead of the spherical formulas with
+ * their asin/atan2 per pair.
+ * <p>
+ * This is the orthographic projection about the anchor, so distances between
+ * points d from the anchor shrink by no more than about (d/R)^2 / 2: well
+ * under a millimeter over a thermal - a few hundred meters to a couple of
+ * kilometers - and a few centimeters at 20 km. Bearings are measured against
+ * north at the anchor, which is turned from north at a point (east/R) tan(lat)
+ * away by the convergence of the meridians: up to 0.03 degrees within 2 km of
+ * the anchor at 65 degrees latitude, and a quarter of a degree at 20 km. For
+ * the same reason moving a point along a bearing lands a few centimeters from
+ * the spherical destination point, for a typical circle's drift.
+ * {@code TestLocalProjection} holds it to those figures. Keep the anchor near
+ * the points, i.e. make a new projection per thermal rather than per flight.
+ * <p>
+ * Projected points are Vector2d with x to the east and y to the north, in
+ * meters from the anchor.
+ */
+public final class LocalProjection {
+	private final double anchor_longitude;
+	private final double sin_anchor_latitude;
+	private final double cos_anchor_latitude;
+	
+	/**
+	 * @param latitude of the anchor, in radians
+	 * @param longitude of the anchor, in radians
+	 */
+	public LocalProjection(double latitude, double longitude) {
+		this.anchor_longitude = longitude;
+		this.sin_anchor_latitude = Geodesy.sin(latitude);
+		this.cos_anchor_latitude = Geodesy.cos(latitude);
+	}
+	
+	/**
+	 * @return a projection anchored at the given (resolved) point
+	 */
+	public static LocalProjection at(GNSSPoint p) {
+		return new LocalProjection(p.lat_radians, p.lon_radians);
+	}
+	
+	/**
+	 * @param latitude in radians
+	 * @param longitude in radians
+	 * @return the point's east and north offset from the anchor, in meters
+	 */
+	public Vector2d project(double latitude, double longitude) {
+		return project(latitude, longitude, new Vector2d());
+	}
+	
+	/**
+	 * Same as {@link #project(double, double)}, into a vector the caller
+	 * keeps for the purpose
+	 * 
+	 * @param latitude in radians
+	 * @param longitude in radians
+	 * @param result set to the point's east and north offset from the anchor
+	 * @return <b>result</b>
+	 */
+	public Vector2d project(double latitude, double longitude, Vector2d result) {
+		double sin_lat = Geodesy.sin(latitude);
+		double cos_lat = Geodesy.cos(latitude);
+		double longitude_delta = longitude - anchor_longitude;
+		
+		double east = cos_lat * Geodesy.sin(longitude_delta);
+		double north = cos_anchor_latitude * sin_lat - sin_anchor_latitude * cos_lat * Geodesy.cos(longitude_delta);
+		
+		result.set(Geodesy.EARTH_RADIUS * east, Geodesy.EARTH_RADIUS * north);
+		return result;
+	}
+	
+	/**
+	 * @param p resolved point
+	 */
+	public Vector2d project(GNSSPoint p) {
+		return project(p.lat_radians, p.lon_radians);
+	}
+	
+	/**
+	 * @return distance in meters between two projected points
+	 */
+	public static double distance(Vector2d from, Vector2d to) {
+		double east = to.x - from.x;
+		double north = to.y - from.y;
+		return Math.sqrt(east * east + north * north);
+	}
+	
+	/**
+	 * @return bearing from one projected point to another, in degrees [0, 360)
+	 */
+	public static double bearing(Vector2d from, Vector2d to) {
+		double bearing = Math.toDegrees(Geodesy.atan2(to.x - from.x, to.y - from.y));
+		return (bearing + 360) % 360;
+	}
+	
+	/**
+	 * @return the vector from one projected point to another, as a bearing
+	 *         in degrees and a size in meters
+	 */
+	public static PolarVector vector(Vector2d from, Vector2d to) {
+		return new PolarVector(bearing(from, to), distance(from, to));
+	}
+	
+	/**
+	 * The plane counterpart of the spherical destination point formula
+	 * 
+	 * @param from projected point
+	 * @param bearing in degrees
+	 * @param distance in meters
+	 * @return a new projected point, <b>distance</b> away from <b>from</b> along <b>bearing</b>
+	 */
+	public static Vector2d move(Vector2d from, double bearing, double distance) {
+		return move(from, bearing, distance, new Vector2d());
+	}
+	
+	/**
+	 * Same as {@link #move(Vector2d, double, double)}, into a vector the
+	 * caller keeps for the purpose
+	 * 
+	 * @return <b>result</b>, which may be <b>from</b> itself
+	 */
+	public static Vector2d move(Vector2d from, double bearing, double distance, Vector2d result) {
+		double b = Math.toRadians(bearing);
+		result.set(from.x + distance * Geodesy.sin(b), from.y + distance * Geodesy.cos(b));
+		return result;
+	}
+}
@@ -0,0 +1,105 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+/**
+ * Median of the last <b>window</b> samples. Unlike the average, a single wild
+ * sample - a turn rate spike from one bad fix - doesn't move it at all.
+ * <p>
+ * The samples are kept twice: in a ring buffer in the order they came, to
+ * know which one drops out, and in sorted order, to read the median off.
+ * Each sample costs a shift of the sorted window, which for the handful of
+ * samples in a window is cheaper than any tree.
+ */
+public final class MedianFilter extends SignalFilter {
+	private final double[] samples;
+	private final double[] sorted;
+	private int next = 0;
+	private int count = 0;
+	
+	public MedianFilter(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must hold at least one sample");
+		}
+		this.samples = new double[window];
+		this.sorted = new double[window];
+	}
+
+	@Override
+	protected double update(double value, double interval) {
+		if (count == samples.length) {
+			removeSorted(samples[next]);
+		} else {
+			count++;
+		}
+		samples[next] = value;
+		next = (next + 1) % samples.length;
+		insertSorted(value);
+		
+		int middle = count / 2;
+		if (count % 2 == 1) {
+			return sorted[middle];
+		}
+		return (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+	
+	/**
+	 * Takes the value out of the first count places of <b>sorted</b>,
+	 * closing the gap
+	 */
+	private void removeSorted(double value) {
+		int i = 0;
+		while (sorted[i] != value) {
+			i++;
+		}
+		System.arraycopy(sorted, i + 1, sorted, i, count - 1 - i);
+	}
+	
+	/**
+	 * Puts the value in its place among the first count - 1 places of
+	 * <b>sorted</b>, making them count
+	 */
+	private void insertSorted(double value) {
+		int i = count - 1;
+		while (i > 0 && sorted[i - 1] > value) {
+			sorted[i] = sorted[i - 1];
+			i--;
+		}
+		sorted[i] = value;
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		next = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,71 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+/**
+ * Average of the last <b>window</b> samples, kept in a ring buffer along with
+ * their running sum
+ */
+public final class MovingAverageFilter extends SignalFilter {
+	private final double[] samples;
+	private int next = 0;
+	private int count = 0;
+	private double sum = 0;
+	
+	public MovingAverageFilter(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must hold at least one sample");
+		}
+		this.samples = new double[window];
+	}
+
+	@Override
+	protected double update(double value, double interval) {
+		if (count == samples.length) {
+			sum -= samples[next];
+		} else {
+			count++;
+		}
+		samples[next] = value;
+		sum += value;
+		next = (next + 1) % samples.length;
+		
+		return sum / count;
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		next = 0;
+		count = 0;
+		sum = 0;
+	}
+}
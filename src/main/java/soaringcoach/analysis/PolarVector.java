@@ -35,13 +35,21 @@ package soaringcoach.analysis;
  * compass rose, and size). The size can be in any unit - meters, meters per
  * second, or whatever is required. Care should be taken when comparing
  * instances of this class to ensure that the same units are in use.
+ * <p>
+ * Instances are immutable.
  * 
  * @author johanpretorius
  *
  */
-public class PolarVector {
-	public double bearing = 0;
-	public double size = 0;
+public final class PolarVector {
+	/**
+	 * The null vector. Being immutable, it can be shared by every circle that
+	 * has no drift or correction to speak of.
+	 */
+	public static final PolarVector ZERO = new PolarVector(0, 0);
+	
+	public final double bearing;
+	public final double size;
 	
 	public PolarVector(double bearing, double size) {
 		this.bearing = bearing;
@@ -0,0 +1,74 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+/**
+ * Smooths a signal - turn rate, ground speed, climb rate - one sample at a
+ * time. Implementations keep what they need of past samples in primitive
+ * arrays of a fixed size, allocated up front, so filtering allocates nothing
+ * per sample.
+ * <p>
+ * Samples that are not finite (a turn rate over zero seconds between fixes
+ * with the same time, say), or that come no later than the one before, are
+ * skipped: the last output is given again and the filter state is left as
+ * it was.
+ */
+public abstract class SignalFilter {
+	private double last_output = 0;
+	
+	/**
+	 * @param value the next sample
+	 * @param interval seconds since the previous sample
+	 * @return the smoothed value as of this sample
+	 */
+	public final double filter(double value, double interval) {
+		if (Double.isNaN(value) || Double.isInfinite(value) || !(interval > 0)) {
+			return last_output;
+		}
+		
+		last_output = update(value, interval);
+		return last_output;
+	}
+	
+	/**
+	 * Forgets all samples, as if newly made
+	 */
+	public void reset() {
+		last_output = 0;
+	}
+	
+	/**
+	 * @param value finite sample
+	 * @param interval seconds since the previous sample, more than 0
+	 * @return the smoothed value
+	 */
+	protected abstract double update(double value, double interval);
+}
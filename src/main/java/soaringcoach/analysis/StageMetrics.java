@@ -0,0 +1,214 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What one kind of analysis has been up to: how many times it ran, how long
+ * that took - in total, at most and as a histogram - how much its thread
+ * allocated and how many fixes it got through - plus any counts of its own,
+ * like the fixes fix cleaning dropped for each reason. Safe to record into
+ * from any number of threads.
+ * <p>
+ * The histogram has a bucket per power of two microseconds: bucket <b>i</b>
+ * counts the runs that took less than 2^<b>i</b> microseconds, and at least
+ * half that.
+ */
+public final class StageMetrics {
+	static final int BUCKETS = 40;
+	
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private final AtomicLong max_nanos = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private final LongAdder allocated_bytes = new LongAdder();
+	private final LongAdder fixes = new LongAdder();
+	private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param nanos the analysis took
+	 * @param allocated_bytes by the thread that ran it, negative if that isn't
+	 *            known
+	 * @param fixes in the flight's track
+	 */
+	public void record(long nanos, long allocated_bytes, int fixes) {
+		runs.increment();
+		this.nanos.add(nanos);
+		histogram.incrementAndGet(getBucket(nanos));
+		if (allocated_bytes > 0) {
+			this.allocated_bytes.add(allocated_bytes);
+		}
+		this.fixes.add(fixes);
+		
+		long max = max_nanos.get();
+		while (nanos > max && !max_nanos.compareAndSet(max, nanos)) {
+			max = max_nanos.get();
+		}
+	}
+	
+	/**
+	 * Adds <b>n</b> to one of the analysis' own counts, made the first time
+	 * it is counted
+	 */
+	public void count(String name, long n) {
+		LongAdder count = counts.get(name);
+		if (count == null) {
+			LongAdder made = new LongAdder();
+			count = counts.putIfAbsent(name, made);
+			if (count == null) {
+				count = made;
+			}
+		}
+		count.add(n);
+	}
+	
+	/**
+	 * The analysis had already been run on the flight
+	 */
+	public void skip() {
+		skipped.increment();
+	}
+	
+	/**
+	 * The analysis threw
+	 */
+	public void fail() {
+		failed.increment();
+	}
+	
+	static int getBucket(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+	
+	/**
+	 * @return the upper bound of bucket <b>i</b>, in milliseconds
+	 */
+	static double getBucketMillis(int i) {
+		return (1L << i) / 1000.0;
+	}
+	
+	public Snapshot snapshot() {
+		Snapshot s = new Snapshot();
+		s.runs = runs.sum();
+		s.skipped = skipped.sum();
+		s.failed = failed.sum();
+		
+		long total_nanos = nanos.sum();
+		s.total_ms = total_nanos / 1e6;
+		s.mean_ms = s.runs == 0 ? 0 : s.total_ms / s.runs;
+		s.max_ms = max_nanos.get() / 1e6;
+		
+		s.histogram = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			s.histogram[i] = histogram.get(i);
+		}
+		s.p50_ms = getPercentile(s.histogram, s.runs, 0.5);
+		s.p90_ms = getPercentile(s.histogram, s.runs, 0.9);
+		s.p99_ms = getPercentile(s.histogram, s.runs, 0.99);
+		
+		s.allocated_bytes = allocated_bytes.sum();
+		s.fixes = fixes.sum();
+		s.fixes_per_second = total_nanos == 0 ? 0 : s.fixes / (total_nanos / 1e9);
+		
+		s.counts = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> count : counts.entrySet()) {
+			s.counts.put(count.getKey(), count.getValue().sum());
+		}
+		return s;
+	}
+	
+	/**
+	 * @return upper bound of the bucket the percentile falls in, in
+	 *         milliseconds
+	 */
+	private static double getPercentile(long[] histogram, long runs, double percentile) {
+		if (runs == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * runs);
+		long count = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			count += histogram[i];
+			if (count >= rank) {
+				return getBucketMillis(i);
+			}
+		}
+		return getBucketMillis(histogram.length - 1);
+	}
+	
+	/**
+	 * The metrics at one moment, as plain fields
+	 */
+	public static class Snapshot {
+		public long runs;
+		public long skipped;
+		public long failed;
+		
+		public double total_ms;
+		public double mean_ms;
+		public double max_ms;
+		
+		/**
+		 * Upper bounds of the percentiles, from the histogram
+		 */
+		public double p50_ms;
+		public double p90_ms;
+		public double p99_ms;
+		
+		/**
+		 * Runs per bucket - bucket i up to 2^i microseconds
+		 */
+		public long[] histogram;
+		
+		/**
+		 * By the threads that ran the analysis only, not any it handed work to
+		 */
+		public long allocated_bytes;
+		
+		public long fixes;
+		public double fixes_per_second;
+		
+		/**
+		 * The analysis' own counts, by name
+		 */
+		public Map<String, Long> counts;
+	}
+}
@@ -31,6 +31,7 @@
 package soaringcoach.analysis;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import soaringcoach.Flight;
 import soaringcoach.FlightAnalyser;
@@ -44,18 +45,19 @@ public class StraightPhasesAnalysis extends AAnalysis {
 	@Override
 	protected Flight performAnalysis(Flight flight) throws AnalysisException {
 		
+		FlightTrack track = flight.igc_points;
+		int last_igc_index = track.size() - 1;
+		
 		//Add the first straight phase: takeoff roll is always straight, so we can start with the first point in the file up till the first circle
 		flight.straight_phases = new ArrayList<>();
-		GNSSPoint firstStraightPhaseStart = flight.igc_points.get(0);
-		GNSSPoint firstStraightPhaseEnd;
+		int firstStraightPhaseEnd;
 		if (flight.thermals.size() > 0) {
-			firstStraightPhaseEnd = flight.thermals.get(0).startPoint;
+			firstStraightPhaseEnd = getStartIndex(flight.thermals.get(0), track);
 		} else {
-			int last_igc_index = flight.igc_points.size() - 1;
-			firstStraightPhaseEnd = flight.igc_points.get(last_igc_index);
+			firstStraightPhaseEnd = last_igc_index;
 		}
 
-		StraightPhase s = new StraightPhase(firstStraightPhaseStart, firstStraightPhaseEnd);
+		StraightPhase s = new StraightPhase(track, 0, firstStraightPhaseEnd);
 		flight.straight_phases.addAll(splitIntoSections(s, flight));
 		
 		//Add every section between two thermals
@@ -63,7 +65,7 @@ public class StraightPhasesAnalysis extends AAnalysis {
 		for (Thermal t2 : flight.thermals) {
 			if (t1 != null && t2 != null) {
 				//last point in t1 and first point in t2, defines the boundaries of the straight section
-				s = new StraightPhase(t1.endPoint, t2.startPoint);
+				s = new StraightPhase(track, getEndIndex(t1, track), getStartIndex(t2, track));
 				flight.straight_phases.addAll(splitIntoSections(s, flight));
 			}
 			
@@ -73,8 +75,7 @@ public class StraightPhasesAnalysis extends AAnalysis {
 		if (flight.thermals.size() > 0) {
 			//Add the final glide starting after the last thermal through to the last point in the flight.
 			Thermal lastThermal = flight.thermals.get(flight.thermals.size() - 1);
-			GNSSPoint flightLastPoint = flight.igc_points.get(flight.igc_points.size() - 1);
-			s = new StraightPhase(lastThermal.endPoint, flightLastPoint);
+			s = new StraightPhase(track, getEndIndex(lastThermal, track), last_igc_index);
 			flight.straight_phases.addAll(splitIntoSections(s, flight));
 		}
 		
@@ -111,42 +112,53 @@ public class StraightPhasesAnalysis extends AAnalysis {
 	protected ArrayList<StraightPhase> splitIntoSections(StraightPhase straightPhase, Flight flight) throws AnalysisException {
 		ArrayList<StraightPhase> newStraightPhasesArray = new ArrayList<>();
 		StraightPhase straightPhase1 = null;
+		FlightTrack track = flight.igc_points;
 		
-		int straightPhaseEndIndex = flight.igc_points.indexOf(straightPhase.end_point);
+		int straightPhaseEndIndex = straightPhase.end_index;
+		int tailIndex = straightPhase.start_index;
+		if (straightPhaseEndIndex == FlightTrack.NO_INDEX) {
+			//Made from points alone - look the fixes up by time
+			straightPhaseEndIndex = track.indexOf(straightPhase.end_point);
+			tailIndex = track.indexOf(straightPhase.start_point);
+		}
 		if (straightPhaseEndIndex < 0) {
 			throw new AnalysisException("Straight Phase endpoint was not found among flight's IGC points");
 		}
 		
-		int tailIndex = flight.igc_points.indexOf(straightPhase.start_point);
+		int startIndex = tailIndex;
 		
-		GNSSPoint pTail = flight.igc_points.get(tailIndex);
+		//Index of the tail point we compare against. Note that it stays put when
+		//the indices are re-set after a cut, until the tail is next brought up.
+		int pTail = tailIndex;
 		boolean continuedTurn = false;
 		for (int headIndex = tailIndex + 1; 
 				headIndex <= straightPhaseEndIndex; 
 				headIndex++) {
-			GNSSPoint pHead = flight.igc_points.get(headIndex);
 			
-			if (timeDelta(pTail, pHead) > THRESHOLD_TIME) {
+			if (timeDelta(track, pTail, headIndex) > THRESHOLD_TIME) {
 				//Bring up the tail so the time difference between p1 and p2 is again near the threshold time.
-				while (timeDelta(pTail, pHead) > THRESHOLD_TIME) {
-					pTail = flight.igc_points.get(++tailIndex);
+				while (timeDelta(track, pTail, headIndex) > THRESHOLD_TIME) {
+					pTail = ++tailIndex;
 				}
 			
 				//Only check the angle if head and tail points are far enough apart (i.e. at or near the threshold time).
-				double bearingDelta = Math.abs(FlightAnalyser.calcBearingChange(pTail.getBearingIntoPoint(), pHead.getBearingIntoPoint()));
+				double bearingDelta = Math.abs(FlightAnalyser.calcBearingChange(
+						track.getBearingIntoPoint(pTail), track.getBearingIntoPoint(headIndex)));
 				if (bearingDelta > THRESHOLD_ANGLE) {
 					if (!continuedTurn) {
 						continuedTurn = true;
 						
-						if (Math.abs(timeDelta(straightPhase.start_point, pTail)) > THRESHOLD_TIME) { //Avoid degenerately short straight phases
-							//Cut the straight section in two at pHead
-							straightPhase1 = new StraightPhase(straightPhase.start_point, pHead);
+						long sinceStart = track.getTime(pTail) - track.getTime(startIndex);
+						if (Math.abs(sinceStart) > THRESHOLD_TIME) { //Avoid degenerately short straight phases
+							//Cut the straight section in two at the head
+							straightPhase1 = new StraightPhase(track, startIndex, headIndex);
 							newStraightPhasesArray.add(straightPhase1);
 							
 							// if the turn continues for several more points, this may introduce a small error. However, because
 							// CirclingAnalysis is complete at this point, we can be sure that the turn does NOT go full circle, 
 							// so the error will at most be a semicircle, the worst case of which is a few hundred meters.
-							straightPhase = new StraightPhase(pHead, straightPhase.end_point);
+							straightPhase = new StraightPhase(track, headIndex, straightPhaseEndIndex);
+							startIndex = headIndex;
 							
 							//Re-set indices to continue the loop after the cut (or stop the loop because we're done)
 							tailIndex = headIndex + 1;
@@ -163,12 +175,37 @@ public class StraightPhasesAnalysis extends AAnalysis {
 	}
 
 	/**
-	 * @param pTail
-	 * @param pHead
+	 * @return index of the thermal's first fix, looked up by time if the
+	 *         thermal was made from points alone
+	 */
+	private int getStartIndex(Thermal t, FlightTrack track) throws AnalysisException {
+		int i = t.start_index != FlightTrack.NO_INDEX ? t.start_index : track.indexOf(t.startPoint);
+		if (i < 0) {
+			throw new AnalysisException("Thermal start point was not found among flight's IGC points");
+		}
+		return i;
+	}
+	
+	/**
+	 * @return index of the thermal's last fix, looked up by time if the
+	 *         thermal was made from points alone
+	 */
+	private int getEndIndex(Thermal t, FlightTrack track) throws AnalysisException {
+		int i = t.end_index != FlightTrack.NO_INDEX ? t.end_index : track.indexOf(t.endPoint);
+		if (i < 0) {
+			throw new AnalysisException("Thermal end point was not found among flight's IGC points");
+		}
+		return i;
+	}
+
+	/**
+	 * @param track
+	 * @param pTail index of the tail point
+	 * @param pHead index of the head point
 	 * @return
 	 */
-	private long timeDelta(GNSSPoint pTail, GNSSPoint pHead) {
-		return pHead.data.timestamp.getTime() - pTail.data.timestamp.getTime();
+	private long timeDelta(FlightTrack track, int pTail, int pHead) {
+		return track.getTime(pHead) - track.getTime(pTail);
 	}
 
 	@Override
@@ -176,19 +213,21 @@ public class StraightPhasesAnalysis extends AAnalysis {
 		return flight.is_short_straight_phases_analysis_complete;
 	}
 
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.CIRCLES, FlightData.THERMALS);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.STRAIGHT_PHASES);
+	}
+
 	@Override
 	protected void checkPreconditions(Flight flight) throws PreconditionsFailedException {
 		super.checkPreconditions(flight);
 		
 		//Must have at least one IGC point
-		if (flight.igc_points == null) { throw new PreconditionsFailedException("IGC points array is not initialised"); }
 		if (flight.igc_points.size() < 1) { throw new PreconditionsFailedException("No IGC Points found"); }
-		
-		//Must have at least initialised the thermals array
-		if (flight.thermals == null) { throw new PreconditionsFailedException("Thermals array not initialised"); }
-		
-		if (!new CirclesAnalysis().hasBeenRun(flight)) {
-			throw new PreconditionsFailedException("Circling analysis must be completed before straight phase analysis");
-		}
 	}
 }
@@ -31,6 +31,7 @@
 package soaringcoach.analysis;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import soaringcoach.Circle;
 import soaringcoach.Flight;
@@ -40,6 +41,9 @@ import soaringcoach.Thermal;
  * Takes the Circles and strings them together into Thermal objects. Comes up
  * with some basic stats on each Thermal. Like number of circles, thermal
  * duration, total thermal climb rate etc.
+ * <p>
+ * The climb comes from the track's {@link ClimbIndex}, which has it for any
+ * range of fixes in constant time.
  * 
  * @author johanpretorius
  *
@@ -63,6 +67,14 @@ public class ThermalAnalysis extends AAnalysis {
 			flight.thermals.add(thermal);
 		}
 		
+		for (Thermal t : flight.thermals) {
+			if (t.start_index != FlightTrack.NO_INDEX && flight.igc_points != null) {
+				t.setClimb(flight.igc_points.getClimbIndex());
+			} else {
+				t.setClimb();
+			}
+		}
+		
 		flight.is_thermal_analysis_complete = true;
 		return flight;
 	}
@@ -71,6 +83,16 @@ public class ThermalAnalysis extends AAnalysis {
 	public boolean hasBeenRun(Flight flight) {
 		return flight.is_thermal_analysis_complete;
 	}
+
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.CIRCLES);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.THERMALS);
+	}
 	
 	@Override
 	protected void checkPreconditions(Flight flight) throws PreconditionsFailedException {
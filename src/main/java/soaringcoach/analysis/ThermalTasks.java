@@ -0,0 +1,103 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import soaringcoach.Flight;
+import soaringcoach.Thermal;
+
+/**
+ * Runs a job on every thermal of a flight - one after the other, or from
+ * <b>parallel_threshold</b> thermals on, as a task per thermal on a
+ * ForkJoinPool. A job may only change its own thermal and its circles, so
+ * the results come out the same whichever way they are run.
+ */
+final class ThermalTasks {
+	/**
+	 * Enough thermals to keep a few threads busy for longer than it takes to
+	 * hand them out
+	 */
+	static final int DEFAULT_PARALLEL_THRESHOLD = 16;
+	
+	interface Job {
+		void run(Thermal t);
+	}
+	
+	private ThermalTasks() {
+	}
+	
+	/**
+	 * @param activity what the job does, for the message of a failure
+	 */
+	static void run(Flight flight, List<Thermal> thermals, final Job job, 
+			ForkJoinPool pool, int parallel_threshold, String activity) throws AnalysisException {
+		if (thermals.size() < parallel_threshold) {
+			for (Thermal t : thermals) {
+				job.run(t);
+			}
+			return;
+		}
+		
+		//Resolve and index up front - the tasks only read the track from here on
+		if (flight.igc_points != null) {
+			flight.igc_points.resolve();
+			flight.igc_points.getClimbIndex();
+		}
+		
+		List<Callable<Void>> tasks = new ArrayList<>(thermals.size());
+		for (final Thermal t : thermals) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					job.run(t);
+					return null;
+				}
+			});
+		}
+		
+		for (Future<Void> task : pool.invokeAll(tasks)) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				throw new AnalysisException("Problem " + activity, e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AnalysisException("Interrupted while " + activity, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.vecmath.Vector2d;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.Thermal;
+
+/**
+ * Does what {@link ThermalAnalysis}, {@link WindAnalysis} and
+ * {@link CentringAnalysis} do one after the other, in a single pass over the
+ * circles of each thermal. The circles are strung together into thermals
+ * first; then each thermal's drifts, climb, wind and corrections are worked
+ * out in one go, while its circles are still at hand. Circle starts are
+ * projected once, for both drift and centring, into vectors kept from one
+ * thermal and flight to the next.
+ * <p>
+ * Only thermals without a wind of their own are gone over again, once the
+ * flight's {@link WindField} can be built from all the others.
+ * <p>
+ * Thermals only depend on their own circles, so on flights with enough of
+ * them they are done in parallel - see {@link ThermalTasks}.
+ * <p>
+ * The results are the same as those of the three analyses, which share the
+ * geometry per circle with this one and stay available on their own.
+ */
+public class ThermalWindCentringAnalysis extends AAnalysis {
+	/**
+	 * A pass keeps its vectors between thermals and flights, so one per thread
+	 */
+	private static final ThreadLocal<Pass> passes = new ThreadLocal<Pass>() {
+		@Override
+		protected Pass initialValue() {
+			return new Pass();
+		}
+	};
+	
+	private final ForkJoinPool pool;
+	private final int parallel_threshold;
+	
+	/**
+	 * Does flights with many thermals on the common ForkJoinPool
+	 */
+	public ThermalWindCentringAnalysis() {
+		this(ForkJoinPool.commonPool(), ThermalTasks.DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * @param pool to do each thermal on
+	 * @param parallel_threshold number of thermals from which they are done
+	 *            in parallel; Integer.MAX_VALUE to never do so
+	 */
+	public ThermalWindCentringAnalysis(ForkJoinPool pool, int parallel_threshold) {
+		this.pool = pool;
+		this.parallel_threshold = parallel_threshold;
+	}
+
+	@Override
+	protected Flight performAnalysis(final Flight flight) throws AnalysisException {
+		if (flight.circles == null) {
+			throw new AnalysisException("Circles analysis needs to be completed before thermal analysis can commence");
+		}
+		
+		flight.thermals = findThermals(flight.circles);
+		ThermalTasks.run(flight, flight.thermals, new ThermalTasks.Job() {
+			@Override
+			public void run(Thermal t) {
+				passes.get().process(t, flight);
+			}
+		}, pool, parallel_threshold, "working out thermals");
+		
+		flight.wind_field = new WindField(flight.thermals, flight.igc_points);
+		ArrayList<Thermal> without_wind = new ArrayList<>();
+		for (Thermal t : flight.thermals) {
+			if (t.could_not_calculate_wind) {
+				without_wind.add(t);
+			}
+		}
+		ThermalTasks.run(flight, without_wind, new ThermalTasks.Job() {
+			@Override
+			public void run(Thermal t) {
+				passes.get().centre(t, flight);
+			}
+		}, pool, parallel_threshold, "centring circles");
+		
+		flight.is_thermal_analysis_complete = true;
+		flight.is_wind_analysis_complete = true;
+		flight.is_centring_analysis_complete = true;
+		return flight;
+	}
+	
+	/**
+	 * Strings the circles together into thermals, the way
+	 * {@link ThermalAnalysis} does
+	 */
+	private static ArrayList<Thermal> findThermals(ArrayList<Circle> circles) {
+		ArrayList<Thermal> thermals = new ArrayList<>();
+		
+		Thermal thermal = new Thermal();
+		for (Circle c : circles) {
+			if (!thermal.addCircle(c)) {
+				thermals.add(thermal);
+				thermal = new Thermal(c);
+			}
+		}
+		
+		//The loop never adds the last thermal it finds
+		if (!thermal.circles.isEmpty()) {
+			thermals.add(thermal);
+		}
+		return thermals;
+	}
+
+	@Override
+	public boolean hasBeenRun(Flight flight) {
+		return flight.is_thermal_analysis_complete 
+				&& flight.is_wind_analysis_complete 
+				&& flight.is_centring_analysis_complete;
+	}
+
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.FIXES, FlightData.CIRCLES);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.THERMALS, FlightData.WIND, FlightData.CORRECTIONS);
+	}
+	
+	@Override
+	protected void checkPreconditions(Flight flight) throws PreconditionsFailedException {
+		super.checkPreconditions(flight);
+		
+		if (flight.circles == null) {
+			throw new PreconditionsFailedException("Null circles array - Circling analysis has not been completed yet.");
+		}
+	}
+	
+	/**
+	 * What a thread needs to go over a thermal: only ever used by the thread
+	 * it belongs to
+	 */
+	private static final class Pass {
+		private final DriftEstimator estimator = new DriftEstimator();
+		
+		/**
+		 * Projected start of each circle of the current thermal, in LOCAL_PLANE
+		 * mode
+		 */
+		private Vector2d[] projected = new Vector2d[0];
+		private final Vector2d expected = new Vector2d();
+		private LocalProjection projection;
+		private GeometryMode mode;
+		
+		/**
+		 * Works out the drifts, climb and wind of the thermal, and if the wind
+		 * is its own, the corrections
+		 */
+		void process(Thermal t, Flight flight) {
+			mode = flight.geometry_mode;
+			for (int k = 0; k < t.circles.size(); k++) {
+				addDrift(t, k);
+			}
+			
+			if (t.start_index != FlightTrack.NO_INDEX && flight.igc_points != null) {
+				t.setClimb(flight.igc_points.getClimbIndex());
+			} else {
+				t.setClimb();
+			}
+			
+			WindAnalysis.refineAverageDrift(t, estimator);
+			if (!t.could_not_calculate_wind) {
+				centre(t, t.wind);
+			}
+		}
+		
+		/**
+		 * Works out the corrections of a thermal without a wind of its own,
+		 * from the flight's wind field
+		 */
+		void centre(Thermal t, Flight flight) {
+			mode = flight.geometry_mode;
+			if (mode == GeometryMode.LOCAL_PLANE) {
+				for (int k = 0; k < t.circles.size(); k++) {
+					project(t.circles.get(k), k);
+				}
+			}
+			centre(t, CentringAnalysis.getWind(t, flight));
+		}
+		
+		/**
+		 * Works out the drift of circle <b>k</b> from the one before - or
+		 * none, for the first
+		 */
+		private void addDrift(Thermal t, int k) {
+			Circle c2 = t.circles.get(k);
+			if (mode == GeometryMode.LOCAL_PLANE) {
+				project(c2, k);
+			}
+			
+			if (k == 0) {
+				c2.drift_vector = PolarVector.ZERO;
+			} else if (mode == GeometryMode.LOCAL_PLANE) {
+				c2.drift_vector = LocalProjection.vector(projected[k - 1], projected[k]);
+			} else {
+				c2.drift_vector = WindAnalysis.sphericalDrift(t.circles.get(k - 1), c2);
+			}
+		}
+		
+		private void centre(Thermal t, PolarVector wind) {
+			Circle previous_circle = null;
+			for (int k = 0; k < t.circles.size(); k++) {
+				Circle circle = t.circles.get(k);
+				if (previous_circle == null) {
+					circle.correction_vector = PolarVector.ZERO;
+				} else if (mode == GeometryMode.LOCAL_PLANE) {
+					circle.correction_vector = CentringAnalysis.planeCorrection(
+							projected[k - 1], previous_circle.duration, projected[k], wind, expected);
+				} else {
+					circle.correction_vector = CentringAnalysis.sphericalCorrection(previous_circle, circle, wind);
+				}
+				previous_circle = circle;
+			}
+		}
+		
+		/**
+		 * Projects the start of circle <b>k</b>, on a projection anchored at
+		 * the first
+		 */
+		private void project(Circle c, int k) {
+			if (k == 0) {
+				projection = new LocalProjection(c.getStartLatitudeRadians(), c.getStartLongitudeRadians());
+			}
+			if (k >= projected.length) {
+				Vector2d[] grown = new Vector2d[Math.max(16, projected.length * 2)];
+				System.arraycopy(projected, 0, grown, 0, projected.length);
+				for (int i = projected.length; i < grown.length; i++) {
+					grown[i] = new Vector2d();
+				}
+				projected = grown;
+			}
+			projection.project(c.getStartLatitudeRadians(), c.getStartLongitudeRadians(), projected[k]);
+		}
+	}
+}
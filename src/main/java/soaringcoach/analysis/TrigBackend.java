@@ -0,0 +1,126 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+import java.util.Locale;
+
+/**
+ * Where the geodesy helpers get their trigonometry from - see
+ * {@link Geodesy#sin(double)} and friends.
+ * <p>
+ * This is not a speed against accuracy setting. Both backends are exact to
+ * within a few units in the last place (about 1e-15, which
+ * {@code TestFastTrig} holds them to), so analysis results are the same either
+ * way; FAST is just a second implementation of the same functions, which can
+ * be quicker in the geodesy hot loops on JVMs where java.lang.Math is not
+ * intrinsified.
+ * <p>
+ * The default can be chosen with the system property
+ * <code>soaringcoach.trig</code> (e.g. -Dsoaringcoach.trig=fast).
+ */
+public enum TrigBackend {
+	/**
+	 * java.lang.Math
+	 */
+	EXACT {
+		@Override
+		public double sin(double x) {
+			return Math.sin(x);
+		}
+
+		@Override
+		public double cos(double x) {
+			return Math.cos(x);
+		}
+
+		@Override
+		public double atan2(double y, double x) {
+			return Math.atan2(y, x);
+		}
+
+		@Override
+		public double asin(double x) {
+			return Math.asin(x);
+		}
+	}, 
+	
+	/**
+	 * Lookup tables with a short series correction - see {@link FastTrig}.
+	 * As exact as {@link #EXACT} for geodesy: within about 1e-15 of
+	 * java.lang.Math, a few nanometers on the ground.
+	 */
+	FAST {
+		@Override
+		public double sin(double x) {
+			return FastTrig.sin(x);
+		}
+
+		@Override
+		public double cos(double x) {
+			return FastTrig.cos(x);
+		}
+
+		@Override
+		public double atan2(double y, double x) {
+			return FastTrig.atan2(y, x);
+		}
+
+		@Override
+		public double asin(double x) {
+			return FastTrig.asin(x);
+		}
+	};
+	
+	public static final String DEFAULT_TRIG_PROPERTY = "soaringcoach.trig";
+	
+	public abstract double sin(double x);
+	
+	public abstract double cos(double x);
+	
+	public abstract double atan2(double y, double x);
+	
+	public abstract double asin(double x);
+	
+	/**
+	 * Case-insensitive lookup by name, e.g. "exact" or "fast"
+	 * 
+	 * @throws IllegalArgumentException if there is no such backend
+	 */
+	public static TrigBackend fromName(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+	
+	/**
+	 * @return the backend selected by the system property, or EXACT if it is not set
+	 */
+	public static TrigBackend getDefault() {
+		return fromName(System.getProperty(DEFAULT_TRIG_PROPERTY, EXACT.name()));
+	}
+}
@@ -30,34 +30,75 @@
 
 package soaringcoach.analysis;
 
-import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.vecmath.Vector2d;
 
 import soaringcoach.Circle;
 import soaringcoach.Flight;
-import soaringcoach.FlightAnalyser;
 import soaringcoach.Thermal;
 
 /**
  * Works out the wind direction and speed (in m/s) for each thermal. Done by
  * calculating the direction and distance that each circle in the thermal
  * drifted from the previous circle (the “drift vector”). Once an array of drift
- * vectors exists, iterate over it and take the average drift vector. Then
- * successively refine this by throwing out outliers (if a specific drift vector
- * differs from the average by more than, say, 10% it’s an outlier and should be
- * discarded) and recalculating the average. If this process results in an empty
- * array of drift vectors, the wind speed for the thermal can not be calculated
+ * vectors exists, take the median drift vector, throw out the outliers (if a
+ * specific drift vector differs from it by too much, it's an outlier and should
+ * be discarded) and average the rest - see {@link DriftEstimator}. If this
+ * process results in too few drift vectors, the wind speed for the thermal can not be calculated
  * and it should be highlighted to the pilot that he needs to fly more
  * consistent circles when thermalling.
+ * <p>
+ * Each thermal's wind depends on its own circles alone, so on flights with
+ * enough thermals they are worked out in parallel - see {@link ThermalTasks}.
+ * Finally, the thermals' winds are put together into the flight's
+ * {@link WindField}.
  * 
  * @author johanpretorius
  *
  */
 public class WindAnalysis extends AAnalysis {
-	private static final double DRIFT_OUTLIER_CUTOFF_SIZE = 20*4;
-	private static final double DRIFT_OUTLIER_CUTOFF_BEARING = 5*9;
 	private static final int MIN_DRIFT_VECTORS_REQUIRED = 3;
+	
+	/**
+	 * How far a circle's drift can be from the thermal's, in meters and in
+	 * degrees, before it's left out of the wind as an outlier - see
+	 * {@link DriftEstimator}
+	 */
+	static final double DRIFT_OUTLIER_CUTOFF_SIZE = 20*4;
+	static final double DRIFT_OUTLIER_CUTOFF_BEARING = 5*9;
+	
+	/**
+	 * Estimators keep their arrays between thermals and flights, so one per thread
+	 */
+	private static final ThreadLocal<DriftEstimator> estimators = new ThreadLocal<DriftEstimator>() {
+		@Override
+		protected DriftEstimator initialValue() {
+			return new DriftEstimator();
+		}
+	};
+
+	private final ForkJoinPool pool;
+	private final int parallel_threshold;
+	
+	/**
+	 * Works out the wind of flights with many thermals on the common
+	 * ForkJoinPool
+	 */
+	public WindAnalysis() {
+		this(ForkJoinPool.commonPool(), ThermalTasks.DEFAULT_PARALLEL_THRESHOLD);
+	}
+	
+	/**
+	 * @param pool to work out the wind of each thermal on
+	 * @param parallel_threshold number of thermals from which they are
+	 *            worked out in parallel; Integer.MAX_VALUE to never do so
+	 */
+	public WindAnalysis(ForkJoinPool pool, int parallel_threshold) {
+		this.pool = pool;
+		this.parallel_threshold = parallel_threshold;
+	}
 
 	@Override
 	protected Flight performAnalysis(Flight flight) throws AnalysisException {
@@ -69,207 +110,148 @@ public class WindAnalysis extends AAnalysis {
 			throw new AnalysisException("Thermal array is null - cannot perform wind analysis until thermal analysis is completed");
 		}
 		
-		for (Thermal t : flight.thermals) {
-			t = calculateDriftVectors(t);
-						
-			t = refineAverageDrift(t);
-		}
+		final GeometryMode mode = flight.geometry_mode;
+		ThermalTasks.run(flight, flight.thermals, new ThermalTasks.Job() {
+			@Override
+			public void run(Thermal t) {
+				calculateDriftVectors(t, mode);
+				refineAverageDrift(t, estimators.get());
+			}
+		}, pool, parallel_threshold, "working out the wind");
+		
+		flight.wind_field = new WindField(flight.thermals, flight.igc_points);
 		
 		flight.is_wind_analysis_complete = true;
 		return flight;
 	}
 
 	/**
-	 * Refine out a wind estimate by:<br>
-	 * 1. averaging drift vectors 
-	 * <br>
-	 * 2. throwing out outliers <br>
-	 * 3. re-calculating the average<br>
-	 * 4. repeat as necessary<br>
-	 * <br>
-	 * if this process ends in a complete lack of drift vectors, it means the
-	 * pilot flew very erratically.  In this case Thermal.wind is left null.
+	 * Refine out a wind estimate from the thermal's drift vectors, leaving
+	 * out the outliers - see {@link DriftEstimator}. If this ends in too few
+	 * drift vectors, it means the pilot flew very erratically, and
+	 * Thermal.could_not_calculate_wind is set.
 	 * 
 	 * @param t
+	 * @param estimator
 	 */
-	private Thermal refineAverageDrift(Thermal t) {
-		ArrayList<PolarVector> driftVectorsPolar = getPolarVectorsList(t);
-		
-		ArrayList<Vector2d> driftVectorsCartesian = getCartesianVectorsList(t);
-		
-		Vector2d averageDriftCartesian = null;
-		PolarVector averageDriftPolar = null;
-		boolean justRemovedOne = false;
-		int driftVectorsCount = driftVectorsCartesian.size();
-		do {
-			
-			averageDriftCartesian = vectorCartesianCalcAverage(driftVectorsCartesian, driftVectorsCount); 
-			
-			averageDriftPolar = vectorCartesianToPolar(averageDriftCartesian);
-			
-			//look for an outlier, discard it if found and re-calculate the average
-			boolean sizeCutoff = false;
-			boolean bearingCutoff = false;
-			justRemovedOne = false;
-			for (int i = 0; (i < driftVectorsCount) && !(justRemovedOne); i++) {
-				PolarVector driftVectorPolar = driftVectorsPolar.get(i);
-				
-				sizeCutoff = Math.abs(driftVectorPolar.size - averageDriftPolar.size) > DRIFT_OUTLIER_CUTOFF_SIZE;
-				bearingCutoff = Math.abs(
-						FlightAnalyser.calcBearingChange(driftVectorPolar.bearing, averageDriftPolar.bearing)) > 
-						DRIFT_OUTLIER_CUTOFF_BEARING;
-						
-				if (sizeCutoff || bearingCutoff) {
-					driftVectorsCartesian.remove(i);
-					driftVectorsPolar.remove(i);
-					driftVectorsCount  = driftVectorsCartesian.size();
-					//System.out.println("Discarded drift vector as a wind effect because: " + (sizeCutoff ? "SIZE" : "") + ", " + (bearingCutoff ? "BEARING" : ""));
-					justRemovedOne = true;
-				}
-			}
-		} while (justRemovedOne && 
-				driftVectorsCount >= MIN_DRIFT_VECTORS_REQUIRED);
+	static Thermal refineAverageDrift(Thermal t, DriftEstimator estimator) {
+		estimator.estimate(t);
 		
 		long averageCircleDuration = t.getAverageCircleDuration();
-		t.wind = calculateAverageWind(driftVectorsCount, averageDriftPolar, averageCircleDuration);
+		t.wind = calculateAverageWind(
+				estimator.drift_vectors, estimator.drift_bearing, estimator.drift_size, averageCircleDuration);
 		
-		t.could_not_calculate_wind = driftVectorsCount < MIN_DRIFT_VECTORS_REQUIRED;
+		t.could_not_calculate_wind = estimator.inliers < MIN_DRIFT_VECTORS_REQUIRED;
 		
 		return t;
 	}
 
-	/**
-	 * @param t
-	 * @return
-	 */
-	private ArrayList<Vector2d> getCartesianVectorsList(Thermal t) {
-		ArrayList<Vector2d> driftVectorsCartesian = new ArrayList<>();
-		for (Circle c : t.circles) {
-			if (c.drift_vector != null) {
-				Vector2d driftCartesian = vectorPolarToCartesian(c);
-				
-				driftVectorsCartesian.add(driftCartesian);
-			}
-		}
-		return driftVectorsCartesian;
-	}
-
-	/**
-	 * @param t
-	 * @return
-	 */
-	private ArrayList<PolarVector> getPolarVectorsList(Thermal t) {
-		ArrayList<PolarVector> driftVectorsPolar = new ArrayList<>();
-		for (Circle c : t.circles) {
-			if (c.drift_vector != null) {
-				driftVectorsPolar.add(c.drift_vector);
-			}
-		}
-		return driftVectorsPolar;
-	}
-
 	/**
 	 * @param driftVectorsCount
-	 * @param averageDriftPolar
+	 * @param averageDriftBearing as from atan2, in degrees
+	 * @param averageDriftSize in meters per circle
 	 * @param averageCircleDuration
 	 * @return
 	 */
-	private PolarVector calculateAverageWind(int driftVectorsCount, PolarVector averageDriftPolar,
-			long averageCircleDuration) {
+	private static PolarVector calculateAverageWind(int driftVectorsCount, double averageDriftBearing, 
+			double averageDriftSize, long averageCircleDuration) {
 		
-		PolarVector wind = new PolarVector(0, 0);
+		PolarVector wind = PolarVector.ZERO;
 		
 		if (driftVectorsCount > 0) {
-			//now we have a wind vector, except that it's size is in "meters per circle"
-			averageDriftPolar.size = 1.0 * averageDriftPolar.size / averageCircleDuration;
-			wind = averageDriftPolar;
-			
 			//atan2 can return negative angles.  Clamp to positive.
-			if (wind.bearing < 0) {
-				wind.bearing += 360;
+			if (averageDriftBearing < 0) {
+				averageDriftBearing += 360;
 			}
+			
+			//now we have a wind vector, except that it's size is in "meters per circle"
+			wind = new PolarVector(averageDriftBearing, 1.0 * averageDriftSize / averageCircleDuration);
 		} 
 
 		return wind;
 	}
 
-	/**
-	 * @param averageDriftCartesian
-	 * @return
-	 */
-	private PolarVector vectorCartesianToPolar(Vector2d averageDriftCartesian) {
-		PolarVector averageDriftPolar;
-		double average_drift_bearing = Math.atan2(averageDriftCartesian.y, averageDriftCartesian.x);
-		average_drift_bearing = Math.toDegrees(average_drift_bearing);
-		
-		double average_drift_size = Math.sqrt(
-				averageDriftCartesian.x * averageDriftCartesian.x + 
-				averageDriftCartesian.y * averageDriftCartesian.y);
-		
-		averageDriftPolar = new PolarVector(average_drift_bearing, average_drift_size);
-		return averageDriftPolar;
-	}
-
-	/**
-	 * @param driftVectorsCartesian
-	 * @param driftVectorsRemainingCount
-	 * @return
-	 */
-	private Vector2d vectorCartesianCalcAverage(ArrayList<Vector2d> driftVectorsCartesian,
-			int driftVectorsRemainingCount) {
-		Vector2d averageDriftCartesian;
-		//Get average cartesian drift vector, and convert back to polar
-		averageDriftCartesian = new Vector2d(0, 0);
-		for (Vector2d drift_cartesian : driftVectorsCartesian) {
-			averageDriftCartesian.add(drift_cartesian); 
-		}
-		averageDriftCartesian.scale(1.0 / driftVectorsRemainingCount);
-		return averageDriftCartesian;
-	}
-
-	/**
-	 * @param c
-	 * @return
-	 */
-	private Vector2d vectorPolarToCartesian(Circle c) {
-		double x = c.drift_vector.size * Math.cos(Math.toRadians(c.drift_vector.bearing));
-		double y = c.drift_vector.size * Math.sin(Math.toRadians(c.drift_vector.bearing));
-		
-		Vector2d driftCartesian = new Vector2d(x, y);
-		return driftCartesian;
-	}
-
 	/**
 	 * Iterate over circles in the thermal, calculate drift vector from each
 	 * circle to the next. Circle objects are updated in-place with drift vector
 	 * information, but the Thermal is returned anyway, for good form.
+	 * <br>
+	 * Works from the circles' start coordinates directly, so the only thing
+	 * made per circle is its drift vector.
 	 * 
 	 * @param t Thermal containing some circles
+	 * @param mode LOCAL_PLANE projects each circle start once and takes the
+	 *            drift as the difference of the projected points
 	 */
-	private Thermal calculateDriftVectors(Thermal t) {
+	private static Thermal calculateDriftVectors(Thermal t, GeometryMode mode) {
 		Circle c1 = null;
-		for (Circle c2 : t.circles) {
+		LocalProjection projection = null;
+		//The projected starts of the previous and current circle, swapped round for every circle
+		Vector2d c1_projected = null;
+		Vector2d c2_projected = null;
+		for (int i = 0; i < t.circles.size(); i++) {
+			Circle c2 = t.circles.get(i);
+			double c2_latitude = c2.getStartLatitudeRadians();
+			double c2_longitude = c2.getStartLongitudeRadians();
+			if (mode == GeometryMode.LOCAL_PLANE) {
+				if (projection == null) {
+					projection = new LocalProjection(c2_latitude, c2_longitude);
+					c1_projected = new Vector2d();
+					c2_projected = new Vector2d();
+				}
+				projection.project(c2_latitude, c2_longitude, c2_projected);
+			}
+			
 			if (c1 != null) {
-				GNSSPoint c1_start = c1.getStartPoint();
-				GNSSPoint c2_start = c2.getStartPoint();
-				
-				double drift_bearing = FlightAnalyser.calculateTrackCourse(c1_start, c2_start);
-				double drift_distance = c1_start.distance(c2_start);
-				
-				c2.drift_vector = new PolarVector(drift_bearing, drift_distance); 			
+				if (mode == GeometryMode.LOCAL_PLANE) {
+					c2.drift_vector = LocalProjection.vector(c1_projected, c2_projected);
+				} else {
+					c2.drift_vector = sphericalDrift(c1, c2);
+				}
 			} else {
-				c2.drift_vector = new PolarVector(0, 0);
+				c2.drift_vector = PolarVector.ZERO;
 			}
 			
 			c1 = c2;
+			if (mode == GeometryMode.LOCAL_PLANE) {
+				Vector2d swap = c1_projected;
+				c1_projected = c2_projected;
+				c2_projected = swap;
+			}
 		}
 		
 		return t;
 	}
 
+	/**
+	 * @return the drift from the start of circle <b>c1</b> to that of <b>c2</b>,
+	 *         over the sphere
+	 */
+	static PolarVector sphericalDrift(Circle c1, Circle c2) {
+		double c1_latitude = c1.getStartLatitudeRadians();
+		double c1_longitude = c1.getStartLongitudeRadians();
+		double c2_latitude = c2.getStartLatitudeRadians();
+		double c2_longitude = c2.getStartLongitudeRadians();
+		
+		double drift_bearing = Geodesy.bearing(c1_latitude, c1_longitude, c2_latitude, c2_longitude);
+		double drift_distance = Geodesy.distance(c1_latitude, c1_longitude, c2_latitude, c2_longitude);
+		
+		return new PolarVector(drift_bearing, drift_distance);
+	}
+
 	@Override
 	public boolean hasBeenRun(Flight flight) {
 		return flight.is_wind_analysis_complete;
 	}
 
+	@Override
+	public EnumSet<FlightData> getInputs() {
+		return EnumSet.of(FlightData.THERMALS);
+	}
+	
+	@Override
+	public EnumSet<FlightData> getOutputs() {
+		return EnumSet.of(FlightData.WIND);
+	}
+
 }
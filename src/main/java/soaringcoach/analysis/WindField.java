@@ -0,0 +1,292 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import java.util.List;
+
+import soaringcoach.Circle;
+import soaringcoach.Thermal;
+
+/**
+ * The wind over the whole flight, put together from the winds of the
+ * thermals it was worked out for. Each such thermal is a sample at its middle
+ * time and average altitude, weighed by its number of circles. The samples
+ * are binned into a grid by time and altitude, every cell holding the
+ * weighted average wind vector of its samples. Cells without samples take the
+ * wind of the nearest cell that has some.
+ * <p>
+ * The grid is built once per flight; looking up the wind at any time and
+ * altitude then interpolates bilinearly between the four nearest cell
+ * centres (held at the edges of the grid), in constant time. That is what
+ * thermals too short for a wind of their own fall back to, and what an
+ * analysis of the straight phases can read the wind from.
+ * <p>
+ * Read-only once built, so it can be shared between threads.
+ */
+public class WindField {
+	/**
+	 * Half an hour
+	 */
+	public static final long DEFAULT_TIME_BIN = 30 * 60 * 1000;
+	
+	public static final int DEFAULT_ALTITUDE_BIN = 500;
+	
+	private final long time_bin;
+	private final int altitude_bin;
+	
+	private long first_time;
+	private int lowest_altitude;
+	private int time_bins = 0;
+	private int altitude_bins = 0;
+	
+	/**
+	 * Wind components (meters per second, towards the east and north) of cell
+	 * [time bin * altitude_bins + altitude bin]
+	 */
+	private double[] east;
+	private double[] north;
+	
+	/**
+	 * @param thermals after wind analysis; those it could not work out a wind
+	 *            for are left out
+	 * @param track the thermals were found in, for their altitudes - null if
+	 *            they were made from points alone
+	 */
+	public WindField(List<Thermal> thermals, FlightTrack track) {
+		this(thermals, track, DEFAULT_TIME_BIN, DEFAULT_ALTITUDE_BIN);
+	}
+	
+	/**
+	 * @param time_bin length of a time bin, in milliseconds
+	 * @param altitude_bin height of an altitude bin, in meters
+	 */
+	public WindField(List<Thermal> thermals, FlightTrack track, long time_bin, int altitude_bin) {
+		if (time_bin < 1 || altitude_bin < 1) {
+			throw new IllegalArgumentException("Bins must be at least 1 ms and 1 m");
+		}
+		this.time_bin = time_bin;
+		this.altitude_bin = altitude_bin;
+		
+		int samples = 0;
+		long last_time = 0;
+		int highest_altitude = 0;
+		for (Thermal t : thermals) {
+			if (!hasWind(t)) {
+				continue;
+			}
+			long time = getMiddleTime(t);
+			int altitude = (int) Math.round(getAverageAltitude(t, track));
+			if (samples == 0) {
+				first_time = last_time = time;
+				lowest_altitude = highest_altitude = altitude;
+			} else {
+				first_time = Math.min(first_time, time);
+				last_time = Math.max(last_time, time);
+				lowest_altitude = Math.min(lowest_altitude, altitude);
+				highest_altitude = Math.max(highest_altitude, altitude);
+			}
+			samples++;
+		}
+		if (samples == 0) {
+			return;
+		}
+		
+		time_bins = (int) ((last_time - first_time) / time_bin) + 1;
+		altitude_bins = (highest_altitude - lowest_altitude) / altitude_bin + 1;
+		east = new double[time_bins * altitude_bins];
+		north = new double[time_bins * altitude_bins];
+		double[] weights = new double[time_bins * altitude_bins];
+		
+		for (Thermal t : thermals) {
+			if (!hasWind(t)) {
+				continue;
+			}
+			int cell = getCell(getMiddleTime(t), (int) Math.round(getAverageAltitude(t, track)));
+			double bearing = Math.toRadians(t.wind.bearing);
+			double weight = t.circles.size();
+			east[cell] += weight * t.wind.size * Geodesy.sin(bearing);
+			north[cell] += weight * t.wind.size * Geodesy.cos(bearing);
+			weights[cell] += weight;
+		}
+		
+		for (int cell = 0; cell < weights.length; cell++) {
+			if (weights[cell] > 0) {
+				east[cell] /= weights[cell];
+				north[cell] /= weights[cell];
+			}
+		}
+		fillEmptyCells(weights);
+	}
+	
+	/**
+	 * @return whether wind analysis worked out a wind for the thermal
+	 */
+	public static boolean hasWind(Thermal t) {
+		return t.wind != null && !t.could_not_calculate_wind && !t.circles.isEmpty();
+	}
+	
+	/**
+	 * @return whether there is any wind in the field at all, i.e. any thermal
+	 *         had a wind of its own
+	 */
+	public boolean isEmpty() {
+		return time_bins == 0;
+	}
+	
+	/**
+	 * @param time epoch milliseconds
+	 * @param altitude meters
+	 * @return the wind there and then, bearing and size (meters per second)
+	 *         like a thermal's - or null if the field is empty
+	 */
+	public PolarVector getWind(long time, double altitude) {
+		if (isEmpty()) {
+			return null;
+		}
+		
+		//Fractional position between the cell centres, held inside the grid
+		double u = clamp((time - first_time) / (double) time_bin - 0.5, time_bins - 1);
+		double v = clamp((altitude - lowest_altitude) / altitude_bin - 0.5, altitude_bins - 1);
+		int t0 = (int) u;
+		int a0 = (int) v;
+		int t1 = Math.min(t0 + 1, time_bins - 1);
+		int a1 = Math.min(a0 + 1, altitude_bins - 1);
+		double fu = u - t0;
+		double fv = v - a0;
+		
+		double e = interpolate(east, t0, t1, a0, a1, fu, fv);
+		double n = interpolate(north, t0, t1, a0, a1, fu, fv);
+		
+		double bearing = Math.toDegrees(Geodesy.atan2(e, n));
+		if (bearing < 0) {
+			bearing += 360;
+		}
+		return new PolarVector(bearing, Math.sqrt(e * e + n * n));
+	}
+	
+	/**
+	 * @return the wind at fix <b>i</b> of the track - see
+	 *         {@link #getWind(long, double)}
+	 */
+	public PolarVector getWind(FlightTrack track, int i) {
+		int pressure_altitude = track.getPressureAltitude(i);
+		return getWind(track.getTime(i), pressure_altitude != 0 ? pressure_altitude : track.getGnssAltitude(i));
+	}
+	
+	/**
+	 * @return the wind at the thermal's middle time and average altitude -
+	 *         see {@link #getWind(long, double)}
+	 */
+	public PolarVector getWind(Thermal t, FlightTrack track) {
+		if (t.circles.isEmpty()) {
+			return null;
+		}
+		return getWind(getMiddleTime(t), getAverageAltitude(t, track));
+	}
+	
+	private double interpolate(double[] column, int t0, int t1, int a0, int a1, double fu, double fv) {
+		double low = column[t0 * altitude_bins + a0] * (1 - fu) + column[t1 * altitude_bins + a0] * fu;
+		double high = column[t0 * altitude_bins + a1] * (1 - fu) + column[t1 * altitude_bins + a1] * fu;
+		return low * (1 - fv) + high * fv;
+	}
+	
+	private static double clamp(double position, int max) {
+		return Math.max(0, Math.min(position, max));
+	}
+	
+	private int getCell(long time, int altitude) {
+		int t = (int) ((time - first_time) / time_bin);
+		int a = (altitude - lowest_altitude) / altitude_bin;
+		return t * altitude_bins + a;
+	}
+	
+	/**
+	 * Gives each cell without samples the wind of the nearest one with some,
+	 * counting in cells - ties go to the earlier, then the lower one
+	 */
+	private void fillEmptyCells(double[] weights) {
+		for (int t = 0; t < time_bins; t++) {
+			for (int a = 0; a < altitude_bins; a++) {
+				int cell = t * altitude_bins + a;
+				if (weights[cell] > 0) {
+					continue;
+				}
+				
+				int nearest = -1;
+				int nearest_distance = Integer.MAX_VALUE;
+				for (int ft = 0; ft < time_bins; ft++) {
+					for (int fa = 0; fa < altitude_bins; fa++) {
+						int distance = (ft - t) * (ft - t) + (fa - a) * (fa - a);
+						if (weights[ft * altitude_bins + fa] > 0 && distance < nearest_distance) {
+							nearest = ft * altitude_bins + fa;
+							nearest_distance = distance;
+						}
+					}
+				}
+				east[cell] = east[nearest];
+				north[cell] = north[nearest];
+			}
+		}
+	}
+	
+	/**
+	 * @return epoch milliseconds halfway between the start of the thermal's
+	 *         first circle and the end of its last
+	 */
+	static long getMiddleTime(Thermal t) {
+		Circle first = t.circles.get(0);
+		Circle last = t.circles.get(t.circles.size() - 1);
+		long end = last.timestamp.getTime() + last.duration * 1000;
+		return (first.timestamp.getTime() + end) / 2;
+	}
+	
+	/**
+	 * @return the thermal's average altitude over its fixes, by pressure
+	 *         altitude if the logger has it; without a track, the average of
+	 *         its start and end point, if it has those - or 0
+	 */
+	static double getAverageAltitude(Thermal t, FlightTrack track) {
+		if (track != null && t.start_index != FlightTrack.NO_INDEX && t.end_index < track.size()) {
+			ClimbIndex climb = track.getClimbIndex();
+			double pressure_altitude = climb.getAveragePressureAltitude(t.start_index + 1, t.end_index);
+			return pressure_altitude != 0 ? pressure_altitude : 
+				climb.getAverageGnssAltitude(t.start_index + 1, t.end_index);
+		}
+		if (t.startPoint != null && t.endPoint != null) {
+			int start = t.startPoint.getPressureAltitude() != 0 ? 
+					t.startPoint.getPressureAltitude() : t.startPoint.getGnssAltitude();
+			int end = t.endPoint.getPressureAltitude() != 0 ? 
+					t.endPoint.getPressureAltitude() : t.endPoint.getGnssAltitude();
+			return (start + end) / 2.0;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,79 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single decoded IGC B record (GPS fix). Fields are plain primitives so that
+ * one instance can be re-used for every fix in a file - the parser overwrites
+ * it in place for each record, and hands it to an {@link IgcRecordHandler}.
+ * <p>
+ * Because the instance is re-used, handlers must copy out whatever they need
+ * before returning.
+ */
+public class BRecord {
+	/**
+	 * Time of the fix, in seconds since midnight UTC (the HHMMSS field)
+	 */
+	public int seconds_of_day;
+	
+	/**
+	 * Latitude in decimal degrees, negative in the southern hemisphere
+	 */
+	public double latitude;
+	
+	/**
+	 * Longitude in decimal degrees, negative west of Greenwich
+	 */
+	public double longitude;
+	
+	/**
+	 * Fix validity flag - 'A' for a 3D fix, 'V' for 2D / no GPS altitude
+	 */
+	public char altitude_ok;
+	
+	public int pressure_altitude;
+	public int gnss_altitude;
+	
+	/**
+	 * The buffer holding the line the record was decoded from (use absolute
+	 * gets). Only valid for the duration of the handler call, the buffer gets
+	 * overwritten as soon as parsing continues.
+	 */
+	public ByteBuffer line;
+	public int line_offset;
+	public int line_length;
+	
+	public boolean isValidGpsFix() {
+		return altitude_ok == 'A' || altitude_ok == 'V';
+	}
+}
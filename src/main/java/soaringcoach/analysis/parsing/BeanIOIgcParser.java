@@ -0,0 +1,135 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+
+import org.beanio.BeanIOConfigurationException;
+import org.beanio.BeanReader;
+import org.beanio.BeanReaderException;
+import org.beanio.StreamFactory;
+
+import soaringcoach.Flight;
+import soaringcoach.analysis.FlightTrack;
+import soaringcoach.analysis.GNSSPoint;
+
+/**
+ * Reads IGC files through the BeanIO mapping in igc_mapping.xml. The mapping
+ * is loaded from the classpath and compiled once, when the parser is created.
+ * The mapping only uses stateless type handlers (see
+ * {@link TimeOfDayTypeHandler}), so one instance can serve all requests.
+ * <p>
+ * The mapping doesn't read the I record, so B record extensions are not
+ * decoded - extension columns stay at {@link FlightTrack#NO_VALUE}.
+ */
+public class BeanIOIgcParser implements IgcParser {
+	private static final String MAPPING_RESOURCE = "/igc_mapping.xml";
+	private static final String STREAM_NAME = "igc_file";
+	
+	private final StreamFactory factory;
+	
+	public BeanIOIgcParser() {
+		factory = StreamFactory.newInstance();
+		
+		try (InputStream mapping = BeanIOIgcParser.class.getResourceAsStream(MAPPING_RESOURCE)) {
+			if (mapping == null) {
+				throw new IllegalStateException("IGC mapping " + MAPPING_RESOURCE + " is not on the classpath");
+			}
+			factory.load(mapping);
+		} catch (IOException | BeanIOConfigurationException e) {
+			throw new IllegalStateException("Could not load IGC mapping " + MAPPING_RESOURCE, e);
+		}
+	}
+
+	@Override
+	public Flight read(File file, Flight f) throws IOException {
+		try (FileInputStream in = new FileInputStream(file)) {
+			return read(in, f);
+		}
+	}
+
+	@Override
+	public Flight read(InputStream in, Flight f) throws IOException {
+		BeanReader br = null;
+		if (f.igc_points == null) {
+			f.igc_points = new FlightTrack();
+		}
+		f.igc_points.clear();
+		f.malformed_fixes = 0;
+		
+		IgcTimeline timeline = new IgcTimeline();
+
+		try {
+			//Closing the BeanReader closes its reader, and that would close the caller's stream
+			br = factory.createReader(STREAM_NAME, new FilterReader(new InputStreamReader(in)) {
+				@Override
+				public void close() {
+				}
+			});
+			GNSSPointData pt_data = null;
+			Object bean = null;
+			
+			while ((bean = br.read()) != null) {
+				if (bean instanceof GNSSPointData) {
+					pt_data = (GNSSPointData) bean;
+					
+					GNSSPoint pt = GNSSPoint.createUncheckedGNSSPoint(pt_data);
+					long time_of_day = pt.data.timestamp.getTime() - TimeOfDayTypeHandler.TIME_OF_DAY_BASE;
+					pt.data.timestamp.setTime(timeline.toEpochMillis(time_of_day));
+					f.igc_points.add(pt);
+				} else if (bean instanceof PICName) {
+					f.pilot_name = ((PICName) bean).picName;
+				} else if (bean instanceof FlightDate) {
+					f.flightDate = ((FlightDate) bean).getFlightDateString();
+					timeline.setFlightDate(f.flightDate);
+				}
+			}
+		} catch (BeanReaderException e) {
+			throw new IOException("Problem reading IGC Data", e);				
+		} catch (ParseException e) {
+			throw new IOException("Problem reading IGC Data", e);
+		} finally {
+			if (br != null) {
+				br.close();
+			}
+		}
+		f.igc_points.trimToSize();
+		f.igc_points.resolve();
+		
+		return f;
+	}
+}
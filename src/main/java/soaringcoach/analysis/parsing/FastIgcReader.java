@@ -0,0 +1,465 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+
+/**
+ * Hand-written IGC reader that works directly on the raw bytes of the file.
+ * B records are decoded by fixed offset straight into the primitive fields of
+ * a single re-used {@link BRecord}, so reading the fixes of a flight creates no
+ * garbage at all - no charset decoding, no line Strings, no intermediate beans,
+ * no Dates.
+ * <p>
+ * All parsing is done with absolute gets on a ByteBuffer. Files are memory
+ * mapped and parsed in place; streams are read through a direct buffer that
+ * the reader keeps and re-uses from one call to the next.
+ * <p>
+ * Produces the same fixes as the BeanIO mapping in igc_mapping.xml, and
+ * recognises the same header records (HFPLT and HFDTE) plus the glider and
+ * logger ones (HFGTY, HFGID, HFFTY and HFCID). The I record is
+ * handed on as an {@link IgcExtensionLayout}. Everything else is skipped, as
+ * are malformed B records - see {@link IgcRecordHandler#onMalformedFix()}.
+ * Lines may be terminated by CR, LF or CRLF.
+ * The readHeaders methods stop at the first B record, for when only the
+ * metadata of a file is wanted.
+ * <p>
+ * Instances keep a read buffer and are not thread-safe; use one per thread.
+ */
+public class FastIgcReader {
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * A buffer that had to grow past this for an oversized line is not kept
+	 * for the next stream.
+	 */
+	private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+	
+	/**
+	 * Bytes read at a time when only the headers are wanted
+	 */
+	private static final int HEADER_READ_SIZE = 4 * 1024;
+	
+	/**
+	 * Length of a B record up to and including the GNSS altitude. Anything
+	 * after that is the extension tail described by the I record.
+	 */
+	public static final int B_RECORD_LENGTH = 35;
+	
+	private static final byte[] PILOT_HEADER = {'H', 'F', 'P', 'L', 'T'};
+	private static final byte[] DATE_HEADER = {'H', 'F', 'D', 'T', 'E'};
+	private static final byte[] GLIDER_TYPE_HEADER = {'H', 'F', 'G', 'T', 'Y'};
+	private static final byte[] GLIDER_ID_HEADER = {'H', 'F', 'G', 'I', 'D'};
+	private static final byte[] LOGGER_TYPE_HEADER = {'H', 'F', 'F', 'T', 'Y'};
+	private static final byte[] COMPETITION_ID_HEADER = {'H', 'F', 'C', 'I', 'D'};
+	
+	private ByteBuffer buffer = null;
+	private final BRecord fix = new BRecord();
+	
+	/**
+	 * Memory-maps <b>file</b> and parses it in place, handing each record of
+	 * interest to <b>handler</b>.
+	 * 
+	 * @param file
+	 * @param handler
+	 * @throws IOException on read failure
+	 */
+	public void read(File file, IgcRecordHandler handler) throws IOException {
+		read(map(file), handler);
+	}
+	
+	/**
+	 * Maps the whole of <b>file</b> read-only. The mapping stays valid after
+	 * the channel is closed.
+	 * 
+	 * @throws IOException if the file can't be read, or is over 2GB
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("IGC file is too large to map: " + file.getName());
+			}
+			return channel.map(MapMode.READ_ONLY, 0, size);
+		}
+	}
+	
+	/**
+	 * Parses everything between the position and the limit of <b>data</b>,
+	 * handing each record of interest to <b>handler</b>. The last line does
+	 * not need a terminator. Leaves the position at the limit.
+	 * 
+	 * @param data
+	 * @param handler
+	 * @throws IOException if the handler throws it
+	 */
+	public void read(ByteBuffer data, IgcRecordHandler handler) throws IOException {
+		read(data, handler, false);
+	}
+	
+	/**
+	 * Like {@link #read(ByteBuffer, IgcRecordHandler)}, but stops at the first
+	 * B record, leaving the position at the start of it (or at the limit if
+	 * there is none).
+	 */
+	public void readHeaders(ByteBuffer data, IgcRecordHandler handler) throws IOException {
+		read(data, handler, true);
+	}
+	
+	private void read(ByteBuffer data, IgcRecordHandler handler, boolean headers_only) throws IOException {
+		int end = data.limit();
+		int line_start = data.position();
+		
+		for (int i = line_start; i < end; i++) {
+			byte b = data.get(i);
+			if (b == '\n' || b == '\r') {
+				if (i > line_start) {
+					if (headers_only && data.get(line_start) == 'B') {
+						data.position(line_start);
+						return;
+					}
+					parseRecord(data, line_start, i - line_start, handler);
+				}
+				line_start = i + 1;
+			}
+		}
+		
+		if (end > line_start) {
+			if (headers_only && data.get(line_start) == 'B') {
+				data.position(line_start);
+				return;
+			}
+			parseRecord(data, line_start, end - line_start, handler);
+		}
+		data.position(end);
+	}
+	
+	/**
+	 * Reads the whole of <b>in</b>, handing each record of interest to
+	 * <b>handler</b>. Does not close the stream.
+	 * 
+	 * @param in
+	 * @param handler
+	 * @throws IOException on read failure
+	 */
+	public void read(InputStream in, IgcRecordHandler handler) throws IOException {
+		read(toChannel(in), handler, false);
+	}
+	
+	/**
+	 * Reads <b>in</b> up to the first B record, handing each header record of
+	 * interest to <b>handler</b>. Only reads a few KB past the headers. Does not
+	 * close the stream.
+	 */
+	public void readHeaders(InputStream in, IgcRecordHandler handler) throws IOException {
+		read(toChannel(in), handler, true);
+	}
+	
+	/**
+	 * @see #readHeaders(InputStream, IgcRecordHandler)
+	 */
+	public void readHeaders(File file, IgcRecordHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			read(channel, handler, true);
+		}
+	}
+	
+	private static ReadableByteChannel toChannel(InputStream in) {
+		return in instanceof FileInputStream ? 
+				((FileInputStream) in).getChannel() : Channels.newChannel(in);
+	}
+	
+	private void read(ReadableByteChannel channel, IgcRecordHandler handler, boolean headers_only) throws IOException {
+		if (buffer == null || buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+			buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+		}
+		buffer.clear();
+		
+		int length = 0; // number of bytes held in the buffer
+		int line_start = 0;
+		int scan = 0;
+		
+		while (true) {
+			while (scan < length) {
+				byte b = buffer.get(scan);
+				if (b == '\n' || b == '\r') {
+					if (scan > line_start) {
+						if (headers_only && buffer.get(line_start) == 'B') {
+							return;
+						}
+						parseRecord(buffer, line_start, scan - line_start, handler);
+					}
+					line_start = scan + 1;
+				}
+				scan++;
+			}
+			
+			//Move the unfinished line to the front of the buffer, growing it if a single line fills it up
+			if (line_start > 0) {
+				buffer.limit(length).position(line_start);
+				buffer.compact();
+				length -= line_start;
+				scan -= line_start;
+				line_start = 0;
+			}
+			if (length == buffer.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+				buffer.limit(length).position(0);
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			
+			//Headers are usually well under a KB, no need to fill the whole buffer for them
+			buffer.limit(headers_only ? Math.min(buffer.capacity(), length + HEADER_READ_SIZE) : buffer.capacity());
+			buffer.position(length);
+			int read = channel.read(buffer);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		
+		//Last line might not have a terminator
+		if (length > line_start && !(headers_only && buffer.get(line_start) == 'B')) {
+			parseRecord(buffer, line_start, length - line_start, handler);
+		}
+	}
+	
+	/**
+	 * Decodes a single line (without its terminator) and passes it on to
+	 * <b>handler</b> if it's a record we're interested in. A B record that
+	 * can't be decoded is skipped, and reported to the handler as malformed.
+	 * 
+	 * @throws IOException if the handler throws it
+	 */
+	public void parseRecord(ByteBuffer b, int offset, int length, IgcRecordHandler handler) throws IOException {
+		if (length < 1) {
+			return;
+		}
+		
+		if (b.get(offset) == 'B') {
+			if (decodeBRecord(b, offset, length, fix)) {
+				handler.onFix(fix);
+			} else {
+				handler.onMalformedFix();
+			}
+		} else if (startsWith(b, offset, length, PILOT_HEADER)) {
+			handler.onPilotName(headerValue(b, offset + PILOT_HEADER.length, offset + length));
+		} else if (startsWith(b, offset, length, DATE_HEADER)) {
+			handler.onFlightDate(flightDate(b, offset + DATE_HEADER.length, offset + length));
+		} else if (startsWith(b, offset, length, GLIDER_TYPE_HEADER)) {
+			handler.onGliderType(headerValue(b, offset + GLIDER_TYPE_HEADER.length, offset + length));
+		} else if (startsWith(b, offset, length, GLIDER_ID_HEADER)) {
+			handler.onGliderId(headerValue(b, offset + GLIDER_ID_HEADER.length, offset + length));
+		} else if (startsWith(b, offset, length, LOGGER_TYPE_HEADER)) {
+			handler.onLoggerType(headerValue(b, offset + LOGGER_TYPE_HEADER.length, offset + length));
+		} else if (startsWith(b, offset, length, COMPETITION_ID_HEADER)) {
+			handler.onCompetitionId(headerValue(b, offset + COMPETITION_ID_HEADER.length, offset + length));
+		} else if (b.get(offset) == 'I') {
+			handler.onExtensionLayout(IgcExtensionLayout.parse(b, offset, length));
+		}
+	}
+
+	/**
+	 * Decodes a B record by fixed offsets, e.g.
+	 * <pre>
+	 * B1039565045817N00352098EA0033600360...
+	 *  |     |      ||       ||    |    +- extensions
+	 *  |     |      ||       ||    +- GNSS altitude
+	 *  |     |      ||       |+- pressure altitude
+	 *  |     |      ||       +- validity
+	 *  |     |      |+- longitude DDDMMmmm E/W
+	 *  |     +- latitude DDMMmmm N/S
+	 *  +- time HHMMSS (UTC)
+	 * </pre>
+	 * 
+	 * @return false if the record is too short or has non-digits in a numeric
+	 *         field, in which case <b>fix</b> is left in an undefined state
+	 */
+	public static boolean decodeBRecord(byte[] b, int offset, int length, BRecord fix) {
+		return decodeBRecord(ByteBuffer.wrap(b), offset, length, fix);
+	}
+	
+	/**
+	 * @see #decodeBRecord(byte[], int, int, BRecord)
+	 */
+	public static boolean decodeBRecord(ByteBuffer b, int offset, int length, BRecord fix) {
+		if (length < B_RECORD_LENGTH) {
+			return false;
+		}
+		
+		int hours = digits(b, offset + 1, 2);
+		int minutes = digits(b, offset + 3, 2);
+		int seconds = digits(b, offset + 5, 2);
+		int lat_degrees = digits(b, offset + 7, 2);
+		int lat_minutes = digits(b, offset + 9, 5);
+		int lon_degrees = digits(b, offset + 15, 3);
+		int lon_minutes = digits(b, offset + 18, 5);
+		
+		if ((hours | minutes | seconds | lat_degrees | lat_minutes | lon_degrees | lon_minutes) < 0) {
+			return false;
+		}
+		
+		int pressure_altitude = signedDigits(b, offset + 25, 5);
+		int gnss_altitude = signedDigits(b, offset + 30, 5);
+		if (pressure_altitude == Integer.MIN_VALUE || gnss_altitude == Integer.MIN_VALUE) {
+			return false;
+		}
+		
+		fix.seconds_of_day = hours * 3600 + minutes * 60 + seconds;
+		fix.latitude = decimalizeDegrees(lat_degrees, lat_minutes, b.get(offset + 14) == 'S');
+		fix.longitude = decimalizeDegrees(lon_degrees, lon_minutes, b.get(offset + 23) == 'W');
+		fix.altitude_ok = (char) b.get(offset + 24);
+		fix.pressure_altitude = pressure_altitude;
+		fix.gnss_altitude = gnss_altitude;
+		fix.line = b;
+		fix.line_offset = offset;
+		fix.line_length = length;
+		
+		return true;
+	}
+	
+	/**
+	 * Same arithmetic as GNSSPoint.decimalizeDegrees, so that the result is
+	 * bit-for-bit identical to what the BeanIO path produces.
+	 */
+	private static double decimalizeDegrees(int degrees, int thousandths_of_minutes, boolean negative) {
+		double minutes = (double) thousandths_of_minutes / 1000;
+		double decimalized = degrees + minutes / 60;
+		return negative ? -decimalized : decimalized;
+	}
+
+	/**
+	 * @return the unsigned decimal value of <b>count</b> digits at <b>offset</b>, or -1
+	 *         if any of them is not a digit
+	 */
+	private static int digits(ByteBuffer b, int offset, int count) {
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int d = b.get(i) - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Like {@link #digits(ByteBuffer, int, int)}, but allows a leading minus sign
+	 * (altitudes below sea level are written e.g. as "-0012").
+	 * 
+	 * @return the value, or Integer.MIN_VALUE if the field is not a number
+	 */
+	private static int signedDigits(ByteBuffer b, int offset, int count) {
+		int value;
+		if (b.get(offset) == '-') {
+			value = digits(b, offset + 1, count - 1);
+			return value < 0 ? Integer.MIN_VALUE : -value;
+		}
+		value = digits(b, offset, count);
+		return value < 0 ? Integer.MIN_VALUE : value;
+	}
+
+	private static boolean startsWith(ByteBuffer b, int offset, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (b.get(offset + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Header text after the first colon, e.g. "Kevin Mitchell" out of
+	 * "PILOT:Kevin Mitchell   ". Trailing padding is dropped.
+	 */
+	private static String headerValue(ByteBuffer b, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (b.get(i) == ':') {
+				start = i + 1;
+				break;
+			}
+		}
+		while (end > start && b.get(end - 1) == ' ') {
+			end--;
+		}
+		return new String(copy(b, start, end), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Handles both the old "HFDTEddmmyy" and the newer "HFDTEDATE:ddmmyy,nn" forms.
+	 */
+	private static String flightDate(ByteBuffer b, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			if (b.get(i) == ':') {
+				start = i + 1;
+				break;
+			}
+		}
+		
+		FlightDate date = new FlightDate();
+		date.setddmmyy(new String(copy(b, start, Math.min(start + 6, end)), StandardCharsets.ISO_8859_1));
+		try {
+			return date.getFlightDateString();
+		} catch (ParseException e) {
+			throw new IOException("Problem reading IGC Data", e);
+		}
+	}
+	
+	/**
+	 * Copies bytes <b>start</b> (inclusive) to <b>end</b> (exclusive) out of
+	 * the buffer, without touching its position. Only used for the odd header
+	 * line and for error messages.
+	 */
+	private static byte[] copy(ByteBuffer b, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = b.get(start + i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,174 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import soaringcoach.Flight;
+import soaringcoach.analysis.FlightTrack;
+
+/**
+ * Collects the fixes the {@link FastIgcReader} decodes into a FlightTrack,
+ * along with the headers. Only the extensions the track asks for are
+ * decoded, the rest of each B record is dropped. Fixes are kept whatever
+ * their validity flag, for the FixCleaningAnalysis to sort out; B records
+ * that can't be decoded at all are only counted. Fix times are
+ * placed on the flight's {@link IgcTimeline}, to the millisecond if the file
+ * has a TDS extension.
+ */
+class FlightTrackBuilder extends IgcRecordHandler {
+	final FlightTrack track;
+	final IgcTimeline timeline = new IgcTimeline();
+	
+	String pilot_name = null;
+	String flight_date = null;
+	
+	/**
+	 * B records that were skipped because they couldn't be decoded
+	 */
+	int malformed_fixes = 0;
+	
+	/**
+	 * Set once an I record has been read
+	 */
+	boolean saw_extension_layout = false;
+	
+	/**
+	 * Set once an HFDTE header has been read
+	 */
+	boolean saw_flight_date = false;
+	
+	private IgcExtensionLayout layout = null;
+	
+	/**
+	 * Per extension column of the track, its position in the layout (-1 if not in this file)
+	 */
+	private int[] layout_index = new int[0];
+	
+	/**
+	 * Position of the TDS extension in the layout (-1 if not in this file),
+	 * and the number of milliseconds per unit of it
+	 */
+	private int tds_index = -1;
+	private int tds_unit_ms = 0;
+	
+	/**
+	 * @param track to add the fixes to
+	 * @param headers builder that already read the headers of the file, if any
+	 */
+	FlightTrackBuilder(FlightTrack track, FlightTrackBuilder headers) {
+		this.track = track;
+		if (headers != null) {
+			if (headers.layout != null) {
+				useLayout(headers.layout);
+			}
+			timeline.setFlightDate(headers.flight_date);
+		}
+	}
+	
+	@Override
+	public void onExtensionLayout(IgcExtensionLayout layout) {
+		saw_extension_layout = true;
+		useLayout(layout);
+	}
+	
+	private void useLayout(IgcExtensionLayout layout) {
+		IgcExtension[] extensions = track.getExtensions();
+		
+		this.layout = layout;
+		this.layout_index = new int[extensions.length];
+		for (int e = 0; e < extensions.length; e++) {
+			layout_index[e] = layout.indexOf(extensions[e].name());
+		}
+		
+		tds_index = layout.indexOf(IgcExtension.TDS.name());
+		if (tds_index >= 0) {
+			int digits = layout.getLength(tds_index);
+			tds_unit_ms = digits == 1 ? 100 : digits == 2 ? 10 : digits == 3 ? 1 : 0;
+		}
+	}
+	
+	@Override
+	public void onFix(BRecord fix) {
+		long time_of_day = fix.seconds_of_day * 1000L;
+		if (tds_index >= 0) {
+			int tds = layout.decode(fix.line, fix.line_offset, fix.line_length, tds_index);
+			if (tds > 0) {
+				time_of_day += tds * tds_unit_ms;
+			}
+		}
+		
+		track.addFix(
+				timeline.toEpochMillis(time_of_day), 
+				fix.latitude, 
+				fix.longitude, 
+				fix.altitude_ok, 
+				fix.pressure_altitude, 
+				fix.gnss_altitude);
+		
+		for (int e = 0; e < layout_index.length; e++) {
+			if (layout_index[e] >= 0) {
+				track.setExtension(e, track.size() - 1, 
+						layout.decode(fix.line, fix.line_offset, fix.line_length, layout_index[e]));
+			}
+		}
+	}
+	
+	@Override
+	public void onMalformedFix() {
+		malformed_fixes++;
+	}
+	
+	@Override
+	public void onPilotName(String pilot_name) {
+		this.pilot_name = pilot_name;
+	}
+	
+	@Override
+	public void onFlightDate(String flight_date) {
+		this.flight_date = flight_date;
+		this.saw_flight_date = true;
+		timeline.setFlightDate(flight_date);
+	}
+	
+	/**
+	 * Copies the headers that were found into <b>f</b>, and adds the B
+	 * records that were skipped to its count. Headers that were not found
+	 * leave what <b>f</b> already had.
+	 */
+	void copyTo(Flight f) {
+		if (pilot_name != null) {
+			f.pilot_name = pilot_name;
+		}
+		if (flight_date != null) {
+			f.flightDate = flight_date;
+		}
+		f.malformed_fixes += malformed_fixes;
+	}
+}
@@ -0,0 +1,152 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Recognises gzip, zip and bzip2 compressed IGC content by its magic bytes,
+ * and unpacks it on the fly. Nothing is buffered beyond what the decompressor
+ * itself needs, so a compressed upload streams straight into the parser.
+ */
+public enum IgcCompression {
+	NONE,
+	
+	/**
+	 * 1F 8B
+	 */
+	GZIP,
+	
+	/**
+	 * "PK" 03 04 - the first .igc entry in the archive is read
+	 */
+	ZIP,
+	
+	/**
+	 * "BZh"
+	 */
+	BZIP2;
+	
+	private static final int MAGIC_LENGTH = 4;
+	
+	/**
+	 * @param magic the first bytes of the content
+	 * @param length how many of them there are
+	 * @return the compression the bytes announce, NONE if they don't look like any
+	 */
+	public static IgcCompression detect(byte[] magic, int length) {
+		if (length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+			return GZIP;
+		}
+		if (length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+			return ZIP;
+		}
+		if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+			return BZIP2;
+		}
+		return NONE;
+	}
+	
+	/**
+	 * Looks at the first bytes of <b>file</b>
+	 */
+	public static IgcCompression detect(File file) throws IOException {
+		try (FileInputStream in = new FileInputStream(file)) {
+			byte[] magic = new byte[MAGIC_LENGTH];
+			return detect(magic, readFully(in, magic));
+		}
+	}
+	
+	/**
+	 * Wraps <b>in</b> so that it gives the uncompressed IGC content, whether
+	 * or not it was compressed. Closing the returned stream closes <b>in</b>.
+	 * 
+	 * @param in
+	 * @return the stream to parse
+	 * @throws IOException if the content can't be read, or is a zip archive without an IGC file
+	 */
+	public static InputStream decompress(InputStream in) throws IOException {
+		PushbackInputStream peek = new PushbackInputStream(in, MAGIC_LENGTH);
+		byte[] magic = new byte[MAGIC_LENGTH];
+		int length = readFully(peek, magic);
+		peek.unread(magic, 0, length);
+		
+		switch (detect(magic, length)) {
+		case GZIP:
+			return new GZIPInputStream(peek);
+		case ZIP:
+			return openIgcEntry(new ZipInputStream(peek));
+		case BZIP2:
+			return new BZip2CompressorInputStream(peek, true);
+		default:
+			return peek;
+		}
+	}
+
+	/**
+	 * Moves the archive on to the first entry named .igc. Zip streams can't go
+	 * back, so anything before it is skipped.
+	 */
+	private static InputStream openIgcEntry(ZipInputStream zip) throws IOException {
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry()) != null) {
+			if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.ROOT).endsWith(".igc")) {
+				return zip;
+			}
+		}
+		throw new IOException("No IGC file found in zip archive");
+	}
+	
+	/**
+	 * @return number of bytes read into <b>b</b> - less than its length only at end of stream
+	 */
+	private static int readFully(InputStream in, byte[] b) throws IOException {
+		int length = 0;
+		while (length < b.length) {
+			int read = in.read(b, length, b.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,91 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+/**
+ * B record extensions that can be decoded into columns of a FlightTrack. The
+ * I record of each file says which of these the logger writes, and where in
+ * the B record they are.
+ */
+public enum IgcExtension {
+	/**
+	 * Fix accuracy, estimated horizontal error in meters
+	 */
+	FXA,
+	
+	/**
+	 * Satellites in use
+	 */
+	SIU,
+	
+	/**
+	 * Engine noise level, 0 - 999
+	 */
+	ENL,
+	
+	/**
+	 * True airspeed, km/h
+	 */
+	TAS,
+	
+	/**
+	 * Ground speed, km/h
+	 */
+	GSP,
+	
+	/**
+	 * True track, degrees
+	 */
+	TRT,
+	
+	/**
+	 * Compensated variometer, in tenths of m/s (signed)
+	 */
+	VAT,
+	
+	/**
+	 * Decimal fraction of the second of the fix time, 1 - 3 digits
+	 */
+	TDS;
+	
+	/**
+	 * @param code three-letter code from the I record
+	 * @return the extension, or null if it's not one we decode
+	 */
+	public static IgcExtension fromCode(String code) {
+		for (IgcExtension e : values()) {
+			if (e.name().equals(code)) {
+				return e;
+			}
+		}
+		return null;
+	}
+}
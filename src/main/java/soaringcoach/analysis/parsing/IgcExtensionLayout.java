@@ -0,0 +1,161 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Where each extension sits in the B records of a file, as declared by its I
+ * record, e.g.
+ * <pre>
+ * I 03 3638FXA 3941ENL 4247REX
+ *   |  | | +- three-letter code
+ *   |  | +- last byte
+ *   |  +- first byte (1-based, counted from the 'B')
+ *   +- number of extensions
+ * </pre>
+ * Parsed once per file, so that B records can be decoded by offset.
+ */
+public class IgcExtensionLayout {
+	/**
+	 * Returned by {@link #decode(ByteBuffer, int, int, int)} when the record
+	 * does not hold a number at the extension's position
+	 */
+	public static final int NO_VALUE = Integer.MIN_VALUE;
+	
+	private final ArrayList<String> codes = new ArrayList<>();
+	private final ArrayList<Integer> starts = new ArrayList<>();
+	private final ArrayList<Integer> lengths = new ArrayList<>();
+	
+	/**
+	 * Parses the I record in <b>length</b> bytes at <b>offset</b>. Stops at the
+	 * first entry that doesn't make sense, keeping the ones before it.
+	 */
+	public static IgcExtensionLayout parse(ByteBuffer b, int offset, int length) {
+		IgcExtensionLayout layout = new IgcExtensionLayout();
+		if (length < 3) {
+			return layout;
+		}
+		
+		int count = number(b, offset + 1, 2);
+		for (int i = 0; i < count; i++) {
+			int entry = offset + 3 + i * 7;
+			if (entry + 7 > offset + length) {
+				break;
+			}
+			
+			int start = number(b, entry, 2);
+			int end = number(b, entry + 2, 2);
+			if (start < 1 || end < start) {
+				break;
+			}
+			
+			byte[] code = new byte[3];
+			for (int c = 0; c < 3; c++) {
+				code[c] = b.get(entry + 4 + c);
+			}
+			
+			layout.codes.add(new String(code, StandardCharsets.US_ASCII));
+			layout.starts.add(start - 1);
+			layout.lengths.add(end - start + 1);
+		}
+		
+		return layout;
+	}
+	
+	public int size() {
+		return codes.size();
+	}
+	
+	public String getCode(int i) {
+		return codes.get(i);
+	}
+	
+	/**
+	 * @return number of bytes extension <b>i</b> takes up in each B record
+	 */
+	public int getLength(int i) {
+		return lengths.get(i);
+	}
+	
+	/**
+	 * @return the position of <b>code</b> in this layout, or -1 if the file
+	 *         doesn't have it
+	 */
+	public int indexOf(String code) {
+		return codes.indexOf(code);
+	}
+	
+	/**
+	 * Decodes extension <b>i</b> of the B record in <b>line_length</b> bytes
+	 * at <b>line_offset</b>.
+	 * 
+	 * @return the value, or {@link #NO_VALUE} if the record is too short or the
+	 *         field isn't a number
+	 */
+	public int decode(ByteBuffer line, int line_offset, int line_length, int i) {
+		int start = starts.get(i);
+		int length = lengths.get(i);
+		if (start + length > line_length) {
+			return NO_VALUE;
+		}
+		
+		int offset = line_offset + start;
+		if (line.get(offset) == '-') {
+			int value = number(line, offset + 1, length - 1);
+			return value < 0 ? NO_VALUE : -value;
+		}
+		int value = number(line, offset, length);
+		return value < 0 ? NO_VALUE : value;
+	}
+	
+	/**
+	 * @return the unsigned decimal value of <b>count</b> digits, or -1 if there
+	 *         are none or any of them is not a digit
+	 */
+	private static int number(ByteBuffer b, int offset, int count) {
+		if (count < 1) {
+			return -1;
+		}
+		
+		int value = 0;
+		for (int i = offset; i < offset + count; i++) {
+			int d = b.get(i) - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,106 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads just the headers of IGC files, for listing flights or spotting
+ * duplicates without parsing and analysing the fixes. Stops at the first B
+ * record, so only the first few KB of each file are read.
+ * <p>
+ * Thread-safe; each thread gets its own {@link FastIgcReader}.
+ */
+public class IgcHeaderScanner {
+	
+	private final ThreadLocal<FastIgcReader> readers = new ThreadLocal<FastIgcReader>() {
+		@Override
+		protected FastIgcReader initialValue() {
+			return new FastIgcReader();
+		}
+	};
+	
+	/**
+	 * @param file IGC file, which may be gzip, zip or bzip2 compressed
+	 * @throws IOException if the file can't be read
+	 */
+	public IgcMetadata scan(File file) throws IOException {
+		try (InputStream in = IgcCompression.decompress(new FileInputStream(file))) {
+			return scan(in);
+		}
+	}
+	
+	/**
+	 * @param in uncompressed IGC content; read up to the first B record and
+	 *            not closed
+	 * @throws IOException if the stream can't be read
+	 */
+	public IgcMetadata scan(InputStream in) throws IOException {
+		final IgcMetadata metadata = new IgcMetadata();
+		
+		readers.get().readHeaders(in, new IgcRecordHandler() {
+			@Override
+			public void onPilotName(String pilot_name) {
+				metadata.pilot_name = pilot_name;
+			}
+			
+			@Override
+			public void onFlightDate(String flight_date) {
+				metadata.flight_date = flight_date;
+			}
+			
+			@Override
+			public void onGliderType(String glider_type) {
+				metadata.glider_type = glider_type;
+			}
+			
+			@Override
+			public void onGliderId(String glider_id) {
+				metadata.glider_id = glider_id;
+			}
+			
+			@Override
+			public void onLoggerType(String logger_type) {
+				metadata.logger_type = logger_type;
+			}
+			
+			@Override
+			public void onCompetitionId(String competition_id) {
+				metadata.competition_id = competition_id;
+			}
+		});
+		
+		return metadata;
+	}
+}
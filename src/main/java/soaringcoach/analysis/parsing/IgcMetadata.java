@@ -0,0 +1,77 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+/**
+ * What the headers of an IGC file say about the flight, as read by
+ * {@link IgcHeaderScanner}. Fields are null if the file doesn't have the
+ * header, and empty if the header is there but blank.
+ */
+public class IgcMetadata {
+	/**
+	 * HFPLT
+	 */
+	public String pilot_name;
+	
+	/**
+	 * HFDTE, as yyyy-MM-dd
+	 */
+	public String flight_date;
+	
+	/**
+	 * HFGTY
+	 */
+	public String glider_type;
+	
+	/**
+	 * HFGID - the registration
+	 */
+	public String glider_id;
+	
+	/**
+	 * HFFTY - flight recorder make and model
+	 */
+	public String logger_type;
+	
+	/**
+	 * HFCID
+	 */
+	public String competition_id;
+	
+	@Override
+	public String toString() {
+		return "Pilot = [" + pilot_name + "], "
+				+ "Date = [" + flight_date + "], "
+				+ "Glider = [" + glider_type + ", " + glider_id + "], "
+				+ "Competition ID = [" + competition_id + "], "
+				+ "Logger = [" + logger_type + "]";
+	}
+}
@@ -0,0 +1,69 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import soaringcoach.Flight;
+
+/**
+ * Turns IGC content into the raw fixes and header information of a Flight.
+ * <p>
+ * Implementations are created once and shared between all requests, so they
+ * must be thread-safe. See {@link IgcParserType} for the available ones.
+ */
+public interface IgcParser {
+	
+	/**
+	 * Reads all of <b>in</b>, replacing the fixes in <b>flight</b> and filling
+	 * in the pilot name and flight date found in the headers. Does not close
+	 * the stream.
+	 * 
+	 * @param in
+	 * @param flight
+	 * @return the same Flight object, for good form
+	 * @throws IOException if the content can not be read or parsed
+	 */
+	Flight read(InputStream in, Flight flight) throws IOException;
+	
+	/**
+	 * Like {@link #read(InputStream, Flight)}, for a file on disk. Gives the
+	 * implementation the chance to read the file in the cheapest way it can.
+	 * 
+	 * @param file
+	 * @param flight
+	 * @return the same Flight object, for good form
+	 * @throws IOException if the file can not be read or parsed
+	 */
+	Flight read(File file, Flight flight) throws IOException;
+}
@@ -0,0 +1,70 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.util.Locale;
+
+/**
+ * The available IGC parser backends. Each one has a single shared parser
+ * instance, built when this class is first loaded.
+ * <p>
+ * The default backend can be chosen with the system property
+ * <code>soaringcoach.parser</code> (e.g. -Dsoaringcoach.parser=beanio).
+ */
+public enum IgcParserType {
+	BEANIO, 
+	NATIVE;
+	
+	public static final String DEFAULT_PARSER_PROPERTY = "soaringcoach.parser";
+	
+	private static final IgcParser BEANIO_PARSER = new BeanIOIgcParser();
+	private static final IgcParser NATIVE_PARSER = new NativeIgcParser();
+	
+	public IgcParser getParser() {
+		return this == BEANIO ? BEANIO_PARSER : NATIVE_PARSER;
+	}
+	
+	/**
+	 * Case-insensitive lookup by name, e.g. "beanio" or "native"
+	 * 
+	 * @throws IllegalArgumentException if there is no such backend
+	 */
+	public static IgcParserType fromName(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+	
+	/**
+	 * @return the backend selected by the system property, or NATIVE if it is not set
+	 */
+	public static IgcParserType getDefault() {
+		return fromName(System.getProperty(DEFAULT_PARSER_PROPERTY, NATIVE.name()));
+	}
+}
@@ -0,0 +1,90 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.IOException;
+
+/**
+ * Receives the records that {@link FastIgcReader} picks out of an IGC file.
+ * Default implementations ignore the record, so subclasses only override what
+ * they are interested in.
+ */
+public abstract class IgcRecordHandler {
+	
+	/**
+	 * Called for every well-formed B record. The <b>fix</b> object is re-used
+	 * for the next record, so copy out whatever is needed.
+	 */
+	public void onFix(BRecord fix) throws IOException {}
+	
+	/**
+	 * Called instead of {@link #onFix(BRecord)} for a B record that is too
+	 * short or has garbage in a numeric field - as a logger's last line often
+	 * does when it was cut off. The record is skipped.
+	 */
+	public void onMalformedFix() throws IOException {}
+	
+	/**
+	 * Called with the pilot in charge, as given in the HFPLT header
+	 */
+	public void onPilotName(String pilot_name) throws IOException {}
+	
+	/**
+	 * Called with the flight date from the HFDTE header, formatted as yyyy-MM-dd
+	 */
+	public void onFlightDate(String flight_date) throws IOException {}
+	
+	/**
+	 * Called with the glider type from the HFGTY header, e.g. "Discus2c"
+	 */
+	public void onGliderType(String glider_type) throws IOException {}
+	
+	/**
+	 * Called with the glider registration from the HFGID header
+	 */
+	public void onGliderId(String glider_id) throws IOException {}
+	
+	/**
+	 * Called with the flight recorder make and model from the HFFTY header
+	 */
+	public void onLoggerType(String logger_type) throws IOException {}
+	
+	/**
+	 * Called with the competition ID from the HFCID header
+	 */
+	public void onCompetitionId(String competition_id) throws IOException {}
+	
+	/**
+	 * Called with the extension layout from the I record, which comes before
+	 * the first B record
+	 */
+	public void onExtensionLayout(IgcExtensionLayout layout) throws IOException {}
+}
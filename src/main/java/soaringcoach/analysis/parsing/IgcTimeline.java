@@ -0,0 +1,130 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Turns the UTC times of day in B records into epoch milliseconds. The day
+ * comes from the HFDTE header, and is moved on whenever the time of day
+ * jumps back by more than {@link #ROLLOVER_THRESHOLD_MS} - a flight that
+ * crosses midnight UTC, which in Australia and New Zealand is the middle of
+ * the day. Without an HFDTE header the fixes are placed on 1970-01-01.
+ * <p>
+ * Smaller steps back are glitches in the log, and are left as they are.
+ */
+public class IgcTimeline {
+	public static final long DAY_MS = 24 * 60 * 60 * 1000L;
+	
+	/**
+	 * A time of day more than this much before the previous one is taken to
+	 * be on the next day
+	 */
+	public static final long ROLLOVER_THRESHOLD_MS = DAY_MS / 2;
+	
+	private static final DateTimeFormatter TIME_OF_DAY = 
+			DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneOffset.UTC);
+	
+	private long day_start = 0;
+	private long last_time_of_day = -1;
+	
+	private long first_day_start = 0;
+	private long first_time_of_day = -1;
+	
+	/**
+	 * Places the fixes that follow on the given day. Ignored once the first
+	 * fix has been placed, or if the date can't be parsed.
+	 * 
+	 * @param flight_date yyyy-MM-dd, as the parsers give the HFDTE header
+	 */
+	public void setFlightDate(String flight_date) {
+		if (last_time_of_day >= 0 || flight_date == null) {
+			return;
+		}
+		
+		try {
+			day_start = LocalDate.parse(flight_date).toEpochDay() * DAY_MS;
+		} catch (DateTimeParseException e) {
+			// Keep the day we have
+		}
+	}
+	
+	/**
+	 * @param time_of_day_ms milliseconds since midnight UTC of the next fix
+	 * @return epoch milliseconds of the fix
+	 */
+	public long toEpochMillis(long time_of_day_ms) {
+		if (last_time_of_day < 0) {
+			first_day_start = day_start;
+			first_time_of_day = time_of_day_ms;
+		} else if (isRollover(last_time_of_day, time_of_day_ms)) {
+			day_start += DAY_MS;
+		}
+		last_time_of_day = time_of_day_ms;
+		
+		return day_start + time_of_day_ms;
+	}
+	
+	/**
+	 * For timelines that were started separately on the same day, e.g. for
+	 * chunks of one file: what to add to the times placed by this timeline so
+	 * that they follow on from <b>previous</b>, as if both had been one.
+	 * 
+	 * @param previous timeline of the fixes just before this one's
+	 * @param previous_offset what was added to the times of <b>previous</b>
+	 */
+	long offsetToFollow(IgcTimeline previous, long previous_offset) {
+		if (previous.last_time_of_day < 0 || first_time_of_day < 0) {
+			return previous_offset;
+		}
+		
+		long day = previous.day_start + previous_offset;
+		if (isRollover(previous.last_time_of_day, first_time_of_day)) {
+			day += DAY_MS;
+		}
+		return day - first_day_start;
+	}
+	
+	private static boolean isRollover(long last_time_of_day, long time_of_day) {
+		return time_of_day < last_time_of_day - ROLLOVER_THRESHOLD_MS;
+	}
+	
+	/**
+	 * @return HH:mm:ss, UTC like the times in the IGC file
+	 */
+	public static String formatTimeOfDay(long epoch_ms) {
+		return TIME_OF_DAY.format(Instant.ofEpochMilli(epoch_ms));
+	}
+}
@@ -0,0 +1,196 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import soaringcoach.Flight;
+import soaringcoach.analysis.FlightTrack;
+
+/**
+ * Reads IGC files with the byte-level {@link FastIgcReader}. Files are memory
+ * mapped. Streams - uploads, and whatever comes out of a compressed file - are
+ * read into a buffer that each thread keeps and re-uses from one stream to the
+ * next, and parsed from there like a file. The readers are not thread-safe
+ * either, so each thread gets its own.
+ * <p>
+ * Files and streams of at least <b>parallel_threshold</b> bytes are cut into
+ * chunks that are parsed on a ForkJoinPool, see {@link ParallelIgcReader}.
+ * The resulting track is the same as parsing them in one go. With parallel
+ * parsing off, streams are parsed as they are read, through the reader's own
+ * buffer, rather than read in whole first.
+ */
+public class NativeIgcParser implements IgcParser {
+	/**
+	 * About 60 000 B records, or 16 hours of one second fixes
+	 */
+	public static final long DEFAULT_PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+	
+	private static final int INITIAL_STREAM_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * A stream buffer that had to grow past this is not kept for the next
+	 * stream - most IGC files are well under it
+	 */
+	private static final int MAX_POOLED_STREAM_BUFFER_SIZE = 2 * 1024 * 1024;
+	
+	private final ThreadLocal<FastIgcReader> readers = new ThreadLocal<FastIgcReader>() {
+		@Override
+		protected FastIgcReader initialValue() {
+			return new FastIgcReader();
+		}
+	};
+	
+	private final ThreadLocal<ByteBuffer> stream_buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(INITIAL_STREAM_BUFFER_SIZE);
+		}
+	};
+	
+	private final ForkJoinPool pool;
+	private final long parallel_threshold;
+	private final int chunk_size;
+	
+	/**
+	 * Parses large files on the common ForkJoinPool
+	 */
+	public NativeIgcParser() {
+		this(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD, ParallelIgcReader.DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * @param pool to parse large files on
+	 * @param parallel_threshold file size in bytes from which files are parsed
+	 *            in parallel; Long.MAX_VALUE to never do so
+	 * @param chunk_size number of bytes, give or take a line, each thread
+	 *            parses at a time
+	 */
+	public NativeIgcParser(ForkJoinPool pool, long parallel_threshold, int chunk_size) {
+		if (chunk_size < 1) {
+			throw new IllegalArgumentException("chunk_size must be positive");
+		}
+		this.pool = pool;
+		this.parallel_threshold = parallel_threshold;
+		this.chunk_size = chunk_size;
+	}
+
+	@Override
+	public Flight read(InputStream in, Flight f) throws IOException {
+		FlightTrack track = prepareTrack(f);
+		
+		if (parallel_threshold == Long.MAX_VALUE) {
+			FlightTrackBuilder builder = new FlightTrackBuilder(track, null);
+			readers.get().read(in, builder);
+			builder.copyTo(f);
+		} else {
+			//Taken out while in use, in case this thread picks up another read while it waits on the chunks
+			ByteBuffer buffer = stream_buffers.get();
+			stream_buffers.remove();
+			
+			buffer = readFully(in, buffer);
+			read(buffer, f);
+			if (buffer.capacity() <= MAX_POOLED_STREAM_BUFFER_SIZE) {
+				stream_buffers.set(buffer);
+			}
+		}
+		
+		f.igc_points.trimToSize();
+		f.igc_points.resolve();
+		return f;
+	}
+
+	@Override
+	public Flight read(File file, Flight f) throws IOException {
+		prepareTrack(f);
+		read(FastIgcReader.map(file), f);
+		
+		f.igc_points.trimToSize();
+		f.igc_points.resolve();
+		return f;
+	}
+	
+	/**
+	 * Parses all of <b>data</b> into the flight's empty track, in parallel
+	 * if there is enough of it
+	 */
+	private void read(ByteBuffer data, Flight f) throws IOException {
+		if (data.remaining() >= parallel_threshold) {
+			new ParallelIgcReader(pool, chunk_size).read(data, f);
+		} else {
+			FlightTrackBuilder builder = new FlightTrackBuilder(f.igc_points, null);
+			readers.get().read(data, builder);
+			builder.copyTo(f);
+		}
+	}
+	
+	/**
+	 * Reads the rest of <b>in</b> into <b>buffer</b>, or a bigger one if it
+	 * doesn't fit
+	 * 
+	 * @return the buffer it was read into, flipped for reading
+	 */
+	private static ByteBuffer readFully(InputStream in, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (true) {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			
+			int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			if (read < 0) {
+				break;
+			}
+			buffer.position(buffer.position() + read);
+		}
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * @return the flight's track, emptied, or a new one if it has none - with
+	 *         the flight's count of malformed B records set back to 0
+	 */
+	private static FlightTrack prepareTrack(Flight f) {
+		FlightTrack track = f.igc_points != null ? f.igc_points : new FlightTrack();
+		track.clear();
+		f.igc_points = track;
+		f.malformed_fixes = 0;
+		return track;
+	}
+}
@@ -0,0 +1,193 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import soaringcoach.Flight;
+import soaringcoach.analysis.FlightTrack;
+
+/**
+ * Parses a large IGC file held in a ByteBuffer on several threads:
+ * <ol>
+ * <li>the headers, up to the first B record, are read first - they hold the
+ * I record that all chunks need</li>
+ * <li>the rest is cut into chunks of about <b>chunk_size</b> bytes at line
+ * boundaries, and each chunk is parsed into a FlightTrack of its own on the
+ * ForkJoinPool</li>
+ * <li>the chunks are stitched together in file order. Each chunk's fixes are
+ * moved onto the day its first fix follows on from the chunk before - in case
+ * the flight crossed midnight UTC - and bearing and turn rate are worked out
+ * again across each seam</li>
+ * </ol>
+ * The result is exactly what parsing the file sequentially gives. A file with
+ * an I record or HFDTE header after its first B record is unusual enough that
+ * it is simply parsed again sequentially.
+ */
+class ParallelIgcReader {
+	/**
+	 * About 15 000 B records
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	
+	private final ForkJoinPool pool;
+	private final int chunk_size;
+	
+	ParallelIgcReader(ForkJoinPool pool, int chunk_size) {
+		this.pool = pool;
+		this.chunk_size = chunk_size;
+	}
+	
+	/**
+	 * Parses everything between the position and the limit of <b>data</b>
+	 * into <b>f</b>. The flight's track must be empty, and its count of
+	 * malformed B records 0.
+	 * 
+	 * @throws IOException if a chunk can't be parsed
+	 */
+	void read(ByteBuffer data, Flight f) throws IOException {
+		FlightTrack track = f.igc_points;
+		
+		ByteBuffer headers = data.duplicate();
+		FlightTrackBuilder header_builder = new FlightTrackBuilder(track, null);
+		new FastIgcReader().readHeaders(headers, header_builder);
+		int first_fix = headers.position();
+		
+		List<ChunkTask> chunks = split(data, first_fix, header_builder, track.getExtensions());
+		List<Future<FlightTrackBuilder>> results = pool.invokeAll(chunks);
+		
+		List<FlightTrackBuilder> builders = new ArrayList<>();
+		for (Future<FlightTrackBuilder> result : results) {
+			FlightTrackBuilder builder = get(result);
+			if (builder.saw_extension_layout || builder.saw_flight_date) {
+				readSequentially(data, f);
+				return;
+			}
+			builders.add(builder);
+		}
+		
+		header_builder.copyTo(f);
+		
+		IgcTimeline previous = header_builder.timeline;
+		long time_offset = 0;
+		for (FlightTrackBuilder builder : builders) {
+			time_offset = builder.timeline.offsetToFollow(previous, time_offset);
+			track.append(builder.track, time_offset);
+			builder.copyTo(f);
+			
+			if (builder.track.size() > 0) {
+				previous = builder.timeline;
+			}
+		}
+	}
+	
+	private static void readSequentially(ByteBuffer data, Flight f) throws IOException {
+		f.igc_points.clear();
+		FlightTrackBuilder builder = new FlightTrackBuilder(f.igc_points, null);
+		new FastIgcReader().read(data.duplicate(), builder);
+		builder.copyTo(f);
+	}
+	
+	/**
+	 * Cuts [start, limit) into chunks that each end just after a line terminator
+	 * (or at the limit)
+	 */
+	private List<ChunkTask> split(ByteBuffer data, int start, FlightTrackBuilder headers, IgcExtension[] extensions) {
+		List<ChunkTask> chunks = new ArrayList<>();
+		int end = data.limit();
+		
+		while (start < end) {
+			int chunk_end = (int) Math.min((long) start + chunk_size, end);
+			while (chunk_end < end && data.get(chunk_end - 1) != '\n' && data.get(chunk_end - 1) != '\r') {
+				chunk_end++;
+			}
+			
+			ByteBuffer chunk = data.duplicate();
+			chunk.limit(chunk_end).position(start);
+			chunks.add(new ChunkTask(chunk, headers, extensions));
+			
+			start = chunk_end;
+		}
+		
+		return chunks;
+	}
+	
+	private static FlightTrackBuilder get(Future<FlightTrackBuilder> result) throws IOException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Problem reading IGC Data", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading IGC Data", e);
+		}
+	}
+	
+	/**
+	 * Parses one chunk into a track of its own
+	 */
+	private static class ChunkTask implements Callable<FlightTrackBuilder> {
+		private final ByteBuffer chunk;
+		private final FlightTrackBuilder headers;
+		private final IgcExtension[] extensions;
+		
+		ChunkTask(ByteBuffer chunk, FlightTrackBuilder headers, IgcExtension[] extensions) {
+			this.chunk = chunk;
+			this.headers = headers;
+			this.extensions = extensions;
+		}
+
+		@Override
+		public FlightTrackBuilder call() throws IOException {
+			//B records are a little over 35 bytes, usually more with extensions
+			FlightTrack track = new FlightTrack(chunk.remaining() / 40);
+			track.requestExtensions(Arrays.asList(extensions));
+			
+			FlightTrackBuilder builder = new FlightTrackBuilder(track, headers);
+			new FastIgcReader().read(chunk, builder);
+			
+			//Get the trig out of the way here, where it runs alongside the other chunks
+			track.resolve();
+			return builder;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis.parsing;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.beanio.types.TypeConversionException;
+import org.beanio.types.TypeHandler;
+
+/**
+ * Converts the HHmmss time of a B record to a Date on 1970-01-01, in the
+ * default time zone - the same values a lenient SimpleDateFormat("HHmmss")
+ * gives. BeanIO's own date handler shares one SimpleDateFormat between all
+ * readers of a StreamFactory, which breaks when the factory is shared between
+ * threads; this handler keeps no state.
+ */
+public class TimeOfDayTypeHandler implements TypeHandler {
+	/**
+	 * Midnight on 1970-01-01 in the default time zone, in epoch milliseconds:
+	 * what the time of day is added to. Worked out once, rather than per fix.
+	 */
+	static final long TIME_OF_DAY_BASE = getTimeOfDayBase();
+	
+	@Override
+	public Object parse(String text) throws TypeConversionException {
+		if (text == null || text.isEmpty()) {
+			return null;
+		}
+		
+		if (text.length() != 6) {
+			throw new TypeConversionException("Invalid date");
+		}
+		
+		int seconds = 0;
+		int[] multipliers = {3600, 60, 1};
+		for (int i = 0; i < 3; i++) {
+			char tens = text.charAt(i * 2);
+			char units = text.charAt(i * 2 + 1);
+			
+			if (tens < '0' || tens > '9' || units < '0' || units > '9') {
+				throw new TypeConversionException("Invalid date");
+			}
+			seconds += ((tens - '0') * 10 + (units - '0')) * multipliers[i];
+		}
+		
+		return new Date(TIME_OF_DAY_BASE + seconds * 1000L);
+	}
+
+	@Override
+	public String format(Object value) {
+		if (value == null) {
+			return null;
+		}
+		
+		Calendar c = Calendar.getInstance();
+		c.setTime((Date) value);
+		return String.format("%02d%02d%02d", 
+				c.get(Calendar.HOUR_OF_DAY), 
+				c.get(Calendar.MINUTE), 
+				c.get(Calendar.SECOND));
+	}
+
+	@Override
+	public Class<?> getType() {
+		return Date.class;
+	}
+	
+	private static long getTimeOfDayBase() {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set(1970, Calendar.JANUARY, 1, 0, 0, 0);
+		return c.getTimeInMillis();
+	}
+}
@@ -65,6 +65,7 @@ public class SoaringCoach {
 		 System.out.println("Total Track Distance (km): " + Math.round(flight.total_track_distance)/1000.0);
 		 System.out.println("Total Flight Duration (hours): " + (Math.round((flight.getDuration()/3600)*10))/10.0);
 		 System.out.println("Number of GNSS Fixes: " + flight.igc_points.size());
+		 System.out.println("Fixes dropped: " + flight.fix_cleaning);
 		 System.out.println("Number of circles: " + flight.circles.size());
 		 System.out.println("Number of thermals: " + flight.thermals.size());
 		 System.out.println("Number of straight phases: " + flight.straight_phases.size());
@@ -31,8 +31,9 @@
 package soaringcoach.rest;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -45,24 +46,120 @@ import soaringcoach.Flight;
 import soaringcoach.FlightAnalyser;
 import soaringcoach.FlightDebriefing;
 import soaringcoach.analysis.AnalysisException;
+import soaringcoach.analysis.AnalysisMetrics;
+import soaringcoach.analysis.FlightTrack;
+import soaringcoach.analysis.FilterType;
+import soaringcoach.analysis.GeometryMode;
 import soaringcoach.analysis.PolarVector;
+import soaringcoach.analysis.StageMetrics;
+import soaringcoach.analysis.parsing.IgcParser;
+import soaringcoach.analysis.parsing.IgcParserType;
 
 @CrossOrigin
 @RestController
 public class RequestMappings {
+	
+	/**
+	 * IGC parser backend used when an upload doesn't ask for one, e.g.
+	 * --soaringcoach.parser=beanio
+	 */
+	@Value("${" + IgcParserType.DEFAULT_PARSER_PROPERTY + ":native}")
+	private String default_parser;
+	
+	/**
+	 * Thermal geometry used when an upload doesn't ask for one, e.g.
+	 * --soaringcoach.geometry=local_plane
+	 */
+	@Value("${" + GeometryMode.DEFAULT_GEOMETRY_PROPERTY + ":spherical}")
+	private String default_geometry;
+	
+	/**
+	 * Signal filter, and its window in fixes, used when an upload doesn't ask
+	 * for one, e.g. --soaringcoach.filter=median --soaringcoach.filter.window=5
+	 */
+	@Value("${" + FilterType.DEFAULT_FILTER_PROPERTY + ":none}")
+	private String default_filter;
+	
+	@Value("${" + FilterType.DEFAULT_WINDOW_PROPERTY + ":" + FilterType.DEFAULT_WINDOW + "}")
+	private int default_filter_window;
 
+	/**
+	 * Analyses an uploaded IGC file, which may be gzip, zip or bzip2
+	 * compressed - it is unpacked as it is parsed. The thermal geometry and
+	 * the signal filter can be chosen per upload, see {@link GeometryMode}
+	 * and {@link FilterType}.
+	 */
 	@CrossOrigin
     @RequestMapping(name="/upload", method=RequestMethod.POST)
-    public @ResponseBody FlightDebriefing handleFileUpload(@RequestParam(name="file") MultipartFile file) throws AnalysisException, IOException {
-    	FlightAnalyser fa = new FlightAnalyser();
+    public @ResponseBody FlightDebriefing handleFileUpload(
+    		@RequestParam(name="file") MultipartFile file, 
+    		@RequestParam(name="parser", required=false) String parser, 
+    		@RequestParam(name="geometry", required=false) String geometry, 
+    		@RequestParam(name="filter", required=false) String filter, 
+    		@RequestParam(name="filter_window", required=false) Integer filter_window) throws AnalysisException, IOException {
+    	
+    	FlightAnalyser fa = new FlightAnalyser(getParser(parser != null ? parser : default_parser));
+    	fa.setGeometryMode(getGeometryMode(geometry != null ? geometry : default_geometry));
+    	fa.setSignalFilter(
+    			getFilterType(filter != null ? filter : default_filter), 
+    			filter_window != null ? filter_window : default_filter_window);
     	
 		Flight f = fa.addAndAnalyseFlight(file.getInputStream());
     	
-		f.igc_points = new ArrayList<>();
+		f.igc_points = new FlightTrack();
 		
         return f.flightDebriefing;
     }
     
+	/**
+	 * @param name
+	 * @return the shared parser instance of the named backend
+	 * @throws AnalysisException if there is no such backend
+	 */
+	private IgcParser getParser(String name) throws AnalysisException {
+		try {
+			return IgcParserType.fromName(name).getParser();
+		} catch (IllegalArgumentException e) {
+			throw new AnalysisException("Unknown IGC parser [" + name + "]", e);
+		}
+	}
+	
+	/**
+	 * @param name
+	 * @return the named geometry mode
+	 * @throws AnalysisException if there is no such mode
+	 */
+	private GeometryMode getGeometryMode(String name) throws AnalysisException {
+		try {
+			return GeometryMode.fromName(name);
+		} catch (IllegalArgumentException e) {
+			throw new AnalysisException("Unknown geometry mode [" + name + "]", e);
+		}
+	}
+	
+	/**
+	 * @param name
+	 * @return the named signal filter
+	 * @throws AnalysisException if there is no such filter
+	 */
+	private FilterType getFilterType(String name) throws AnalysisException {
+		try {
+			return FilterType.fromName(name);
+		} catch (IllegalArgumentException e) {
+			throw new AnalysisException("Unknown signal filter [" + name + "]", e);
+		}
+	}
+    
+	/**
+	 * Timings, allocation and throughput of each analysis since the app
+	 * started, by analysis - see {@link StageMetrics.Snapshot}
+	 */
+	@CrossOrigin
+	@RequestMapping(value="/metrics", method=RequestMethod.GET)
+	public Map<String, StageMetrics.Snapshot> handleMetrics() {
+		return AnalysisMetrics.getDefault().snapshot();
+	}
+    
 	@CrossOrigin
     @RequestMapping(name="/health", method=RequestMethod.GET)
     public PolarVector handleHealthCheck(@RequestParam(name="echo", defaultValue = "42") long echo) {
@@ -31,11 +31,12 @@
 package soaringcoach;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 
 import soaringcoach.analysis.AnalysisException;
 import soaringcoach.analysis.GNSSPoint;
+import soaringcoach.analysis.parsing.IgcParserType;
 
 public class FlightAnalyserTestFacade extends FlightAnalyser {
 	
@@ -55,9 +56,18 @@ public class FlightAnalyserTestFacade extends FlightAnalyser {
 		
 		Flight f = new Flight();
 		
-		FileReader file = new FileReader(new File(filename));
+		try (FileInputStream in = new FileInputStream(new File(filename))) {
+			f = new FlightAnalyser(IgcParserType.BEANIO.getParser()).readIgcFile(in, f);
+		}
 		
-		f = new FlightAnalyser().readIgcFileBeanIO(file, f);
+		return f;
+	}
+	
+	public static Flight loadFromFileFast(String filename) throws IOException {
+		
+		Flight f = new Flight();
+		
+		f = new FlightAnalyser(IgcParserType.NATIVE.getParser()).readIgcFile(new File(filename), f);
 		
 		return f;
 	}
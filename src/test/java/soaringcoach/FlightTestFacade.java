@@ -30,13 +30,13 @@
 
 package soaringcoach;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import soaringcoach.analysis.GNSSPoint;
 
 public class FlightTestFacade extends Flight {
 
-	public FlightTestFacade(ArrayList<GNSSPoint> fixes) {
+	public FlightTestFacade(List<GNSSPoint> fixes) {
 		super(fixes);
 	}
 
@@ -33,6 +33,7 @@ package soaringcoach;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -50,7 +51,7 @@ public class TestDetectCircleCompleted {
 	 */
 	@Test
 	public void testTerminatorLeftW() throws Exception {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testTerminatorLeftW.igc").igc_points;
@@ -91,7 +92,7 @@ public class TestDetectCircleCompleted {
 	 */
 	@Test
 	public void testTerminatorLeftE() throws Exception {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testTerminatorLeftE.igc").igc_points;
@@ -132,7 +133,7 @@ public class TestDetectCircleCompleted {
 	 */
 	@Test
 	public void testTerminatorRightW() throws Exception {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testTerminatorRightW.igc").igc_points;
@@ -173,7 +174,7 @@ public class TestDetectCircleCompleted {
 	 */
 	@Test
 	public void testTerminatorRightE() throws Exception {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testTerminatorRightE.igc").igc_points;
@@ -35,6 +35,7 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -104,7 +105,7 @@ public class TestFlightAnalyser {
 	 */
 	@Test
 	public void testCalculateTrackCourseTwoPoints() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testCalculateTrackCourseTwoPoints.igc").igc_points;
@@ -138,7 +139,7 @@ public class TestFlightAnalyser {
 	 */
 	@Test
 	public void testCalculateTrackCourseCircleLatLong() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testCalculateTrackCourseCircleLatLong.igc").igc_points;
@@ -34,7 +34,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -52,7 +52,7 @@ public class TestThermalAnalysis {
 	 */
 	@Test
 	public void testThermalDetectionPositive() throws Exception {
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/thermal_detection_positive_test.igc").igc_points;
 		
 		Flight f = new FlightTestFacade(igc_points);
@@ -0,0 +1,203 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightTestFacade;
+
+public class TestAnalysisMetrics {
+	
+	/**
+	 * Runs are counted and timed, and the fixes they went through add up;
+	 * analyses already run are counted as skipped
+	 */
+	@Test
+	public void testRecordsRuns() throws AnalysisException {
+		AnalysisMetrics.getDefault().get(Timed.class);
+		StageMetrics.Snapshot before = AnalysisMetrics.getDefault().snapshot().get("Timed");
+		
+		Timed timed = new Timed();
+		timed.analyse(makeFlight(100));
+		timed.analyse(makeFlight(300));
+		Flight done = makeFlight(100);
+		done.is_distance_analysis_complete = true;
+		timed.analyse(done);
+		
+		StageMetrics.Snapshot after = AnalysisMetrics.getDefault().snapshot().get("Timed");
+		assertEquals(2, after.runs - before.runs);
+		assertEquals(1, after.skipped - before.skipped);
+		assertEquals(400, after.fixes - before.fixes);
+		assertTrue(after.total_ms - before.total_ms >= 10);
+		assertTrue(after.max_ms >= 5);
+		assertTrue(after.fixes_per_second > 0);
+		
+		long counted = 0;
+		for (long runs : after.histogram) {
+			counted += runs;
+		}
+		assertEquals(after.runs, counted);
+		assertTrue(after.p50_ms >= 5);
+	}
+	
+	@Test
+	public void testCountsFailures() {
+		StageMetrics metrics = AnalysisMetrics.getDefault().get(Failing.class);
+		long failed = metrics.snapshot().failed;
+		try {
+			new Failing().analyse(makeFlight(10));
+			fail("Expected the failure");
+		} catch (AnalysisException e) {
+			//expected
+		}
+		assertEquals(failed + 1, metrics.snapshot().failed);
+	}
+	
+	@Test
+	public void testAllocatedBytes() throws AnalysisException {
+		Assume.assumeTrue(AnalysisMetrics.getCurrentThreadAllocatedBytes() >= 0);
+		StageMetrics metrics = AnalysisMetrics.getDefault().get(Allocating.class);
+		long allocated = metrics.snapshot().allocated_bytes;
+		
+		new Allocating().analyse(makeFlight(10));
+		assertTrue(metrics.snapshot().allocated_bytes - allocated >= 1 << 20);
+	}
+	
+	@Test
+	public void testBuckets() {
+		assertEquals(0, StageMetrics.getBucket(500));
+		assertEquals(1, StageMetrics.getBucket(TimeUnit.MICROSECONDS.toNanos(1)));
+		assertEquals(10, StageMetrics.getBucket(TimeUnit.MICROSECONDS.toNanos(1000)));
+		assertEquals(StageMetrics.BUCKETS - 1, StageMetrics.getBucket(Long.MAX_VALUE));
+		assertEquals(1.024, StageMetrics.getBucketMillis(10), 1e-9);
+	}
+	
+	/**
+	 * Lines over the limit are dropped, and counted on the next one printed
+	 */
+	@Test
+	public void testDebugSinkRateLimited() throws InterruptedException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DebugSink sink = new DebugSink(new PrintStream(bytes, true), true, 3);
+		for (int i = 0; i < 10; i++) {
+			sink.log("line " + i);
+		}
+		assertEquals(3, countLines(bytes));
+		
+		Thread.sleep(1100);
+		sink.log("later");
+		String out = bytes.toString();
+		assertTrue(out, out.contains("(7 lines dropped)"));
+		assertTrue(out, out.contains(" later"));
+	}
+	
+	@Test
+	public void testDebugSinkOff() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DebugSink sink = new DebugSink(new PrintStream(bytes, true), false, 3);
+		sink.log("line");
+		assertEquals(0, bytes.size());
+	}
+	
+	private int countLines(ByteArrayOutputStream bytes) {
+		String out = bytes.toString().trim();
+		return out.isEmpty() ? 0 : out.split("\n").length;
+	}
+	
+	private Flight makeFlight(int fixes) {
+		List<GNSSPoint> points = new ArrayList<>();
+		for (int i = 0; i < fixes; i++) {
+			points.add(GNSSPoint.createGNSSPoint(null, new Date(i * 1000L), -34.0, 18.5, "A", 1000, 1000, null));
+		}
+		return new FlightTestFacade(points);
+	}
+	
+	/**
+	 * Takes 5 ms, and counts as run when the flight has its distance
+	 */
+	private static class Timed extends AAnalysis {
+		@Override
+		protected Flight performAnalysis(Flight flight) throws AnalysisException {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new AnalysisException("Interrupted", e);
+			}
+			return flight;
+		}
+
+		@Override
+		public boolean hasBeenRun(Flight flight) {
+			return flight.is_distance_analysis_complete;
+		}
+
+		@Override
+		public EnumSet<FlightData> getInputs() {
+			return EnumSet.of(FlightData.FIXES);
+		}
+
+		@Override
+		public EnumSet<FlightData> getOutputs() {
+			return EnumSet.of(FlightData.DISTANCE);
+		}
+	}
+	
+	private static class Failing extends Timed {
+		@Override
+		protected Flight performAnalysis(Flight flight) throws AnalysisException {
+			throw new AnalysisException("broken", null);
+		}
+	}
+	
+	private static class Allocating extends Timed {
+		volatile byte[] made;
+		
+		@Override
+		protected Flight performAnalysis(Flight flight) {
+			made = new byte[2 << 20];
+			return flight;
+		}
+	}
+}
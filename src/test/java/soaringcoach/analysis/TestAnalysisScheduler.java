@@ -0,0 +1,247 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+
+public class TestAnalysisScheduler {
+	
+	/**
+	 * The order comes from what the analyses need, not the order they are given in
+	 */
+	@Test
+	public void testOrderFromData() {
+		CirclingPercentageAnalysis percentage = new CirclingPercentageAnalysis();
+		ThermalWindCentringAnalysis thermals = new ThermalWindCentringAnalysis();
+		CirclesAnalysis circles = new CirclesAnalysis();
+		FixCleaningAnalysis cleaning = new FixCleaningAnalysis();
+		AnalysisScheduler scheduler = new AnalysisScheduler(percentage, thermals, circles, cleaning);
+		
+		assertEquals(Arrays.asList(cleaning, circles, percentage, thermals), scheduler.getOrder());
+		assertEquals(Arrays.<AAnalysis>asList(circles, cleaning), scheduler.getPredecessors(percentage));
+		assertEquals(Arrays.<AAnalysis>asList(circles, cleaning), scheduler.getPredecessors(thermals));
+		assertTrue(scheduler.getPredecessors(cleaning).isEmpty());
+	}
+	
+	/**
+	 * Two analyses that don't wait on each other must run at the same time:
+	 * each only finishes once the other has started
+	 */
+	@Test(timeout = 10000)
+	public void testIndependentStagesOverlap() throws AnalysisException {
+		CountDownLatch both_started = new CountDownLatch(2);
+		Stage a = new Stage(EnumSet.noneOf(FlightData.class), EnumSet.of(FlightData.CIRCLES));
+		a.latch = both_started;
+		Stage b = new Stage(EnumSet.noneOf(FlightData.class), EnumSet.of(FlightData.THERMALS));
+		b.latch = both_started;
+		Stage c = new Stage(EnumSet.of(FlightData.CIRCLES, FlightData.THERMALS), EnumSet.of(FlightData.WIND));
+		
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			new AnalysisScheduler(pool, a, b, c).run(new FlightTestFacade(null));
+		} finally {
+			pool.shutdown();
+		}
+		
+		assertTrue(a.overlapped && b.overlapped);
+		assertEquals(1, c.runs);
+	}
+	
+	/**
+	 * The slow chain is the critical path, not the quick analysis beside it
+	 */
+	@Test
+	public void testCriticalPath() throws AnalysisException {
+		Stage slow = new Stage(EnumSet.noneOf(FlightData.class), EnumSet.of(FlightData.CIRCLES));
+		slow.sleep = 60;
+		Stage after = new Stage(EnumSet.of(FlightData.CIRCLES), EnumSet.of(FlightData.THERMALS));
+		after.sleep = 20;
+		Stage quick = new Stage(EnumSet.noneOf(FlightData.class), EnumSet.of(FlightData.WIND));
+		
+		AnalysisScheduler.Report report = new AnalysisScheduler(quick, after, slow).run(new FlightTestFacade(null));
+		
+		assertEquals(Arrays.<AAnalysis>asList(slow, after), report.getCriticalPath());
+		assertTrue(report.getCriticalPathNanos() >= TimeUnit.MILLISECONDS.toNanos(80));
+		assertTrue(report.getNanos(slow) >= TimeUnit.MILLISECONDS.toNanos(60));
+		assertTrue(report.getWallClockNanos() >= report.getCriticalPathNanos());
+	}
+	
+	/**
+	 * Nothing waiting for a failed analysis is run, and its failure is what
+	 * is thrown
+	 */
+	@Test
+	public void testFailureStopsDependents() {
+		Stage failing = new Stage(EnumSet.noneOf(FlightData.class), EnumSet.of(FlightData.CIRCLES));
+		failing.failure = new AnalysisException("broken", null);
+		Stage dependent = new Stage(EnumSet.of(FlightData.CIRCLES), EnumSet.of(FlightData.THERMALS));
+		
+		try {
+			new AnalysisScheduler(failing, dependent).run(new FlightTestFacade(null));
+			fail("Expected the failure");
+		} catch (AnalysisException e) {
+			assertSame(failing.failure, e);
+		}
+		assertEquals(0, dependent.runs);
+	}
+	
+	@Test
+	public void testRejectsBadGraphs() {
+		try {
+			new AnalysisScheduler(new ThermalAnalysis(), new ThermalWindCentringAnalysis());
+			fail("Two analyses make the thermals");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		
+		try {
+			new AnalysisScheduler(
+					new Stage(EnumSet.of(FlightData.CIRCLES), EnumSet.of(FlightData.THERMALS)),
+					new Stage(EnumSet.of(FlightData.THERMALS), EnumSet.of(FlightData.CIRCLES)));
+			fail("The analyses wait on each other");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+	
+	/**
+	 * Scheduled, the full analysis comes out as when run one after the other
+	 */
+	@Test
+	public void testSameAsSequential() throws Exception {
+		String file = "src/test/resources/5c6c3ke1.igc";
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(file).igc_points;
+		Flight sequential = new FlightTestFacade(igc_points);
+		for (AAnalysis a : fullAnalysis()) {
+			a.analyse(sequential);
+		}
+		
+		igc_points = FlightAnalyserTestFacade.loadFromFile(file).igc_points;
+		Flight scheduled = new FlightTestFacade(igc_points);
+		List<AAnalysis> analyses = fullAnalysis();
+		new AnalysisScheduler(analyses.toArray(new AAnalysis[0])).run(scheduled);
+		
+		assertTrue(scheduled.isFlightDebriefingAnalysisComplete);
+		assertEquals(sequential.circles.size(), scheduled.circles.size());
+		assertEquals(sequential.thermals.size(), scheduled.thermals.size());
+		assertEquals(sequential.straight_phases.size(), scheduled.straight_phases.size());
+		assertEquals(sequential.percentageTimeCircling, scheduled.percentageTimeCircling, 0);
+		assertEquals(sequential.total_track_distance, scheduled.total_track_distance, 0);
+	}
+	
+	private List<AAnalysis> fullAnalysis() {
+		return Arrays.<AAnalysis>asList(
+				new FixCleaningAnalysis(),
+				new CirclesAnalysis(),
+				new CirclingPercentageAnalysis(),
+				new ThermalAnalysis(),
+				new WindAnalysis(),
+				new CentringAnalysis(),
+				new StraightPhasesAnalysis(),
+				new DistanceAnalysis(),
+				new FlightDebriefingAnalysis());
+	}
+	
+	/**
+	 * Needs and makes whatever it is told to, without touching the flight
+	 */
+	private static class Stage extends AAnalysis {
+		private final EnumSet<FlightData> inputs;
+		private final EnumSet<FlightData> outputs;
+		long sleep = 0;
+		CountDownLatch latch = null;
+		AnalysisException failure = null;
+		volatile boolean overlapped = false;
+		volatile int runs = 0;
+		
+		Stage(EnumSet<FlightData> inputs, EnumSet<FlightData> outputs) {
+			this.inputs = inputs;
+			this.outputs = outputs;
+		}
+
+		@Override
+		protected Flight performAnalysis(Flight flight) throws AnalysisException {
+			runs++;
+			if (failure != null) {
+				throw failure;
+			}
+			try {
+				if (latch != null) {
+					latch.countDown();
+					overlapped = latch.await(5, TimeUnit.SECONDS);
+				}
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				throw new AnalysisException("Interrupted", e);
+			}
+			return flight;
+		}
+
+		@Override
+		public boolean hasBeenRun(Flight flight) {
+			return false;
+		}
+		
+		/**
+		 * What the stage makes isn't really on the flight, so it needs nothing
+		 * to be there
+		 */
+		@Override
+		protected void checkPreconditions(Flight flight) {
+		}
+
+		@Override
+		public EnumSet<FlightData> getInputs() {
+			return inputs;
+		}
+
+		@Override
+		public EnumSet<FlightData> getOutputs() {
+			return outputs;
+		}
+	}
+}
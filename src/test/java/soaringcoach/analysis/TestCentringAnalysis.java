@@ -36,6 +36,8 @@ import static org.junit.Assert.assertTrue;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -67,7 +69,7 @@ public class TestCentringAnalysis {
 				new PolarVector(79.6, 295),
 				new PolarVector(68.0, 194)};
 		
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testCorrectionDetectionBearingChanged.igc").igc_points;
 		Flight f = new FlightTestFacade(igc_points);
 		
@@ -217,4 +219,47 @@ public class TestCentringAnalysis {
 			i += 1;
 		}		
 	}
+	
+	/**
+	 * Wind and centring work from the circles' cached start coordinates, and
+	 * never need a GNSSPoint for a circle: circles made from their
+	 * coordinates alone, with no start or end point, come out with their
+	 * drift and correction vectors in both geometry modes. How many bytes
+	 * the passes allocate per circle is measured by
+	 * soaringcoach.benchmark.CentringAllocationBenchmark.
+	 */
+	@Test
+	public void testNoPointsPerCircle() throws Exception {
+		for (GeometryMode mode : GeometryMode.values()) {
+			Flight f = makeSteadyThermalFlight(10, mode);
+			new WindAnalysis().performAnalysis(f);
+			new CentringAnalysis().performAnalysis(f);
+			
+			for (Circle c : f.circles) {
+				assertTrue(mode + ": no start point", c.startPoint == null);
+				assertTrue(mode + ": no end point", c.endPoint == null);
+				assertTrue(mode + ": drift", c.drift_vector != null);
+				assertTrue(mode + ": steady circles need no correction", c.correction_vector.size == 0);
+			}
+		}
+	}
+
+	/**
+	 * A thermal drifting 145 meters due north every 20 second circle
+	 */
+	private Flight makeSteadyThermalFlight(int circle_count, GeometryMode mode) {
+		Thermal t = new Thermal();
+		long start = 1000000000000L;
+		for (int i = 0; i < circle_count; i++) {
+			Circle c = new Circle(new Date(start + i * 20000L), 20, -34.0 + i * 0.0013, 18.5);
+			t.circles.add(c);
+		}
+		
+		Flight f = new FlightTestFacade(null);
+		f.geometry_mode = mode;
+		f.circles = t.circles;
+		f.thermals = new ArrayList<>();
+		f.thermals.add(t);
+		return f;
+	}
 }
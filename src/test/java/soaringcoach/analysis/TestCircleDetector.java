@@ -0,0 +1,236 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.Thermal;
+
+public class TestCircleDetector {
+	private static final String[] FLIGHTS = {
+			"src/test/resources/circling_detection.igc",
+			"src/test/resources/5c5vjf21.igc",
+			"src/test/resources/5c9xdzk1.igc"};
+	
+	/**
+	 * Collects the events, and the number of fixes fed in when each thermal was handed over
+	 */
+	private static class Recorder extends CircleEventHandler {
+		CircleDetector detector;
+		List<Circle> circles = new ArrayList<>();
+		List<Thermal> thermals = new ArrayList<>();
+		List<Integer> thermal_fix_counts = new ArrayList<>();
+		
+		@Override
+		public void onCircle(Circle c) {
+			circles.add(c);
+		}
+		
+		@Override
+		public void onThermal(Thermal t) {
+			thermals.add(t);
+			thermal_fix_counts.add(detector.getFixCount());
+		}
+	}
+	
+	private Recorder stream(FlightTrack track) {
+		return stream(track, null);
+	}
+	
+	private Recorder stream(FlightTrack track, SignalFilter turn_rate_filter) {
+		return stream(track, turn_rate_filter, true);
+	}
+	
+	private Recorder stream(FlightTrack track, SignalFilter turn_rate_filter, boolean string_thermals) {
+		Recorder recorder = new Recorder();
+		recorder.detector = new CircleDetector(recorder, turn_rate_filter, string_thermals);
+		for (int i = 0; i < track.size(); i++) {
+			//A fresh point per fix, as off a live feed. The detector resolves it again.
+			recorder.detector.addFix(track.get(i));
+		}
+		recorder.detector.finish();
+		return recorder;
+	}
+	
+	/**
+	 * Positive: feeding the fixes one at a time finds the same circles, in
+	 * the same thermals, as analysing the whole flight
+	 */
+	@Test
+	public void testSameAsWholeFlight() throws Exception {
+		for (String file : FLIGHTS) {
+			Flight f = FlightAnalyserTestFacade.loadFromFile(file);
+			new CirclesAnalysis().performAnalysis(f);
+			new ThermalAnalysis().performAnalysis(f);
+			
+			Recorder streamed = stream(f.igc_points);
+			
+			assertEquals(file + " circles", f.circles.size(), streamed.circles.size());
+			for (int i = 0; i < f.circles.size(); i++) {
+				Circle expected = f.circles.get(i);
+				Circle actual = streamed.circles.get(i);
+				String message = file + " circle " + i;
+				assertEquals(message, expected.timestamp, actual.timestamp);
+				assertEquals(message, expected.duration, actual.duration);
+				assertEquals(message, expected.turn_direction, actual.turn_direction);
+				assertEquals(message, expected.start_index, actual.start_index);
+				assertEquals(message, expected.end_index, actual.end_index);
+				assertEquals(message, expected.startPoint, actual.startPoint);
+				assertEquals(message, expected.endPoint, actual.endPoint);
+				assertEquals(message, expected.getCircleStartLatitude(), actual.getCircleStartLatitude(), 0);
+				assertEquals(message, expected.getCircleStartLongitude(), actual.getCircleStartLongitude(), 0);
+				assertEquals(message, expected.getAltitudeChange(), actual.getAltitudeChange());
+				assertEquals(message, expected.getClimbRate(), actual.getClimbRate(), 1e-9);
+			}
+			
+			assertEquals(file + " thermals", f.thermals.size(), streamed.thermals.size());
+			for (int i = 0; i < f.thermals.size(); i++) {
+				Thermal expected = f.thermals.get(i);
+				Thermal actual = streamed.thermals.get(i);
+				String message = file + " thermal " + i;
+				assertEquals(message, expected.circles.size(), actual.circles.size());
+				assertEquals(message, expected.start_index, actual.start_index);
+				assertEquals(message, expected.end_index, actual.end_index);
+				assertEquals(message, expected.getAltitudeChange(), actual.getAltitudeChange());
+				assertEquals(message, expected.getClimbRate(), actual.getClimbRate(), 1e-9);
+			}
+		}
+	}
+	
+	/**
+	 * Positive: each thermal is handed over before the first circle of the
+	 * next one is completed, rather than when that circle fails to join it
+	 */
+	@Test
+	public void testThermalHandedOverWhenOver() throws Exception {
+		Flight f = FlightAnalyserTestFacade.loadFromFile("src/test/resources/5c5vjf21.igc");
+		Recorder streamed = stream(f.igc_points);
+		
+		assertTrue("need several thermals to check", streamed.thermals.size() > 2);
+		for (int i = 0; i + 1 < streamed.thermals.size(); i++) {
+			int handed_over_at = streamed.thermal_fix_counts.get(i) - 1;
+			Thermal next = streamed.thermals.get(i + 1);
+			
+			assertTrue("thermal " + i, handed_over_at > streamed.thermals.get(i).end_index);
+			assertTrue("thermal " + i, handed_over_at < next.circles.get(0).end_index);
+		}
+	}
+	
+	/**
+	 * Positive: with a turn rate filter, feeding the fixes one at a time finds
+	 * the same circles as analysing the whole flight with the same filter
+	 */
+	@Test
+	public void testFilteredSameAsWholeFlight() throws Exception {
+		for (FilterType type : FilterType.values()) {
+			Flight f = FlightAnalyserTestFacade.loadFromFile("src/test/resources/5c5vjf21.igc");
+			f.signal_filter = type;
+			f.signal_filter_window = 5;
+			new CirclesAnalysis().performAnalysis(f);
+			
+			Recorder streamed = stream(f.igc_points, type.create(5));
+			
+			assertEquals(type + " circles", f.circles.size(), streamed.circles.size());
+			for (int i = 0; i < f.circles.size(); i++) {
+				assertEquals(type + " circle " + i, f.circles.get(i).start_index, streamed.circles.get(i).start_index);
+				assertEquals(type + " circle " + i, f.circles.get(i).end_index, streamed.circles.get(i).end_index);
+			}
+		}
+	}
+	
+	/**
+	 * Positive: with thermals turned off, the detector finds the same circles
+	 * and hands over no thermals
+	 */
+	@Test
+	public void testCirclesOnly() throws Exception {
+		Flight f = FlightAnalyserTestFacade.loadFromFile("src/test/resources/5c5vjf21.igc");
+		Recorder both = stream(f.igc_points);
+		Recorder circles_only = stream(f.igc_points, null, false);
+		
+		assertTrue("need thermals to check", both.thermals.size() > 0);
+		assertEquals(0, circles_only.thermals.size());
+		assertEquals(both.circles.size(), circles_only.circles.size());
+		for (int i = 0; i < both.circles.size(); i++) {
+			assertEquals("circle " + i, both.circles.get(i).start_index, circles_only.circles.get(i).start_index);
+			assertEquals("circle " + i, both.circles.get(i).end_index, circles_only.circles.get(i).end_index);
+		}
+	}
+	
+	/**
+	 * Positive: with no turn rate filter, a steady thermal logged at 10 Hz
+	 * is found fix by fix as it is at 1 Hz - a circle every 18 seconds
+	 */
+	@Test
+	public void testUnfilteredTenHz() {
+		for (int hz : new int[] {1, 10}) {
+			Recorder streamed = stream(makeCircling(hz, 120, 20));
+			
+			assertEquals(hz + " Hz circles", 6, streamed.circles.size());
+			for (Circle c : streamed.circles) {
+				assertEquals(hz + " Hz", 18, c.duration, 1);
+			}
+			assertEquals(hz + " Hz thermals", 1, streamed.thermals.size());
+		}
+	}
+	
+	/**
+	 * <b>hz</b> fixes a second for <b>seconds</b> seconds at 25 m/s, turning
+	 * steadily right by <b>turn</b> degrees a second
+	 */
+	private FlightTrack makeCircling(int hz, int seconds, double turn) {
+		FlightTrack track = new FlightTrack();
+		double latitude = Math.toRadians(-34);
+		double longitude = Math.toRadians(18.5);
+		double heading = 0;
+		long time = 1000000000000L;
+		for (int i = 0; i < seconds * hz; i++) {
+			track.addFix(time + i * 1000L / hz, Math.toDegrees(latitude), Math.toDegrees(longitude), 'A', 1000, 1000);
+			
+			heading = (heading + turn / hz) % 360;
+			double b = Math.toRadians(heading);
+			double next_latitude = Geodesy.destinationLatitude(latitude, b, 25.0 / hz);
+			longitude = Geodesy.destinationLongitude(latitude, longitude, b, 25.0 / hz, next_latitude);
+			latitude = next_latitude;
+		}
+		track.resolve();
+		return track;
+	}
+}
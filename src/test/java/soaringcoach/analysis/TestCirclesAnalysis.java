@@ -34,8 +34,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -62,7 +65,7 @@ public class TestCirclesAnalysis {
 	 */
 	@Test
 	public void testCirclingAnalysisPositive() throws Exception {
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/circling_detection.igc").igc_points;
 		
 		Flight f = new FlightTestFacade(igc_points);
@@ -93,7 +96,7 @@ public class TestCirclesAnalysis {
 	 */
 	@Test
 	public void testCirclingDetectionDiscard() throws Exception {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/testCirclingDetectionDiscard.igc").igc_points;
@@ -124,7 +127,7 @@ public class TestCirclesAnalysis {
 	 * @throws FileNotFoundException
 	 */
 	public void testDetermineCircleStartNoWind() throws Exception {
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/DetermineCircleStartNoWind.igc").igc_points;
 		
 		Flight f = new FlightTestFacade(igc_points);
@@ -179,7 +182,7 @@ public class TestCirclesAnalysis {
 	 * 
 	 */
 	public void testDetermineCircleStartHowlingGale() throws Exception {
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/DetermineCircleStartHowlingGale.igc").igc_points;
 		
 		Flight f = new FlightTestFacade(igc_points);
@@ -238,7 +241,7 @@ public class TestCirclesAnalysis {
 	 */
 	@Test
 	public void testCentringMoveIgnored() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/CenteringMoveTest.igc").igc_points;
 		
 		Flight f = new FlightTestFacade(igc_points);
@@ -306,4 +309,226 @@ public class TestCirclesAnalysis {
 		assertEquals(11.0, f.circles.get(3).drift_vector.size, 2.0);
 		*/
 	}
+	
+	/**
+	 * Circles and thermals must point at the fixes they were made from
+	 */
+	@Test
+	public void testIndices() throws AnalysisException, IOException {
+		Flight f = new FlightTestFacade(
+				FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points);
+		f = new CirclesAnalysis().analyse(f);
+		f = new ThermalAnalysis().analyse(f);
+		FlightTrack track = f.igc_points;
+		
+		assertTrue(f.circles.size() > 0);
+		for (Circle c : f.circles) {
+			assertEquals(c.startPoint, track.get(c.start_index));
+			assertEquals(c.endPoint, track.get(c.end_index));
+			assertEquals(c.timestamp.getTime(), track.getTime(c.start_index + 1));
+			assertEquals(c.duration, (track.getTime(c.end_index) - track.getTime(c.start_index + 1)) / 1000);
+		}
+		for (Thermal t : f.thermals) {
+			assertEquals(t.startPoint, track.get(t.start_index));
+			assertEquals(t.endPoint, track.get(t.end_index));
+			assertEquals(t.circles.get(0).start_index, t.start_index);
+			assertEquals(t.circles.get(t.circles.size() - 1).end_index, t.end_index);
+		}
+	}
+	
+	/**
+	 * Positive: a steady 20 second turn to the right, with a noisy pair of
+	 * fixes every 9 seconds that swings the turn rate left for a moment.
+	 * Going by the raw turn rate each of those starts a new circle, so none
+	 * is ever completed; smoothed with a median filter the circles come out
+	 * whole, 20 seconds each.
+	 */
+	@Test
+	public void testFilterJoinsNoisyCircles() throws AnalysisException {
+		Flight f = new FlightTestFacade(makeNoisyCircling(200));
+		f = new CirclesAnalysis().performAnalysis(f);
+		assertEquals("raw turn rate", 0, f.circles.size());
+		
+		f = new FlightTestFacade(makeNoisyCircling(200));
+		f.signal_filter = FilterType.MEDIAN;
+		f.signal_filter_window = 5;
+		f = new CirclesAnalysis().performAnalysis(f);
+		assertTrue("median filtered: " + f.circles.size(), f.circles.size() >= 9);
+		for (Circle c : f.circles) {
+			assertEquals(FlightMode.TURNING_RIGHT, c.turn_direction);
+			assertEquals(20, c.duration, 1);
+		}
+	}
+	
+	/**
+	 * Positive: the same steady thermal logged at 1 Hz and at 10 Hz, with the
+	 * tenths of a second in the time column as a TDS extension puts them
+	 * there, comes out as the same circles on the default (unfiltered) turn
+	 * rate. Counting the interval in whole seconds made every 10 Hz interval
+	 * 0, and the turn rate infinite.
+	 */
+	@Test
+	public void testTenHzUnfiltered() throws AnalysisException {
+		Flight f = new FlightTestFacade(makeCircling(1, 120, 20));
+		f = new CirclesAnalysis().performAnalysis(f);
+		assertEquals(6, f.circles.size());
+		
+		FlightTrack track = makeCircling(10, 120, 20);
+		assertEquals(FilterType.NONE, FilterType.getDefault());
+		assertEquals(20, track.getTurnRate(5), 0.1);
+		
+		f = new CirclesAnalysis().performAnalysis(new FlightTestFacade(track));
+		assertEquals(6, f.circles.size());
+		for (Circle c : f.circles) {
+			assertEquals(FlightMode.TURNING_RIGHT, c.turn_direction);
+			assertEquals(18, c.duration, 1);
+		}
+	}
+	
+	/**
+	 * A straight glide between two climbs is where the track gets cut: 11
+	 * seconds into the glide, just too late to resume the circle broken off
+	 * at its start.
+	 */
+	@Test
+	public void testSegmentStarts() {
+		FlightTrack track = makeTrack(new int[] {100, 120, 100, 30, 100}, new double[] {18, 0, -18, 0, 18});
+		
+		int[] starts = CirclesAnalysis.findSegmentStarts(track);
+		assertEquals("a 30 second glide is not cut", 2, starts.length);
+		assertEquals(0, starts[0]);
+		assertEquals(101 + 11, starts[1]);
+		assertTrue(CircleDetector.isStraight(track, starts[1]));
+		
+		//Out of time order, the track can't be cut safely
+		track.addFix(track.getTime(0), -34, 18.5, 'A', 1000, 1000);
+		track.resolve();
+		assertEquals(1, CirclesAnalysis.findSegmentStarts(track).length);
+	}
+	
+	/**
+	 * Cutting the track into segments and detecting them in parallel must
+	 * find exactly the circles one detector over the whole track finds, for
+	 * every test flight, filtered or not
+	 */
+	@Test
+	public void testSegmentsSameAsSequential() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		CirclesAnalysis sequential = new CirclesAnalysis(pool, Integer.MAX_VALUE);
+		CirclesAnalysis segmented = new CirclesAnalysis(pool, 0);
+		int cut_flights = 0;
+		
+		try {
+			for (FilterType filter : new FilterType[] {FilterType.NONE, FilterType.MEDIAN}) {
+				for (File file : new File("src/test/resources").listFiles()) {
+					FlightTrack track = FlightAnalyserTestFacade.loadFromFileFast(file.getPath()).igc_points;
+					if (track.size() < 2) {
+						continue;
+					}
+					
+					Flight e = new FlightTestFacade(track);
+					e.signal_filter = filter;
+					e = sequential.performAnalysis(e);
+					
+					Flight a = new FlightTestFacade(track);
+					a.signal_filter = filter;
+					a = segmented.performAnalysis(a);
+					
+					if (CirclesAnalysis.findSegmentStarts(track).length > 1) {
+						cut_flights++;
+					}
+					
+					String msg = file.getName() + " " + filter;
+					assertEquals(msg, e.circles.size(), a.circles.size());
+					for (int i = 0; i < e.circles.size(); i++) {
+						Circle ec = e.circles.get(i);
+						Circle ac = a.circles.get(i);
+						String circle = msg + " circle #" + i;
+						assertEquals(circle, ec.start_index, ac.start_index);
+						assertEquals(circle, ec.end_index, ac.end_index);
+						assertEquals(circle, ec.duration, ac.duration);
+						assertEquals(circle, ec.turn_direction, ac.turn_direction);
+						assertEquals(circle, ec.circle_start_course, ac.circle_start_course, 0);
+						assertEquals(circle, ec.deg_course_change_since_start, ac.deg_course_change_since_start, 0);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		
+		assertTrue("no test flight was cut into segments", cut_flights > 0);
+	}
+	
+	/**
+	 * Fixes one second apart at 25 m/s, turning steadily by <b>turns[s]</b>
+	 * degrees a second for <b>seconds[s]</b> seconds, stretch after stretch
+	 */
+	private FlightTrack makeTrack(int[] seconds, double[] turns) {
+		FlightTrack track = new FlightTrack();
+		double latitude = Math.toRadians(-34);
+		double longitude = Math.toRadians(18.5);
+		double heading = 0;
+		long time = 1000000000000L;
+		for (int s = 0; s < seconds.length; s++) {
+			for (int i = 0; i < seconds[s]; i++) {
+				track.addFix(time, Math.toDegrees(latitude), Math.toDegrees(longitude), 'A', 1000, 1000);
+				time += 1000;
+				
+				heading = (heading + turns[s] + 360) % 360;
+				double b = Math.toRadians(heading);
+				double next_latitude = Geodesy.destinationLatitude(latitude, b, 25);
+				longitude = Geodesy.destinationLongitude(latitude, longitude, b, 25, next_latitude);
+				latitude = next_latitude;
+			}
+		}
+		track.resolve();
+		return track;
+	}
+	
+	/**
+	 * <b>hz</b> fixes a second for <b>seconds</b> seconds at 25 m/s, turning
+	 * steadily right by <b>turn</b> degrees a second
+	 */
+	private FlightTrack makeCircling(int hz, int seconds, double turn) {
+		FlightTrack track = new FlightTrack();
+		double latitude = Math.toRadians(-34);
+		double longitude = Math.toRadians(18.5);
+		double heading = 0;
+		long time = 1000000000000L;
+		for (int i = 0; i < seconds * hz; i++) {
+			track.addFix(time + i * 1000L / hz, Math.toDegrees(latitude), Math.toDegrees(longitude), 'A', 1000, 1000);
+			
+			heading = (heading + turn / hz) % 360;
+			double b = Math.toRadians(heading);
+			double next_latitude = Geodesy.destinationLatitude(latitude, b, 25.0 / hz);
+			longitude = Geodesy.destinationLongitude(latitude, longitude, b, 25.0 / hz, next_latitude);
+			latitude = next_latitude;
+		}
+		return track;
+	}
+	
+	/**
+	 * Fixes one second apart, flying at 25 m/s and turning right by 18 degrees
+	 * a second - but for every 9th second, which turns 10 degrees left, and the
+	 * one after it, which makes up for that
+	 */
+	private FlightTrack makeNoisyCircling(int seconds) {
+		FlightTrack track = new FlightTrack();
+		double latitude = Math.toRadians(-34);
+		double longitude = Math.toRadians(18.5);
+		double heading = 0;
+		long time = 1000000000000L;
+		for (int i = 0; i < seconds; i++) {
+			track.addFix(time + i * 1000L, Math.toDegrees(latitude), Math.toDegrees(longitude), 'A', 1000, 1000);
+			
+			double turn = i % 9 == 4 ? -10 : i % 9 == 5 ? 46 : 18;
+			heading = (heading + turn + 360) % 360;
+			double b = Math.toRadians(heading);
+			double next_latitude = Geodesy.destinationLatitude(latitude, b, 25);
+			longitude = Geodesy.destinationLongitude(latitude, longitude, b, 25, next_latitude);
+			latitude = next_latitude;
+		}
+		return track;
+	}
 }
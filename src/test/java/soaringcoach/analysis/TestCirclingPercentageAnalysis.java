@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -15,7 +16,7 @@ public class TestCirclingPercentageAnalysis {
 
 	@Test
 	public void testCirclingPercentageHigh() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/CirclingPercentageHigh.igc").igc_points;
@@ -30,7 +31,7 @@ public class TestCirclingPercentageAnalysis {
 
 	@Test
 	public void testCirclingPercentageNone() throws IOException, AnalysisException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/CirclingPercentage_none.igc").igc_points;
@@ -45,7 +46,7 @@ public class TestCirclingPercentageAnalysis {
 
 	@Test
 	public void testCirclingPercentageLow() throws IOException, AnalysisException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/CirclingPercentageLow.igc").igc_points;
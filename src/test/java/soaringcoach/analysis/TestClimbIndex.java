@@ -0,0 +1,164 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.Thermal;
+
+public class TestClimbIndex {
+
+	/**
+	 * Every figure over a range of fixes must be what adding up the fixes in
+	 * that range one by one gives
+	 */
+	@Test
+	public void testSameAsSummingFixes() throws IOException {
+		FlightTrack track = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		ClimbIndex index = track.getClimbIndex();
+		assertEquals(track.size(), index.size());
+		
+		Random random = new Random(42);
+		for (int n = 0; n < 500; n++) {
+			int from = random.nextInt(track.size());
+			int to = from + random.nextInt(Math.min(track.size() - from, 2000));
+			String range = "fixes " + from + " to " + to;
+			
+			int altitude_change = 0;
+			int height_gained = 0;
+			double vario = 0;
+			int vario_count = 0;
+			long pressure_altitude = track.getPressureAltitude(from);
+			long gnss_altitude = track.getGnssAltitude(from);
+			for (int i = from + 1; i <= to; i++) {
+				int step = ClimbIndex.altitudeChange(track.getPressureAltitude(i - 1), track.getGnssAltitude(i - 1), 
+						track.getPressureAltitude(i), track.getGnssAltitude(i));
+				altitude_change += step;
+				height_gained += Math.max(step, 0);
+				if (track.getInterval(i) != 0) {
+					vario += track.getClimbRate(i);
+					vario_count++;
+				}
+				pressure_altitude += track.getPressureAltitude(i);
+				gnss_altitude += track.getGnssAltitude(i);
+			}
+			double duration = (track.getTime(to) - track.getTime(from)) / 1000.0;
+			
+			assertEquals(range, altitude_change, index.getAltitudeChange(from, to));
+			assertEquals(range, height_gained, index.getHeightGained(from, to));
+			assertEquals(range, duration, index.getDuration(from, to), 0);
+			assertEquals(range, duration != 0 ? altitude_change / duration : 0, index.getClimbRate(from, to), 1e-9);
+			assertEquals(range, vario_count > 0 ? vario / vario_count : 0, index.getAverageVario(from, to), 1e-9);
+			assertEquals(range, (double) pressure_altitude / (to - from + 1), 
+					index.getAveragePressureAltitude(from, to), 1e-9);
+			assertEquals(range, (double) gnss_altitude / (to - from + 1), index.getAverageGnssAltitude(from, to), 1e-9);
+		}
+	}
+	
+	/**
+	 * Without pressure altitude, the GNSS altitude is used
+	 */
+	@Test
+	public void testGnssAltitudeFallback() {
+		FlightTrack track = new FlightTrack();
+		track.addFix(1000000000000L, -34, 18.5, 'A', 0, 1000);
+		track.addFix(1000000002000L, -34, 18.5, 'A', 0, 1010);
+		track.addFix(1000000004000L, -34, 18.5, 'A', 1500, 1005);
+		track.addFix(1000000006000L, -34, 18.5, 'A', 1502, 1020);
+		
+		ClimbIndex index = track.getClimbIndex();
+		assertEquals(10 - 5 + 2, index.getAltitudeChange(0, 3));
+		assertEquals(12, index.getHeightGained(0, 3));
+		assertEquals(7 / 6.0, index.getClimbRate(0, 3), 1e-9);
+		assertEquals((5 - 2.5 + 1) / 3, index.getAverageVario(0, 3), 1e-9);
+		assertEquals(0, index.getClimbRate(2, 2), 0);
+		
+		//A new fix drops the index, so it is built again with it
+		track.addFix(1000000008000L, -34, 18.5, 'A', 1512, 1030);
+		assertEquals(17, track.getClimbIndex().getAltitudeChange(0, 4));
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testRangeBackwards() {
+		FlightTrack track = new FlightTrack();
+		track.addFix(1000000000000L, -34, 18.5, 'A', 1000, 1000);
+		track.addFix(1000000001000L, -34, 18.5, 'A', 1000, 1000);
+		track.getClimbIndex().getAltitudeChange(1, 0);
+	}
+	
+	/**
+	 * Circles and thermals come out of the analyses with their climb filled in:
+	 * altitude change from the circle's start to its end, and a thermal's
+	 * being that of its circles together
+	 */
+	@Test
+	public void testCirclesAndThermalsClimb() throws Exception {
+		Flight f = new FlightTestFacade(
+				FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points);
+		f = new CirclesAnalysis().analyse(f);
+		f = new ThermalAnalysis().analyse(f);
+		FlightTrack track = f.igc_points;
+		
+		assertTrue(f.thermals.size() > 0);
+		int climbing = 0;
+		for (Circle c : f.circles) {
+			int from = c.start_index + 1;
+			assertEquals(track.getPressureAltitude(c.end_index) - track.getPressureAltitude(from), 
+					c.getAltitudeChange());
+			assertEquals(c.getAltitudeChange() / ((track.getTime(c.end_index) - track.getTime(from)) / 1000.0), 
+					c.getClimbRate(), 1e-9);
+			assertTrue(c.getHeightGained() >= Math.max(c.getAltitudeChange(), 0));
+			if (c.getClimbRate() > 0) {
+				climbing++;
+			}
+		}
+		assertTrue("no circle climbs", climbing > 0);
+		
+		for (Thermal t : f.thermals) {
+			int altitude_change = 0;
+			for (Circle c : t.circles) {
+				altitude_change += c.getAltitudeChange();
+			}
+			assertEquals(altitude_change, t.getAltitudeChange());
+			assertTrue(t.getHeightGained() >= Math.max(t.getAltitudeChange(), 0));
+		}
+	}
+}
@@ -37,6 +37,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -55,7 +56,7 @@ public class TestDistanceAnalysis {
 	 */
 	@Test
 	public void testCalcDistanceBypassingThermals() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/distance_has_thermal.igc").igc_points;
@@ -72,7 +73,7 @@ public class TestDistanceAnalysis {
 	
 	@Test
 	public void testCalcTotalDistanceManyPointsCloseTogether() throws AnalysisException, IOException {
-		ArrayList<GNSSPoint> points = new ArrayList<>();
+		List<GNSSPoint> points = new ArrayList<>();
 		
 		points = FlightAnalyserTestFacade.loadFromFile(
 				"src/test/resources/slow_movement_north.igc").igc_points;
@@ -0,0 +1,244 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.BRecord;
+import soaringcoach.analysis.parsing.FastIgcReader;
+import soaringcoach.analysis.parsing.IgcParser;
+import soaringcoach.analysis.parsing.IgcRecordHandler;
+import soaringcoach.analysis.parsing.NativeIgcParser;
+
+public class TestFastIgcReader {
+
+	/**
+	 * The fast reader must produce exactly the same fixes and headers as the
+	 * BeanIO mapping, for every IGC file we have.
+	 */
+	@Test
+	public void testSameFixesAsBeanIO() throws IOException, AnalysisException {
+		File[] files = new File("src/test/resources").listFiles();
+		
+		for (File file : files) {
+			Flight expected = FlightAnalyserTestFacade.loadFromFile(file.getPath());
+			Flight actual = FlightAnalyserTestFacade.loadFromFileFast(file.getPath());
+			
+			assertEquals(file.getName() + " pilot", expected.pilot_name, actual.pilot_name);
+			assertEquals(file.getName() + " date", expected.flightDate, actual.flightDate);
+			assertEquals(file.getName() + " number of fixes", expected.igc_points.size(), actual.igc_points.size());
+			
+			for (int i = 0; i < expected.igc_points.size(); i++) {
+				GNSSPoint e = expected.igc_points.get(i);
+				GNSSPoint a = actual.igc_points.get(i);
+				String msg = file.getName() + " fix #" + i;
+				
+				assertEquals(msg, e.data.timestamp.getTime(), a.data.timestamp.getTime());
+				assertEquals(msg, e.getLatitude(), a.getLatitude(), 0);
+				assertEquals(msg, e.getLongitude(), a.getLongitude(), 0);
+				assertEquals(msg, e.getAltitudeOK(), a.getAltitudeOK());
+				assertEquals(msg, e.getPressureAltitude(), a.getPressureAltitude());
+				assertEquals(msg, e.getGnssAltitude(), a.getGnssAltitude());
+			}
+		}
+	}
+
+	/**
+	 * Memory-mapped files and streams read through the direct buffer must give
+	 * the same records.
+	 */
+	@Test
+	public void testMappedFileSameAsStream() throws IOException {
+		File[] files = new File("src/test/resources").listFiles();
+		FastIgcReader reader = new FastIgcReader();
+		
+		for (File file : files) {
+			RecordCollector mapped = new RecordCollector();
+			reader.read(file, mapped);
+			
+			RecordCollector streamed = new RecordCollector();
+			reader.read(new ByteArrayInputStream(Files.readAllBytes(file.toPath())), streamed);
+			
+			assertEquals(file.getName(), mapped.records, streamed.records);
+		}
+	}
+
+	@Test
+	public void testDecodeBRecord() {
+		byte[] line = "B1039565045817S00352098WA-001200360006004100730786".getBytes(StandardCharsets.US_ASCII);
+		BRecord fix = new BRecord();
+		
+		assertTrue(FastIgcReader.decodeBRecord(line, 0, line.length, fix));
+		
+		assertEquals(10 * 3600 + 39 * 60 + 56, fix.seconds_of_day);
+		assertEquals(-50.763617, fix.latitude, 0.00001);
+		assertEquals(-3.8683, fix.longitude, 0.00001);
+		assertEquals('A', fix.altitude_ok);
+		assertEquals(-12, fix.pressure_altitude);
+		assertEquals(360, fix.gnss_altitude);
+	}
+
+	@Test
+	public void testDecodeMalformedBRecord() {
+		BRecord fix = new BRecord();
+		
+		byte[] truncated = "B1039565045817N00352098EA003360036".getBytes(StandardCharsets.US_ASCII);
+		assertFalse(FastIgcReader.decodeBRecord(truncated, 0, truncated.length, fix));
+		
+		byte[] garbled = "B10395650458X7N00352098EA0033600360".getBytes(StandardCharsets.US_ASCII);
+		assertFalse(FastIgcReader.decodeBRecord(garbled, 0, garbled.length, fix));
+	}
+
+	/**
+	 * A garbled B record in the middle of a file is skipped and counted,
+	 * rather than failing the whole file - read from a stream, a mapped file
+	 * and in parallel chunks - and fix cleaning reports it
+	 */
+	@Test
+	public void testMalformedFixSkipped() throws IOException, AnalysisException {
+		String igc_file = "src/test/resources/circling_detection.igc";
+		List<String> lines = Files.readAllLines(Paths.get(igc_file), StandardCharsets.ISO_8859_1);
+		int fixes = FlightAnalyserTestFacade.loadFromFileFast(igc_file).igc_points.size();
+		
+		lines.add(lines.size() / 2, "B11110X3308895S01911145EA0173501837");
+		File file = File.createTempFile("malformed", ".igc");
+		file.deleteOnExit();
+		Files.write(file.toPath(), lines, StandardCharsets.ISO_8859_1);
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			IgcParser sequential = new NativeIgcParser(pool, Long.MAX_VALUE, 1);
+			IgcParser parallel = new NativeIgcParser(pool, 0, 256);
+			
+			Flight streamed = sequential.read(
+					new ByteArrayInputStream(Files.readAllBytes(file.toPath())), new FlightTestFacade(null));
+			Flight mapped = sequential.read(file, new FlightTestFacade(null));
+			Flight chunked = parallel.read(file, new FlightTestFacade(null));
+			
+			for (Flight f : new Flight[] {streamed, mapped, chunked}) {
+				assertEquals(fixes, f.igc_points.size());
+				assertEquals(1, f.malformed_fixes);
+			}
+			
+			//Reading the flight again starts the count over
+			sequential.read(file, mapped);
+			assertEquals(1, mapped.malformed_fixes);
+			
+			new FixCleaningAnalysis().analyse(mapped);
+			assertEquals(1, mapped.fix_cleaning.malformed_fixes);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Mixed line endings, a missing terminator on the last line and a record
+	 * longer than the initial read buffer should all be handled.
+	 */
+	@Test
+	public void testLineEndings() throws IOException {
+		StringBuilder igc = new StringBuilder();
+		igc.append("HFDTE050917\r\n");
+		igc.append("HFPLTPILOT:Kevin Mitchell     \n");
+		igc.append("B1039565045817N00352098EA0033600360\r");
+		igc.append("LXXX");
+		for (int i = 0; i < 100000; i++) {
+			igc.append('x');
+		}
+		igc.append("\r\n");
+		igc.append("B1039575045817N00352098EA0033600360");
+		
+		final ArrayList<Integer> times = new ArrayList<>();
+		final String[] headers = new String[2];
+		
+		new FastIgcReader().read(
+				new ByteArrayInputStream(igc.toString().getBytes(StandardCharsets.US_ASCII)), 
+				new IgcRecordHandler() {
+					@Override
+					public void onFix(BRecord fix) {
+						times.add(fix.seconds_of_day);
+					}
+					
+					@Override
+					public void onPilotName(String pilot_name) {
+						headers[0] = pilot_name;
+					}
+					
+					@Override
+					public void onFlightDate(String flight_date) {
+						headers[1] = flight_date;
+					}
+				});
+		
+		assertEquals(2, times.size());
+		assertEquals(38396, (int) times.get(0));
+		assertEquals(38397, (int) times.get(1));
+		assertEquals("Kevin Mitchell", headers[0]);
+		assertEquals("2017-09-05", headers[1]);
+	}
+	
+	private static class RecordCollector extends IgcRecordHandler {
+		final ArrayList<String> records = new ArrayList<>();
+		
+		@Override
+		public void onFix(BRecord fix) {
+			records.add(fix.seconds_of_day + " " + fix.latitude + " " + fix.longitude + " " + 
+					fix.altitude_ok + " " + fix.pressure_altitude + " " + fix.gnss_altitude);
+		}
+		
+		@Override
+		public void onPilotName(String pilot_name) {
+			records.add("pilot " + pilot_name);
+		}
+		
+		@Override
+		public void onFlightDate(String flight_date) {
+			records.add("date " + flight_date);
+		}
+	}
+}
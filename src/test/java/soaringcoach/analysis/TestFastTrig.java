@@ -0,0 +1,151 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyser;
+import soaringcoach.FlightAnalyserTestFacade;
+
+/**
+ * Property tests of the table driven trigonometry against java.lang.Math
+ */
+public class TestFastTrig {
+	private static final int SAMPLES = 200000;
+
+	@Test
+	public void testSinCos() {
+		Random random = new Random(1);
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = (random.nextDouble() * 2 - 1) * FastTrig.MAX_ARGUMENT;
+			assertEquals("sin " + x, Math.sin(x), FastTrig.sin(x), 2e-15);
+			assertEquals("cos " + x, Math.cos(x), FastTrig.cos(x), 2e-15);
+		}
+	}
+	
+	/**
+	 * Longitude differences between fixes are tiny, so sin must be accurate
+	 * relative to its result, not just in absolute terms. That holds up to
+	 * half a table step, well past any difference between two fixes.
+	 */
+	@Test
+	public void testSinSmallArguments() {
+		Random random = new Random(2);
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = (random.nextDouble() * 2 - 1) * Math.pow(10, -3 - random.nextInt(8));
+			assertEquals("sin " + x, Math.sin(x), FastTrig.sin(x), Math.abs(Math.sin(x)) * 1e-15);
+		}
+	}
+	
+	@Test
+	public void testAtan2() {
+		Random random = new Random(3);
+		for (int i = 0; i < SAMPLES; i++) {
+			double y = (random.nextDouble() * 2 - 1) * Math.pow(10, random.nextInt(13) - 6);
+			double x = (random.nextDouble() * 2 - 1) * Math.pow(10, random.nextInt(13) - 6);
+			assertEquals("atan2 " + y + ", " + x, Math.atan2(y, x), FastTrig.atan2(y, x), 1e-15);
+		}
+	}
+	
+	@Test
+	public void testAsin() {
+		Random random = new Random(4);
+		for (int i = 0; i < SAMPLES; i++) {
+			double x = random.nextDouble() * 2 - 1;
+			assertEquals("asin " + x, Math.asin(x), FastTrig.asin(x), 1e-15);
+		}
+		assertEquals(Math.PI / 2, FastTrig.asin(1), 0);
+		assertEquals(-Math.PI / 2, FastTrig.asin(-1), 0);
+	}
+	
+	/**
+	 * Whatever the tables don't cover must come out exactly like java.lang.Math
+	 */
+	@Test
+	public void testEdgeCases() {
+		double[] special = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for (double y : special) {
+			for (double x : special) {
+				assertEquals("atan2 " + y + ", " + x, Math.atan2(y, x), FastTrig.atan2(y, x), 0);
+			}
+			assertEquals("atan2 " + y + ", 1", Math.atan2(y, 1), FastTrig.atan2(y, 1), 0);
+			assertEquals("atan2 1, " + y, Math.atan2(1, y), FastTrig.atan2(1, y), 0);
+			assertEquals("sin " + y, Math.sin(y), FastTrig.sin(y), 0);
+			assertEquals("cos " + y, Math.cos(y), FastTrig.cos(y), 0);
+		}
+		assertEquals(Math.asin(1.5), FastTrig.asin(1.5), 0);
+		assertEquals(Math.sin(1e6), FastTrig.sin(1e6), 0);
+		assertEquals(Math.cos(-1e6), FastTrig.cos(-1e6), 0);
+	}
+	
+	/**
+	 * On a real flight the fast backend must move no distance by more than a
+	 * micrometer, and leave the analysis results as they were
+	 */
+	@Test
+	public void testFlightWithFastBackend() throws Exception {
+		FlightTrack exact = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		exact.resolve();
+		
+		Flight exact_flight = new FlightAnalyser().addAndAnalyseFlight(new File("src/test/resources/5c6c3ke1.igc"));
+		
+		TrigBackend previous = Geodesy.getTrigBackend();
+		Geodesy.setTrigBackend(TrigBackend.FAST);
+		try {
+			FlightTrack fast = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+			for (int i = 1; i < fast.size(); i++) {
+				assertEquals("fix #" + i, exact.getSegmentDistance(i), fast.getSegmentDistance(i), 1e-6);
+				assertEquals("fix #" + i, 0, 
+						FlightAnalyser.calcBearingChange(exact.getBearingIntoPoint(i), fast.getBearingIntoPoint(i)), 1e-6);
+				assertEquals("fix #" + i, exact.distance(0, i), fast.distance(0, i), 1e-6);
+			}
+			
+			Flight fast_flight = new FlightAnalyser().addAndAnalyseFlight(new File("src/test/resources/5c6c3ke1.igc"));
+			assertEquals(exact_flight.circles.size(), fast_flight.circles.size());
+			assertEquals(exact_flight.thermals.size(), fast_flight.thermals.size());
+			assertEquals(exact_flight.total_track_distance, fast_flight.total_track_distance, 1e-6);
+			assertEquals(exact_flight.percentageTimeCircling, fast_flight.percentageTimeCircling, 0);
+		} finally {
+			Geodesy.setTrigBackend(previous);
+		}
+	}
+	
+	@Test
+	public void testFromName() {
+		assertEquals(TrigBackend.FAST, TrigBackend.fromName("Fast "));
+		assertEquals(TrigBackend.EXACT, TrigBackend.fromName("exact"));
+	}
+}
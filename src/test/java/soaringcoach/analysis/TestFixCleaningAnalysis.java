@@ -0,0 +1,161 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+
+public class TestFixCleaningAnalysis {
+
+	@Test
+	public void testDroppedPerCategory() throws AnalysisException {
+		FlightTrack track = makeOneDroppedPerCategory();
+		
+		Flight f = new FlightTestFacade(track);
+		new FixCleaningAnalysis().analyse(f);
+		
+		assertEquals(1, f.fix_cleaning.invalid_fixes);
+		assertEquals(1, f.fix_cleaning.duplicate_timestamps);
+		assertEquals(1, f.fix_cleaning.time_reversals);
+		assertEquals(1, f.fix_cleaning.position_spikes);
+		assertEquals(4, f.fix_cleaning.getTotalDropped());
+		
+		assertEquals(3, track.size());
+		assertEquals(1000, track.getTime(0));
+		assertEquals(2000, track.getTime(1));
+		assertEquals(4000, track.getTime(2));
+		assertEquals(0, track.getBearingIntoPoint(2), 0.001);
+	}
+	
+	/**
+	 * The counts per category are added up in the analysis' metrics too
+	 */
+	@Test
+	public void testCountedInMetrics() throws AnalysisException {
+		StageMetrics metrics = AnalysisMetrics.getDefault().get(FixCleaningAnalysis.class);
+		StageMetrics.Snapshot before = metrics.snapshot();
+		
+		new FixCleaningAnalysis().analyse(new FlightTestFacade(makeOneDroppedPerCategory()));
+		new FixCleaningAnalysis().analyse(new FlightTestFacade(makeOneDroppedPerCategory()));
+		
+		StageMetrics.Snapshot after = metrics.snapshot();
+		for (String count : new String[] {
+				"invalid_fixes", "duplicate_timestamps", "time_reversals", "position_spikes"}) {
+			assertEquals(count, 2, getCount(after, count) - getCount(before, count));
+		}
+		assertEquals(8, getCount(after, "dropped_fixes") - getCount(before, "dropped_fixes"));
+	}
+	
+	/**
+	 * A logger that really did jump (e.g. it was reset) is followed once
+	 * enough fixes in a row agree on the new position
+	 */
+	@Test
+	public void testTrackFollowsLastingJump() throws AnalysisException {
+		FlightTrack track = new FlightTrack();
+		track.addFix(0, 50.0, 3.0, 'A', 500, 500);
+		for (int i = 1; i <= 10; i++) {
+			track.addFix(i * 1000, 51.0 + i * 0.0003, 3.0, 'A', 500, 500);
+		}
+		
+		Flight f = new FlightTestFacade(track);
+		new FixCleaningAnalysis().analyse(f);
+		
+		assertEquals(FixCleaningAnalysis.MAX_CONSECUTIVE_SPIKES, f.fix_cleaning.position_spikes);
+		assertEquals(11 - FixCleaningAnalysis.MAX_CONSECUTIVE_SPIKES, track.size());
+	}
+	
+	@Test
+	public void testRealFlightUntouched() throws Exception {
+		Flight f = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc");
+		int fixes = f.igc_points.size();
+		
+		new FixCleaningAnalysis().analyse(f);
+		
+		assertEquals(0, f.fix_cleaning.getTotalDropped());
+		assertEquals(fixes, f.igc_points.size());
+	}
+	
+	/**
+	 * One fix 2km off to the side, in the middle of a circle, is enough for
+	 * the circles analysis to see an extra circle
+	 */
+	@Test
+	public void testNoPhantomCircleFromSpike() throws Exception {
+		FlightTrack clean = FlightAnalyserTestFacade.loadFromFileFast(
+				"src/test/resources/DetermineCircleStartNoWind.igc").igc_points;
+		
+		FlightTrack spiked = new FlightTrack();
+		for (int i = 0; i < clean.size(); i++) {
+			spiked.addFix(
+					clean.getTime(i), 
+					Math.toDegrees(clean.getLatitude(i)) + (i == 25 ? 0.02 : 0), 
+					Math.toDegrees(clean.getLongitude(i)), 
+					clean.getAltitudeOK(i), 
+					clean.getPressureAltitude(i), 
+					clean.getGnssAltitude(i));
+		}
+		
+		Flight f = new FlightTestFacade(spiked);
+		new FixCleaningAnalysis().analyse(f);
+		new CirclesAnalysis().analyse(f);
+		
+		assertEquals(1, f.fix_cleaning.position_spikes);
+		assertEquals("Number of circles", 2, f.circles.size());
+		assertEquals("10:43:06", f.circles.get(0).getTimestamp());
+		assertEquals("10:43:29", f.circles.get(1).getTimestamp());
+	}
+	
+	/**
+	 * Seven fixes, one of each kind that is dropped among them
+	 */
+	private static FlightTrack makeOneDroppedPerCategory() {
+		FlightTrack track = new FlightTrack();
+		track.addFix(1000, 50.0000, 3.0000, 'A', 500, 500);
+		track.addFix(2000, 50.0003, 3.0000, 'X', 500, 500); // invalid
+		track.addFix(2000, 50.0003, 3.0000, 'A', 500, 500);
+		track.addFix(2000, 50.0004, 3.0000, 'A', 500, 500); // duplicate timestamp
+		track.addFix(1500, 50.0002, 3.0000, 'A', 500, 500); // time reversal
+		track.addFix(3000, 50.0500, 3.0000, 'A', 500, 500); // 5km in a second
+		track.addFix(4000, 50.0009, 3.0000, 'V', 500, 500);
+		return track;
+	}
+	
+	private static long getCount(StageMetrics.Snapshot snapshot, String count) {
+		Long n = snapshot.counts.get(count);
+		return n != null ? n : 0;
+	}
+}
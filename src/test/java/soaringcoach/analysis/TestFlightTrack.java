@@ -0,0 +1,257 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Date;
+
+import org.junit.Test;
+
+import soaringcoach.FlightAnalyser;
+import soaringcoach.FlightAnalyserTestFacade;
+
+public class TestFlightTrack {
+
+	/**
+	 * The bearings and turn rates derived by the track must be exactly what
+	 * resolving each point against the one before it gives.
+	 */
+	@Test
+	public void testDerivedColumnsSameAsResolve() throws IOException, AnalysisException {
+		FlightTrack track = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		
+		GNSSPoint p1 = null;
+		for (int i = 0; i < track.size(); i++) {
+			GNSSPoint p2 = GNSSPoint.createGNSSPoint(
+					null, 
+					new Date(track.getTime(i)), 
+					Math.toDegrees(track.getLatitude(i)), 
+					Math.toDegrees(track.getLongitude(i)), 
+					"A", 0, 0, null);
+			p2.lat_radians = track.getLatitude(i);
+			p2.lon_radians = track.getLongitude(i);
+			
+			if (p1 != null) {
+				p2.resolve(p1);
+			}
+			
+			assertEquals("fix #" + i, p2.getBearingIntoPoint(), track.getBearingIntoPoint(i), 0);
+			assertEquals("fix #" + i, p2.turn_rate, track.getTurnRate(i), 0);
+			assertEquals("fix #" + i, p2.seconds_since_last_fix, track.getSecondsSinceLastFix(i));
+			p1 = p2;
+		}
+	}
+	
+	/**
+	 * Distances worked out from the track's sines and cosines must agree with
+	 * the per point haversine, and bearings must be exactly the per point ones
+	 */
+	@Test
+	public void testDistancesSameAsPerPoint() throws IOException, AnalysisException {
+		FlightTrack track = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		
+		GNSSPoint first = track.get(0);
+		GNSSPoint p1 = first;
+		for (int i = 1; i < track.size(); i++) {
+			GNSSPoint p2 = track.get(i);
+			assertEquals("fix #" + i, p2.distance(p1), track.getSegmentDistance(i), 1e-6);
+			assertEquals("fix #" + i, Math.sin(track.getLatitude(i)), track.getSinLatitude(i), 0);
+			assertEquals("fix #" + i, Math.cos(track.getLatitude(i)), track.getCosLatitude(i), 0);
+			
+			if (i % 97 == 0) {
+				assertEquals("fix #" + i, p2.distance(first), track.distance(0, i), 1e-6);
+				assertEquals("fix #" + i, first.distance(p2), track.distance(i, 0), 1e-6);
+				assertEquals("fix #" + i, FlightAnalyser.calculateTrackCourse(first, p2), track.bearing(0, i), 0);
+			}
+			p1 = p2;
+		}
+		assertEquals(0, track.getSegmentDistance(0), 0);
+	}
+	
+	/**
+	 * Dropping fixes must leave the derived columns as if only the ones kept
+	 * had been added
+	 */
+	@Test
+	public void testRetain() throws IOException, AnalysisException {
+		FlightTrack file = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		FlightTrack all = new FlightTrack(1);
+		FlightTrack expected = new FlightTrack(1);
+		BitSet keep = new BitSet();
+		for (int i = 0; i < 600; i++) {
+			FlightTrack[] targets = i % 7 != 3 ? new FlightTrack[] {all, expected} : new FlightTrack[] {all};
+			for (FlightTrack t : targets) {
+				t.addFix(
+						file.getTime(i), 
+						Math.toDegrees(file.getLatitude(i)), 
+						Math.toDegrees(file.getLongitude(i)), 
+						file.getAltitudeOK(i), 
+						file.getPressureAltitude(i), 
+						file.getGnssAltitude(i));
+			}
+			if (i % 7 != 3) {
+				keep.set(i);
+			}
+		}
+		
+		all.resolve();
+		all.retain(keep);
+		
+		assertEquals(expected.size(), all.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("fix #" + i, expected.getTime(i), all.getTime(i));
+			assertEquals("fix #" + i, expected.getBearingIntoPoint(i), all.getBearingIntoPoint(i), 0);
+			assertEquals("fix #" + i, expected.getSegmentDistance(i), all.getSegmentDistance(i), 0);
+			assertEquals("fix #" + i, expected.getTurnRate(i), all.getTurnRate(i), 0);
+		}
+	}
+	
+	/**
+	 * A track appended piece by piece must come out as if it had been read
+	 * in one go, whether or not the pieces were resolved first
+	 */
+	@Test
+	public void testAppend() throws IOException, AnalysisException {
+		FlightTrack file = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		FlightTrack whole = new FlightTrack(1);
+		FlightTrack appended = new FlightTrack(1);
+		
+		int start = 0;
+		for (int length : new int[] {0, 1, 2, 100, 0, 1, 1, 500}) {
+			FlightTrack piece = new FlightTrack(1);
+			for (int i = start; i < start + length; i++) {
+				for (FlightTrack t : new FlightTrack[] {whole, piece}) {
+					t.addFix(
+							file.getTime(i), 
+							Math.toDegrees(file.getLatitude(i)), 
+							Math.toDegrees(file.getLongitude(i)), 
+							file.getAltitudeOK(i), 
+							file.getPressureAltitude(i), 
+							file.getGnssAltitude(i));
+				}
+			}
+			if (length % 2 == 0) {
+				piece.resolve();
+			}
+			appended.append(piece);
+			start += length;
+		}
+		
+		for (int i = 0; i < start; i++) {
+			assertEquals("fix #" + i, whole.getTime(i), appended.getTime(i));
+			assertEquals("fix #" + i, whole.getLatitude(i), appended.getLatitude(i), 0);
+			assertEquals("fix #" + i, whole.getBearingIntoPoint(i), appended.getBearingIntoPoint(i), 0);
+			assertEquals("fix #" + i, whole.getSegmentDistance(i), appended.getSegmentDistance(i), 0);
+			assertEquals("fix #" + i, whole.getTurnRate(i), appended.getTurnRate(i), 0);
+		}
+		assertEquals(whole.size(), appended.size());
+	}
+	
+	@Test
+	public void testPointViews() {
+		FlightTrack track = new FlightTrack(1);
+		track.addFix(1000, 50.1, -3.2, 'A', 300, 310);
+		track.addFix(2000, 50.2, -3.1, 'V', 320, 330);
+		track.addFix(4000, 50.2, -3.0, 'A', 340, 350);
+		
+		assertEquals(3, track.size());
+		assertEquals(FlightTrack.NO_BEARING, track.getBearingIntoPoint(0), 0);
+		
+		GNSSPoint p = track.get(2);
+		assertEquals(4000, p.data.timestamp.getTime());
+		assertEquals(50.2, p.getLatitude(), 1e-12);
+		assertEquals(-3.0, p.getLongitude(), 1e-12);
+		assertEquals("A", p.getAltitudeOK());
+		assertEquals(340, p.getPressureAltitude());
+		assertEquals(350, p.getGnssAltitude());
+		assertEquals(track.getBearingIntoPoint(2), p.getBearingIntoPoint(), 0);
+		assertEquals(track.getTurnRate(2), p.turn_rate, 0);
+		assertEquals(2, p.seconds_since_last_fix);
+		
+		assertEquals("V", track.get(1).getAltitudeOK());
+		
+		//Points are found by timestamp, like GNSSPoint.equals
+		assertEquals(1, track.indexOf(track.get(1)));
+		assertEquals(-1, track.indexOf(GNSSPoint.createGNSSPoint(null, new Date(3000), 0, 0, "A", 0, 0, null)));
+		
+		track.trimToSize();
+		assertEquals(3, track.size());
+		assertEquals(2000, track.getTime(1));
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetOutOfRange() {
+		FlightTrack track = new FlightTrack();
+		track.addFix(1000, 50.1, -3.2, 'A', 300, 310);
+		track.get(1);
+	}
+	
+	/**
+	 * Positive: at ten fixes a second (times to the millisecond, as with a
+	 * TDS extension) the raw turn rate, in whole seconds, has nothing to go
+	 * on, but the filtered columns come out right. Changing the track drops
+	 * them again.
+	 */
+	@Test
+	public void testFilterAtTenHertz() {
+		FlightTrack track = new FlightTrack();
+		double latitude = Math.toRadians(-34);
+		double longitude = Math.toRadians(18.5);
+		double heading = 0;
+		for (int i = 0; i < 100; i++) {
+			//25 m/s, turning right at 20 degrees a second, climbing at 2 m/s
+			track.addFix(1000000000000L + i * 100L, Math.toDegrees(latitude), Math.toDegrees(longitude), 
+					'A', 1000 + i / 5, 1000);
+			
+			heading += 2;
+			double b = Math.toRadians(heading);
+			double next_latitude = Geodesy.destinationLatitude(latitude, b, 2.5);
+			longitude = Geodesy.destinationLongitude(latitude, longitude, b, 2.5, next_latitude);
+			latitude = next_latitude;
+		}
+		
+		track.filter(FilterType.MOVING_AVERAGE, 10);
+		assertEquals(true, track.isFiltered());
+		for (int i = 20; i < track.size(); i++) {
+			assertEquals(0.1, track.getInterval(i), 1e-12);
+			assertEquals("fix " + i, 20, track.getFilteredTurnRate(i), 0.01);
+			assertEquals("fix " + i, 25, track.getFilteredGroundSpeed(i), 0.01);
+			assertEquals("fix " + i, 2, track.getFilteredClimbRate(i), 1e-9);
+		}
+		
+		track.addFix(1000000000000L + 100 * 100L, -34, 18.5, 'A', 1000, 1000);
+		assertEquals(false, track.isFiltered());
+		assertEquals(track.getTurnRate(50), track.getFilteredTurnRate(50), 0);
+	}
+}
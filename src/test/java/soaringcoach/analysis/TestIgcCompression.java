@@ -0,0 +1,144 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyser;
+import soaringcoach.analysis.parsing.IgcCompression;
+
+public class TestIgcCompression {
+	private static final String IGC_FILE = "src/test/resources/5c6c3ke1.igc";
+	
+	@Test
+	public void testDetect() throws IOException {
+		byte[] igc = Files.readAllBytes(Paths.get(IGC_FILE));
+		
+		assertEquals(IgcCompression.NONE, detect(igc));
+		assertEquals(IgcCompression.GZIP, detect(gzip(igc)));
+		assertEquals(IgcCompression.ZIP, detect(zip(igc)));
+		assertEquals(IgcCompression.BZIP2, detect(bzip2(igc)));
+		assertEquals(IgcCompression.NONE, detect(new byte[] {'B'}));
+		assertEquals(IgcCompression.NONE, detect(new byte[0]));
+	}
+	
+	/**
+	 * Compressed uploads must give exactly the same analysis as the plain file
+	 */
+	@Test
+	public void testCompressedStreams() throws IOException, AnalysisException {
+		byte[] igc = Files.readAllBytes(Paths.get(IGC_FILE));
+		Flight expected = new FlightAnalyser().addAndAnalyseFlight(new File(IGC_FILE));
+		
+		for (byte[] content : new byte[][] {igc, gzip(igc), zip(igc), bzip2(igc)}) {
+			Flight actual = new FlightAnalyser().addAndAnalyseFlight(new ByteArrayInputStream(content));
+			assertSameFlight(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testCompressedFile() throws IOException, AnalysisException {
+		byte[] igc = Files.readAllBytes(Paths.get(IGC_FILE));
+		Flight expected = new FlightAnalyser().addAndAnalyseFlight(new File(IGC_FILE));
+		
+		File file = File.createTempFile("compressed", ".igc.gz");
+		file.deleteOnExit();
+		Files.write(file.toPath(), gzip(igc));
+		
+		assertSameFlight(expected, new FlightAnalyser().addAndAnalyseFlight(file));
+	}
+	
+	@Test(expected = IOException.class)
+	public void testZipWithoutIgc() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			zip.putNextEntry(new ZipEntry("readme.txt"));
+			zip.write("Not a flight".getBytes());
+		}
+		
+		IgcCompression.decompress(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+	
+	private static void assertSameFlight(Flight expected, Flight actual) {
+		assertEquals(expected.igc_points.size(), actual.igc_points.size());
+		assertEquals(expected.pilot_name, actual.pilot_name);
+		assertEquals(expected.circles.size(), actual.circles.size());
+		assertEquals(expected.thermals.size(), actual.thermals.size());
+		assertEquals(expected.total_track_distance, actual.total_track_distance, 0);
+	}
+	
+	private static IgcCompression detect(byte[] content) {
+		return IgcCompression.detect(content, Math.min(4, content.length));
+	}
+	
+	private static byte[] gzip(byte[] igc) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(igc);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private static byte[] zip(byte[] igc) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			zip.putNextEntry(new ZipEntry("notes/"));
+			zip.putNextEntry(new ZipEntry("notes/readme.txt"));
+			zip.write("Task notes".getBytes());
+			zip.putNextEntry(new ZipEntry("5c6c3ke1.IGC"));
+			zip.write(igc);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private static byte[] bzip2(byte[] igc) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new BZip2CompressorOutputStream(bytes)) {
+			out.write(igc);
+		}
+		return bytes.toByteArray();
+	}
+}
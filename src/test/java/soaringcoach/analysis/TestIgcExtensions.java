@@ -0,0 +1,152 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyser;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.IgcExtension;
+import soaringcoach.analysis.parsing.IgcExtensionLayout;
+import soaringcoach.analysis.parsing.IgcParserType;
+
+public class TestIgcExtensions {
+
+	@Test
+	public void testParseLayout() {
+		IgcExtensionLayout layout = parse("I083638FXA3941ENL4246TAS4751GSP5254TRT5559VAT6063OAT6467ACZ");
+		
+		assertEquals(8, layout.size());
+		assertEquals("FXA", layout.getCode(0));
+		assertEquals("ACZ", layout.getCode(7));
+		assertEquals(1, layout.indexOf("ENL"));
+		assertEquals(-1, layout.indexOf("SIU"));
+		
+		ByteBuffer b = bytes("B1130433340022S01925294EA0023300191" + "012" + "123" + "45678" + "00900" + "180" + "-0123" + "0150");
+		assertEquals(12, layout.decode(b, 0, b.limit(), layout.indexOf("FXA")));
+		assertEquals(123, layout.decode(b, 0, b.limit(), layout.indexOf("ENL")));
+		assertEquals(45678, layout.decode(b, 0, b.limit(), layout.indexOf("TAS")));
+		assertEquals(180, layout.decode(b, 0, b.limit(), layout.indexOf("TRT")));
+		assertEquals(-123, layout.decode(b, 0, b.limit(), layout.indexOf("VAT")));
+		
+		//Record too short for the last one
+		assertEquals(IgcExtensionLayout.NO_VALUE, layout.decode(b, 0, b.limit(), layout.indexOf("ACZ")));
+	}
+	
+	@Test
+	public void testParseTruncatedLayout() {
+		IgcExtensionLayout layout = parse("I033638FXA3941EN");
+		assertEquals(1, layout.size());
+		assertEquals("FXA", layout.getCode(0));
+	}
+	
+	/**
+	 * Only the requested extensions get columns, and they hold what's in the
+	 * B records at the offsets the I record gives.
+	 */
+	@Test
+	public void testRequestedExtensionsDecoded() throws IOException {
+		String file = "src/test/resources/5c6c3ke1.igc";
+		
+		FlightTrack track = new FlightTrack();
+		track.requestExtensions(EnumSet.of(IgcExtension.ENL, IgcExtension.SIU));
+		Flight f = IgcParserType.NATIVE.getParser().read(new File(file), new FlightTestFacade(track));
+		
+		List<String> b_records = new ArrayList<>();
+		for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.ISO_8859_1)) {
+			if (line.startsWith("B")) {
+				b_records.add(line);
+			}
+		}
+		
+		assertEquals(b_records.size(), f.igc_points.size());
+		assertTrue(f.igc_points.hasExtension(IgcExtension.ENL));
+		assertFalse(f.igc_points.hasExtension(IgcExtension.FXA));
+		for (int i = 0; i < f.igc_points.size(); i++) {
+			//I033638FXA3941ENL4247REX
+			int enl = Integer.parseInt(b_records.get(i).substring(38, 41));
+			assertEquals("fix #" + i, enl, f.igc_points.getExtension(IgcExtension.ENL, i));
+			
+			//Not in this file
+			assertEquals(FlightTrack.NO_VALUE, f.igc_points.getExtension(IgcExtension.SIU, i));
+		}
+	}
+	
+	@Test
+	public void testExtensionsDroppedByDefault() throws IOException {
+		Flight f = IgcParserType.NATIVE.getParser().read(
+				new File("src/test/resources/5c6c3ke1.igc"), new FlightTestFacade(null));
+		
+		assertEquals(0, f.igc_points.getExtensions().length);
+		
+		try {
+			f.igc_points.getExtension(IgcExtension.ENL, 0);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		throw new AssertionError("Extension that was not requested should not be available");
+	}
+	
+	@Test
+	public void testFlightAnalyserRequest() throws AnalysisException {
+		FlightAnalyser fa = new FlightAnalyser(IgcParserType.NATIVE.getParser());
+		fa.requestExtensions(IgcExtension.FXA);
+		
+		Flight f = fa.addAndAnalyseFlight(new File("src/test/resources/5cjx4i41.igc"));
+		
+		assertTrue(f.igc_points.hasExtension(IgcExtension.FXA));
+		assertEquals(6, f.igc_points.getExtension(IgcExtension.FXA, 0));
+	}
+	
+	private static ByteBuffer bytes(String line) {
+		return ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	private static IgcExtensionLayout parse(String i_record) {
+		ByteBuffer b = bytes(i_record);
+		return IgcExtensionLayout.parse(b, 0, b.limit());
+	}
+}
@@ -0,0 +1,135 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.analysis.parsing.IgcHeaderScanner;
+import soaringcoach.analysis.parsing.IgcMetadata;
+
+public class TestIgcHeaderScanner {
+	private final IgcHeaderScanner scanner = new IgcHeaderScanner();
+
+	@Test
+	public void testAllHeaders() throws IOException {
+		IgcMetadata m = scanner.scan(new File("src/test/resources/5c9x8i91.igc"));
+		
+		assertEquals("MARTIN LESSLE", m.pilot_name);
+		assertEquals("2015-12-09", m.flight_date);
+		assertEquals("Duo Discus", m.glider_type);
+		assertEquals("ZS-GXR", m.glider_id);
+		assertEquals("NaviterOudie-IGC", m.logger_type);
+		assertEquals("XR", m.competition_id);
+	}
+	
+	@Test
+	public void testBlankAndMissingHeaders() throws IOException {
+		IgcMetadata m = scanner.scan(new File("src/test/resources/5c6v1fo1.igc"));
+		assertEquals("", m.glider_type);
+		assertEquals("", m.competition_id);
+		assertEquals("LXNAV,NANO", m.logger_type);
+		
+		m = scanner.scan(new File("src/test/resources/empty.igc"));
+		assertNull(m.pilot_name);
+		assertNull(m.flight_date);
+		assertNull(m.glider_type);
+	}
+	
+	/**
+	 * Pilot and date must be what a full parse finds, for every file we have
+	 */
+	@Test
+	public void testSameAsFullParse() throws IOException {
+		for (File file : new File("src/test/resources").listFiles()) {
+			Flight f = FlightAnalyserTestFacade.loadFromFileFast(file.getPath());
+			IgcMetadata m = scanner.scan(file);
+			
+			assertEquals(file.getName(), f.pilot_name, m.pilot_name);
+			assertEquals(file.getName(), f.flightDate, m.flight_date);
+		}
+	}
+	
+	/**
+	 * Nothing after the first B record is looked at, not even a broken record
+	 * or a header that comes later, and the rest of the stream is not read
+	 */
+	@Test
+	public void testStopsAtFirstFix() throws IOException {
+		StringBuilder igc = new StringBuilder("HFPLTPILOT:Early Bird\r\nB1039565045817N00352098EA0033600360\r\nB10\r\n");
+		igc.append("HFGTYGLIDERTYPE:Too Late\r\n");
+		while (igc.length() < 1024 * 1024) {
+			igc.append("B1039565045817N00352098EA0033600360\r\n");
+		}
+		
+		final int[] bytes_read = {0};
+		InputStream in = new ByteArrayInputStream(igc.toString().getBytes(StandardCharsets.US_ASCII)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				int read = super.read(b, off, len);
+				bytes_read[0] += Math.max(read, 0);
+				return read;
+			}
+		};
+		
+		IgcMetadata m = scanner.scan(in);
+		
+		assertEquals("Early Bird", m.pilot_name);
+		assertNull(m.glider_type);
+		assertTrue("Read " + bytes_read[0] + " bytes", bytes_read[0] <= 16 * 1024);
+	}
+	
+	@Test
+	public void testCompressedFile() throws IOException {
+		File gz = File.createTempFile("headers", ".igc.gz");
+		gz.deleteOnExit();
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+			out.write(Files.readAllBytes(new File("src/test/resources/5c9x8i91.igc").toPath()));
+		}
+		
+		assertEquals("ZS-GXR", scanner.scan(gz).glider_id);
+	}
+}
@@ -0,0 +1,269 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.BeanIOIgcParser;
+import soaringcoach.analysis.parsing.IgcExtension;
+import soaringcoach.analysis.parsing.IgcParser;
+import soaringcoach.analysis.parsing.IgcParserType;
+import soaringcoach.analysis.parsing.NativeIgcParser;
+
+public class TestIgcParsers {
+
+	@Test
+	public void testParserSelection() {
+		assertSame(IgcParserType.BEANIO, IgcParserType.fromName("beanio"));
+		assertSame(IgcParserType.NATIVE, IgcParserType.fromName(" Native "));
+		
+		assertEquals(BeanIOIgcParser.class, IgcParserType.BEANIO.getParser().getClass());
+		assertEquals(NativeIgcParser.class, IgcParserType.NATIVE.getParser().getClass());
+		
+		// One shared instance per backend
+		assertSame(IgcParserType.BEANIO.getParser(), IgcParserType.BEANIO.getParser());
+		assertSame(IgcParserType.NATIVE.getParser(), IgcParserType.NATIVE.getParser());
+		
+		try {
+			IgcParserType.fromName("xml");
+			fail("Unknown parser names should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testDefaultParser() {
+		String previous = System.getProperty(IgcParserType.DEFAULT_PARSER_PROPERTY);
+		
+		try {
+			System.clearProperty(IgcParserType.DEFAULT_PARSER_PROPERTY);
+			assertSame(IgcParserType.NATIVE, IgcParserType.getDefault());
+			
+			System.setProperty(IgcParserType.DEFAULT_PARSER_PROPERTY, "beanio");
+			assertSame(IgcParserType.BEANIO, IgcParserType.getDefault());
+		} finally {
+			if (previous == null) {
+				System.clearProperty(IgcParserType.DEFAULT_PARSER_PROPERTY);
+			} else {
+				System.setProperty(IgcParserType.DEFAULT_PARSER_PROPERTY, previous);
+			}
+		}
+	}
+	
+	/**
+	 * The shared parser instances are hit by many requests at once - each of
+	 * them has to get the same result it would have got on its own.
+	 */
+	/**
+	 * Positive: neither backend closes the stream it reads, as the IgcParser
+	 * contract says - that's left to the caller
+	 */
+	@Test
+	public void testStreamLeftOpen() throws Exception {
+		for (IgcParserType type : IgcParserType.values()) {
+			final boolean[] closed = {false};
+			try (FileInputStream file = new FileInputStream("src/test/resources/circling_detection.igc")) {
+				FilterInputStream in = new FilterInputStream(file) {
+					@Override
+					public void close() throws IOException {
+						closed[0] = true;
+						super.close();
+					}
+				};
+				
+				Flight f = type.getParser().read(in, new FlightTestFacade(null));
+				
+				assertFalse(type + " closed the stream", closed[0]);
+				assertTrue(type + " fixes", f.igc_points.size() > 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testConcurrentParsing() throws Exception {
+		final File[] files = new File("src/test/resources").listFiles();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		
+		try {
+			for (IgcParserType type : IgcParserType.values()) {
+				final IgcParser parser = type.getParser();
+				
+				List<Flight> expected = new ArrayList<>();
+				for (File file : files) {
+					expected.add(read(parser, file));
+				}
+				
+				List<Future<Flight>> results = new ArrayList<>();
+				for (int round = 0; round < 4; round++) {
+					for (final File file : files) {
+						results.add(pool.submit(new Callable<Flight>() {
+							@Override
+							public Flight call() throws Exception {
+								return read(parser, file);
+							}
+						}));
+					}
+				}
+				
+				for (int i = 0; i < results.size(); i++) {
+					Flight e = expected.get(i % files.length);
+					Flight a = results.get(i).get();
+					String msg = type + " " + files[i % files.length].getName();
+					
+					assertEquals(msg, e.pilot_name, a.pilot_name);
+					assertEquals(msg, e.flightDate, a.flightDate);
+					assertEquals(msg, e.igc_points.size(), a.igc_points.size());
+					for (int j = 0; j < e.igc_points.size(); j++) {
+						assertEquals(msg, e.igc_points.get(j).data.timestamp, a.igc_points.get(j).data.timestamp);
+						assertEquals(msg, e.igc_points.get(j).getLatitude(), a.igc_points.get(j).getLatitude(), 0);
+						assertEquals(msg, e.igc_points.get(j).getLongitude(), a.igc_points.get(j).getLongitude(), 0);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Cutting the file up into chunks, down to one line per chunk, must not
+	 * change a single value in the track - least of all the bearing and turn
+	 * rate of the fixes either side of each seam.
+	 */
+	@Test
+	public void testParallelParsingSameAsSequential() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		IgcParser sequential = new NativeIgcParser(pool, Long.MAX_VALUE, 1);
+		
+		try {
+			for (int chunk_size : new int[] {1, 256, 4096}) {
+				IgcParser parallel = new NativeIgcParser(pool, 0, chunk_size);
+				
+				for (File file : new File("src/test/resources").listFiles()) {
+					Flight e = sequential.read(file, createFlight());
+					Flight a = parallel.read(file, createFlight());
+					String msg = file.getName() + " in chunks of " + chunk_size;
+					
+					assertEquals(msg, e.pilot_name, a.pilot_name);
+					assertEquals(msg, e.flightDate, a.flightDate);
+					assertSameTrack(msg, e.igc_points, a.igc_points);
+					
+					//Uploads come in as streams, and get parsed in parallel all the same
+					try (FileInputStream in = new FileInputStream(file)) {
+						Flight streamed = parallel.read(in, createFlight());
+						assertEquals(msg + " streamed", e.pilot_name, streamed.pilot_name);
+						assertEquals(msg + " streamed", e.flightDate, streamed.flightDate);
+						assertSameTrack(msg + " streamed", e.igc_points, streamed.igc_points);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * A stream at least as long as the threshold is cut into chunks for the
+	 * pool, the same as a file; a shorter one is not
+	 */
+	@Test
+	public void testLargeStreamParsedInParallel() throws Exception {
+		File file = new File("src/test/resources/5c5vjf21.igc");
+		byte[] igc = Files.readAllBytes(file.toPath());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		
+		try {
+			new NativeIgcParser(pool, igc.length + 1, 4096).read(new ByteArrayInputStream(igc), createFlight());
+			assertEquals("below the threshold", 0, pool.getStealCount());
+			
+			Flight f = new NativeIgcParser(pool, igc.length, 4096).read(new ByteArrayInputStream(igc), createFlight());
+			assertTrue("at the threshold", pool.getStealCount() > 0);
+			assertSameTrack(file.getName(), 
+					new NativeIgcParser(pool, Long.MAX_VALUE, 1).read(file, createFlight()).igc_points, f.igc_points);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private static Flight createFlight() {
+		FlightTrack track = new FlightTrack();
+		track.requestExtensions(EnumSet.of(IgcExtension.FXA, IgcExtension.ENL));
+		return new FlightTestFacade(track);
+	}
+	
+	static void assertSameTrack(String msg, FlightTrack e, FlightTrack a) {
+		assertEquals(msg, e.size(), a.size());
+		for (int i = 0; i < e.size(); i++) {
+			String fix = msg + " fix #" + i;
+			assertEquals(fix, e.getTime(i), a.getTime(i));
+			assertEquals(fix, e.getLatitude(i), a.getLatitude(i), 0);
+			assertEquals(fix, e.getLongitude(i), a.getLongitude(i), 0);
+			assertEquals(fix, e.getPressureAltitude(i), a.getPressureAltitude(i));
+			assertEquals(fix, e.getGnssAltitude(i), a.getGnssAltitude(i));
+			assertEquals(fix, e.getAltitudeOK(i), a.getAltitudeOK(i));
+			assertEquals(fix, e.getBearingIntoPoint(i), a.getBearingIntoPoint(i), 0);
+			assertEquals(fix, e.getTurnRate(i), a.getTurnRate(i), 0);
+			for (IgcExtension x : e.getExtensions()) {
+				assertEquals(fix + " " + x, e.getExtension(x, i), a.getExtension(x, i));
+			}
+		}
+	}
+	
+	private static Flight read(IgcParser parser, File file) throws IOException {
+		try (FileInputStream in = new FileInputStream(file)) {
+			return parser.read(in, new FlightTestFacade(null));
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.IgcParserType;
+import soaringcoach.analysis.parsing.IgcTimeline;
+
+public class TestIgcTimeline {
+	private static final String MIDNIGHT_FILE = "src/test/resources/midnight_rollover.igc";
+
+	/**
+	 * A flight logged from 23:58:50 to 00:01:10 UTC on New Year's Eve keeps
+	 * going forward in time, onto the first of January.
+	 */
+	@Test
+	public void testMidnightRollover() throws Exception {
+		long first = epochMillis(2016, 12, 31, 23, 58, 50);
+		
+		for (Flight f : new Flight[] {
+				FlightAnalyserTestFacade.loadFromFile(MIDNIGHT_FILE), 
+				FlightAnalyserTestFacade.loadFromFileFast(MIDNIGHT_FILE)}) {
+			FlightTrack track = f.igc_points;
+			
+			assertEquals("2016-12-31", f.flightDate);
+			assertEquals(141, track.size());
+			assertEquals(first, track.getTime(0));
+			assertEquals(epochMillis(2017, 1, 1, 0, 0, 0), track.getTime(70));
+			for (int i = 1; i < track.size(); i++) {
+				assertEquals("fix #" + i, 1, track.getSecondsSinceLastFix(i));
+			}
+			assertEquals("00:00:00", track.get(70).getTimestamp());
+		}
+	}
+	
+	/**
+	 * Circles flown over midnight used to come out with negative durations
+	 */
+	@Test
+	public void testCirclesOverMidnight() throws Exception {
+		Flight f = new FlightTestFacade(FlightAnalyserTestFacade.loadFromFileFast(MIDNIGHT_FILE).igc_points);
+		new CirclesAnalysis().performAnalysis(f);
+		
+		assertTrue("Number of circles", f.circles.size() >= 3);
+		for (Circle c : f.circles) {
+			assertEquals("Circle at " + c.getTimestamp(), 30, c.duration, 1);
+		}
+	}
+	
+	/**
+	 * Tenths of a second from a TDS extension are added to the B record time
+	 */
+	@Test
+	public void testSubSecondTimes() throws IOException {
+		String igc = 
+				"HFDTE311216\r\n" + 
+				"I013636TDS\r\n" + 
+				"B2359593329919S15030000EA01200012500\r\n" + 
+				"B2359593329921S15030020EA01201012515\r\n" + 
+				"B0000003329935S15030035EA01202012520\r\n";
+		
+		Flight f = IgcParserType.NATIVE.getParser().read(
+				new ByteArrayInputStream(igc.getBytes(StandardCharsets.US_ASCII)), new FlightTestFacade(null));
+		
+		long second = epochMillis(2016, 12, 31, 23, 59, 59);
+		assertEquals(second, f.igc_points.getTime(0));
+		assertEquals(second + 500, f.igc_points.getTime(1));
+		assertEquals(second + 1000, f.igc_points.getTime(2));
+	}
+	
+	@Test
+	public void testTimeline() {
+		IgcTimeline timeline = new IgcTimeline();
+		
+		// No HFDTE, so 1970-01-01
+		assertEquals(10000, timeline.toEpochMillis(10000));
+		
+		// Dates after the first fix are ignored
+		timeline.setFlightDate("2017-09-05");
+		assertEquals(20000, timeline.toEpochMillis(20000));
+		
+		// A glitch a few seconds back stays on the same day
+		assertEquals(15000, timeline.toEpochMillis(15000));
+		
+		timeline = new IgcTimeline();
+		timeline.setFlightDate("not a date");
+		timeline.setFlightDate("2017-09-05");
+		long day = epochMillis(2017, 9, 5, 0, 0, 0);
+		assertEquals(day + 23 * 3600000L, timeline.toEpochMillis(23 * 3600000L));
+		assertEquals(day + IgcTimeline.DAY_MS + 5000, timeline.toEpochMillis(5000));
+		assertEquals(day + IgcTimeline.DAY_MS + 6000, timeline.toEpochMillis(6000));
+	}
+	
+	private static long epochMillis(int year, int month, int day, int hour, int minute, int second) {
+		return LocalDateTime.of(LocalDate.of(year, month, day), LocalTime.of(hour, minute, second))
+				.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+}
@@ -0,0 +1,189 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Random;
+
+import javax.vecmath.Vector2d;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyser;
+import soaringcoach.Thermal;
+
+public class TestLocalProjection {
+	private static final double[] ANCHOR_LATITUDES = {0, -33.9, 52.1, 65.5};
+
+	/**
+	 * Within a thermal's couple of kilometers the plane must agree with the
+	 * great circle distances to well under a millimeter. Bearings are against
+	 * north at the anchor, so they are off by the convergence of the meridians.
+	 */
+	@Test
+	public void testThermalScaleAgainstSpherical() {
+		assertWithin(2000, 0.001, 0.05);
+	}
+	
+	/**
+	 * Further out the errors grow - a few centimeters and a quarter of a
+	 * degree at 20 km, which is why each thermal gets its own anchor
+	 */
+	@Test
+	public void testFlightScaleAgainstSpherical() {
+		assertWithin(20000, 0.1, 0.5);
+	}
+	
+	private void assertWithin(double range, double distance_tolerance, double bearing_tolerance) {
+		Random random = new Random(42);
+		for (double anchor_latitude : ANCHOR_LATITUDES) {
+			GNSSPoint anchor = point(anchor_latitude, 18.5);
+			LocalProjection projection = LocalProjection.at(anchor);
+			
+			for (int i = 0; i < 200; i++) {
+				GNSSPoint p1 = pointNear(anchor, range, random);
+				GNSSPoint p2 = pointNear(anchor, range, random);
+				Vector2d v1 = projection.project(p1);
+				Vector2d v2 = projection.project(p2);
+				
+				String where = "anchored at " + anchor_latitude + ", pair #" + i;
+				double distance = p1.distance(p2);
+				assertEquals(where, distance, LocalProjection.distance(v1, v2), distance_tolerance);
+				
+				if (distance > 10) {
+					double bearing_error = FlightAnalyser.calcBearingChange(
+							FlightAnalyser.calculateTrackCourse(p1, p2), LocalProjection.bearing(v1, v2));
+					assertEquals(where, 0, bearing_error, bearing_tolerance);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moving a projected point by the wind drift must land within centimeters
+	 * of where the spherical destination point formula does
+	 */
+	@Test
+	public void testMoveAgainstDestinationPoint() {
+		CentringAnalysis ca = new CentringAnalysis();
+		Random random = new Random(7);
+		for (double anchor_latitude : ANCHOR_LATITUDES) {
+			GNSSPoint anchor = point(anchor_latitude, -3.2);
+			LocalProjection projection = LocalProjection.at(anchor);
+			
+			for (int i = 0; i < 100; i++) {
+				GNSSPoint p1 = pointNear(anchor, 1000, random);
+				PolarVector wind = new PolarVector(random.nextDouble() * 360, random.nextDouble() * 15);
+				
+				Vector2d moved = LocalProjection.move(projection.project(p1), wind.bearing, wind.size * 30);
+				Vector2d expected = projection.project(ca.calcDestinationPoint(p1, wind, 30));
+				
+				assertEquals("anchored at " + anchor_latitude, 0, LocalProjection.distance(expected, moved), 0.15);
+			}
+		}
+	}
+	
+	@Test
+	public void testNorthAndEast() {
+		LocalProjection projection = new LocalProjection(Math.toRadians(-33.9), Math.toRadians(18.5));
+		
+		Vector2d anchor = projection.project(Math.toRadians(-33.9), Math.toRadians(18.5));
+		assertEquals(0, anchor.x, 1e-9);
+		assertEquals(0, anchor.y, 1e-9);
+		
+		Vector2d north = projection.project(Math.toRadians(-33.89), Math.toRadians(18.5));
+		assertEquals(0, north.x, 1e-9);
+		assertEquals(1112, north.y, 1);
+		assertEquals(0, LocalProjection.bearing(anchor, north), 1e-9);
+		
+		Vector2d east = projection.project(Math.toRadians(-33.9), Math.toRadians(18.51));
+		assertEquals(923, east.x, 1);
+		assertEquals(90, LocalProjection.bearing(anchor, east), 0.01);
+	}
+	
+	/**
+	 * Wind and centring on a real flight must come out the same either way -
+	 * to within a few centimeters for the corrections of thermals that fall
+	 * back to the wind field, as their circles are moved further
+	 */
+	@Test
+	public void testFlightSameInBothModes() throws AnalysisException {
+		FlightAnalyser fa = new FlightAnalyser();
+		fa.setGeometryMode(GeometryMode.SPHERICAL);
+		Flight spherical = fa.addAndAnalyseFlight(new File("src/test/resources/5c6c3ke1.igc"));
+		fa.setGeometryMode(GeometryMode.LOCAL_PLANE);
+		Flight plane = fa.addAndAnalyseFlight(new File("src/test/resources/5c6c3ke1.igc"));
+		
+		assertEquals(GeometryMode.LOCAL_PLANE, plane.geometry_mode);
+		assertEquals(spherical.thermals.size(), plane.thermals.size());
+		for (int i = 0; i < spherical.thermals.size(); i++) {
+			Thermal s = spherical.thermals.get(i);
+			Thermal p = plane.thermals.get(i);
+			assertEquals("thermal #" + i, s.wind.size, p.wind.size, 1e-4);
+			assertEquals("thermal #" + i, 0, FlightAnalyser.calcBearingChange(s.wind.bearing, p.wind.bearing), 0.01);
+			
+			for (int c = 0; c < s.circles.size(); c++) {
+				Circle sc = s.circles.get(c);
+				Circle pc = p.circles.get(c);
+				assertEquals("thermal #" + i + " circle #" + c, 
+						sc.correction_vector.size, pc.correction_vector.size, 0.05);
+			}
+		}
+	}
+	
+	@Test
+	public void testFromName() {
+		assertEquals(GeometryMode.LOCAL_PLANE, GeometryMode.fromName(" Local_Plane"));
+		assertEquals(GeometryMode.SPHERICAL, GeometryMode.fromName("spherical"));
+	}
+	
+	private static GNSSPoint point(double latitude, double longitude) {
+		GNSSPoint p = GNSSPoint.createGNSSPoint(null, null, latitude, longitude, "A", 0, 0, null);
+		p.lat_radians = Math.toRadians(latitude);
+		p.lon_radians = Math.toRadians(longitude);
+		return p;
+	}
+	
+	/**
+	 * @return a point up to <b>range</b> meters from <b>anchor</b> in a random direction
+	 */
+	private static GNSSPoint pointNear(GNSSPoint anchor, double range, Random random) {
+		double north = (random.nextDouble() * 2 - 1) * range / Math.sqrt(2);
+		double east = (random.nextDouble() * 2 - 1) * range / Math.sqrt(2);
+		double latitude = anchor.getLatitude() + Math.toDegrees(north / Geodesy.EARTH_RADIUS);
+		double longitude = anchor.getLongitude() 
+				+ Math.toDegrees(east / (Geodesy.EARTH_RADIUS * Math.cos(Math.toRadians(latitude))));
+		return point(latitude, longitude);
+	}
+}
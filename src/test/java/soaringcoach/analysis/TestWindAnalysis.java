@@ -283,6 +283,65 @@ public class TestWindAnalysis {
 		assertEquals(124.3, c3.drift_vector.size, 0.1);
 	}
 
+	/**
+	 * A wild circle early on drags the average far enough that the steady
+	 * circles after it would look like the outliers. Measured against the
+	 * median, the wild one is left out and the wind comes out exactly.
+	 */
+	@Test
+	public void testWildCircleLeftOut() throws AnalysisException {
+		//Steady drift of 145 meters due north per 20 second circle, but the second circle is 900 meters out east
+		double[] longitudes = {18.5, 18.5098, 18.5, 18.5, 18.5, 18.5, 18.5, 18.5};
+		Flight f = makeThermalFlight(longitudes);
+		f = wa.performAnalysis(f);
+		Thermal t = f.thermals.get(0);
+		
+		assertFalse(t.could_not_calculate_wind);
+		assertEquals(0, t.wind.bearing, 0.5);
+		assertEquals(145.0 / 20, t.wind.size, 0.05);
+		assertTrue(t.circles.get(1).drift_outlier);
+		assertTrue(t.circles.get(2).drift_outlier);
+		for (int i = 3; i < t.circles.size(); i++) {
+			assertFalse("circle " + i, t.circles.get(i).drift_outlier);
+		}
+	}
+	
+	/**
+	 * The cost is linear in the number of circles: a thermal of ten thousand
+	 * circles, a tenth of them wild, takes no time to speak of
+	 */
+	@Test(timeout = 5000)
+	public void testLargeThermal() throws AnalysisException {
+		double[] longitudes = new double[10000];
+		for (int i = 0; i < longitudes.length; i++) {
+			longitudes[i] = i % 10 == 5 ? 18.52 : 18.5;
+		}
+		Flight f = makeThermalFlight(longitudes);
+		f = wa.performAnalysis(f);
+		Thermal t = f.thermals.get(0);
+		
+		assertFalse(t.could_not_calculate_wind);
+		assertEquals(0, t.wind.bearing, 0.5);
+		assertEquals(145.0 / 20, t.wind.size, 0.05);
+	}
+	
+	/**
+	 * One thermal of 20 second circles, each starting 0.0013 degrees (145
+	 * meters) further north than the one before, at the given longitudes
+	 */
+	private Flight makeThermalFlight(double[] longitudes) {
+		Thermal t = new Thermal();
+		long start = 1000000000000L;
+		for (int i = 0; i < longitudes.length; i++) {
+			t.circles.add(new Circle(new Date(start + i * 20000L), 20, -34.0 + i * 0.0013, longitudes[i]));
+		}
+		
+		Flight f = new FlightTestFacade(null);
+		f.thermals = new ArrayList<>();
+		f.thermals.add(t);
+		return f;
+	}
+
 	@Test
 	public void testHasBeenRun() throws AnalysisException {
 		Flight f = new FlightTestFacade(null);
@@ -0,0 +1,172 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.Thermal;
+
+public class TestWindField {
+	private static final long START = 1000000000000L;
+	private static final long HOUR = 60 * 60 * 1000;
+	
+	@Test
+	public void testEmpty() {
+		WindField field = new WindField(new ArrayList<Thermal>(), null);
+		assertTrue(field.isEmpty());
+		assertNull(field.getWind(START, 1000));
+	}
+	
+	/**
+	 * Thermals wind analysis could not work out a wind for are left out
+	 */
+	@Test
+	public void testUnreliableLeftOut() {
+		Thermal t = makeThermal(START, 1000, new PolarVector(90, 5));
+		t.could_not_calculate_wind = true;
+		
+		WindField field = new WindField(Arrays.asList(t), null);
+		assertTrue(field.isEmpty());
+	}
+	
+	/**
+	 * A single thermal's wind is the wind everywhere
+	 */
+	@Test
+	public void testSingleThermal() {
+		WindField field = new WindField(Arrays.asList(makeThermal(START, 1000, new PolarVector(90, 5))), null);
+		
+		assertWind(90, 5, field.getWind(START, 1000));
+		assertWind(90, 5, field.getWind(START - HOUR, 0));
+		assertWind(90, 5, field.getWind(START + 5 * HOUR, 3000));
+	}
+	
+	/**
+	 * Halfway between the centres of two time bins, the wind is halfway
+	 * between theirs, component by component; beyond the centres it is held
+	 */
+	@Test
+	public void testInterpolatesInTime() {
+		List<Thermal> thermals = Arrays.asList(
+				makeThermal(START, 1000, new PolarVector(90, 4)),
+				makeThermal(START + HOUR, 1000, new PolarVector(0, 4)));
+		WindField field = new WindField(thermals, null, HOUR, 500);
+		
+		assertWind(45, 4 * Math.sqrt(0.5), field.getWind(START + HOUR + 10000, 1000));
+		assertWind(90, 4, field.getWind(START, 1000));
+		assertWind(0, 4, field.getWind(START + 3 * HOUR, 1000));
+	}
+	
+	/**
+	 * An empty cell takes the wind of the nearest one with samples - the
+	 * lower one, if two are as near
+	 */
+	@Test
+	public void testFillsEmptyCells() {
+		List<Thermal> thermals = Arrays.asList(
+				makeThermal(START, 1000, new PolarVector(270, 3)),
+				makeThermal(START, 2000, new PolarVector(180, 6)));
+		WindField field = new WindField(thermals, null, HOUR, 500);
+		
+		//Cell centres at 1250, 1750 (empty) and 2250 meters
+		assertWind(270, 3, field.getWind(START, 1250));
+		assertWind(270, 3, field.getWind(START, 1750));
+		assertWind(180, 6, field.getWind(START, 2250));
+	}
+	
+	/**
+	 * Samples in the same cell average by their number of circles
+	 */
+	@Test
+	public void testWeighsByCircles() {
+		Thermal big = makeThermal(START, 1000, new PolarVector(0, 4));
+		big.circles.add(new Circle(new Date(START + 20000), 20, -34.0, 18.5));
+		big.circles.add(new Circle(new Date(START + 40000), 20, -34.0, 18.5));
+		Thermal small = makeThermal(START, 1000, new PolarVector(180, 4));
+		
+		WindField field = new WindField(Arrays.asList(big, small), null);
+		assertWind(0, 2, field.getWind(START, 1000));
+	}
+	
+	/**
+	 * A thermal too short for a wind of its own is centred with the wind of
+	 * the field: circles that stayed put against the wind of the other were
+	 * each moved some 145 meters upwind
+	 */
+	@Test
+	public void testCentringFallsBack() throws AnalysisException {
+		Thermal steady = new Thermal();
+		for (int i = 0; i < 5; i++) {
+			steady.circles.add(new Circle(new Date(START + i * 20000L), 20, -34.0 + i * 0.0013, 18.5));
+		}
+		Thermal brief = new Thermal();
+		for (int i = 0; i < 2; i++) {
+			brief.circles.add(new Circle(new Date(START + 600000 + i * 20000L), 20, -34.1, 18.5));
+		}
+		
+		Flight f = new FlightTestFacade(null);
+		f.circles = new ArrayList<>();
+		f.thermals = new ArrayList<>(Arrays.asList(steady, brief));
+		f = new WindAnalysis().performAnalysis(f);
+		f = new CentringAnalysis().performAnalysis(f);
+		
+		assertTrue(brief.could_not_calculate_wind);
+		assertWind(steady.wind.bearing, steady.wind.size, f.wind_field.getWind(brief, null));
+		PolarVector correction = brief.circles.get(1).correction_vector;
+		assertEquals(180, correction.bearing, 1);
+		assertEquals(145, correction.size, 5);
+	}
+	
+	private Thermal makeThermal(long start, int altitude, PolarVector wind) {
+		Thermal t = new Thermal(new Circle(new Date(start), 20, -34.0, 18.5));
+		t.startPoint = GNSSPoint.createGNSSPoint(null, new Date(start), -34.0, 18.5, null, altitude, altitude, null);
+		t.endPoint = t.startPoint;
+		t.wind = wind;
+		return t;
+	}
+	
+	private void assertWind(double bearing, double size, PolarVector wind) {
+		assertEquals(size, wind.size, 0.01);
+		assertEquals(bearing, wind.bearing, 0.5);
+	}
+}
@@ -0,0 +1,88 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.benchmark;
+
+import java.util.Locale;
+
+/**
+ * Minimal micro-benchmark harness: runs each candidate for a number of warm-up
+ * rounds so the JIT settles, then times a number of measured rounds and prints
+ * throughput relative to the first candidate. Run with
+ * <code>./gradlew benchmark</code>.
+ */
+public abstract class Benchmark {
+	private static final int WARMUP_ROUNDS = 10;
+	private static final int MEASURED_ROUNDS = 10;
+	
+	private final String name;
+	
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Performs one round of work.
+	 * 
+	 * @return the number of operations performed, e.g. the number of fixes parsed
+	 */
+	protected abstract long run() throws Exception;
+	
+	/**
+	 * Runs all candidates and prints their throughput in <b>unit</b> per second.
+	 */
+	public static void compare(String title, String unit, Benchmark... candidates) throws Exception {
+		System.out.println();
+		System.out.println(title);
+		System.out.println("==========================================");
+		
+		double baseline = 0;
+		for (Benchmark b : candidates) {
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				b.run();
+			}
+			
+			long operations = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				operations += b.run();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			double throughput = operations / seconds;
+			
+			if (baseline == 0) {
+				baseline = throughput;
+			}
+			
+			System.out.println(String.format(Locale.ROOT, 
+					"%-30s %,15.0f %s/s  (x%.2f)", b.name, throughput, unit, throughput / baseline));
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
+import soaringcoach.Circle;
+import soaringcoach.Flight;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.Thermal;
+import soaringcoach.analysis.AnalysisMetrics;
+import soaringcoach.analysis.CentringAnalysis;
+import soaringcoach.analysis.GeometryMode;
+import soaringcoach.analysis.WindAnalysis;
+
+/**
+ * Measures the bytes the wind and centring passes allocate per circle, as
+ * the difference between a steady thermal of 1010 circles and one of 10, in
+ * both geometry modes. Past a fixed cost per thermal, the only thing the
+ * passes should make is each circle's drift vector - one PolarVector, 32
+ * bytes with compressed pointers. A GNSSPoint for the circle start is well
+ * over a hundred bytes with its data.
+ * <p>
+ * What escape analysis takes off the heap depends on the JVM and how warm it
+ * is, so this is measured here rather than asserted in a unit test.
+ */
+public class CentringAllocationBenchmark {
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int MEASURED_ROUNDS = 30;
+	
+	public static void main(String[] args) throws Exception {
+		System.out.println();
+		System.out.println("Wind and centring allocation");
+		System.out.println("==========================================");
+		
+		if (AnalysisMetrics.getCurrentThreadAllocatedBytes() < 0) {
+			System.out.println("This JVM doesn't count allocated bytes");
+			return;
+		}
+		
+		for (GeometryMode mode : GeometryMode.values()) {
+			long small_bytes = minAllocatedBytes(makeSteadyThermalFlight(10, mode));
+			long large_bytes = minAllocatedBytes(makeSteadyThermalFlight(1010, mode));
+			
+			System.out.println(String.format(Locale.ROOT, 
+					"%-30s %,15.1f bytes/circle", mode, (large_bytes - small_bytes) / 1000.0));
+		}
+	}
+	
+	/**
+	 * A thermal drifting 145 meters due north every 20 second circle
+	 */
+	private static Flight makeSteadyThermalFlight(int circle_count, GeometryMode mode) {
+		Thermal t = new Thermal();
+		long start = 1000000000000L;
+		for (int i = 0; i < circle_count; i++) {
+			Circle c = new Circle(new Date(start + i * 20000L), 20, -34.0 + i * 0.0013, 18.5);
+			t.circles.add(c);
+		}
+		
+		Flight f = new FlightTestFacade(null);
+		f.geometry_mode = mode;
+		f.circles = t.circles;
+		f.thermals = new ArrayList<>();
+		f.thermals.add(t);
+		return f;
+	}
+	
+	/**
+	 * @return the fewest bytes allocated by one wind and centring pass over
+	 *         the flight, once the passes have been warmed up
+	 */
+	private static long minAllocatedBytes(Flight f) throws Exception {
+		WindAnalysis wind = new WindAnalysis();
+		CentringAnalysis centring = new CentringAnalysis();
+		long min = Long.MAX_VALUE;
+		for (int run = 0; run < WARMUP_ROUNDS + MEASURED_ROUNDS; run++) {
+			f.is_wind_analysis_complete = false;
+			f.is_centring_analysis_complete = false;
+			long before = AnalysisMetrics.getCurrentThreadAllocatedBytes();
+			wind.analyse(f);
+			centring.analyse(f);
+			long after = AnalysisMetrics.getCurrentThreadAllocatedBytes();
+			if (run >= WARMUP_ROUNDS) {
+				min = Math.min(min, after - before);
+			}
+		}
+		return min;
+	}
+}
@@ -0,0 +1,131 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.benchmark;
+
+import soaringcoach.FlightAnalyser;
+import soaringcoach.FlightAnalyserTestFacade;
+import soaringcoach.analysis.FlightTrack;
+import soaringcoach.analysis.GNSSPoint;
+import soaringcoach.analysis.Geodesy;
+import soaringcoach.analysis.TrigBackend;
+
+/**
+ * Compares working out the length and bearing of every segment of a flight
+ * one GNSSPoint pair at a time, to the track resolving them in one pass over
+ * its columns. The track candidate also pays for copying the fixes into a
+ * new track each round, so it is, if anything, flattered less. The track is
+ * timed with both trigonometry backends.
+ */
+public class GeodesyBenchmark {
+	/**
+	 * A single flight is over too quickly to time, so each round goes over it
+	 * this many times
+	 */
+	private static final int REPEATS = 100;
+	
+	/**
+	 * Keeps the JIT from dropping the per point work as unused
+	 */
+	static volatile double sink;
+	
+	public static void main(String[] args) throws Exception {
+		FlightTrack file = FlightAnalyserTestFacade.loadFromFileFast("src/test/resources/5c6c3ke1.igc").igc_points;
+		final int n = file.size();
+		
+		final GNSSPoint[] points = new GNSSPoint[n];
+		final long[] time = new long[n];
+		final double[] latitude = new double[n];
+		final double[] longitude = new double[n];
+		for (int i = 0; i < n; i++) {
+			points[i] = file.get(i);
+			time[i] = file.getTime(i);
+			latitude[i] = Math.toDegrees(file.getLatitude(i));
+			longitude[i] = Math.toDegrees(file.getLongitude(i));
+		}
+		
+		Benchmark.compare("Segment distance and bearing", "fixes", 
+				new Benchmark("GNSSPoint pairs") {
+					@Override
+					protected long run() throws Exception {
+						double total = 0;
+						for (int r = 0; r < REPEATS; r++) {
+							for (int i = 1; i < n; i++) {
+								total += points[i].distance(points[i - 1]);
+								total += FlightAnalyser.calculateTrackCourse(points[i - 1], points[i]);
+							}
+						}
+						sink = total;
+						return (long) n * REPEATS;
+					}
+				},
+				new ResolveCandidate("FlightTrack.resolve", TrigBackend.EXACT, time, latitude, longitude),
+				new ResolveCandidate("FlightTrack.resolve, FAST trig", TrigBackend.FAST, time, latitude, longitude));
+	}
+	
+	private static class ResolveCandidate extends Benchmark {
+		private final TrigBackend trig;
+		private final long[] time;
+		private final double[] latitude;
+		private final double[] longitude;
+		
+		ResolveCandidate(String name, TrigBackend trig, long[] time, double[] latitude, double[] longitude) {
+			super(name);
+			this.trig = trig;
+			this.time = time;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+
+		@Override
+		protected long run() throws Exception {
+			TrigBackend previous = Geodesy.getTrigBackend();
+			Geodesy.setTrigBackend(trig);
+			try {
+				int n = time.length;
+				double total = 0;
+				for (int r = 0; r < REPEATS; r++) {
+					FlightTrack track = new FlightTrack(n);
+					for (int i = 0; i < n; i++) {
+						track.addFix(time[i], latitude[i], longitude[i], 'A', 0, 0);
+					}
+					track.resolve();
+					
+					for (int i = 1; i < n; i++) {
+						total += track.getSegmentDistance(i) + track.getBearingIntoPoint(i);
+					}
+				}
+				sink = total;
+				return (long) n * REPEATS;
+			} finally {
+				Geodesy.setTrigBackend(previous);
+			}
+		}
+	}
+}
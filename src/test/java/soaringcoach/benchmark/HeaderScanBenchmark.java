@@ -0,0 +1,69 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.benchmark;
+
+import java.io.File;
+
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.IgcHeaderScanner;
+import soaringcoach.analysis.parsing.IgcParserType;
+
+/**
+ * Compares reading the metadata of every test file with the header scan, to
+ * getting it by parsing each file in full.
+ */
+public class HeaderScanBenchmark {
+	
+	public static void main(String[] args) throws Exception {
+		final File[] files = new File("src/test/resources").listFiles();
+		final IgcHeaderScanner scanner = new IgcHeaderScanner();
+		
+		Benchmark.compare("IGC metadata", "files", 
+				new Benchmark("Full parse") {
+					@Override
+					protected long run() throws Exception {
+						for (File file : files) {
+							IgcParserType.NATIVE.getParser().read(file, new FlightTestFacade(null));
+						}
+						return files.length;
+					}
+				},
+				new Benchmark("Header scan") {
+					@Override
+					protected long run() throws Exception {
+						for (File file : files) {
+							scanner.scan(file);
+						}
+						return files.length;
+					}
+				});
+	}
+}
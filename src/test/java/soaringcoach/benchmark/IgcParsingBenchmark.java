@@ -0,0 +1,119 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+package soaringcoach.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import soaringcoach.Flight;
+import soaringcoach.FlightTestFacade;
+import soaringcoach.analysis.parsing.IgcParser;
+import soaringcoach.analysis.parsing.IgcParserType;
+import soaringcoach.analysis.parsing.NativeIgcParser;
+
+/**
+ * Compares the BeanIO and native parser backends, and the native one parsing
+ * a mapped file on one thread or in chunks on the common ForkJoinPool, on a
+ * long flight made up by repeating the B records of the largest test file.
+ */
+public class IgcParsingBenchmark {
+	private static final String SOURCE_FILE = "src/test/resources/5cjx4i41.igc";
+	private static final int REPEATS = 10;
+	
+	/**
+	 * @return the source file once in full, followed by its B records another
+	 *         <b>REPEATS - 1</b> times
+	 */
+	static byte[] makeLongFlight() throws IOException {
+		byte[] source = Files.readAllBytes(Paths.get(SOURCE_FILE));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(source.length * REPEATS);
+		out.write(source);
+		
+		String[] lines = new String(source, StandardCharsets.ISO_8859_1).split("\r?\n");
+		for (int i = 1; i < REPEATS; i++) {
+			for (String line : lines) {
+				if (line.startsWith("B")) {
+					out.write(line.getBytes(StandardCharsets.ISO_8859_1));
+					out.write('\n');
+				}
+			}
+		}
+		
+		return out.toByteArray();
+	}
+	
+	private static Flight parse(IgcParser parser, byte[] igc) throws IOException {
+		return parser.read(new ByteArrayInputStream(igc), new FlightTestFacade(null));
+	}
+	
+	public static void main(String[] args) throws Exception {
+		final byte[] igc = makeLongFlight();
+		final File file = File.createTempFile("longflight", ".igc");
+		file.deleteOnExit();
+		Files.write(file.toPath(), igc);
+		
+		final IgcParser sequential = new NativeIgcParser(ForkJoinPool.commonPool(), Long.MAX_VALUE, 1);
+		final IgcParser parallel = new NativeIgcParser(ForkJoinPool.commonPool(), 0, 256 * 1024);
+		
+		Benchmark.compare("IGC parsing", "fixes", 
+				new Benchmark("BeanIO") {
+					@Override
+					protected long run() throws Exception {
+						return parse(IgcParserType.BEANIO.getParser(), igc).igc_points.size();
+					}
+				},
+				new Benchmark("FastIgcReader") {
+					@Override
+					protected long run() throws Exception {
+						return parse(IgcParserType.NATIVE.getParser(), igc).igc_points.size();
+					}
+				},
+				new Benchmark("FastIgcReader, mapped file") {
+					@Override
+					protected long run() throws Exception {
+						return sequential.read(file, new FlightTestFacade(null)).igc_points.size();
+					}
+				},
+				new Benchmark("FastIgcReader, parallel") {
+					@Override
+					protected long run() throws Exception {
+						return parallel.read(file, new FlightTestFacade(null)).igc_points.size();
+					}
+				});
+	}
+}
@@ -0,0 +1,91 @@
+/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *   SoaringCoach is a tool for analysing IGC files produced by modern FAI
+ *   flight recorder devices, and providing the pilot with useful feedback
+ *   on how effectively they are flying.    
+ *   Copyright (C) 2017 Johan Pretorius
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Affero General Public License as published
+ *   by the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Affero General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Affero General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *   The author can be contacted via email at pretoriusjf@gmail.com, or 
+ *   by paper mail by addressing as follows: 
+ *      Johan Pretorius 
+ *      PO Box 990 
+ *      Durbanville 
+ *      Cape Town 
+ *      7551
+ *      South Africa
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+package soaringcoach.benchmark;
+
+import java.util.Random;
+
+import soaringcoach.analysis.TrigBackend;
+
+/**
+ * Compares the trigonometry backends on the kind of arguments geodesy feeds
+ * them: latitudes, small longitude differences and bearings.
+ */
+public class TrigBenchmark {
+	private static final int ARGUMENTS = 100000;
+	
+	/**
+	 * Keeps the JIT from dropping the work as unused
+	 */
+	static volatile double sink;
+	
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(1);
+		final double[] latitude = new double[ARGUMENTS];
+		final double[] longitude_delta = new double[ARGUMENTS];
+		final double[] bearing = new double[ARGUMENTS];
+		for (int i = 0; i < ARGUMENTS; i++) {
+			latitude[i] = Math.toRadians(random.nextDouble() * 140 - 70);
+			longitude_delta[i] = Math.toRadians(random.nextDouble() * 0.01 - 0.005);
+			bearing[i] = Math.toRadians(random.nextDouble() * 360);
+		}
+		
+		Benchmark.compare("Trigonometry (sin, cos, atan2, asin)", "arguments", 
+				new TrigCandidate(TrigBackend.EXACT, latitude, longitude_delta, bearing), 
+				new TrigCandidate(TrigBackend.FAST, latitude, longitude_delta, bearing));
+	}
+	
+	private static class TrigCandidate extends Benchmark {
+		private final TrigBackend trig;
+		private final double[] latitude;
+		private final double[] longitude_delta;
+		private final double[] bearing;
+		
+		TrigCandidate(TrigBackend trig, double[] latitude, double[] longitude_delta, double[] bearing) {
+			super(trig.name());
+			this.trig = trig;
+			this.latitude = latitude;
+			this.longitude_delta = longitude_delta;
+			this.bearing = bearing;
+		}
+
+		@Override
+		protected long run() throws Exception {
+			double total = 0;
+			for (int i = 0; i < ARGUMENTS; i++) {
+				total += trig.sin(latitude[i]) + trig.cos(latitude[i]);
+				total += trig.sin(longitude_delta[i]) + trig.cos(longitude_delta[i]);
+				total += trig.atan2(trig.sin(bearing[i]), trig.cos(bearing[i]));
+				total += trig.asin(latitude[i] / 2);
+			}
+			sink = total;
+			return ARGUMENTS;
+		}
+	}
+}